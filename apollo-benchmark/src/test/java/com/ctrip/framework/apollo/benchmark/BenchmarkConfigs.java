@@ -0,0 +1,46 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.benchmark;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+
+/**
+ * The shared settings of the benchmarks
+ */
+public final class BenchmarkConfigs {
+
+  private BenchmarkConfigs() {
+  }
+
+  /**
+   * @return the biz config with all the default values, without any database or environment, so
+   * that reading it doesn't add noise to the measured code
+   */
+  public static BizConfig defaultBizConfig() {
+    return new BizConfig(null) {
+      @Override
+      public String getValue(String key) {
+        return null;
+      }
+
+      @Override
+      public String getValue(String key, String defaultValue) {
+        return defaultValue;
+      }
+    };
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.benchmark.BenchmarkConfigs;
+import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
+import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.collect.TreeMultimap;
+import com.google.gson.Gson;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the gray release rule lookups of every config request, between the immutable index of
+ * {@link GrayReleaseRulesHolder} and the synchronized multimaps it replaced, with 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class GrayReleaseRulesHolderBenchmark {
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final int RULES = 1000;
+  private static final int IPS_PER_RULE = 10;
+  private static final String NAMESPACE = ConfigConsts.NAMESPACE_APPLICATION;
+  private static final String CLUSTER = ConfigConsts.CLUSTER_NAME_DEFAULT;
+  // most of the clients have no gray rule, one in eight of them hits a rule
+  private static final int CLIENTS = RULES * 8;
+
+  @State(Scope.Benchmark)
+  public static class Rules {
+    GrayReleaseRulesHolder holder;
+    LockingGrayReleaseRules lockingRules;
+    String[] clientAppIds = new String[CLIENTS];
+    String[] clientIps = new String[CLIENTS];
+    String[] configAppIds = new String[CLIENTS];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      for (int i = 0; i < CLIENTS; i++) {
+        clientAppIds[i] = clientAppId(i);
+        clientIps[i] = clientIp(i, i);
+        configAppIds[i] = appId(i % RULES);
+      }
+
+      Gson gson = new Gson();
+      List<GrayReleaseRule> rules = Lists.newArrayList();
+      lockingRules = new LockingGrayReleaseRules();
+      for (int i = 0; i < RULES; i++) {
+        GrayReleaseRuleItemDTO ruleItem = new GrayReleaseRuleItemDTO(clientAppId(i),
+            Sets.newHashSet(), Sets.newHashSet("label" + i));
+        for (int j = 0; j < IPS_PER_RULE; j++) {
+          ruleItem.getClientIpList().add(clientIp(i, j));
+        }
+
+        GrayReleaseRule rule = new GrayReleaseRule();
+        rule.setId(i + 1L);
+        rule.setAppId(appId(i));
+        rule.setClusterName(CLUSTER);
+        rule.setNamespaceName(NAMESPACE);
+        rule.setBranchName("someBranch");
+        rule.setRules(gson.toJson(Lists.newArrayList(ruleItem)));
+        rule.setReleaseId(i + 1L);
+        rule.setBranchStatus(NamespaceBranchStatus.ACTIVE);
+        rules.add(rule);
+
+        lockingRules.add(appId(i), new GrayReleaseRuleCache(rule.getId(), rule.getBranchName(),
+            NAMESPACE, rule.getReleaseId(), rule.getBranchStatus(), 0,
+            Sets.newHashSet(ruleItem)));
+      }
+
+      GrayReleaseRuleRepository repository = mock(GrayReleaseRuleRepository.class);
+      when(repository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(rules);
+      holder = new GrayReleaseRulesHolder(repository, BenchmarkConfigs.defaultBizConfig());
+      holder.afterPropertiesSet();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    private int next;
+
+    int nextClient() {
+      next = (next + 1) % CLIENTS;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public boolean hasGrayReleaseRule(Rules rules, Client client) {
+    int i = client.nextClient();
+    return rules.holder.hasGrayReleaseRule(rules.clientAppIds[i], rules.clientIps[i], null,
+        NAMESPACE);
+  }
+
+  @Benchmark
+  public boolean hasGrayReleaseRuleLocking(Rules rules, Client client) {
+    int i = client.nextClient();
+    return rules.lockingRules.hasGrayReleaseRule(rules.clientAppIds[i], rules.clientIps[i],
+        null, NAMESPACE);
+  }
+
+  @Benchmark
+  public Long findReleaseId(Rules rules, Client client) {
+    int i = client.nextClient();
+    return rules.holder.findReleaseIdFromGrayReleaseRule(rules.clientAppIds[i],
+        rules.clientIps[i], null, rules.configAppIds[i], CLUSTER, NAMESPACE);
+  }
+
+  @Benchmark
+  public Long findReleaseIdLocking(Rules rules, Client client) {
+    int i = client.nextClient();
+    return rules.lockingRules.findReleaseId(rules.clientAppIds[i], rules.clientIps[i], null,
+        rules.configAppIds[i], CLUSTER, NAMESPACE);
+  }
+
+  private static String appId(int i) {
+    return "app" + i;
+  }
+
+  private static String clientAppId(int i) {
+    return "clientApp" + i;
+  }
+
+  private static String clientIp(int i, int j) {
+    return "10.0." + (i % 256) + "." + (j % IPS_PER_RULE);
+  }
+
+  /**
+   * The lookups of the synchronized multimaps before the immutable index
+   */
+  private static class LockingGrayReleaseRules {
+    private final Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache =
+        Multimaps.synchronizedSetMultimap(
+            TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    private final Multimap<String, Long> reversedGrayReleaseRuleCache =
+        Multimaps.synchronizedSetMultimap(
+            TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    private final Multimap<String, Long> reversedGrayReleaseRuleLabelCache =
+        Multimaps.synchronizedSetMultimap(
+            TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+
+    void add(String appId, GrayReleaseRuleCache ruleCache) {
+      grayReleaseRuleCache.put(STRING_JOINER.join(appId, CLUSTER, NAMESPACE), ruleCache);
+      for (GrayReleaseRuleItemDTO ruleItem : ruleCache.getRuleItems()) {
+        for (String clientIp : ruleItem.getClientIpList()) {
+          reversedGrayReleaseRuleCache.put(
+              STRING_JOINER.join(ruleItem.getClientAppId(), NAMESPACE, clientIp),
+              ruleCache.getRuleId());
+        }
+        for (String label : ruleItem.getClientLabelList()) {
+          reversedGrayReleaseRuleLabelCache.put(
+              STRING_JOINER.join(ruleItem.getClientAppId(), NAMESPACE, label),
+              ruleCache.getRuleId());
+        }
+      }
+    }
+
+    Long findReleaseId(String clientAppId, String clientIp, String clientLabel,
+        String configAppId, String configCluster, String configNamespaceName) {
+      String key = STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
+      if (!grayReleaseRuleCache.containsKey(key)) {
+        return null;
+      }
+      List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
+      for (GrayReleaseRuleCache rule : rules) {
+        if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+          continue;
+        }
+        if (rule.matches(clientAppId, clientIp, clientLabel)) {
+          return rule.getReleaseId();
+        }
+      }
+      return null;
+    }
+
+    boolean hasGrayReleaseRule(String clientAppId, String clientIp, String clientLabel,
+        String namespaceName) {
+      if (reversedGrayReleaseRuleCache
+          .containsKey(STRING_JOINER.join(clientAppId, namespaceName, clientIp))
+          || reversedGrayReleaseRuleCache.containsKey(
+              STRING_JOINER.join(clientAppId, namespaceName, GrayReleaseRuleItemDTO.ALL_IP))) {
+        return true;
+      }
+      return !Strings.isNullOrEmpty(clientLabel) && (reversedGrayReleaseRuleLabelCache
+          .containsKey(STRING_JOINER.join(clientAppId, namespaceName, clientLabel))
+          || reversedGrayReleaseRuleLabelCache.containsKey(
+              STRING_JOINER.join(clientAppId, namespaceName, GrayReleaseRuleItemDTO.ALL_Label)));
+    }
+  }
+}
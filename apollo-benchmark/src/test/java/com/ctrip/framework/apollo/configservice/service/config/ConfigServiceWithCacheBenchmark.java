@@ -0,0 +1,196 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.benchmark.BenchmarkConfigs;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
+import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ConfigServiceWithCache#loadConfig} once all the entries are cached, with and
+ * without the index of the clusters having releases.
+ * <p>
+ * The releases are all in the default cluster, like most apps, while the clients are in their own
+ * cluster and data center, so that loadConfig tries three clusters for each namespace. A public
+ * namespace is first looked up in the client's app, then in the public app.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigServiceWithCacheBenchmark {
+  private static final int APPS = 1000;
+  private static final String DEFAULT_CLUSTER = ConfigConsts.CLUSTER_NAME_DEFAULT;
+  private static final String CLIENT_CLUSTER = "someCluster";
+  private static final String CLIENT_DATA_CENTER = "someDC";
+  private static final String CLIENT_IP = "10.0.0.1";
+  private static final String PRIVATE_NAMESPACE = ConfigConsts.NAMESPACE_APPLICATION;
+  private static final String PUBLIC_APP_ID = "somePublicAppId";
+  private static final String PUBLIC_NAMESPACE = "somePublicNamespace";
+
+  /**
+   * false measures the lookups before the index, which try every cluster
+   */
+  @Param({"true", "false"})
+  public boolean indexed;
+
+  private ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
+  private ConfigServiceWithCache configService;
+  private String[] appIds;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    BizConfig bizConfig = BenchmarkConfigs.defaultBizConfig();
+
+    appIds = new String[APPS];
+    Map<String, Release> releases = Maps.newHashMap();
+    List<ReleaseMessage> releaseMessages = Lists.newArrayList();
+    for (int i = 0; i < APPS; i++) {
+      appIds[i] = "someAppId" + i;
+      addRelease(appIds[i], PRIVATE_NAMESPACE, releases, releaseMessages);
+    }
+    addRelease(PUBLIC_APP_ID, PUBLIC_NAMESPACE, releases, releaseMessages);
+
+    ReleaseMessageRepository releaseMessageRepository = mock(ReleaseMessageRepository.class);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(anyLong()))
+        .thenAnswer(invocation -> releaseMessages.stream()
+            .filter(message -> message.getId() > invocation.<Long>getArgument(0))
+            .limit(500).collect(Collectors.toList()));
+    releaseMessageServiceWithCache =
+        new ReleaseMessageServiceWithCache(releaseMessageRepository, bizConfig);
+    if (indexed) {
+      releaseMessageServiceWithCache.afterPropertiesSet();
+    }
+
+    ReleaseService releaseService = mock(ReleaseService.class);
+    when(releaseService.findLatestActiveRelease(anyString(), anyString(), anyString()))
+        .thenAnswer(invocation -> releases.get(ReleaseMessageKeyGenerator.generate(
+            invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2))));
+    ReleaseMessageService releaseMessageService = mock(ReleaseMessageService.class);
+    when(releaseMessageService.findLatestReleaseMessageForMessages(anyList()))
+        .thenAnswer(invocation -> {
+          String message = invocation.<List<String>>getArgument(0).get(0);
+          return releaseMessages.stream().filter(m -> m.getMessage().equals(message))
+              .findFirst().orElse(null);
+        });
+
+    GrayReleaseRulesHolder grayReleaseRulesHolder =
+        new GrayReleaseRulesHolder(mock(GrayReleaseRuleRepository.class), bizConfig);
+    configService = new ConfigServiceWithCache(releaseService, releaseMessageService,
+        releaseMessageServiceWithCache, grayReleaseRulesHolder, bizConfig,
+        new SimpleMeterRegistry());
+    configService.initialize();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    releaseMessageServiceWithCache.destroy();
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    private int next;
+
+    int nextApp() {
+      next = (next + 1) % APPS;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public Release defaultCluster(Client client) {
+    String appId = appIds[client.nextApp()];
+    return configService.loadConfig(appId, CLIENT_IP, null, appId, DEFAULT_CLUSTER,
+        PRIVATE_NAMESPACE, null, null);
+  }
+
+  @Benchmark
+  public Release clusterWithDataCenter(Client client) {
+    String appId = appIds[client.nextApp()];
+    return configService.loadConfig(appId, CLIENT_IP, null, appId, CLIENT_CLUSTER,
+        PRIVATE_NAMESPACE, CLIENT_DATA_CENTER, null);
+  }
+
+  @Benchmark
+  public Release publicNamespace(Client client) {
+    String appId = appIds[client.nextApp()];
+    // the same as ConfigController, the client's app may override the public namespace
+    Release release = configService.loadConfig(appId, CLIENT_IP, null, appId, CLIENT_CLUSTER,
+        PUBLIC_NAMESPACE, CLIENT_DATA_CENTER, null);
+    if (release != null) {
+      return release;
+    }
+    return configService.loadConfig(appId, CLIENT_IP, null, PUBLIC_APP_ID, CLIENT_CLUSTER,
+        PUBLIC_NAMESPACE, CLIENT_DATA_CENTER, null);
+  }
+
+  private static void addRelease(String appId, String namespaceName,
+      Map<String, Release> releases, List<ReleaseMessage> releaseMessages) {
+    String key = ReleaseMessageKeyGenerator.generate(appId, DEFAULT_CLUSTER, namespaceName);
+
+    Release release = new Release();
+    release.setId(releases.size() + 1L);
+    release.setAppId(appId);
+    release.setClusterName(DEFAULT_CLUSTER);
+    release.setNamespaceName(namespaceName);
+    release.setReleaseKey("someReleaseKey" + release.getId());
+    release.setConfigurations("{\"someKey\":\"someValue\"}");
+    releases.put(key, release);
+
+    ReleaseMessage releaseMessage = new ReleaseMessage(key);
+    releaseMessage.setId(releaseMessages.size() + 1L);
+    releaseMessages.add(releaseMessage);
+  }
+}
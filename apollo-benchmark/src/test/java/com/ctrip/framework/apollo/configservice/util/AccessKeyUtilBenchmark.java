@@ -0,0 +1,176 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.benchmark.BenchmarkConfigs;
+import com.ctrip.framework.apollo.biz.entity.AccessKey;
+import com.ctrip.framework.apollo.biz.repository.AccessKeyRepository;
+import com.ctrip.framework.apollo.common.constants.AccessKeyMode;
+import com.ctrip.framework.apollo.configservice.service.AccessKeyServiceWithCache;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MultimapBuilder.ListMultimapBuilder;
+import com.google.common.collect.Multimaps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the signature checks of {@code ClientAuthenticationFilter}, between the prebuilt secret
+ * keys verified with a reused mac and the secrets copied from the synchronized multimap and signed
+ * with {@link Signature}, with 64 threads.
+ * <p>
+ * Each app has two enabled secrets, as while rotating them, and the clients sign with the second
+ * one, so both secrets are tried.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class AccessKeyUtilBenchmark {
+  private static final int APPS = 1000;
+  private static final String TIMESTAMP = "1575018989200";
+  private static final String QUERY = "ip=10.0.0.1&messages=%7B%22details%22%3A%7B%7D%7D";
+
+  @State(Scope.Benchmark)
+  public static class AccessKeys {
+    AccessKeyServiceWithCache accessKeyServiceWithCache;
+    AccessKeyUtil accessKeyUtil;
+    LockingAccessKeys lockingAccessKeys;
+    String[] appIds = new String[APPS];
+    String[] paths = new String[APPS];
+    String[] signatures = new String[APPS];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      List<AccessKey> accessKeys = Lists.newArrayList();
+      lockingAccessKeys = new LockingAccessKeys();
+      for (int i = 0; i < APPS; i++) {
+        appIds[i] = "someAppId" + i;
+        paths[i] = "/configs/" + appIds[i] + "/default/application";
+        for (int j = 0; j < 2; j++) {
+          AccessKey accessKey = new AccessKey();
+          accessKey.setId(accessKeys.size() + 1L);
+          accessKey.setAppId(appIds[i]);
+          accessKey.setSecret("someSecret" + i + "-" + j);
+          accessKey.setMode(AccessKeyMode.FILTER);
+          accessKey.setEnabled(true);
+          accessKey.setDataChangeLastModifiedTime(new Date(0L));
+          accessKeys.add(accessKey);
+          lockingAccessKeys.add(accessKey);
+        }
+        signatures[i] = Signature.signature(TIMESTAMP, paths[i] + "?" + QUERY,
+            "someSecret" + i + "-1");
+      }
+
+      AccessKeyRepository repository = mock(AccessKeyRepository.class);
+      when(repository
+          .findFirst500ByDataChangeLastModifiedTimeGreaterThanEqualAndDataChangeLastModifiedTimeLessThanOrderByDataChangeLastModifiedTimeAsc(
+              any(), any())).thenReturn(accessKeys, Lists.newArrayList());
+      accessKeyServiceWithCache = new AccessKeyServiceWithCache(repository,
+          BenchmarkConfigs.defaultBizConfig(), new SimpleMeterRegistry());
+      accessKeyServiceWithCache.afterPropertiesSet();
+      accessKeyUtil = new AccessKeyUtil(accessKeyServiceWithCache);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      accessKeyServiceWithCache.destroy();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    private int next;
+
+    int nextApp() {
+      next = (next + 1) % APPS;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public boolean verifySignature(AccessKeys accessKeys, Client client) {
+    int i = client.nextApp();
+    List<SecretKeySpec> secretKeys =
+        accessKeys.accessKeyUtil.findAvailableSecretKeys(accessKeys.appIds[i]);
+    return accessKeys.accessKeyUtil.verifySignature(accessKeys.signatures[i], accessKeys.paths[i],
+        QUERY, TIMESTAMP, secretKeys);
+  }
+
+  @Benchmark
+  public boolean verifySignatureLocking(AccessKeys accessKeys, Client client) {
+    int i = client.nextApp();
+    List<String> secrets = accessKeys.lockingAccessKeys.getAvailableSecrets(accessKeys.appIds[i]);
+    for (String secret : secrets) {
+      String signature = Signature.signature(TIMESTAMP, accessKeys.paths[i] + "?" + QUERY, secret);
+      if (Objects.equals(accessKeys.signatures[i], signature)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The secrets lookup of AccessKeyServiceWithCache before the snapshot.
+   */
+  static class LockingAccessKeys {
+    private final ListMultimap<String, AccessKey> accessKeyCache = Multimaps
+        .synchronizedListMultimap(
+            ListMultimapBuilder.treeKeys(String.CASE_INSENSITIVE_ORDER).arrayListValues().build());
+
+    void add(AccessKey accessKey) {
+      accessKeyCache.put(accessKey.getAppId(), accessKey);
+    }
+
+    List<String> getAvailableSecrets(String appId) {
+      List<AccessKey> accessKeys = accessKeyCache.get(appId);
+      if (accessKeys.isEmpty()) {
+        return Lists.newArrayList();
+      }
+
+      return accessKeys.stream()
+          .filter(key -> key.isEnabled() && key.getMode() == AccessKeyMode.FILTER)
+          .map(AccessKey::getSecret).collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry.Subscription;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Measures the retained heap per long polling connection of {@link WatchKeyRegistry}, compared
+ * with the case-insensitive map of concurrent sets it replaced.
+ * <p>
+ * It is not a JMH benchmark as it measures the retained heap instead of the throughput, run it with
+ * {@code -Pbenchmark -Dbenchmark.main=<this class> -Dbenchmark=<connections>}, the connections
+ * are 200k by default.
+ * </p>
+ */
+public class WatchKeyRegistryMemoryBenchmark {
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final int DEFAULT_CONNECTIONS = 200_000;
+  private static final int APPS = 1000;
+  private static final int KEYS_PER_CONNECTION = 6;
+
+  public static void main(String[] args) throws Exception {
+    int connections = args.length > 0 && !args[0].isEmpty() ? Integer.parseInt(args[0])
+        : DEFAULT_CONNECTIONS;
+
+    // the watch keys and the subscribers are not part of the registry, so they are created first
+    List<List<String>> watchKeys = Lists.newArrayListWithCapacity(APPS);
+    for (int i = 0; i < APPS; i++) {
+      List<String> keys = Lists.newArrayListWithCapacity(KEYS_PER_CONNECTION);
+      for (int j = 0; j < KEYS_PER_CONNECTION; j++) {
+        keys.add(STRING_JOINER.join("app" + i, ConfigConsts.CLUSTER_NAME_DEFAULT, "ns" + j));
+      }
+      watchKeys.add(keys);
+    }
+    Object[] subscribers = new Object[connections];
+    for (int i = 0; i < connections; i++) {
+      subscribers[i] = new Object();
+    }
+
+    report("WatchKeyRegistry", connections, () -> {
+      WatchKeyRegistry<Object> registry = new WatchKeyRegistry<>();
+      // the subscriptions are kept by the long polling clients
+      Subscription[] subscriptions = new Subscription[connections];
+      for (int i = 0; i < connections; i++) {
+        subscriptions[i] = registry.register(watchKeys.get(i % APPS), subscribers[i]);
+      }
+      return new Object[]{registry, subscriptions};
+    });
+
+    report("ConcurrentMap of concurrent sets", connections, () -> {
+      ConcurrentMap<String, Set<Object>> registry = Maps.newConcurrentMap();
+      for (int i = 0; i < connections; i++) {
+        for (String key : watchKeys.get(i % APPS)) {
+          registry.computeIfAbsent(key.toLowerCase(Locale.ROOT),
+              k -> Sets.newConcurrentHashSet()).add(subscribers[i]);
+        }
+      }
+      return registry;
+    });
+
+    Reference.reachabilityFence(watchKeys);
+    Reference.reachabilityFence(subscribers);
+  }
+
+  private static void report(String name, int connections, Supplier<Object> registrations)
+      throws InterruptedException {
+    long before = usedHeap();
+    Object registry = registrations.get();
+    long after = usedHeap();
+    System.out.printf("%s: %d connections watching %d keys, %d bytes per connection%n", name,
+        connections, KEYS_PER_CONNECTION, (after - before) / connections);
+    Reference.reachabilityFence(registry);
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
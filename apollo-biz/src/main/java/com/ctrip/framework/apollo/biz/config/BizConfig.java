@@ -48,22 +48,41 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_MAX_ITEM_NUM = 1000;
 
   private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; // 60s
+  private static final int DEFAULT_APPNAMESPACE_CACHE_FULL_REBUILD_INTERVAL = 3600; // 1h
   private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; // 60s
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; // 1s
   private static final int DEFAULT_ACCESS_KEY_CACHE_SCAN_INTERVAL = 1; // 1s
   private static final int DEFAULT_ACCESS_KEY_CACHE_REBUILD_INTERVAL = 60; // 60s
   private static final int DEFAULT_ACCESS_KEY_AUTH_TIME_DIFF_TOLERANCE = 60; // 60s
   private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; // 1s
+  private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SNAPSHOT_INTERVAL = 60; // 60s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; // 1000ms
+  private static final int DEFAULT_RELEASE_MESSAGE_PUSH_SCAN_INTERVAL_IN_MS = 10000; // 10s
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;// 100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS = 2;
+  private static final int DEFAULT_RELEASE_MESSAGE_LISTENER_QUEUE_SIZE = 10000;
   private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; // 60s
+  private static final int DEFAULT_LONG_POLLING_TIMEOUT_JITTER = 0; // 0s
+  private static final int DEFAULT_LONG_POLLING_ADMISSION_RATE = 0; // disabled
+  private static final int DEFAULT_LONG_POLLING_ADMISSION_RETRY_WINDOW = 10; // 10s
+  private static final int DEFAULT_LONG_POLLING_DRAIN_PERIOD = 5; // 5s
+  private static final int DEFAULT_NOTIFICATION_STREAM_TIMEOUT = 600; // 10min
+  private static final int DEFAULT_NOTIFICATION_STREAM_HEARTBEAT_INTERVAL = 30; // 30s
+  private static final int DEFAULT_CONFIG_BATCH_MAX_NAMESPACES = 50;
   public static final int DEFAULT_RELEASE_HISTORY_RETENTION_SIZE = -1;
 
   private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
   private static final int DEFAULT_INSTANCE_CACHE_MAX_SIZE = 50000;
   private static final int DEFAULT_INSTANCE_CONFIG_CACHE_MAX_SIZE = 50000;
   private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_TIME_THRESHOLD_IN_MINUTE = 10;// 10 minutes
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS = 2;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH = 100;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH_INTERVAL_IN_MILLI = 100;// 100ms
+  private static final int DEFAULT_RELEASE_CONFIGURATIONS_CACHE_MAX_SIZE_IN_MB = 128;// 128MB
+  private static final int DEFAULT_RESPONSE_CACHE_MAX_SIZE_IN_MB = 64;// 64MB
+  private static final int DEFAULT_CONFIG_FILE_CACHE_MAX_SIZE_IN_MB = 50;// 50MB
+  private static final int DEFAULT_INCREMENTAL_CHANGE_CACHE_MAX_SIZE_IN_MB = 32;// 32MB
 
   private static final Gson GSON = new Gson();
 
@@ -110,6 +129,49 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.SECONDS.toMillis(timeout);
   }
 
+  public long longPollingTimeoutJitterInMilli() {
+    int jitter = getIntProperty("long.polling.timeout.jitter", DEFAULT_LONG_POLLING_TIMEOUT_JITTER);
+    jitter = checkInt(jitter, 0, 90, DEFAULT_LONG_POLLING_TIMEOUT_JITTER);
+    return TimeUnit.SECONDS.toMillis(jitter);
+  }
+
+  public int longPollingAdmissionRate() {
+    int rate = getIntProperty("long.polling.admission.rate", DEFAULT_LONG_POLLING_ADMISSION_RATE);
+    return checkInt(rate, 0, Integer.MAX_VALUE, DEFAULT_LONG_POLLING_ADMISSION_RATE);
+  }
+
+  public int longPollingAdmissionRetryWindowInSeconds() {
+    int window = getIntProperty("long.polling.admission.retry.window",
+        DEFAULT_LONG_POLLING_ADMISSION_RETRY_WINDOW);
+    return checkInt(window, 1, 90, DEFAULT_LONG_POLLING_ADMISSION_RETRY_WINDOW);
+  }
+
+  public long longPollingDrainPeriodInMilli() {
+    int period = getIntProperty("long.polling.drain.period", DEFAULT_LONG_POLLING_DRAIN_PERIOD);
+    period = checkInt(period, 0, 300, DEFAULT_LONG_POLLING_DRAIN_PERIOD);
+    return TimeUnit.SECONDS.toMillis(period);
+  }
+
+  public long notificationStreamTimeoutInMilli() {
+    int timeout =
+        getIntProperty("notification.stream.timeout", DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+    timeout = checkInt(timeout, 60, 3600, DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+    return TimeUnit.SECONDS.toMillis(timeout);
+  }
+
+  public long notificationStreamHeartbeatIntervalInMilli() {
+    int interval = getIntProperty("notification.stream.heartbeat.interval",
+        DEFAULT_NOTIFICATION_STREAM_HEARTBEAT_INTERVAL);
+    interval = checkInt(interval, 1, 300, DEFAULT_NOTIFICATION_STREAM_HEARTBEAT_INTERVAL);
+    return TimeUnit.SECONDS.toMillis(interval);
+  }
+
+  public int configBatchMaxNamespaces() {
+    int max = getIntProperty("config-service.batch.max-namespaces",
+        DEFAULT_CONFIG_BATCH_MAX_NAMESPACES);
+    return checkInt(max, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_BATCH_MAX_NAMESPACES);
+  }
+
   public int itemKeyLengthLimit() {
     int limit = getIntProperty("item.key.length.limit", DEFAULT_ITEM_KEY_LENGTH);
     return checkInt(limit, 5, Integer.MAX_VALUE, DEFAULT_ITEM_KEY_LENGTH);
@@ -179,6 +241,21 @@ public class BizConfig extends RefreshableConfig {
     return INTERVAL_TIME_UNIT;
   }
 
+  public boolean isAppNamespaceCacheIncrementalRefreshEnabled() {
+    return getBooleanProperty("apollo.app-namespace-cache-incremental-refresh.enabled", false);
+  }
+
+  public int appNamespaceCacheFullRebuildInterval() {
+    int interval = getIntProperty("apollo.app-namespace-cache-full-rebuild.interval",
+        DEFAULT_APPNAMESPACE_CACHE_FULL_REBUILD_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE,
+        DEFAULT_APPNAMESPACE_CACHE_FULL_REBUILD_INTERVAL);
+  }
+
+  public TimeUnit appNamespaceCacheFullRebuildIntervalTimeUnit() {
+    return INTERVAL_TIME_UNIT;
+  }
+
   public boolean isAccessKeyAutoProvisionEnabled() {
     return getBooleanProperty("apollo.access-key.auto-provision.enabled", false);
   }
@@ -232,12 +309,35 @@ public class BizConfig extends RefreshableConfig {
     return INTERVAL_TIME_UNIT;
   }
 
+  public String releaseMessageCacheSnapshotPath() {
+    return getValue("apollo.release-message-cache.snapshot.path", "");
+  }
+
+  public long releaseMessageCacheSnapshotIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message-cache.snapshot.interval",
+        DEFAULT_RELEASE_MESSAGE_CACHE_SNAPSHOT_INTERVAL);
+    interval = checkInt(interval, 1, Integer.MAX_VALUE,
+        DEFAULT_RELEASE_MESSAGE_CACHE_SNAPSHOT_INTERVAL);
+    return TimeUnit.SECONDS.toMillis(interval);
+  }
+
   public int releaseMessageScanIntervalInMilli() {
     int interval =
         getIntProperty("apollo.message-scan.interval", DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
   }
 
+  public boolean isReleaseMessagePushEnabled() {
+    return getBooleanProperty("apollo.release-message.push.enabled", false);
+  }
+
+  public int releaseMessagePushScanIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message.push.scan.interval",
+        DEFAULT_RELEASE_MESSAGE_PUSH_SCAN_INTERVAL_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE,
+        DEFAULT_RELEASE_MESSAGE_PUSH_SCAN_INTERVAL_IN_MS);
+  }
+
   public int releaseMessageNotificationBatch() {
     int batch = getIntProperty("apollo.release-message.notification.batch",
         DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
@@ -251,6 +351,18 @@ public class BizConfig extends RefreshableConfig {
         DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  public int releaseMessageNotificationWorkers() {
+    int workers = getIntProperty("apollo.release-message.notification.workers",
+        DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS);
+    return checkInt(workers, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS);
+  }
+
+  public int releaseMessageListenerQueueSize() {
+    int size = getIntProperty("apollo.release-message.listener.queue.size",
+        DEFAULT_RELEASE_MESSAGE_LISTENER_QUEUE_SIZE);
+    return checkInt(size, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_LISTENER_QUEUE_SIZE);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
@@ -263,6 +375,40 @@ public class BizConfig extends RefreshableConfig {
     return getBooleanProperty("config-service.cache.key.ignore-case", false);
   }
 
+  public long configServiceReleaseConfigurationsCacheMaxSizeInBytes() {
+    int maxSize = getIntProperty("config-service.cache.release-configurations.max-size-in-mb",
+        DEFAULT_RELEASE_CONFIGURATIONS_CACHE_MAX_SIZE_IN_MB);
+    maxSize = checkInt(maxSize, 1, Integer.MAX_VALUE,
+        DEFAULT_RELEASE_CONFIGURATIONS_CACHE_MAX_SIZE_IN_MB);
+    return maxSize * 1024L * 1024L;
+  }
+
+  public boolean isConfigServiceCacheStaleServingEnabled() {
+    return getBooleanProperty("config-service.cache.stale-serving.enabled", false);
+  }
+
+  public String configServiceCacheStaleServingStorePath() {
+    return getValue("config-service.cache.stale-serving.store.path", "");
+  }
+
+  public boolean isConfigServiceResponseCacheEnabled() {
+    return getBooleanProperty("config-service.cache.response.enabled", false);
+  }
+
+  public long configServiceResponseCacheMaxSizeInBytes() {
+    int maxSize = getIntProperty("config-service.cache.response.max-size-in-mb",
+        DEFAULT_RESPONSE_CACHE_MAX_SIZE_IN_MB);
+    maxSize = checkInt(maxSize, 1, Integer.MAX_VALUE, DEFAULT_RESPONSE_CACHE_MAX_SIZE_IN_MB);
+    return maxSize * 1024L * 1024L;
+  }
+
+  public long configServiceConfigFileCacheMaxSizeInBytes() {
+    int maxSize = getIntProperty("config-service.cache.config-file.max-size-in-mb",
+        DEFAULT_CONFIG_FILE_CACHE_MAX_SIZE_IN_MB);
+    maxSize = checkInt(maxSize, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_FILE_CACHE_MAX_SIZE_IN_MB);
+    return maxSize * 1024L * 1024L;
+  }
+
   public int getInstanceConfigAuditMaxSize() {
     int auditMaxSize =
         getIntProperty("instance.config.audit.max.size", DEFAULT_INSTANCE_CONFIG_AUDIT_MAX_SIZE);
@@ -288,10 +434,36 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.MINUTES.toMillis(timeThreshold);
   }
 
+  public int getInstanceConfigAuditWorkers() {
+    int workers =
+        getIntProperty("instance.config.audit.workers", DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS);
+    return checkInt(workers, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS);
+  }
+
+  public int getInstanceConfigAuditBatch() {
+    int batch = getIntProperty("instance.config.audit.batch", DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+    return checkInt(batch, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+  }
+
+  public int getInstanceConfigAuditBatchIntervalInMilli() {
+    int interval = getIntProperty("instance.config.audit.batch.interval",
+        DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH_INTERVAL_IN_MILLI);
+    return checkInt(interval, 0, Integer.MAX_VALUE,
+        DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH_INTERVAL_IN_MILLI);
+  }
+
   public boolean isConfigServiceIncrementalChangeEnabled() {
     return getBooleanProperty("config-service.incremental.change.enabled", false);
   }
 
+  public long configServiceIncrementalChangeCacheMaxSizeInBytes() {
+    int maxSize = getIntProperty("config-service.incremental.change.cache.max-size-in-mb",
+        DEFAULT_INCREMENTAL_CHANGE_CACHE_MAX_SIZE_IN_MB);
+    maxSize = checkInt(maxSize, 1, Integer.MAX_VALUE,
+        DEFAULT_INCREMENTAL_CHANGE_CACHE_MAX_SIZE_IN_MB);
+    return maxSize * 1024L * 1024L;
+  }
+
   public boolean isAdminServiceAccessControlEnabled() {
     return getBooleanProperty("admin-service.access.control.enabled", false);
   }
@@ -300,6 +472,18 @@ public class BizConfig extends RefreshableConfig {
     return getValue("admin-service.access.tokens");
   }
 
+  /**
+   * @return the admin service access tokens, which also authenticate the release message pushes
+   */
+  public List<String> adminServiceAccessTokenList() {
+    String configuration = getAdminServiceAccessTokens();
+    if (Strings.isNullOrEmpty(configuration)) {
+      return Collections.emptyList();
+    }
+
+    return splitter.splitToList(configuration);
+  }
+
   private <K, V> Map<K, V> parseOverrideConfig(String configValue, Type typeReference,
       Predicate<V> valueFilter) {
     Map<K, V> result = Maps.newHashMap();
@@ -19,10 +19,12 @@ package com.ctrip.framework.apollo.biz.grayReleaseRule;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
@@ -34,19 +36,23 @@ import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
 import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
 import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
 import com.ctrip.framework.apollo.common.utils.GrayReleaseRuleItemTransformer;
+import com.ctrip.framework.apollo.common.utils.IpPrefixTrie;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
-import com.google.common.collect.TreeMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -64,12 +70,11 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   private int databaseScanInterval;
   private ScheduledExecutorService executorService;
-  // store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
-  private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
-  // store clientAppId+clientNamespace+ip -> ruleId map
-  private Multimap<String, Long> reversedGrayReleaseRuleCache;
-  // store clientAppId+clientNamespace+label -> ruleId map
-  private Multimap<String, Long> reversedGrayReleaseRuleLabelCache;
+  // store lower-cased configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map,
+  // only accessed by the writers, i.e. the scanner and the release message listener
+  private final Map<String, Set<GrayReleaseRuleCache>> grayReleaseRuleCache;
+  // the immutable index built from grayReleaseRuleCache, which is read without locking
+  private volatile GrayReleaseRules grayReleaseRules;
   // an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
 
@@ -78,12 +83,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     this.grayReleaseRuleRepository = grayReleaseRuleRepository;
     this.bizConfig = bizConfig;
     loadVersion = new AtomicLong();
-    grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
-    reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
-    reversedGrayReleaseRuleLabelCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    grayReleaseRuleCache = Maps.newHashMap();
+    grayReleaseRules = GrayReleaseRules.EMPTY;
     executorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("GrayReleaseRulesHolder", true));
   }
@@ -116,7 +117,50 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     List<GrayReleaseRule> rules = grayReleaseRuleRepository
         .findByAppIdAndClusterNameAndNamespaceName(appId, cluster, namespace);
 
-    mergeGrayReleaseRules(rules);
+    if (mergeGrayReleaseRules(rules)) {
+      publishGrayReleaseRules();
+    }
+  }
+
+  /**
+   * Load the rules of all the messages with one query and publish the index once, so that the
+   * clients are not notified one rule query per message later
+   */
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
+      return;
+    }
+    Set<String> appIds = Sets.newHashSet();
+    Set<String> clusters = Sets.newHashSet();
+    Set<String> namespaces = Sets.newHashSet();
+    for (ReleaseMessage message : messages) {
+      String releaseMessage = message.getMessage();
+      if (Strings.isNullOrEmpty(releaseMessage)) {
+        continue;
+      }
+      List<String> keys = ReleaseMessageKeyGenerator.messageToList(releaseMessage);
+      // message should be appId+cluster+namespace
+      if (CollectionUtils.isEmpty(keys)) {
+        continue;
+      }
+      appIds.add(keys.get(0));
+      clusters.add(keys.get(1));
+      namespaces.add(keys.get(2));
+    }
+    if (appIds.isEmpty()) {
+      return;
+    }
+    logger.info("messages received - channel: {}, messages: {}", channel, messages.size());
+
+    // the query might also return the rules of other combinations of the app ids, clusters and
+    // namespaces, merging them is the same as a scan
+    List<GrayReleaseRule> rules = grayReleaseRuleRepository
+        .findByAppIdInAndClusterNameInAndNamespaceNameIn(appIds, clusters, namespaces);
+
+    if (mergeGrayReleaseRules(rules)) {
+      publishGrayReleaseRules();
+    }
   }
 
   private void periodicScanRules() {
@@ -136,17 +180,13 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp,
       String clientLabel, String configAppId, String configCluster, String configNamespaceName) {
-    String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    List<GrayReleaseRuleCache> rules = grayReleaseRules.activeRules
+        .get(assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName));
+    if (rules == null) {
       return null;
     }
-    // create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      // check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
+    for (int i = 0; i < rules.size(); i++) {
+      GrayReleaseRuleCache rule = rules.get(i);
       if (rule.matches(clientAppId, clientIp, clientLabel)) {
         return rule.getReleaseId();
       }
@@ -161,17 +201,26 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
    */
   public boolean hasGrayReleaseRule(String clientAppId, String clientIp, String clientLabel,
       String namespaceName) {
+    GrayReleaseRules rules = grayReleaseRules;
     // check ip gray rule
-    if (reversedGrayReleaseRuleCache
-        .containsKey(assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, clientIp))
-        || reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
+    if (rules.reversedIpKeys
+        .contains(assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, clientIp))
+        || rules.reversedIpKeys.contains(assembleReversedGrayReleaseRuleKey(clientAppId,
             namespaceName, GrayReleaseRuleItemDTO.ALL_IP))) {
       return true;
     }
+    // check ip range gray rule
+    if (!rules.reversedIpRanges.isEmpty()) {
+      IpPrefixTrie ipRanges = rules.reversedIpRanges
+          .get(assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName));
+      if (ipRanges != null && ipRanges.contains(clientIp)) {
+        return true;
+      }
+    }
     // check label gray rule
-    if (!Strings.isNullOrEmpty(clientLabel) && (reversedGrayReleaseRuleLabelCache
-        .containsKey(assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, clientLabel))
-        || reversedGrayReleaseRuleLabelCache.containsKey(assembleReversedGrayReleaseRuleKey(
+    if (!Strings.isNullOrEmpty(clientLabel) && (rules.reversedLabelKeys
+        .contains(assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, clientLabel))
+        || rules.reversedLabelKeys.contains(assembleReversedGrayReleaseRuleKey(
             clientAppId, namespaceName, GrayReleaseRuleItemDTO.ALL_Label)))) {
       return true;
     }
@@ -181,6 +230,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private void scanGrayReleaseRules() {
     long maxIdScanned = 0;
     boolean hasMore = true;
+    boolean changed = false;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
       List<GrayReleaseRule> grayReleaseRules =
@@ -188,18 +238,26 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       if (CollectionUtils.isEmpty(grayReleaseRules)) {
         break;
       }
-      mergeGrayReleaseRules(grayReleaseRules);
+      changed |= mergeGrayReleaseRules(grayReleaseRules);
       int rulesScanned = grayReleaseRules.size();
       maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
       // batch is 500
       hasMore = rulesScanned == 500;
     }
+    // publish once per scan instead of once per batch
+    if (changed) {
+      publishGrayReleaseRules();
+    }
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+  /**
+   * @return whether the rules are changed, so that a new index needs to be published
+   */
+  private synchronized boolean mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
-      return;
+      return false;
     }
+    boolean changed = false;
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         // filter rules with no release id, i.e. never released
@@ -207,8 +265,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       }
       String key = assembleGrayReleaseRuleKey(grayReleaseRule.getAppId(),
           grayReleaseRule.getClusterName(), grayReleaseRule.getNamespaceName());
-      // create a new list to avoid ConcurrentModificationException
-      List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
+      Set<GrayReleaseRuleCache> rules =
+          grayReleaseRuleCache.computeIfAbsent(key, k -> new TreeSet<>());
       GrayReleaseRuleCache oldRule = null;
       for (GrayReleaseRuleCache ruleCache : rules) {
         if (ruleCache.getBranchName().equals(grayReleaseRule.getBranchName())) {
@@ -219,59 +277,87 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
       // if old rule is null and new rule's branch status is not active, ignore
       if (oldRule == null && grayReleaseRule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+        if (rules.isEmpty()) {
+          grayReleaseRuleCache.remove(key);
+        }
         continue;
       }
 
       // use id comparison to avoid synchronization
       if (oldRule == null || grayReleaseRule.getId() > oldRule.getRuleId()) {
-        addCache(key, transformRuleToRuleCache(grayReleaseRule));
+        rules.add(transformRuleToRuleCache(grayReleaseRule));
         if (oldRule != null) {
-          removeCache(key, oldRule);
+          rules.remove(oldRule);
         }
+        changed = true;
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           // update load version
           oldRule.setLoadVersion(loadVersion.get());
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           // remove outdated inactive branch rule after 2 update cycles
-          removeCache(key, oldRule);
+          rules.remove(oldRule);
+          if (rules.isEmpty()) {
+            grayReleaseRuleCache.remove(key);
+          }
+          changed = true;
         }
       }
     }
+    return changed;
   }
 
-  private void addCache(String key, GrayReleaseRuleCache ruleCache) {
-    if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
-      for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-        for (String clientIp : ruleItemDTO.getClientIpList()) {
-          reversedGrayReleaseRuleCache
-              .put(assembleReversedGrayReleaseRuleKey(ruleItemDTO.getClientAppId(),
-                  ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
+  /**
+   * Rebuild the index from the merged rules, only active rules are indexed as the inactive ones
+   * are never matched.
+   */
+  private synchronized void publishGrayReleaseRules() {
+    ImmutableMap.Builder<String, List<GrayReleaseRuleCache>> activeRules = ImmutableMap.builder();
+    Set<String> reversedIpKeys = Sets.newHashSet();
+    Multimap<String, String> reversedCidrs = HashMultimap.create();
+    Set<String> reversedLabelKeys = Sets.newHashSet();
+    for (Map.Entry<String, Set<GrayReleaseRuleCache>> entry : grayReleaseRuleCache.entrySet()) {
+      ImmutableList.Builder<GrayReleaseRuleCache> rules = ImmutableList.builder();
+      boolean hasActiveRule = false;
+      // rules are ordered by rule id, so the matching order is the same as before
+      for (GrayReleaseRuleCache ruleCache : entry.getValue()) {
+        if (ruleCache.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+          continue;
         }
-        for (String label : ruleItemDTO.getClientLabelList()) {
-          reversedGrayReleaseRuleLabelCache
-              .put(assembleReversedGrayReleaseRuleKey(ruleItemDTO.getClientAppId(),
-                  ruleCache.getNamespaceName(), label), ruleCache.getRuleId());
+        hasActiveRule = true;
+        rules.add(ruleCache);
+        for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
+          for (String clientIp : ruleItemDTO.getClientIpList()) {
+            if (IpPrefixTrie.isCidr(clientIp)) {
+              reversedCidrs.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO.getClientAppId(),
+                  ruleCache.getNamespaceName()), clientIp);
+            } else {
+              reversedIpKeys.add(assembleReversedGrayReleaseRuleKey(
+                  ruleItemDTO.getClientAppId(), ruleCache.getNamespaceName(), clientIp));
+            }
+          }
+          for (String label : ruleItemDTO.getClientLabelList()) {
+            reversedLabelKeys.add(assembleReversedGrayReleaseRuleKey(
+                ruleItemDTO.getClientAppId(), ruleCache.getNamespaceName(), label));
+          }
         }
       }
-    }
-    grayReleaseRuleCache.put(key, ruleCache);
-  }
-
-  private void removeCache(String key, GrayReleaseRuleCache ruleCache) {
-    grayReleaseRuleCache.remove(key, ruleCache);
-    for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-      for (String clientIp : ruleItemDTO.getClientIpList()) {
-        reversedGrayReleaseRuleCache
-            .remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO.getClientAppId(),
-                ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
+      if (hasActiveRule) {
+        activeRules.put(entry.getKey(), rules.build());
       }
-      for (String label : ruleItemDTO.getClientLabelList()) {
-        reversedGrayReleaseRuleLabelCache
-            .remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO.getClientAppId(),
-                ruleCache.getNamespaceName(), label), ruleCache.getRuleId());
+    }
+    // a cidr block is compiled into one trie per clientAppId+clientNamespace, instead of being
+    // expanded into all the ips it covers
+    ImmutableMap.Builder<String, IpPrefixTrie> reversedIpRanges = ImmutableMap.builder();
+    for (Map.Entry<String, Collection<String>> entry : reversedCidrs.asMap().entrySet()) {
+      IpPrefixTrie ipRanges = IpPrefixTrie.compile(entry.getValue());
+      if (!ipRanges.isEmpty()) {
+        reversedIpRanges.put(entry.getKey(), ipRanges);
       }
     }
+    grayReleaseRules = new GrayReleaseRules(activeRules.build(),
+        ImmutableSet.copyOf(reversedIpKeys), reversedIpRanges.build(),
+        ImmutableSet.copyOf(reversedLabelKeys));
   }
 
   private GrayReleaseRuleCache transformRuleToRuleCache(GrayReleaseRule grayReleaseRule) {
@@ -300,14 +386,47 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return TimeUnit.SECONDS;
   }
 
+  /**
+   * Keys are lower-cased so that the hash based index is case insensitive as before
+   */
   private String assembleGrayReleaseRuleKey(String configAppId, String configCluster,
       String configNamespaceName) {
-    return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
+    return STRING_JOINER.join(configAppId, configCluster, configNamespaceName)
+        .toLowerCase(Locale.ROOT);
   }
 
   private String assembleReversedGrayReleaseRuleKey(String clientAppId, String clientNamespaceName,
       String clientIpOrLabel) {
-    return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIpOrLabel);
+    return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIpOrLabel)
+        .toLowerCase(Locale.ROOT);
+  }
+
+  private String assembleReversedGrayReleaseRuleKey(String clientAppId,
+      String clientNamespaceName) {
+    return STRING_JOINER.join(clientAppId, clientNamespaceName).toLowerCase(Locale.ROOT);
   }
 
+  private static class GrayReleaseRules {
+    private static final GrayReleaseRules EMPTY =
+        new GrayReleaseRules(ImmutableMap.of(), ImmutableSet.of(), ImmutableMap.of(),
+            ImmutableSet.of());
+
+    // configAppId+configCluster+configNamespace -> active rules
+    private final Map<String, List<GrayReleaseRuleCache>> activeRules;
+    // clientAppId+clientNamespace+ip
+    private final Set<String> reversedIpKeys;
+    // clientAppId+clientNamespace -> cidr blocks
+    private final Map<String, IpPrefixTrie> reversedIpRanges;
+    // clientAppId+clientNamespace+label
+    private final Set<String> reversedLabelKeys;
+
+    private GrayReleaseRules(Map<String, List<GrayReleaseRuleCache>> activeRules,
+        Set<String> reversedIpKeys, Map<String, IpPrefixTrie> reversedIpRanges,
+        Set<String> reversedLabelKeys) {
+      this.activeRules = activeRules;
+      this.reversedIpKeys = reversedIpKeys;
+      this.reversedIpRanges = reversedIpRanges;
+      this.reversedLabelKeys = reversedLabelKeys;
+    }
+  }
 }
@@ -27,6 +27,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import jakarta.annotation.PostConstruct;
 import java.util.List;
@@ -49,12 +51,15 @@ public class DatabaseMessageSender implements MessageSender {
   private final AtomicBoolean cleanStopped;
 
   private final ReleaseMessageRepository releaseMessageRepository;
+  private final ReleaseMessagePusher releaseMessagePusher;
 
-  public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository) {
+  public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository,
+      final ReleaseMessagePusher releaseMessagePusher) {
     cleanExecutorService = Executors
         .newSingleThreadExecutor(ApolloThreadFactory.create("DatabaseMessageSender", true));
     cleanStopped = new AtomicBoolean(false);
     this.releaseMessageRepository = releaseMessageRepository;
+    this.releaseMessagePusher = releaseMessagePusher;
   }
 
   @Override
@@ -73,6 +78,7 @@ public class DatabaseMessageSender implements MessageSender {
       if (!toClean.offer(newMessage.getId())) {
         logger.warn("Queue is full, Failed to add message {} to clean queue", newMessage.getId());
       }
+      pushAfterCommit(newMessage);
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
@@ -83,6 +89,22 @@ public class DatabaseMessageSender implements MessageSender {
     }
   }
 
+  /**
+   * The config services would not see the message until the transaction is committed
+   */
+  private void pushAfterCommit(ReleaseMessage releaseMessage) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      releaseMessagePusher.push(releaseMessage);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        releaseMessagePusher.push(releaseMessage);
+      }
+    });
+  }
+
   @PostConstruct
   private void initialize() {
     cleanExecutorService.submit(() -> {
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.entity.ServiceRegistry;
+import com.ctrip.framework.apollo.biz.service.ServiceRegistryService;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pushes the release message id to the config services registered in the database service
+ * registry, the config services then scan the new messages immediately.
+ * <p>
+ * Only the id is pushed, so a config service never trusts the content of a push and a lost push
+ * costs nothing but the delay. The push is authenticated with the first admin service access
+ * token, which the config services share through the database.
+ * </p>
+ */
+@Component
+public class HttpReleaseMessagePusher implements ReleaseMessagePusher {
+  private static final Logger logger = LoggerFactory.getLogger(HttpReleaseMessagePusher.class);
+  static final String PUSH_PATH = "/release-messages/push";
+  // same as the default health check interval of the database service discovery
+  private static final long INSTANCE_HEALTH_CHECK_INTERVAL_IN_SECOND = 61;
+  private static final Duration PUSH_TIMEOUT = Duration.ofSeconds(1);
+
+  private final BizConfig bizConfig;
+  private final ObjectProvider<ServiceRegistryService> serviceRegistryServiceProvider;
+  private final ExecutorService executorService;
+  private final HttpClient httpClient;
+
+  public HttpReleaseMessagePusher(final BizConfig bizConfig,
+      final ObjectProvider<ServiceRegistryService> serviceRegistryServiceProvider) {
+    this.bizConfig = bizConfig;
+    this.serviceRegistryServiceProvider = serviceRegistryServiceProvider;
+    this.executorService = Executors
+        .newSingleThreadExecutor(ApolloThreadFactory.create("HttpReleaseMessagePusher", true));
+    this.httpClient = HttpClient.newBuilder().connectTimeout(PUSH_TIMEOUT)
+        .executor(executorService).build();
+  }
+
+  @Override
+  public void push(ReleaseMessage releaseMessage) {
+    if (!bizConfig.isReleaseMessagePushEnabled()) {
+      return;
+    }
+    ServiceRegistryService serviceRegistryService =
+        serviceRegistryServiceProvider.getIfAvailable();
+    if (serviceRegistryService == null) {
+      logger.warn("Release message push is enabled, but the database service registry is not");
+      return;
+    }
+    List<String> accessTokens = bizConfig.adminServiceAccessTokenList();
+    if (accessTokens.isEmpty()) {
+      logger.warn("Release message push is enabled, but admin-service.access.tokens is not");
+      return;
+    }
+    executorService.execute(() -> {
+      try {
+        pushToConfigServices(serviceRegistryService, releaseMessage.getId(), accessTokens.get(0));
+      } catch (Throwable ex) {
+        logger.warn("Push release message {} failed", releaseMessage.getId(), ex);
+        Tracer.logError(ex);
+      }
+    });
+  }
+
+  private void pushToConfigServices(ServiceRegistryService serviceRegistryService, long id,
+      String accessToken) {
+    List<ServiceRegistry> configServices =
+        serviceRegistryService.findByServiceNameDataChangeLastModifiedTimeGreaterThan(
+            ServiceNameConsts.APOLLO_CONFIGSERVICE,
+            LocalDateTime.now().minusSeconds(INSTANCE_HEALTH_CHECK_INTERVAL_IN_SECOND));
+    for (ServiceRegistry configService : configServices) {
+      URI uri = assemblePushUri(configService.getUri(), id);
+      HttpRequest request = HttpRequest.newBuilder(uri).timeout(PUSH_TIMEOUT)
+          .header(HttpHeaders.AUTHORIZATION, accessToken)
+          .POST(HttpRequest.BodyPublishers.noBody()).build();
+      httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .whenComplete((response, ex) -> {
+            if (ex != null) {
+              logger.warn("Push release message {} to {} failed", id, configService.getUri(), ex);
+            } else if (response.statusCode() != 200) {
+              logger.warn("Push release message {} to {} failed, status code: {}", id,
+                  configService.getUri(), response.statusCode());
+            } else {
+              Tracer.logEvent("Apollo.ReleaseMessage.Push", configService.getUri());
+            }
+          });
+    }
+  }
+
+  static URI assemblePushUri(String serviceUri, long id) {
+    String baseUri =
+        serviceUri.endsWith("/") ? serviceUri.substring(0, serviceUri.length() - 1) : serviceUri;
+    return URI.create(baseUri + PUSH_PATH + "?id=" + id);
+  }
+}
@@ -17,10 +17,47 @@
 package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public interface ReleaseMessageListener {
   void handleMessage(ReleaseMessage message, String channel);
+
+  /**
+   * Handle the messages in order, listeners which could handle several messages at once, e.g. with
+   * one database query, should override this method.
+   * <p>
+   * An exception thrown skips the rest of the messages for this listener, so listeners should
+   * handle the errors of each message themselves.
+   * </p>
+   *
+   * @param messages the messages ordered as scanned
+   * @param channel the channel of the messages
+   */
+  default void handleMessages(List<ReleaseMessage> messages, String channel) {
+    for (ReleaseMessage message : messages) {
+      handleMessage(message, channel);
+    }
+  }
+
+  /**
+   * @param messages the messages ordered as scanned
+   * @return the latest message of each distinct content, for the listeners which only load the
+   * latest state of a key
+   */
+  static Collection<ReleaseMessage> latestOfEachMessage(List<ReleaseMessage> messages) {
+    Map<String, ReleaseMessage> latestMessages = Maps.newLinkedHashMap();
+    for (ReleaseMessage message : messages) {
+      ReleaseMessage latestMessage = latestMessages.get(message.getMessage());
+      if (latestMessage == null || latestMessage.getId() < message.getId()) {
+        latestMessages.put(message.getMessage(), message);
+      }
+    }
+    return latestMessages.values();
+  }
 }
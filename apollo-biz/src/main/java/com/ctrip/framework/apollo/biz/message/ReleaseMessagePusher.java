@@ -0,0 +1,39 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * Pushes the saved release messages to the config services, so that they don't need to wait for
+ * the next database scan.
+ * <p>
+ * The push is best effort, the config services still scan the database to pick up the messages
+ * whose push is lost.
+ * </p>
+ *
+ * @see ReleaseMessageScanner#onMessagePushed(long)
+ */
+public interface ReleaseMessagePusher {
+
+  /**
+   * Push the release message, should not block the caller
+   *
+   * @param releaseMessage the committed release message
+   */
+  void push(ReleaseMessage releaseMessage);
+}
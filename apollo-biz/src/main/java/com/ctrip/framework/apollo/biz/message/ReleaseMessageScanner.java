@@ -16,19 +16,36 @@
  */
 package com.ctrip.framework.apollo.biz.message;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
@@ -40,34 +57,68 @@ import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.collect.Lists;
 
 /**
+ * Scans the release messages and dispatches them to the listeners.
+ * <p>
+ * Each listener has its own bounded queue and worker, so a slow listener doesn't delay the others.
+ * Listeners of a later stage receive a message only after all the listeners of the earlier stages
+ * handled it, e.g. the caches are refreshed before the clients are notified. When the queue of a
+ * listener is full, the dispatch blocks until the listener catches up.
+ * </p>
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
-public class ReleaseMessageScanner implements InitializingBean {
+public class ReleaseMessageScanner implements InitializingBean, DisposableBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
   private static final int missingReleaseMessageMaxAge = 10; // hardcoded to 10, could be configured
                                                              // via BizConfig if necessary
+  private static final int DEFAULT_STAGE = 0;
+  private static final int LISTENER_BATCH_SIZE = 500;
+  private static final long SHUTDOWN_TIMEOUT_IN_SECONDS = 5;
   private final BizConfig bizConfig;
   private final ReleaseMessageRepository releaseMessageRepository;
+  private final MeterRegistry meterRegistry;
   private int databaseScanInterval;
   private final List<ReleaseMessageListener> listeners;
+  private final TreeMap<Integer, List<ListenerDispatcher>> stageDispatchers;
+  // the dispatchers grouped by stage in order, replaced as a whole when a listener is added
+  private volatile List<List<ListenerDispatcher>> stages;
+  // guards the countdown of the messages and the hand-off queue
+  private final Object stageLock = new Object();
+  // the messages handled by all the listeners of their stage, in the order of being handled
+  private final Queue<DispatchedMessage> handOffQueue = new ArrayDeque<>();
+  // only one thread hands off the messages, so that they enter the next stage in order
+  private final ReentrantLock handOffLock = new ReentrantLock();
   private final ScheduledExecutorService executorService;
+  private final ExecutorService listenerExecutorService;
   private final Map<Long, Integer> missingReleaseMessages; // missing release message id => age
                                                            // counter
   private long maxIdScanned;
+  private final AtomicLong maxIdPushed = new AtomicLong();
+  // at most one scan is queued for the pushes, however many arrive
+  private final AtomicBoolean pushedScanPending = new AtomicBoolean();
 
   public ReleaseMessageScanner(final BizConfig bizConfig,
-      final ReleaseMessageRepository releaseMessageRepository) {
+      final ReleaseMessageRepository releaseMessageRepository,
+      final MeterRegistry meterRegistry) {
     this.bizConfig = bizConfig;
     this.releaseMessageRepository = releaseMessageRepository;
+    this.meterRegistry = meterRegistry;
     listeners = Lists.newCopyOnWriteArrayList();
+    stageDispatchers = new TreeMap<>();
+    stages = Collections.emptyList();
     executorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("ReleaseMessageScanner", true));
+    listenerExecutorService = Executors.newCachedThreadPool(
+        ApolloThreadFactory.create("ReleaseMessageListener", true));
     missingReleaseMessages = Maps.newHashMap();
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
+    // when push is enabled, scanning database is only a safety net for the lost pushes
+    databaseScanInterval = bizConfig.isReleaseMessagePushEnabled()
+        ? bizConfig.releaseMessagePushScanIntervalInMilli()
+        : bizConfig.releaseMessageScanIntervalInMilli();
     maxIdScanned = loadLargestMessageId();
     executorService.scheduleWithFixedDelay(() -> {
       Transaction transaction =
@@ -86,14 +137,85 @@ public class ReleaseMessageScanner implements InitializingBean {
 
   }
 
+  @Override
+  public void destroy() throws Exception {
+    // stop scanning first, so that no more messages are dispatched to the listeners
+    executorService.shutdown();
+    awaitTermination(executorService, "scan");
+    // the listener workers wait for the messages until interrupted
+    listenerExecutorService.shutdownNow();
+    awaitTermination(listenerExecutorService, "listener");
+  }
+
+  private void awaitTermination(ExecutorService executor, String name)
+      throws InterruptedException {
+    if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+      logger.warn("Timed out waiting for the release message {} threads to stop", name);
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * add message listeners for release message
    * @param listener
    */
   public void addMessageListener(ReleaseMessageListener listener) {
-    if (!listeners.contains(listener)) {
-      listeners.add(listener);
+    addMessageListener(listener, DEFAULT_STAGE);
+  }
+
+  /**
+   * add message listeners for release message, the listener receives a message after all the
+   * listeners of the earlier stages handled it
+   *
+   * @param listener the listener
+   * @param stage the stage of the listener, the smaller the earlier
+   */
+  public synchronized void addMessageListener(ReleaseMessageListener listener, int stage) {
+    if (listeners.contains(listener)) {
+      return;
     }
+    listeners.add(listener);
+    ListenerDispatcher dispatcher = new ListenerDispatcher(listener);
+    stageDispatchers.computeIfAbsent(stage, key -> Lists.newArrayList()).add(dispatcher);
+
+    List<List<ListenerDispatcher>> newStages = Lists.newArrayList();
+    for (List<ListenerDispatcher> dispatchers : stageDispatchers.values()) {
+      newStages.add(Collections.unmodifiableList(new ArrayList<>(dispatchers)));
+    }
+    stages = Collections.unmodifiableList(newStages);
+    listenerExecutorService.execute(dispatcher::dispatchMessages);
+  }
+
+  /**
+   * Scan messages immediately as a new release message is pushed, the scan runs in the same
+   * thread as the scheduled scan, and the pushes arriving before it starts share it
+   *
+   * @param id the id of the pushed release message
+   */
+  public void onMessagePushed(long id) {
+    maxIdPushed.accumulateAndGet(id, Math::max);
+    if (!pushedScanPending.compareAndSet(false, true)) {
+      return;
+    }
+    executorService.execute(() -> {
+      // the pushes arriving from now on queue another scan, as this one might miss them
+      pushedScanPending.set(false);
+      // the messages may have been scanned by a previous push or scheduled scan
+      if (maxIdPushed.get() <= maxIdScanned) {
+        return;
+      }
+      Transaction transaction =
+          Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanPushedMessage");
+      try {
+        scanMessages();
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        logger.error("Scan pushed message {} failed", maxIdPushed.get(), ex);
+      } finally {
+        transaction.complete();
+      }
+    });
   }
 
   /**
@@ -178,15 +300,146 @@ public class ReleaseMessageScanner implements InitializingBean {
    * @param messages
    */
   private void fireMessageScanned(Iterable<ReleaseMessage> messages) {
+    List<List<ListenerDispatcher>> currentStages = stages;
+    if (currentStages.isEmpty()) {
+      return;
+    }
+    long scannedTimeInNanos = System.nanoTime();
     for (ReleaseMessage message : messages) {
-      for (ReleaseMessageListener listener : listeners) {
+      enterStage(new DispatchedMessage(message, scannedTimeInNanos, currentStages), 0);
+    }
+  }
+
+  private void enterStage(DispatchedMessage dispatchedMessage, int stage) {
+    List<ListenerDispatcher> dispatchers = dispatchedMessage.stages.get(stage);
+    dispatchedMessage.stage = stage;
+    dispatchedMessage.remainingListeners = dispatchers.size();
+    for (ListenerDispatcher dispatcher : dispatchers) {
+      dispatcher.enqueue(dispatchedMessage);
+    }
+  }
+
+  private void onMessagesHandled(List<DispatchedMessage> dispatchedMessages) {
+    synchronized (stageLock) {
+      for (DispatchedMessage dispatchedMessage : dispatchedMessages) {
+        if (--dispatchedMessage.remainingListeners == 0
+            && dispatchedMessage.stage + 1 < dispatchedMessage.stages.size()) {
+          handOffQueue.add(dispatchedMessage);
+        }
+      }
+    }
+    handOff();
+  }
+
+  /**
+   * Move the messages in the hand-off queue to their next stage. The thread holding the hand-off
+   * lock may block on a full listener queue, the other threads just leave their messages to it,
+   * so the workers never wait for each other.
+   */
+  private void handOff() {
+    while (handOffLock.tryLock()) {
+      try {
+        DispatchedMessage dispatchedMessage;
+        while ((dispatchedMessage = pollHandOffQueue()) != null) {
+          enterStage(dispatchedMessage, dispatchedMessage.stage + 1);
+        }
+      } finally {
+        handOffLock.unlock();
+      }
+      // some messages might be added after the last poll but before the unlock
+      synchronized (stageLock) {
+        if (handOffQueue.isEmpty()) {
+          return;
+        }
+      }
+    }
+  }
+
+  private DispatchedMessage pollHandOffQueue() {
+    synchronized (stageLock) {
+      return handOffQueue.poll();
+    }
+  }
+
+  private class ListenerDispatcher {
+    private final ReleaseMessageListener listener;
+    private final BlockingQueue<DispatchedMessage> queue;
+    private final Timer lagTimer;
+
+    private ListenerDispatcher(ReleaseMessageListener listener) {
+      this.listener = listener;
+      this.queue = new LinkedBlockingQueue<>(bizConfig.releaseMessageListenerQueueSize());
+      Class<?> listenerClass = ClassUtils.getUserClass(listener);
+      String listenerName = Strings.isNullOrEmpty(listenerClass.getSimpleName())
+          ? listenerClass.getName() : listenerClass.getSimpleName();
+      Gauge.builder("release_message_listener.queue.size", queue, BlockingQueue::size)
+          .description("The number of release messages waiting to be handled by the listener")
+          .tag("listener", listenerName).register(meterRegistry);
+      this.lagTimer = Timer.builder("release_message_listener.lag")
+          .description("The time from scanning a release message to the listener handling it")
+          .tag("listener", listenerName).register(meterRegistry);
+    }
+
+    private void enqueue(DispatchedMessage dispatchedMessage) {
+      try {
+        queue.put(dispatchedMessage);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void dispatchMessages() {
+      List<DispatchedMessage> dispatchedMessages = new ArrayList<>(LISTENER_BATCH_SIZE);
+      List<ReleaseMessage> messages = new ArrayList<>(LISTENER_BATCH_SIZE);
+      while (!Thread.currentThread().isInterrupted()) {
         try {
-          listener.handleMessage(message, Topics.APOLLO_RELEASE_TOPIC);
+          dispatchedMessages.add(queue.take());
+          queue.drainTo(dispatchedMessages, LISTENER_BATCH_SIZE - 1);
+          for (DispatchedMessage dispatchedMessage : dispatchedMessages) {
+            messages.add(dispatchedMessage.message);
+          }
+          handleMessages(messages);
+          long now = System.nanoTime();
+          for (DispatchedMessage dispatchedMessage : dispatchedMessages) {
+            lagTimer.record(now - dispatchedMessage.scannedTimeInNanos, TimeUnit.NANOSECONDS);
+          }
+          onMessagesHandled(dispatchedMessages);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
         } catch (Throwable ex) {
           Tracer.logError(ex);
-          logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
+          logger.error("Failed to dispatch messages to listener {}", listener.getClass(), ex);
+        } finally {
+          dispatchedMessages.clear();
+          messages.clear();
         }
       }
     }
+
+    private void handleMessages(List<ReleaseMessage> messages) {
+      try {
+        listener.handleMessages(messages, Topics.APOLLO_RELEASE_TOPIC);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
+      }
+    }
+  }
+
+  private static class DispatchedMessage {
+    private final ReleaseMessage message;
+    private final long scannedTimeInNanos;
+    // the stages when the message is scanned, so that adding listeners won't affect it
+    private final List<List<ListenerDispatcher>> stages;
+    // set before the message enters a stage, then counted down with stageLock held
+    private int stage;
+    private int remainingListeners;
+
+    private DispatchedMessage(ReleaseMessage message, long scannedTimeInNanos,
+        List<List<ListenerDispatcher>> stages) {
+      this.message = message;
+      this.scannedTimeInNanos = scannedTimeInNanos;
+      this.stages = stages;
+    }
   }
 }
@@ -62,6 +62,26 @@ public class ApolloServiceRegistryHeartbeatApplicationRunner implements Applicat
         this.registration.getHeartbeatIntervalInSecond(), TimeUnit.SECONDS);
   }
 
+  /**
+   * stop heartbeat and remove self, so that this instance won't be discovered any more.
+   */
+  public void deregister() {
+    this.heartbeatScheduledExecutorService.shutdown();
+    try {
+      // wait for the heartbeat in progress, otherwise it may register self again
+      this.heartbeatScheduledExecutorService.awaitTermination(1, TimeUnit.SECONDS);
+      this.serviceRegistry.deregister(this.registration);
+      log.info("deregister success, '{}' uri '{}', cluster '{}'",
+          this.registration.getServiceName(), this.registration.getUri(),
+          this.registration.getCluster());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      log.error("deregister fail, '{}' uri '{}',  cluster '{}'", this.registration.getServiceName(),
+          this.registration.getUri(), this.registration.getCluster(), t);
+    }
+  }
+
   private void heartbeat() {
     try {
       this.serviceRegistry.register(this.registration);
@@ -22,6 +22,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
@@ -42,6 +43,19 @@ public interface AppNamespaceRepository extends JpaRepository<AppNamespace, Long
 
   List<AppNamespace> findFirst500ByIdGreaterThanOrderByIdAsc(long id);
 
+  /**
+   * Find the app namespaces changed before endTime and after the (startTime, startId) position,
+   * ordered by the change time and id. The deleted ones are included as soft deletes also change
+   * the time, so it's a native query to bypass the IsDeleted restriction. The identifiers are not
+   * quoted, the same as in the queries generated by hibernate, so it runs on all the supported
+   * databases.
+   */
+  @Query(value = "SELECT * FROM AppNamespace WHERE DataChange_LastTime < ?3 "
+      + "AND (DataChange_LastTime > ?1 OR (DataChange_LastTime = ?1 AND Id > ?2)) "
+      + "ORDER BY DataChange_LastTime ASC, Id ASC LIMIT 500", nativeQuery = true)
+  List<AppNamespace> findFirst500ChangedIncludingDeleted(Date startTime, long startId,
+      Date endTime);
+
   @Modifying
   @Query("UPDATE AppNamespace SET isDeleted = true, "
       + "deletedAt = :#{T(java.lang.System).currentTimeMillis()}, "
@@ -20,6 +20,7 @@ import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -33,4 +34,7 @@ public interface GrayReleaseRuleRepository extends JpaRepository<GrayReleaseRule
 
   List<GrayReleaseRule> findFirst500ByIdGreaterThanOrderByIdAsc(Long id);
 
+  List<GrayReleaseRule> findByAppIdInAndClusterNameInAndNamespaceNameIn(Collection<String> appIds,
+      Collection<String> clusterNames, Collection<String> namespaceNames);
+
 }
@@ -34,6 +34,9 @@ public interface InstanceConfigRepository extends JpaRepository<InstanceConfig,
   InstanceConfig findByInstanceIdAndConfigAppIdAndConfigNamespaceName(long instanceId,
       String configAppId, String configNamespaceName);
 
+  List<InstanceConfig> findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(String configAppId,
+      String configNamespaceName, Set<Long> instanceIds);
+
   Page<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfter(String releaseKey,
       Date validDate, Pageable pageable);
 
@@ -20,7 +20,13 @@ import com.ctrip.framework.apollo.biz.entity.Instance;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+import java.util.Set;
+
 public interface InstanceRepository extends JpaRepository<Instance, Long> {
   Instance findByAppIdAndClusterNameAndDataCenterAndIp(String appId, String clusterName,
       String dataCenter, String ip);
+
+  List<Instance> findByAppIdAndClusterNameAndDataCenterAndIpIn(String appId, String clusterName,
+      String dataCenter, Set<String> ips);
 }
@@ -22,7 +22,9 @@ import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
 import com.ctrip.framework.apollo.biz.repository.InstanceRepository;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -56,6 +58,16 @@ public class InstanceService {
         dataCenter, ip);
   }
 
+  public List<Instance> findInstances(String appId, String clusterName, String dataCenter,
+      Set<String> ips) {
+    List<Instance> instances = instanceRepository
+        .findByAppIdAndClusterNameAndDataCenterAndIpIn(appId, clusterName, dataCenter, ips);
+    if (CollectionUtils.isEmpty(instances)) {
+      return Collections.emptyList();
+    }
+    return instances;
+  }
+
   public List<Instance> findInstancesByIds(Set<Long> instanceIds) {
     Iterable<Instance> instances = instanceRepository.findAllById(instanceIds);
     return Lists.newArrayList(instances);
@@ -74,6 +86,17 @@ public class InstanceService {
         configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigs(String configAppId, String configNamespaceName,
+      Set<Long> instanceIds) {
+    List<InstanceConfig> instanceConfigs = instanceConfigRepository
+        .findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(configAppId, configNamespaceName,
+            instanceIds);
+    if (CollectionUtils.isEmpty(instanceConfigs)) {
+      return Collections.emptyList();
+    }
+    return instanceConfigs;
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey,
       Pageable pageable) {
     return instanceConfigRepository.findByReleaseKeyAndDataChangeLastModifiedTimeAfter(releaseKey,
@@ -159,6 +182,36 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  /**
+   * Create and update the instance configs in one transaction, so that the statements could be sent
+   * in jdbc batches. The instance configs to update are matched by id, the ones not existing any
+   * more are ignored.
+   */
+  @Transactional
+  public void batchSaveInstanceConfigs(List<InstanceConfig> instanceConfigsToCreate,
+      List<InstanceConfig> instanceConfigsToUpdate) {
+    for (InstanceConfig instanceConfig : instanceConfigsToCreate) {
+      instanceConfig.setId(0); // protection
+    }
+    instanceConfigRepository.saveAll(instanceConfigsToCreate);
+
+    if (instanceConfigsToUpdate.isEmpty()) {
+      return;
+    }
+    Map<Long, InstanceConfig> instanceConfigsById = instanceConfigsToUpdate.stream().collect(
+        Collectors.toMap(InstanceConfig::getId, Function.identity(), (first, second) -> second));
+    // the managed entities are flushed when the transaction commits
+    for (InstanceConfig existedInstanceConfig : instanceConfigRepository
+        .findAllById(instanceConfigsById.keySet())) {
+      InstanceConfig instanceConfig = instanceConfigsById.get(existedInstanceConfig.getId());
+      existedInstanceConfig.setConfigClusterName(instanceConfig.getConfigClusterName());
+      existedInstanceConfig.setReleaseKey(instanceConfig.getReleaseKey());
+      existedInstanceConfig.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+      existedInstanceConfig
+          .setDataChangeLastModifiedTime(instanceConfig.getDataChangeLastModifiedTime());
+    }
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName,
       String configNamespaceName) {
@@ -44,7 +44,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -174,6 +179,131 @@ public class GrayReleaseRulesHolderTest {
         anotherClientLabel, anotherNamespaceName));
   }
 
+  @Test
+  public void testInactiveGrayReleaseRule() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    Long someReleaseId = 1L;
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId,
+            Sets.newHashSet(someClientIp), Sets.newHashSet())),
+        someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someClientIp, null, someAppId, someClusterName, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp, null,
+        someNamespaceName));
+
+    // the branch is merged
+    GrayReleaseRule mergedRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId,
+            Sets.newHashSet(someClientIp), Sets.newHashSet())),
+        someReleaseId, NamespaceBranchStatus.MERGED);
+
+    when(grayReleaseRuleRepository.findByAppIdAndClusterNameAndNamespaceName(someAppId,
+        someClusterName, someNamespaceName)).thenReturn(Lists.newArrayList(mergedRule));
+
+    grayReleaseRulesHolder.handleMessage(
+        assembleReleaseMessage(someAppId, someClusterName, someNamespaceName),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, null, someAppId, someClusterName, someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp, null,
+        someNamespaceName));
+  }
+
+  @Test
+  public void testGrayReleaseRuleWithCidr() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    Long someReleaseId = 1L;
+    String someClientAppId = "clientAppId1";
+    String someExactIp = "1.1.1.1";
+    String someCidr = "10.32.0.0/16";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId,
+            Sets.newHashSet(someExactIp, someCidr), Sets.newHashSet())),
+        someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, "10.32.1.1", null, someAppId, someClusterName, someNamespaceName));
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someExactIp, null, someAppId, someClusterName, someNamespaceName));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        "10.33.1.1", null, someAppId, someClusterName, someNamespaceName));
+
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "10.32.1.1", null,
+        someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId.toUpperCase(),
+        "10.32.255.255", null, someNamespaceName.toUpperCase()));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someExactIp, null,
+        someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "10.33.1.1", null,
+        someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule("anotherClientAppId", "10.32.1.1",
+        null, someNamespaceName));
+  }
+
+  @Test
+  public void testHandleMessagesWithOneQuery() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String anotherNamespaceName = "anotherNamespaceName";
+    Long someReleaseId = 1L;
+    Long anotherReleaseId = 2L;
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId,
+            Sets.newHashSet(someClientIp), Sets.newHashSet())),
+        someReleaseId, NamespaceBranchStatus.ACTIVE);
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        anotherNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId,
+            Sets.newHashSet(someClientIp), Sets.newHashSet())),
+        anotherReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(grayReleaseRuleRepository.findByAppIdInAndClusterNameInAndNamespaceNameIn(
+        Sets.newHashSet(someAppId), Sets.newHashSet(someClusterName),
+        Sets.newHashSet(someNamespaceName, anotherNamespaceName)))
+        .thenReturn(Lists.newArrayList(someRule, anotherRule));
+
+    grayReleaseRulesHolder.handleMessages(Lists.newArrayList(
+        assembleReleaseMessage(someAppId, someClusterName, someNamespaceName),
+        assembleReleaseMessage(someAppId, someClusterName, anotherNamespaceName),
+        assembleReleaseMessage(someAppId, someClusterName, someNamespaceName)),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someClientIp, null, someAppId, someClusterName, someNamespaceName));
+    assertEquals(anotherReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someClientIp, null, someAppId, someClusterName, anotherNamespaceName));
+    verify(grayReleaseRuleRepository, times(1)).findByAppIdInAndClusterNameInAndNamespaceNameIn(
+        anyCollection(), anyCollection(), anyCollection());
+    verify(grayReleaseRuleRepository, never()).findByAppIdAndClusterNameAndNamespaceName(
+        anyString(), anyString(), anyString());
+  }
+
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName,
       String namespaceName, List<GrayReleaseRuleItemDTO> ruleItems, long releaseId,
       int branchStatus) {
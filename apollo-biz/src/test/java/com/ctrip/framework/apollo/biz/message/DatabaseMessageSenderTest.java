@@ -34,10 +34,12 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest {
   private DatabaseMessageSender messageSender;
   @Mock
   private ReleaseMessageRepository releaseMessageRepository;
+  @Mock
+  private ReleaseMessagePusher releaseMessagePusher;
 
   @Before
   public void setUp() throws Exception {
-    messageSender = new DatabaseMessageSender(releaseMessageRepository);
+    messageSender = new DatabaseMessageSender(releaseMessageRepository, releaseMessagePusher);
   }
 
   @Test
@@ -54,6 +56,7 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest {
 
     verify(releaseMessageRepository, times(1)).save(captor.capture());
     assertEquals(someMessage, captor.getValue().getMessage());
+    verify(releaseMessagePusher, times(1)).push(someReleaseMessage);
   }
 
   @Test
@@ -64,6 +67,7 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest {
     messageSender.sendMessage(someMessage, someUnsupportedTopic);
 
     verify(releaseMessageRepository, never()).save(any(ReleaseMessage.class));
+    verify(releaseMessagePusher, never()).push(any(ReleaseMessage.class));
   }
 
   @Test(expected = RuntimeException.class)
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.message;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.entity.ServiceRegistry;
+import com.ctrip.framework.apollo.biz.service.ServiceRegistryService;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.beans.factory.ObjectProvider;
+
+public class HttpReleaseMessagePusherTest extends AbstractUnitTest {
+  private HttpReleaseMessagePusher releaseMessagePusher;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ObjectProvider<ServiceRegistryService> serviceRegistryServiceProvider;
+  @Mock
+  private ServiceRegistryService serviceRegistryService;
+
+  private List<HttpServer> configServices;
+  private List<String> receivedRequests;
+  private List<String> receivedAccessTokens;
+
+  @Before
+  public void setUp() throws Exception {
+    configServices = Lists.newArrayList();
+    receivedRequests = new CopyOnWriteArrayList<>();
+    receivedAccessTokens = new CopyOnWriteArrayList<>();
+    releaseMessagePusher = new HttpReleaseMessagePusher(bizConfig, serviceRegistryServiceProvider);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (HttpServer configService : configServices) {
+      configService.stop(0);
+    }
+  }
+
+  @Test
+  public void testPushToConfigServices() throws Exception {
+    long someId = 1;
+    String someAccessToken = "someAccessToken";
+    ServiceRegistry someConfigService = startConfigService();
+    ServiceRegistry anotherConfigService = startConfigService();
+
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.adminServiceAccessTokenList())
+        .thenReturn(Lists.newArrayList(someAccessToken, "anotherAccessToken"));
+    when(serviceRegistryServiceProvider.getIfAvailable()).thenReturn(serviceRegistryService);
+    when(serviceRegistryService.findByServiceNameDataChangeLastModifiedTimeGreaterThan(
+        eq(ServiceNameConsts.APOLLO_CONFIGSERVICE), any(LocalDateTime.class)))
+        .thenReturn(Lists.newArrayList(someConfigService, anotherConfigService));
+
+    releaseMessagePusher.push(assembleReleaseMessage(someId));
+
+    String expectedRequest = HttpReleaseMessagePusher.PUSH_PATH + "?id=" + someId;
+    await().atMost(5, TimeUnit.SECONDS)
+        .untilAsserted(() -> assertEquals(configServices.size(), receivedRequests.size()));
+    for (String receivedRequest : receivedRequests) {
+      assertEquals(expectedRequest, receivedRequest);
+    }
+    for (String receivedAccessToken : receivedAccessTokens) {
+      assertEquals(someAccessToken, receivedAccessToken);
+    }
+  }
+
+  @Test
+  public void testPushWithoutAccessTokens() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(serviceRegistryServiceProvider.getIfAvailable()).thenReturn(serviceRegistryService);
+    when(bizConfig.adminServiceAccessTokenList()).thenReturn(Collections.emptyList());
+
+    releaseMessagePusher.push(assembleReleaseMessage(1));
+
+    verify(serviceRegistryService, never())
+        .findByServiceNameDataChangeLastModifiedTimeGreaterThan(any(), any());
+  }
+
+  @Test
+  public void testPushDisabled() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(false);
+
+    releaseMessagePusher.push(assembleReleaseMessage(1));
+
+    verify(serviceRegistryServiceProvider, never()).getIfAvailable();
+  }
+
+  @Test
+  public void testAssemblePushUri() throws Exception {
+    long someId = 1;
+    String expectedUri = "http://localhost:8080/release-messages/push?id=1";
+
+    assertEquals(expectedUri,
+        HttpReleaseMessagePusher.assemblePushUri("http://localhost:8080/", someId).toString());
+    assertEquals(expectedUri,
+        HttpReleaseMessagePusher.assemblePushUri("http://localhost:8080", someId).toString());
+  }
+
+  private ServiceRegistry startConfigService() throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(HttpReleaseMessagePusher.PUSH_PATH, exchange -> {
+      receivedRequests.add(exchange.getRequestURI().toString());
+      receivedAccessTokens.add(exchange.getRequestHeaders().getFirst("Authorization"));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.start();
+    configServices.add(server);
+
+    ServiceRegistry serviceRegistry = new ServiceRegistry();
+    serviceRegistry.setServiceName(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    serviceRegistry.setUri("http://localhost:" + server.getAddress().getPort() + "/");
+    return serviceRegistry;
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id) {
+    ReleaseMessage releaseMessage = new ReleaseMessage("someMessage");
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+}
@@ -25,8 +25,13 @@ import com.ctrip.framework.apollo.biz.AbstractUnitTest;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import org.awaitility.Awaitility;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -35,7 +40,11 @@ import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -47,11 +56,14 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
   private ReleaseMessageRepository releaseMessageRepository;
   @Mock
   private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
   private int databaseScanInterval;
 
   @Before
   public void setUp() throws Exception {
-    releaseMessageScanner = new ReleaseMessageScanner(bizConfig, releaseMessageRepository);
+    meterRegistry = new SimpleMeterRegistry();
+    when(bizConfig.releaseMessageListenerQueueSize()).thenReturn(100);
+    releaseMessageScanner = new ReleaseMessageScanner(bizConfig, releaseMessageRepository, meterRegistry);
     databaseScanInterval = 100; // 100 ms
     when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(databaseScanInterval);
     releaseMessageScanner.afterPropertiesSet();
@@ -61,6 +73,11 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     Awaitility.setDefaultPollInterval(databaseScanInterval, TimeUnit.MILLISECONDS);
   }
 
+  @After
+  public void tearDown() throws Exception {
+    releaseMessageScanner.destroy();
+  }
+
   @Test
   public void testScanMessageAndNotifyMessageListener() throws Exception {
     SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
@@ -180,6 +197,160 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     });
   }
 
+  @Test
+  public void testScanMessageOnMessagePushed() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    // long enough that only the push could trigger the scan
+    when(bizConfig.releaseMessagePushScanIntervalInMilli()).thenReturn(60000);
+    ReleaseMessageScanner pushedReleaseMessageScanner =
+        new ReleaseMessageScanner(bizConfig, releaseMessageRepository, meterRegistry);
+    pushedReleaseMessageScanner.afterPropertiesSet();
+
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    ReleaseMessageListener someListener = (message, channel) -> someListenerFuture.set(message);
+    pushedReleaseMessageScanner.addMessageListener(someListener);
+
+    String someMessage = "someMessage";
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, someMessage);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    pushedReleaseMessageScanner.onMessagePushed(someId);
+
+    ReleaseMessage someListenerMessage = someListenerFuture.get(5000, TimeUnit.MILLISECONDS);
+
+    assertSame(someReleaseMessage, someListenerMessage);
+  }
+
+  @Test
+  public void testScanOnceForMessagesPushedDuringScan() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    // long enough that only the push could trigger the scan
+    when(bizConfig.releaseMessagePushScanIntervalInMilli()).thenReturn(60000);
+    ReleaseMessageScanner pushedReleaseMessageScanner =
+        new ReleaseMessageScanner(bizConfig, releaseMessageRepository, meterRegistry);
+    pushedReleaseMessageScanner.afterPropertiesSet();
+
+    long someId = 1;
+    int somePushes = 10;
+    CountDownLatch scanStartedLatch = new CountDownLatch(1);
+    CountDownLatch scanLatch = new CountDownLatch(1);
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenAnswer(invocation -> {
+          scanStartedLatch.countDown();
+          scanLatch.await();
+          return Lists.newArrayList(someReleaseMessage);
+        });
+
+    pushedReleaseMessageScanner.onMessagePushed(someId);
+    scanStartedLatch.await(5000, TimeUnit.MILLISECONDS);
+    for (int i = 1; i <= somePushes; i++) {
+      pushedReleaseMessageScanner.onMessagePushed(someId + i);
+    }
+    scanLatch.countDown();
+
+    // the pushes during the scan share one more scan
+    await().untilAsserted(() -> verify(releaseMessageRepository, times(1))
+        .findFirst500ByIdGreaterThanOrderByIdAsc(someId));
+    TimeUnit.MILLISECONDS.sleep(100);
+    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(someId);
+  }
+
+  @Test
+  public void testSlowListenerNotDelayOtherListeners() throws Exception {
+    CountDownLatch slowListenerLatch = new CountDownLatch(1);
+    ReleaseMessageListener slowListener = (message, channel) -> {
+      try {
+        slowListenerLatch.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    ReleaseMessageListener someListener = (message, channel) -> someListenerFuture.set(message);
+    releaseMessageScanner.addMessageListener(slowListener);
+    releaseMessageScanner.addMessageListener(someListener);
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    try {
+      assertSame(someReleaseMessage, someListenerFuture.get(5000, TimeUnit.MILLISECONDS));
+    } finally {
+      slowListenerLatch.countDown();
+    }
+  }
+
+  @Test
+  public void testDestroy() throws Exception {
+    SettableFuture<Thread> listenerThreadFuture = SettableFuture.create();
+    ReleaseMessageListener someListener =
+        (message, channel) -> listenerThreadFuture.set(Thread.currentThread());
+    releaseMessageScanner.addMessageListener(someListener);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(assembleReleaseMessage(1, "someMessage")));
+
+    Thread listenerThread = listenerThreadFuture.get(5000, TimeUnit.MILLISECONDS);
+
+    releaseMessageScanner.destroy();
+
+    await().untilAsserted(() -> assertFalse(listenerThread.isAlive()));
+  }
+
+  @Test
+  public void testLaterStageListenerAfterEarlierStageListeners() throws Exception {
+    CountDownLatch cacheListenerLatch = new CountDownLatch(1);
+    List<ReleaseMessage> cachedMessages = Lists.newCopyOnWriteArrayList();
+    ReleaseMessageListener cacheListener = new ReleaseMessageListener() {
+      @Override
+      public void handleMessage(ReleaseMessage message, String channel) {
+      }
+
+      @Override
+      public void handleMessages(List<ReleaseMessage> messages, String channel) {
+        try {
+          cacheListenerLatch.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        cachedMessages.addAll(messages);
+      }
+    };
+    List<ReleaseMessage> notifiedMessages = Lists.newCopyOnWriteArrayList();
+    List<Boolean> cachedBeforeNotified = Lists.newCopyOnWriteArrayList();
+    ReleaseMessageListener notificationListener = (message, channel) -> {
+      cachedBeforeNotified.add(cachedMessages.contains(message));
+      notifiedMessages.add(message);
+    };
+    releaseMessageScanner.addMessageListener(notificationListener, 1);
+    releaseMessageScanner.addMessageListener(cacheListener, 0);
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(2, "anotherMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+
+    TimeUnit.MILLISECONDS.sleep(databaseScanInterval * 3);
+    assertTrue(notifiedMessages.isEmpty());
+
+    cacheListenerLatch.countDown();
+
+    await().untilAsserted(() -> {
+      assertEquals(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage),
+          notifiedMessages);
+      assertFalse(cachedBeforeNotified.contains(false));
+    });
+    await().untilAsserted(() -> assertEquals(2,
+        meterRegistry.get("release_message_listener.lag").timers().stream()
+            .mapToLong(Timer::count).min().getAsLong()));
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
@@ -19,16 +19,24 @@ package com.ctrip.framework.apollo.biz.repository;
 import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 
+import jakarta.persistence.EntityManager;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class AppNamespaceRepositoryTest extends AbstractIntegrationTest {
 
   @Autowired
   private AppNamespaceRepository repository;
+  @Autowired
+  private EntityManager entityManager;
 
   @Test
   public void testFindByNameAndIsPublicTrue() throws Exception {
@@ -43,4 +51,46 @@ public class AppNamespaceRepositoryTest extends AbstractIntegrationTest {
 
     assertNull(appNamespace);
   }
+
+  @Test
+  public void testFindFirst500ChangedIncludingDeleted() throws Exception {
+    String someAppId = "someAppIdForChanges";
+    Date startTime = new Date(System.currentTimeMillis() - 1000);
+    AppNamespace someAppNamespace = repository.save(assembleAppNamespace(someAppId, "someName"));
+    AppNamespace anotherAppNamespace =
+        repository.save(assembleAppNamespace(someAppId, "anotherName"));
+    repository.delete(someAppId, "anotherName", "someOperator");
+    entityManager.flush();
+    entityManager.clear();
+
+    List<AppNamespace> changed = repository.findFirst500ChangedIncludingDeleted(startTime, 0,
+        new Date(System.currentTimeMillis() + 1000)).stream()
+        .filter(appNamespace -> someAppId.equals(appNamespace.getAppId()))
+        .collect(Collectors.toList());
+
+    assertEquals(2, changed.size());
+    assertEquals(someAppNamespace.getId(), changed.get(0).getId());
+    assertFalse(changed.get(0).isDeleted());
+    assertEquals(anotherAppNamespace.getId(), changed.get(1).getId());
+    assertTrue(changed.get(1).isDeleted());
+
+    // continue after the first one
+    List<AppNamespace> remaining = repository.findFirst500ChangedIncludingDeleted(
+        changed.get(0).getDataChangeLastModifiedTime(), changed.get(0).getId(),
+        new Date(System.currentTimeMillis() + 1000)).stream()
+        .filter(appNamespace -> someAppId.equals(appNamespace.getAppId()))
+        .collect(Collectors.toList());
+
+    assertTrue(remaining.stream().noneMatch(
+        appNamespace -> appNamespace.getId() == someAppNamespace.getId()));
+  }
+
+  private AppNamespace assembleAppNamespace(String appId, String name) {
+    AppNamespace appNamespace = new AppNamespace();
+    appNamespace.setAppId(appId);
+    appNamespace.setName(name);
+    appNamespace.setFormat("properties");
+    appNamespace.setDataChangeCreatedBy("someOperator");
+    return appNamespace;
+  }
 }
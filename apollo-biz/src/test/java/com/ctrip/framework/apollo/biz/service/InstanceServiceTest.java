@@ -250,6 +250,60 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(Lists.newArrayList(someInstanceConfig, anotherInstanceConfig), instanceConfigs);
   }
 
+  @Test
+  @Rollback
+  public void testFindInstancesByIps() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someDataCenter = "someDataCenter";
+    String someIp = "someIp";
+    String anotherIp = "anotherIp";
+    String yetAnotherIp = "yetAnotherIp";
+
+    instanceService
+        .createInstance(assembleInstance(someAppId, someClusterName, someDataCenter, someIp));
+    instanceService
+        .createInstance(assembleInstance(someAppId, someClusterName, someDataCenter, anotherIp));
+
+    List<Instance> instances = instanceService.findInstances(someAppId, someClusterName,
+        someDataCenter, Sets.newHashSet(someIp, yetAnotherIp));
+
+    assertEquals(1, instances.size());
+    assertEquals(someIp, instances.get(0).getIp());
+  }
+
+  @Test
+  @Rollback
+  public void testBatchSaveAndFindInstanceConfigs() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    InstanceConfig someInstanceConfig = instanceService.createInstanceConfig(
+        assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey));
+    someInstanceConfig.setReleaseKey(anotherReleaseKey);
+
+    instanceService.batchSaveInstanceConfigs(
+        Lists.newArrayList(assembleInstanceConfig(anotherInstanceId, someConfigAppId,
+            someConfigClusterName, someConfigNamespaceName, anotherReleaseKey)),
+        Lists.newArrayList(someInstanceConfig));
+
+    List<InstanceConfig> instanceConfigs = instanceService.findInstanceConfigs(someConfigAppId,
+        someConfigNamespaceName, Sets.newHashSet(someInstanceId, anotherInstanceId));
+
+    assertEquals(2, instanceConfigs.size());
+    assertEquals(Sets.newHashSet(someInstanceId, anotherInstanceId), instanceConfigs.stream()
+        .map(InstanceConfig::getInstanceId).collect(Collectors.toSet()));
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      assertEquals(anotherReleaseKey, instanceConfig.getReleaseKey());
+    }
+  }
+
   private InstanceConfig prepareInstanceConfigForInstance(long instanceId, String configAppId,
       String configClusterName, String configNamespace, String releaseKey, Date lastModifiedTime) {
 
@@ -16,6 +16,7 @@
  */
 package com.ctrip.framework.apollo.common.dto;
 
+import com.ctrip.framework.apollo.common.utils.IpPrefixTrie;
 import com.google.common.collect.Sets;
 
 import java.util.Set;
@@ -32,6 +33,8 @@ public class GrayReleaseRuleItemDTO {
   private String clientAppId;
   private Set<String> clientIpList;
   private Set<String> clientLabelList;
+  // compiled lazily from the CIDR blocks in clientIpList, transient so that it's not serialized
+  private transient volatile IpPrefixTrie clientIpRanges;
 
   // this default constructor is for json deserialize use, to make sure all fields are initialized
   public GrayReleaseRuleItemDTO() {
@@ -71,7 +74,17 @@ public class GrayReleaseRuleItemDTO {
   }
 
   private boolean ipMatches(String clientIp) {
-    return this.clientIpList.contains(ALL_IP) || clientIpList.contains(clientIp);
+    return this.clientIpList.contains(ALL_IP) || clientIpList.contains(clientIp)
+        || getClientIpRanges().contains(clientIp);
+  }
+
+  private IpPrefixTrie getClientIpRanges() {
+    IpPrefixTrie ranges = clientIpRanges;
+    if (ranges == null) {
+      ranges = IpPrefixTrie.compile(clientIpList);
+      clientIpRanges = ranges;
+    }
+    return ranges;
   }
 
   private boolean labelMatches(String clientLabel) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.common.utils;
+
+import com.google.common.base.Strings;
+import com.google.common.net.InetAddresses;
+
+/**
+ * A binary prefix trie compiled from CIDR blocks, e.g. 10.32.0.0/16 or 2001:db8::/32. Whether an
+ * ip is in any of the blocks is checked in at most 32 (IPv4) or 128 (IPv6) bit steps, no matter
+ * how many addresses the blocks cover.
+ *
+ * <p>The trie is immutable once compiled, so it could be shared by threads.
+ */
+public class IpPrefixTrie {
+  private static final char PREFIX_SEPARATOR = '/';
+  private static final IpPrefixTrie EMPTY = new IpPrefixTrie();
+
+  private final Node ipv4Root = new Node();
+  private final Node ipv6Root = new Node();
+  private boolean empty = true;
+
+  private IpPrefixTrie() {
+  }
+
+  /**
+   * Compile the CIDR blocks among the values, the other values like exact ips and malformed blocks
+   * are ignored.
+   */
+  public static IpPrefixTrie compile(Iterable<String> values) {
+    IpPrefixTrie trie = null;
+    for (String value : values) {
+      if (!isCidr(value)) {
+        continue;
+      }
+      if (trie == null) {
+        trie = new IpPrefixTrie();
+      }
+      trie.add(value);
+    }
+    return trie == null ? EMPTY : trie;
+  }
+
+  public static boolean isCidr(String value) {
+    return value != null && value.indexOf(PREFIX_SEPARATOR) > 0;
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  public boolean contains(String ip) {
+    if (empty || Strings.isNullOrEmpty(ip)) {
+      return false;
+    }
+    byte[] address = parseAddress(ip);
+    if (address == null) {
+      return false;
+    }
+    Node node = address.length == 4 ? ipv4Root : ipv6Root;
+    for (int i = 0; ; i++) {
+      if (node.terminal) {
+        return true;
+      }
+      if (i == address.length * 8) {
+        return false;
+      }
+      node = node.children[bit(address, i)];
+      if (node == null) {
+        return false;
+      }
+    }
+  }
+
+  private void add(String cidr) {
+    int separator = cidr.indexOf(PREFIX_SEPARATOR);
+    byte[] address = parseAddress(cidr.substring(0, separator).trim());
+    if (address == null) {
+      return;
+    }
+    int prefixLength;
+    try {
+      prefixLength = Integer.parseInt(cidr.substring(separator + 1).trim());
+    } catch (NumberFormatException ex) {
+      return;
+    }
+    if (prefixLength < 0 || prefixLength > address.length * 8) {
+      return;
+    }
+    Node node = address.length == 4 ? ipv4Root : ipv6Root;
+    // stop early if a shorter block already covers this one
+    for (int i = 0; i < prefixLength && !node.terminal; i++) {
+      int bit = bit(address, i);
+      if (node.children[bit] == null) {
+        node.children[bit] = new Node();
+      }
+      node = node.children[bit];
+    }
+    node.terminal = true;
+    // the longer blocks under this one are covered now
+    node.children[0] = null;
+    node.children[1] = null;
+    empty = false;
+  }
+
+  private static byte[] parseAddress(String ip) {
+    // only ip literals are accepted, so that there won't be any dns lookup
+    try {
+      return InetAddresses.forString(ip).getAddress();
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  private static int bit(byte[] address, int index) {
+    return (address[index >> 3] >> (7 - (index & 7))) & 1;
+  }
+
+  private static class Node {
+    private final Node[] children = new Node[2];
+    private boolean terminal;
+  }
+}
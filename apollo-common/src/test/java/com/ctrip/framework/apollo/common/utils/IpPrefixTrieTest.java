@@ -0,0 +1,83 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.common.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+public class IpPrefixTrieTest {
+
+  @Test
+  public void testContainsIpv4() throws Exception {
+    IpPrefixTrie trie = IpPrefixTrie.compile(Lists.newArrayList("10.32.0.0/16", "192.168.1.1/32"));
+
+    assertTrue(trie.contains("10.32.0.1"));
+    assertTrue(trie.contains("10.32.255.255"));
+    assertTrue(trie.contains("192.168.1.1"));
+    assertFalse(trie.contains("10.33.0.1"));
+    assertFalse(trie.contains("192.168.1.2"));
+    assertFalse(trie.contains("2001:db8::1"));
+  }
+
+  @Test
+  public void testContainsIpv6() throws Exception {
+    IpPrefixTrie trie = IpPrefixTrie.compile(Lists.newArrayList("2001:db8::/32"));
+
+    assertTrue(trie.contains("2001:db8::1"));
+    assertTrue(trie.contains("2001:DB8:ffff::1"));
+    assertFalse(trie.contains("2001:db9::1"));
+    assertFalse(trie.contains("10.32.0.1"));
+  }
+
+  @Test
+  public void testOverlappedBlocks() throws Exception {
+    IpPrefixTrie trie = IpPrefixTrie.compile(Lists.newArrayList("10.32.1.0/24", "10.0.0.0/8"));
+
+    assertTrue(trie.contains("10.32.1.1"));
+    assertTrue(trie.contains("10.1.1.1"));
+    assertFalse(trie.contains("11.1.1.1"));
+  }
+
+  @Test
+  public void testAllAddresses() throws Exception {
+    IpPrefixTrie trie = IpPrefixTrie.compile(Lists.newArrayList("0.0.0.0/0"));
+
+    assertTrue(trie.contains("1.2.3.4"));
+    assertFalse(trie.contains("::1"));
+  }
+
+  @Test
+  public void testIgnoreExactIpsAndMalformedBlocks() throws Exception {
+    IpPrefixTrie trie = IpPrefixTrie.compile(Lists.newArrayList("10.32.0.1", "*",
+        "10.32.0.0/33", "10.32.0.0/abc", "some-host/16", "/16"));
+
+    assertTrue(trie.isEmpty());
+    assertFalse(trie.contains("10.32.0.1"));
+  }
+
+  @Test
+  public void testContainsMalformedIp() throws Exception {
+    IpPrefixTrie trie = IpPrefixTrie.compile(Lists.newArrayList("10.32.0.0/16"));
+
+    assertFalse(trie.contains(null));
+    assertFalse(trie.contains(""));
+    assertFalse(trie.contains("some-host"));
+  }
+}
@@ -26,7 +26,9 @@ import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.configservice.controller.ConfigFileController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV3;
 import com.ctrip.framework.apollo.configservice.filter.ClientAuthenticationFilter;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWithCache;
@@ -45,20 +47,25 @@ import org.springframework.security.crypto.password.NoOpPasswordEncoder;
  */
 @Configuration
 public class ConfigServiceAutoConfiguration {
+  private static final int CACHE_STAGE = 0;
+  private static final int NOTIFICATION_STAGE = 1;
 
   private final BizConfig bizConfig;
   private final ReleaseService releaseService;
   private final ReleaseMessageService releaseMessageService;
+  private final ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
   private final GrayReleaseRuleRepository grayReleaseRuleRepository;
   private final MeterRegistry meterRegistry;
 
   public ConfigServiceAutoConfiguration(final BizConfig bizConfig,
       final ReleaseService releaseService, final ReleaseMessageService releaseMessageService,
+      final ReleaseMessageServiceWithCache releaseMessageServiceWithCache,
       final GrayReleaseRuleRepository grayReleaseRuleRepository,
       final MeterRegistry meterRegistry) {
     this.bizConfig = bizConfig;
     this.releaseService = releaseService;
     this.releaseMessageService = releaseMessageService;
+    this.releaseMessageServiceWithCache = releaseMessageServiceWithCache;
     this.grayReleaseRuleRepository = grayReleaseRuleRepository;
     this.meterRegistry = meterRegistry;
   }
@@ -73,14 +80,15 @@ public class ConfigServiceAutoConfiguration {
     // enable local cache
     if (bizConfig.isConfigServiceCacheEnabled()) {
       return new ConfigServiceWithCache(releaseService, releaseMessageService,
-          grayReleaseRulesHolder(), bizConfig, meterRegistry);
+          releaseMessageServiceWithCache, grayReleaseRulesHolder(), bizConfig, meterRegistry);
     }
     return new DefaultConfigService(releaseService, grayReleaseRulesHolder());
   }
 
   @Bean
   public IncrementalSyncService incrementalSyncService() {
-    return new DefaultIncrementalSyncService();
+    return new DefaultIncrementalSyncService(configService(), releaseService, bizConfig,
+        meterRegistry);
   }
 
   @Bean
@@ -98,6 +106,7 @@ public class ConfigServiceAutoConfiguration {
     filterRegistrationBean.addUrlPatterns("/configs/*");
     filterRegistrationBean.addUrlPatterns("/configfiles/*");
     filterRegistrationBean.addUrlPatterns("/notifications/v2/*");
+    filterRegistrationBean.addUrlPatterns("/notifications/v3/*");
 
     return filterRegistrationBean;
   }
@@ -107,21 +116,25 @@ public class ConfigServiceAutoConfiguration {
       final NotificationController notificationController,
       final ConfigFileController configFileController,
       final NotificationControllerV2 notificationControllerV2,
+      final NotificationControllerV3 notificationControllerV3,
       final GrayReleaseRulesHolder grayReleaseRulesHolder,
       final ReleaseMessageServiceWithCache releaseMessageServiceWithCache,
-      final ConfigService configService, final ReleaseMessageRepository releaseMessageRepository) {
+      final ConfigService configService, final IncrementalSyncService incrementalSyncService,
+      final ConfigResponseCache configResponseCache,
+      final ReleaseMessageRepository releaseMessageRepository) {
     ReleaseMessageScanner releaseMessageScanner =
-        new ReleaseMessageScanner(bizConfig, releaseMessageRepository);
-    // 0. handle release message cache
-    releaseMessageScanner.addMessageListener(releaseMessageServiceWithCache);
-    // 1. handle gray release rule
-    releaseMessageScanner.addMessageListener(grayReleaseRulesHolder);
-    // 2. handle server cache
-    releaseMessageScanner.addMessageListener(configService);
-    releaseMessageScanner.addMessageListener(configFileController);
-    // 3. notify clients
-    releaseMessageScanner.addMessageListener(notificationControllerV2);
-    releaseMessageScanner.addMessageListener(notificationController);
+        new ReleaseMessageScanner(bizConfig, releaseMessageRepository, meterRegistry);
+    // 0. handle release message cache, gray release rule and server cache in parallel
+    releaseMessageScanner.addMessageListener(releaseMessageServiceWithCache, CACHE_STAGE);
+    releaseMessageScanner.addMessageListener(grayReleaseRulesHolder, CACHE_STAGE);
+    releaseMessageScanner.addMessageListener(configService, CACHE_STAGE);
+    releaseMessageScanner.addMessageListener(incrementalSyncService, CACHE_STAGE);
+    releaseMessageScanner.addMessageListener(configResponseCache, CACHE_STAGE);
+    releaseMessageScanner.addMessageListener(configFileController, CACHE_STAGE);
+    // 1. notify clients after all the caches are refreshed
+    releaseMessageScanner.addMessageListener(notificationControllerV2, NOTIFICATION_STAGE);
+    releaseMessageScanner.addMessageListener(notificationControllerV3, NOTIFICATION_STAGE);
+    releaseMessageScanner.addMessageListener(notificationController, NOTIFICATION_STAGE);
     return releaseMessageScanner;
   }
 }
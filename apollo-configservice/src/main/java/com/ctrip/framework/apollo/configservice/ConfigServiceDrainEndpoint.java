@@ -0,0 +1,50 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice;
+
+import java.util.Collections;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the config service before taking it offline, not exposed unless added to
+ * {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "drain")
+public class ConfigServiceDrainEndpoint {
+
+  private final ConfigServiceDrainer configServiceDrainer;
+
+  public ConfigServiceDrainEndpoint(final ConfigServiceDrainer configServiceDrainer) {
+    this.configServiceDrainer = configServiceDrainer;
+  }
+
+  @ReadOperation
+  public Map<String, Boolean> draining() {
+    return Collections.singletonMap("draining", configServiceDrainer.isDraining());
+  }
+
+  @WriteOperation
+  public Map<String, Boolean> drain() {
+    configServiceDrainer.drain();
+    return draining();
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.registry.configuration.support.ApolloServiceRegistryHeartbeatApplicationRunner;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV3;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the config service before it goes away, on shutdown or via
+ * {@link ConfigServiceDrainEndpoint}.
+ * <p>
+ * The config service first stops advertising itself in discovery and rejects the new long polling
+ * requests and notification streams, then completes the waiting long polling requests with 304 and
+ * closes the notification streams in evenly sized slices over
+ * {@link BizConfig#longPollingDrainPeriodInMilli()}, so that the clients reconnect to the other
+ * config services gradually instead of all at once.
+ * </p>
+ * <p>
+ * As a {@link SmartLifecycle} in the default phase, it is stopped before the web server shuts down
+ * gracefully.
+ * </p>
+ */
+@Component
+public class ConfigServiceDrainer implements SmartLifecycle {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigServiceDrainer.class);
+  private static final long DRAIN_SLICE_INTERVAL_IN_MILLI = 500;
+
+  private final BizConfig bizConfig;
+  private final NotificationControllerV2 notificationControllerV2;
+  private final NotificationControllerV3 notificationControllerV3;
+  @SuppressWarnings("rawtypes")
+  private final ObjectProvider<ServiceRegistry> serviceRegistryProvider;
+  private final ObjectProvider<Registration> registrationProvider;
+  private final ObjectProvider<ApolloServiceRegistryHeartbeatApplicationRunner>
+      databaseServiceRegistryProvider;
+  private final ScheduledExecutorService executorService;
+  private volatile CompletableFuture<Void> drainFuture;
+  private volatile boolean running;
+
+  @SuppressWarnings("rawtypes")
+  public ConfigServiceDrainer(final BizConfig bizConfig,
+      final NotificationControllerV2 notificationControllerV2,
+      final NotificationControllerV3 notificationControllerV3,
+      final ObjectProvider<ServiceRegistry> serviceRegistryProvider,
+      final ObjectProvider<Registration> registrationProvider,
+      final ObjectProvider<ApolloServiceRegistryHeartbeatApplicationRunner>
+          databaseServiceRegistryProvider) {
+    this.bizConfig = bizConfig;
+    this.notificationControllerV2 = notificationControllerV2;
+    this.notificationControllerV3 = notificationControllerV3;
+    this.serviceRegistryProvider = serviceRegistryProvider;
+    this.registrationProvider = registrationProvider;
+    this.databaseServiceRegistryProvider = databaseServiceRegistryProvider;
+    this.executorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ConfigServiceDrainer", true));
+  }
+
+  /**
+   * Start draining, it is safe to call this method more than once
+   *
+   * @return the future completed when all the long polling requests and notification streams are
+   * completed
+   */
+  public synchronized CompletableFuture<Void> drain() {
+    if (drainFuture != null) {
+      return drainFuture;
+    }
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    drainFuture = future;
+
+    stopAdvertising();
+    List<Runnable> clients = Lists.newArrayList();
+    for (DeferredResultWrapper result : notificationControllerV2.stopLongPolling()) {
+      clients.add(result::setNotModifiedResult);
+    }
+    for (NotificationStreamWrapper stream : notificationControllerV3.stopStreaming()) {
+      clients.add(stream::complete);
+    }
+
+    long period = bizConfig.longPollingDrainPeriodInMilli();
+    // no need to wait for the empty slices
+    int slices = (int) Math.max(1,
+        Math.min(clients.size(), period / DRAIN_SLICE_INTERVAL_IN_MILLI));
+    int sliceSize = (clients.size() + slices - 1) / slices;
+    logger.info("Draining {} notification clients in {} ms", clients.size(), period);
+    Tracer.logEvent("Apollo.LongPoll.Drain", String.valueOf(clients.size()));
+
+    for (int i = 0; i < slices; i++) {
+      int from = Math.min(clients.size(), i * sliceSize);
+      int to = Math.min(clients.size(), from + sliceSize);
+      executorService.schedule(() -> completeClients(clients.subList(from, to)),
+          i * DRAIN_SLICE_INTERVAL_IN_MILLI, TimeUnit.MILLISECONDS);
+    }
+    // the tasks with the same delay run in the order of submission
+    executorService.schedule(() -> future.complete(null),
+        (slices - 1) * DRAIN_SLICE_INTERVAL_IN_MILLI, TimeUnit.MILLISECONDS);
+
+    return future;
+  }
+
+  public boolean isDraining() {
+    return drainFuture != null;
+  }
+
+  private void completeClients(List<Runnable> clients) {
+    for (Runnable client : clients) {
+      try {
+        client.run();
+      } catch (Throwable ex) {
+        logger.warn("Complete notification client failed", ex);
+      }
+    }
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private void stopAdvertising() {
+    ApolloServiceRegistryHeartbeatApplicationRunner databaseServiceRegistry =
+        databaseServiceRegistryProvider.getIfUnique();
+    if (databaseServiceRegistry != null) {
+      databaseServiceRegistry.deregister();
+    }
+
+    ServiceRegistry serviceRegistry = serviceRegistryProvider.getIfUnique();
+    Registration registration = registrationProvider.getIfUnique();
+    if (serviceRegistry != null && registration != null) {
+      try {
+        serviceRegistry.deregister(registration);
+        logger.info("Deregistered {} from discovery", registration.getUri());
+      } catch (Throwable ex) {
+        logger.error("Deregister {} from discovery failed", registration.getUri(), ex);
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    drain();
+    running = false;
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    drain().whenComplete((result, ex) -> {
+      running = false;
+      callback.run();
+    });
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+}
@@ -17,8 +17,11 @@
 package com.ctrip.framework.apollo.configservice;
 
 import com.ctrip.framework.apollo.biz.service.AppService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWithCache;
 import org.springframework.boot.health.contributor.Health;
 import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.boot.health.contributor.Status;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
 
@@ -26,14 +29,40 @@ import org.springframework.stereotype.Component;
 public class ConfigServiceHealthIndicator implements HealthIndicator {
 
   private final AppService appService;
+  private final ConfigServiceDrainer configServiceDrainer;
+  private final ConfigService configService;
 
-  public ConfigServiceHealthIndicator(final AppService appService) {
+  public ConfigServiceHealthIndicator(final AppService appService,
+      final ConfigServiceDrainer configServiceDrainer, final ConfigService configService) {
     this.appService = appService;
+    this.configServiceDrainer = configServiceDrainer;
+    this.configService = configService;
   }
 
   @Override
   public Health health() {
-    check();
+    // take the draining instance out of service, e.g. for eureka health check and readiness probe
+    if (configServiceDrainer.isDraining()) {
+      return Health.outOfService().build();
+    }
+    if (!(configService instanceof ConfigServiceWithCache)) {
+      check();
+      return Health.up().build();
+    }
+
+    ConfigServiceWithCache configServiceWithCache = (ConfigServiceWithCache) configService;
+    try {
+      check();
+    } catch (RuntimeException ex) {
+      configServiceWithCache.markDatabaseUnavailable();
+      if (!configServiceWithCache.isStaleServingEnabled()) {
+        throw ex;
+      }
+      // stay in service with the last known configs, so that the clients could still start
+      return Health.up().withDetail("database", Status.DOWN.getCode())
+          .withDetail("staleServing", true).build();
+    }
+    configServiceWithCache.markDatabaseAvailable();
     return Health.up().build();
   }
 
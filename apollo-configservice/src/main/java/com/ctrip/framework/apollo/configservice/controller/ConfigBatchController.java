@@ -0,0 +1,188 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.utils.WebUtils;
+import com.ctrip.framework.apollo.configservice.controller.ConfigController.ConfigQueryResult;
+import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
+import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil.InstanceConfigAuditModel;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.List;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Loads the configs of many namespaces of a client in one round trip, the request parameters are
+ * the same as {@link ConfigController} except that the namespaces and their client side release
+ * keys are in the request body.
+ */
+@RestController
+@RequestMapping("/configs")
+public class ConfigBatchController {
+  private final ConfigController configController;
+  private final InstanceConfigAuditUtil instanceConfigAuditUtil;
+  private final BizConfig bizConfig;
+
+  public ConfigBatchController(final ConfigController configController,
+      final InstanceConfigAuditUtil instanceConfigAuditUtil, final BizConfig bizConfig) {
+    this.configController = configController;
+    this.instanceConfigAuditUtil = instanceConfigAuditUtil;
+    this.bizConfig = bizConfig;
+  }
+
+  @PostMapping(value = "/{appId}/{clusterName}")
+  public List<ConfigQueryResponse> queryConfigs(@PathVariable String appId,
+      @PathVariable String clusterName,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestParam(value = "label", required = false) String clientLabel,
+      @RequestParam(value = "messages", required = false) String messagesAsString,
+      @RequestBody List<ConfigQuery> queries, HttpServletRequest request) {
+    if (CollectionUtils.isEmpty(queries)) {
+      throw new BadRequestException("namespaces should not be empty");
+    }
+    int maxNamespaces = bizConfig.configBatchMaxNamespaces();
+    if (queries.size() > maxNamespaces) {
+      throw new BadRequestException(
+          String.format("at most %d namespaces could be queried in one request", maxNamespaces));
+    }
+
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = WebUtils.tryToGetClientIp(request);
+    }
+
+    ApolloNotificationMessages clientMessages =
+        configController.transformMessages(messagesAsString);
+
+    List<ConfigQueryResponse> responses = Lists.newArrayListWithCapacity(queries.size());
+    List<InstanceConfigAuditModel> audits = Lists.newArrayList();
+    for (ConfigQuery query : queries) {
+      if (Strings.isNullOrEmpty(query.getNamespaceName())) {
+        throw new BadRequestException("namespaceName should not be empty");
+      }
+      String clientSideReleaseKey =
+          Strings.isNullOrEmpty(query.getReleaseKey()) ? "-1" : query.getReleaseKey();
+
+      ConfigQueryResult result = configController.resolveConfig(appId, clusterName,
+          query.getNamespaceName(), dataCenter, clientSideReleaseKey, clientIp, clientLabel,
+          clientMessages);
+
+      ApolloConfig apolloConfig = result.getApolloConfig();
+      if (apolloConfig != null && !result.isIncremental()) {
+        apolloConfig.setConfigurations(configController.assembleConfigurations(result));
+      }
+      responses.add(
+          new ConfigQueryResponse(query.getNamespaceName(), result.getStatus(), apolloConfig));
+
+      if (!Strings.isNullOrEmpty(clientIp)) {
+        for (Release release : result.getReleases()) {
+          audits.add(new InstanceConfigAuditModel(appId, clusterName, dataCenter, clientIp,
+              release.getAppId(), release.getClusterName(), release.getNamespaceName(),
+              release.getReleaseKey()));
+        }
+      }
+    }
+
+    // one batch for all the namespaces of the instance, instead of one per request
+    if (!audits.isEmpty()) {
+      instanceConfigAuditUtil.audit(audits);
+    }
+    Tracer.logEvent("Apollo.Config.Batch", String.valueOf(queries.size()));
+
+    return responses;
+  }
+
+  public static class ConfigQuery {
+    private String namespaceName;
+    private String releaseKey;
+
+    public ConfigQuery() {
+    }
+
+    public ConfigQuery(String namespaceName, String releaseKey) {
+      this.namespaceName = namespaceName;
+      this.releaseKey = releaseKey;
+    }
+
+    public String getNamespaceName() {
+      return namespaceName;
+    }
+
+    public void setNamespaceName(String namespaceName) {
+      this.namespaceName = namespaceName;
+    }
+
+    /**
+     * @return the release key the client has, -1 or empty if none
+     */
+    public String getReleaseKey() {
+      return releaseKey;
+    }
+
+    public void setReleaseKey(String releaseKey) {
+      this.releaseKey = releaseKey;
+    }
+  }
+
+  public static class ConfigQueryResponse {
+    private String namespaceName;
+    private int status;
+    private ApolloConfig config;
+
+    public ConfigQueryResponse() {
+    }
+
+    public ConfigQueryResponse(String namespaceName, int status, ApolloConfig config) {
+      this.namespaceName = namespaceName;
+      this.status = status;
+      this.config = config;
+    }
+
+    public String getNamespaceName() {
+      return namespaceName;
+    }
+
+    /**
+     * @return {@link HttpServletResponse#SC_OK}, {@link HttpServletResponse#SC_NOT_MODIFIED} or
+     * {@link HttpServletResponse#SC_NOT_FOUND}, the same as querying the namespace alone
+     */
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the full or incremental config, null unless the status is 200
+     */
+    public ApolloConfig getConfig() {
+      return config;
+    }
+  }
+}
@@ -21,8 +21,12 @@ import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.common.utils.WebUtils;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache.ConfigResponse;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCompressor;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.service.config.IncrementalSyncService;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -36,8 +40,9 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import java.util.regex.Pattern;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -48,7 +53,7 @@ import org.springframework.web.bind.annotation.RestController;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
@@ -63,6 +68,8 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/configs")
 public class ConfigController {
+  private static final String JSON_CONTENT_TYPE =
+      new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8).toString();
 
   private final ConfigService configService;
 
@@ -72,16 +79,15 @@ public class ConfigController {
   private final InstanceConfigAuditUtil instanceConfigAuditUtil;
   private final Gson gson;
   private final BizConfig bizConfig;
-
-
-  private static final Type configurationTypeReference =
-      new TypeToken<Map<String, String>>() {}.getType();
+  private final ConfigResponseCache configResponseCache;
+  private final ConfigResponseCompressor configResponseCompressor;
 
   public ConfigController(final ConfigService configService,
       final IncrementalSyncService incrementalSyncService,
       final AppNamespaceServiceWithCache appNamespaceService, final NamespaceUtil namespaceUtil,
       final InstanceConfigAuditUtil instanceConfigAuditUtil, final Gson gson,
-      final BizConfig bizConfig) {
+      final BizConfig bizConfig, final ConfigResponseCache configResponseCache,
+      final ConfigResponseCompressor configResponseCompressor) {
     this.configService = configService;
     this.incrementalSyncService = incrementalSyncService;
     this.appNamespaceService = appNamespaceService;
@@ -89,6 +95,8 @@ public class ConfigController {
     this.instanceConfigAuditUtil = instanceConfigAuditUtil;
     this.gson = gson;
     this.bizConfig = bizConfig;
+    this.configResponseCache = configResponseCache;
+    this.configResponseCompressor = configResponseCompressor;
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
@@ -100,68 +108,88 @@ public class ConfigController {
       @RequestParam(value = "label", required = false) String clientLabel,
       @RequestParam(value = "messages", required = false) String messagesAsString,
       HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String originalNamespace = namespace;
-    // strip out .properties suffix
-    namespace = namespaceUtil.filterNamespaceName(namespace);
-    // fix the character case issue, such as FX.apollo <-> fx.apollo
-    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+    return queryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+        clientLabel, messagesAsString, request, response, configResponseCache.isEnabled());
+  }
 
+  /**
+   * Query config
+   *
+   * @param writeSerializedResponse whether to write the serialized full sync response to the
+   *        http response directly, in which case null is returned
+   */
+  ApolloConfig queryConfig(String appId, String clusterName, String namespace, String dataCenter,
+      String clientSideReleaseKey, String clientIp, String clientLabel, String messagesAsString,
+      HttpServletRequest request, HttpServletResponse response, boolean writeSerializedResponse)
+      throws IOException {
     if (Strings.isNullOrEmpty(clientIp)) {
       clientIp = WebUtils.tryToGetClientIp(request);
     }
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
 
-    List<Release> releases = Lists.newLinkedList();
-
-    String appClusterNameLoaded = clusterName;
-    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
-      Release currentAppRelease = configService.loadConfig(appId, clientIp, clientLabel, appId,
-          clusterName, namespace, dataCenter, clientMessages);
-
-      if (currentAppRelease != null) {
-        releases.add(currentAppRelease);
-        // we have cluster search process, so the cluster name might be overridden
-        appClusterNameLoaded = currentAppRelease.getClusterName();
-      }
-    }
-
-    // if namespace does not belong to this appId, should check if there is a public configuration
-    if (!namespaceBelongsToAppId(appId, namespace)) {
-      Release publicRelease = this.findPublicConfig(appId, clientIp, clientLabel, clusterName,
-          namespace, dataCenter, clientMessages);
-      if (Objects.nonNull(publicRelease)) {
-        releases.add(publicRelease);
-      }
-    }
+    ConfigQueryResult result = resolveConfig(appId, clusterName, namespace, dataCenter,
+        clientSideReleaseKey, clientIp, clientLabel, clientMessages);
 
-    if (releases.isEmpty()) {
+    if (result.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
       response.sendError(HttpServletResponse.SC_NOT_FOUND,
           String.format(
               "Could not load configurations with appId: %s, clusterName: %s, namespace: %s", appId,
-              clusterName, originalNamespace));
-      Tracer.logEvent("Apollo.Config.NotFound",
-          assembleKey(appId, clusterName, originalNamespace, dataCenter));
+              clusterName, namespace));
       return null;
     }
 
-    auditReleases(appId, clusterName, dataCenter, clientIp, releases);
-
-    String latestMergedReleaseKey = releases.stream().map(Release::getReleaseKey)
-        .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+    auditReleases(appId, clusterName, dataCenter, clientIp, result.getReleases());
 
-    if (latestMergedReleaseKey.equals(clientSideReleaseKey)) {
+    if (result.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
       // Client side configuration is the same with server side, return 304
       response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-      Tracer.logEvent("Apollo.Config.NotModified",
-          assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
       return null;
     }
 
-    ApolloConfig apolloConfig =
-        new ApolloConfig(appId, appClusterNameLoaded, originalNamespace, latestMergedReleaseKey);
+    ApolloConfig apolloConfig = result.getApolloConfig();
+    if (result.isIncremental()) {
+      return apolloConfig;
+    }
+
+    if (writeSerializedResponse) {
+      ConfigResponse configResponse = configResponseCache.get(appId, apolloConfig.getCluster(),
+          apolloConfig.getNamespaceName(), apolloConfig.getReleaseKey());
+      if (configResponse == null) {
+        apolloConfig.setConfigurations(assembleConfigurations(result));
+        configResponse = configResponseCache.put(appId, apolloConfig.getCluster(),
+            apolloConfig.getNamespaceName(), apolloConfig.getReleaseKey(), result.getReleases(),
+            gson.toJson(apolloConfig).getBytes(StandardCharsets.UTF_8));
+      }
+      writeConfigResponse(apolloConfig.getNamespaceName(), configResponse, request, response);
+      return null;
+    }
 
-    Map<String, String> latestConfigurations = mergeReleaseConfigurations(releases);
+    apolloConfig.setConfigurations(assembleConfigurations(result));
+    return apolloConfig;
+  }
+
+  /**
+   * Resolve the config of a namespace, the http response and the instance config audit are left
+   * to the caller.
+   * <p>
+   * For full sync, the configurations are not set, so that the caller could serve them from
+   * {@link ConfigResponseCache} or call {@link #assembleConfigurations(ConfigQueryResult)}.
+   * </p>
+   */
+  ConfigQueryResult resolveConfig(String appId, String clusterName, String namespace,
+      String dataCenter, String clientSideReleaseKey, String clientIp, String clientLabel,
+      ApolloNotificationMessages clientMessages) {
+    ConfigQueryResult result = resolveReleases(appId, clusterName, namespace, dataCenter,
+        clientSideReleaseKey, clientIp, clientLabel, clientMessages);
+    if (result.getStatus() != HttpServletResponse.SC_OK) {
+      return result;
+    }
+
+    ApolloConfig apolloConfig = result.getApolloConfig();
+    List<Release> releases = result.getReleases();
+    String appClusterNameLoaded = apolloConfig.getCluster();
+    String originalNamespace = apolloConfig.getNamespaceName();
 
     try {
       if (bizConfig.isConfigServiceIncrementalChangeEnabled()) {
@@ -183,20 +211,16 @@ public class ConfigController {
             }
           }
 
-          Map<String, String> clientSideConfigurations =
-              mergeReleaseConfigurations(historyReleasesWithOrder);
-
-          if (!CollectionUtils.isEmpty(clientSideConfigurations)) {
-            List<ConfigurationChange> configurationChanges =
-                incrementalSyncService.getConfigurationChanges(latestMergedReleaseKey,
-                    latestConfigurations, clientSideReleaseKey, clientSideConfigurations);
+          List<ConfigurationChange> configurationChanges =
+              incrementalSyncService.getConfigurationChanges(releases, historyReleasesWithOrder);
 
+          if (configurationChanges != null) {
             apolloConfig.setConfigurationChanges(configurationChanges);
 
             apolloConfig.setConfigSyncType(ConfigSyncType.INCREMENTAL_SYNC.getValue());
             Tracer.logEvent("Apollo.Config.Found",
                 assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-            return apolloConfig;
+            return new ConfigQueryResult(HttpServletResponse.SC_OK, apolloConfig, releases, true);
           }
 
         }
@@ -207,11 +231,92 @@ public class ConfigController {
       Tracer.logError("Failed to do incremental sync, fallback to full sync", e);
     }
 
-    apolloConfig.setConfigurations(latestConfigurations);
-
     Tracer.logEvent("Apollo.Config.Found",
         assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-    return apolloConfig;
+    return new ConfigQueryResult(HttpServletResponse.SC_OK, apolloConfig, releases, false);
+  }
+
+  /**
+   * Resolve the releases of a namespace and compare them with the client side release key, the
+   * configurations are neither assembled nor diffed, so it is cheap enough to answer the
+   * conditional requests.
+   *
+   * @return the not found or not modified result, or the full sync result without configurations
+   */
+  ConfigQueryResult resolveReleases(String appId, String clusterName, String namespace,
+      String dataCenter, String clientSideReleaseKey, String clientIp, String clientLabel,
+      ApolloNotificationMessages clientMessages) {
+    String originalNamespace = namespace;
+    // strip out .properties suffix
+    namespace = namespaceUtil.filterNamespaceName(namespace);
+    // fix the character case issue, such as FX.apollo <-> fx.apollo
+    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+
+    List<Release> releases = Lists.newLinkedList();
+
+    String appClusterNameLoaded = clusterName;
+    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
+      Release currentAppRelease = configService.loadConfig(appId, clientIp, clientLabel, appId,
+          clusterName, namespace, dataCenter, clientMessages);
+
+      if (currentAppRelease != null) {
+        releases.add(currentAppRelease);
+        // we have cluster search process, so the cluster name might be overridden
+        appClusterNameLoaded = currentAppRelease.getClusterName();
+      }
+    }
+
+    // if namespace does not belong to this appId, should check if there is a public configuration
+    if (!namespaceBelongsToAppId(appId, namespace)) {
+      Release publicRelease = this.findPublicConfig(appId, clientIp, clientLabel, clusterName,
+          namespace, dataCenter, clientMessages);
+      if (Objects.nonNull(publicRelease)) {
+        releases.add(publicRelease);
+      }
+    }
+
+    if (releases.isEmpty()) {
+      Tracer.logEvent("Apollo.Config.NotFound",
+          assembleKey(appId, clusterName, originalNamespace, dataCenter));
+      return new ConfigQueryResult(HttpServletResponse.SC_NOT_FOUND, null, releases, false);
+    }
+
+    String latestMergedReleaseKey = releases.stream().map(Release::getReleaseKey)
+        .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+
+    if (latestMergedReleaseKey.equals(clientSideReleaseKey)) {
+      Tracer.logEvent("Apollo.Config.NotModified",
+          assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+      return new ConfigQueryResult(HttpServletResponse.SC_NOT_MODIFIED, null, releases, false);
+    }
+
+    ApolloConfig apolloConfig =
+        new ApolloConfig(appId, appClusterNameLoaded, originalNamespace, latestMergedReleaseKey);
+    return new ConfigQueryResult(HttpServletResponse.SC_OK, apolloConfig, releases, false);
+  }
+
+  /**
+   * @return the merged configurations of the full sync result
+   */
+  Map<String, String> assembleConfigurations(ConfigQueryResult result) {
+    return mergeReleaseConfigurations(result.getReleases());
+  }
+
+  private void writeConfigResponse(String namespace, ConfigResponse configResponse,
+      HttpServletRequest request, HttpServletResponse response) throws IOException {
+    byte[] body = configResponse.getBody();
+    if (configResponse.getGzippedBody() != null) {
+      response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      if (GzipUtil.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+        body = configResponse.getGzippedBody();
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, GzipUtil.GZIP_ENCODING);
+        configResponseCompressor.onGzippedBodyServed(namespace, configResponse.getBody(), body);
+      }
+    }
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(JSON_CONTENT_TYPE);
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
   }
 
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
@@ -258,7 +363,7 @@ public class ConfigController {
   Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
     Map<String, String> result = Maps.newLinkedHashMap();
     for (Release release : Lists.reverse(releases)) {
-      result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      result.putAll(configService.findReleaseConfigurations(release));
     }
     return result;
   }
@@ -295,4 +400,38 @@ public class ConfigController {
 
     return notificationMessages;
   }
+
+  static class ConfigQueryResult {
+    private final int status;
+    private final ApolloConfig apolloConfig;
+    private final List<Release> releases;
+    private final boolean incremental;
+
+    ConfigQueryResult(int status, ApolloConfig apolloConfig, List<Release> releases,
+        boolean incremental) {
+      this.status = status;
+      this.apolloConfig = apolloConfig;
+      this.releases = releases;
+      this.incremental = incremental;
+    }
+
+    int getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the config to return, null unless the status is 200
+     */
+    ApolloConfig getApolloConfig() {
+      return apolloConfig;
+    }
+
+    List<Release> getReleases() {
+      return releases;
+    }
+
+    boolean isIncremental() {
+      return incremental;
+    }
+  }
 }
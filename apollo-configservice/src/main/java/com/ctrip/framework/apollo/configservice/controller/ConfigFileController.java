@@ -16,11 +16,15 @@
  */
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.common.utils.WebUtils;
+import com.ctrip.framework.apollo.configservice.controller.ConfigController.ConfigQueryResult;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCompressor;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -29,19 +33,21 @@ import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.core.utils.PropertiesUtil;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.Weigher;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -52,10 +58,12 @@ import org.springframework.web.bind.annotation.RestController;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -66,131 +74,203 @@ import java.util.concurrent.TimeUnit;
 public class ConfigFileController implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(ConfigFileController.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
-  private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
+  private static final Splitter ETAG_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final String GZIP_ETAG_SUFFIX = "-gzip";
   private static final long EXPIRE_AFTER_WRITE = 30;
-  private final HttpHeaders plainTextResponseHeaders;
-  private final HttpHeaders jsonResponseHeaders;
-  private final HttpHeaders yamlResponseHeaders;
-  private final HttpHeaders xmlResponseHeaders;
-  private final ResponseEntity<String> NOT_FOUND_RESPONSE;
-  private Cache<String, String> localCache;
-  private final Multimap<String, String> watchedKeys2CacheKey =
-      Multimaps.synchronizedSetMultimap(HashMultimap.create());
-  private final Multimap<String, String> cacheKey2WatchedKeys =
-      Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private static final String[] NO_WATCHED_KEYS = new String[0];
+  private static final MediaType PLAIN_TEXT_CONTENT_TYPE =
+      new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+  private static final MediaType JSON_CONTENT_TYPE =
+      new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8);
+  private static final MediaType YAML_CONTENT_TYPE =
+      new MediaType("application", "yaml", StandardCharsets.UTF_8);
+  private static final MediaType XML_CONTENT_TYPE =
+      new MediaType(MediaType.APPLICATION_XML, StandardCharsets.UTF_8);
+  private final ResponseEntity<byte[]> NOT_FOUND_RESPONSE;
+  private Cache<String, ConfigFile> localCache;
+  // store watched key -> cache key -> the cached config file, which keeps its own watched keys
+  private final ConcurrentMap<String, ConcurrentMap<String, ConfigFile>> watchedKeys2CacheKey =
+      Maps.newConcurrentMap();
   private static final Gson GSON = new Gson();
 
   private final ConfigController configController;
   private final NamespaceUtil namespaceUtil;
   private final WatchKeysUtil watchKeysUtil;
   private final GrayReleaseRulesHolder grayReleaseRulesHolder;
+  private final ConfigResponseCompressor configResponseCompressor;
 
+  @Autowired
   public ConfigFileController(final ConfigController configController,
       final NamespaceUtil namespaceUtil, final WatchKeysUtil watchKeysUtil,
-      final GrayReleaseRulesHolder grayReleaseRulesHolder) {
+      final GrayReleaseRulesHolder grayReleaseRulesHolder, final BizConfig bizConfig,
+      final ConfigResponseCompressor configResponseCompressor) {
+    this(configController, namespaceUtil, watchKeysUtil, grayReleaseRulesHolder, bizConfig,
+        configResponseCompressor, Ticker.systemTicker());
+  }
+
+  ConfigFileController(final ConfigController configController,
+      final NamespaceUtil namespaceUtil, final WatchKeysUtil watchKeysUtil,
+      final GrayReleaseRulesHolder grayReleaseRulesHolder, final BizConfig bizConfig,
+      final ConfigResponseCompressor configResponseCompressor, final Ticker ticker) {
     localCache = CacheBuilder.newBuilder().expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
-        .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
-        .maximumWeight(MAX_CACHE_SIZE).removalListener(notification -> {
-          String cacheKey = notification.getKey();
-          logger.debug("removing cache key: {}", cacheKey);
-          if (!cacheKey2WatchedKeys.containsKey(cacheKey)) {
+        .ticker(ticker)
+        .weigher((Weigher<String, ConfigFile>) (key, value) -> value.getRetainedBytes())
+        .maximumWeight(bizConfig.configServiceConfigFileCacheMaxSizeInBytes())
+        .removalListener(notification -> {
+          String cacheKey = (String) notification.getKey();
+          ConfigFile configFile = (ConfigFile) notification.getValue();
+          if (configFile == null) {
             return;
           }
-          // create a new list to avoid ConcurrentModificationException
-          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
-          for (String watchedKey : watchedKeys) {
-            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
-          }
-          cacheKey2WatchedKeys.removeAll(cacheKey);
+          logger.debug("removing cache key: {}", cacheKey);
+          unindex(cacheKey, configFile);
           logger.debug("removed cache key: {}", cacheKey);
         }).build();
-    plainTextResponseHeaders = new HttpHeaders();
-    plainTextResponseHeaders.add("Content-Type", "text/plain;charset=UTF-8");
-    jsonResponseHeaders = new HttpHeaders();
-    jsonResponseHeaders.add("Content-Type", "application/json;charset=UTF-8");
-    yamlResponseHeaders = new HttpHeaders();
-    yamlResponseHeaders.add("Content-Type", "application/yaml;charset=UTF-8");
-    xmlResponseHeaders = new HttpHeaders();
-    xmlResponseHeaders.add("Content-Type", "application/xml;charset=UTF-8");
     NOT_FOUND_RESPONSE = new ResponseEntity<>(HttpStatus.NOT_FOUND);
     this.configController = configController;
     this.namespaceUtil = namespaceUtil;
     this.watchKeysUtil = watchKeysUtil;
     this.grayReleaseRulesHolder = grayReleaseRulesHolder;
+    this.configResponseCompressor = configResponseCompressor;
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsProperties(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsProperties(@PathVariable String appId,
       @PathVariable String clusterName, @PathVariable String namespace,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp,
       @RequestParam(value = "label", required = false) String clientLabel,
       HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-    String result = queryConfig(ConfigFileOutputFormat.PROPERTIES, appId, clusterName, namespace,
-        dataCenter, clientIp, clientLabel, request, response);
-
-    if (result == null) {
-      return NOT_FOUND_RESPONSE;
-    }
-
-    return new ResponseEntity<>(result, plainTextResponseHeaders, HttpStatus.OK);
+    return queryConfigFile(ConfigFileOutputFormat.PROPERTIES, PLAIN_TEXT_CONTENT_TYPE, appId,
+        clusterName, namespace, dataCenter, clientIp, clientLabel, request, response);
   }
 
   @GetMapping(value = "/json/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsJson(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsJson(@PathVariable String appId,
       @PathVariable String clusterName, @PathVariable String namespace,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp,
       @RequestParam(value = "label", required = false) String clientLabel,
       HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-    String result = queryConfig(ConfigFileOutputFormat.JSON, appId, clusterName, namespace,
-        dataCenter, clientIp, clientLabel, request, response);
-
-    if (result == null) {
-      return NOT_FOUND_RESPONSE;
-    }
-
-    return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
+    return queryConfigFile(ConfigFileOutputFormat.JSON, JSON_CONTENT_TYPE, appId, clusterName,
+        namespace, dataCenter, clientIp, clientLabel, request, response);
   }
 
   @GetMapping(value = "/raw/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsRaw(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsRaw(@PathVariable String appId,
       @PathVariable String clusterName, @PathVariable String namespace,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp,
       @RequestParam(value = "label", required = false) String clientLabel,
       HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-    String result = queryConfig(ConfigFileOutputFormat.RAW, appId, clusterName, namespace,
-        dataCenter, clientIp, clientLabel, request, response);
-
-    if (result == null) {
-      return NOT_FOUND_RESPONSE;
-    }
-
     ConfigFileFormat format = determineNamespaceFormat(namespace);
-    HttpHeaders responseHeaders;
+    MediaType contentType;
     switch (format) {
       case JSON:
-        responseHeaders = jsonResponseHeaders;
+        contentType = JSON_CONTENT_TYPE;
         break;
       case YML:
       case YAML:
-        responseHeaders = yamlResponseHeaders;
+        contentType = YAML_CONTENT_TYPE;
         break;
       case XML:
-        responseHeaders = xmlResponseHeaders;
+        contentType = XML_CONTENT_TYPE;
         break;
       default:
-        responseHeaders = plainTextResponseHeaders;
+        contentType = PLAIN_TEXT_CONTENT_TYPE;
         break;
     }
-    return new ResponseEntity<>(result, responseHeaders, HttpStatus.OK);
+    return queryConfigFile(ConfigFileOutputFormat.RAW, contentType, appId, clusterName, namespace,
+        dataCenter, clientIp, clientLabel, request, response);
+  }
+
+  private ResponseEntity<byte[]> queryConfigFile(ConfigFileOutputFormat outputFormat,
+      MediaType contentType, String appId, String clusterName, String namespace,
+      String dataCenter, String clientIp, String clientLabel, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = WebUtils.tryToGetClientIp(request);
+    }
+
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (!Strings.isNullOrEmpty(ifNoneMatch)) {
+      boolean acceptsGzip = GzipUtil.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+      ResponseEntity<byte[]> notModifiedResponse = checkNotModified(ifNoneMatch, acceptsGzip,
+          outputFormat, appId, clusterName, namespace, dataCenter, clientIp, clientLabel);
+      if (notModifiedResponse != null) {
+        return notModifiedResponse;
+      }
+    }
+
+    ConfigFile result = queryConfig(outputFormat, appId, clusterName, namespace, dataCenter,
+        clientIp, clientLabel, request, response);
+
+    return toResponseEntity(result, outputFormat, contentType, request);
+  }
+
+  /**
+   * The etag is derived from the merged release key, the output format and the content encoding,
+   * so the conditional requests are answered by resolving the releases only, without rendering or
+   * looking up the config file.
+   *
+   * @return the not modified or not found response, or null if the config file is modified
+   */
+  private ResponseEntity<byte[]> checkNotModified(String ifNoneMatch, boolean acceptsGzip,
+      ConfigFileOutputFormat outputFormat, String appId, String clusterName, String namespace,
+      String dataCenter, String clientIp, String clientLabel) {
+    // release key -> whether the etag is of the gzipped body
+    Map<String, Boolean> releaseKeys = Maps.newLinkedHashMap();
+    for (String etag : ETAG_SPLITTER.split(ifNoneMatch)) {
+      // weak comparison is used for If-None-Match
+      if (etag.startsWith("W/")) {
+        etag = etag.substring(2);
+      }
+      if (etag.length() <= 2 || !etag.startsWith("\"") || !etag.endsWith("\"")) {
+        continue;
+      }
+      String opaqueTag = etag.substring(1, etag.length() - 1);
+      boolean gzipped = opaqueTag.endsWith(GZIP_ETAG_SUFFIX);
+      if (gzipped) {
+        if (!acceptsGzip) {
+          continue;
+        }
+        opaqueTag = opaqueTag.substring(0, opaqueTag.length() - GZIP_ETAG_SUFFIX.length());
+      }
+      String formatSuffix = "-" + outputFormat.getValue();
+      if (opaqueTag.length() > formatSuffix.length() && opaqueTag.endsWith(formatSuffix)) {
+        releaseKeys.merge(opaqueTag.substring(0, opaqueTag.length() - formatSuffix.length()),
+            gzipped, Boolean::logicalOr);
+      }
+    }
+    if (releaseKeys.isEmpty()) {
+      return null;
+    }
+
+    String clientSideReleaseKey = releaseKeys.keySet().iterator().next();
+    ConfigQueryResult result = configController.resolveReleases(appId, clusterName, namespace,
+        dataCenter, clientSideReleaseKey, clientIp, clientLabel, null);
+    if (result.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
+      return NOT_FOUND_RESPONSE;
+    }
+
+    String mergedReleaseKey = result.getStatus() == HttpServletResponse.SC_NOT_MODIFIED
+        ? clientSideReleaseKey : result.getApolloConfig().getReleaseKey();
+    if (!releaseKeys.containsKey(mergedReleaseKey)) {
+      return null;
+    }
+
+    Tracer.logEvent("ConfigFile.NotModified",
+        assembleCacheKey(outputFormat, appId, clusterName, namespace, dataCenter));
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(toETag(mergedReleaseKey, outputFormat, releaseKeys.get(mergedReleaseKey)));
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
   }
 
-  String queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+  ConfigFile queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
       String namespace, String dataCenter, String clientIp, String clientLabel,
       HttpServletRequest request, HttpServletResponse response) throws IOException {
     // strip out .properties suffix
@@ -198,10 +278,6 @@ public class ConfigFileController implements ReleaseMessageListener {
     // fix the character case issue, such as FX.apollo <-> fx.apollo
     namespace = namespaceUtil.normalizeNamespace(appId, namespace);
 
-    if (Strings.isNullOrEmpty(clientIp)) {
-      clientIp = WebUtils.tryToGetClientIp(request);
-    }
-
     // 1. check whether this client has gray release rules
     boolean hasGrayReleaseRule =
         grayReleaseRulesHolder.hasGrayReleaseRule(appId, clientIp, clientLabel, namespace);
@@ -211,18 +287,21 @@ public class ConfigFileController implements ReleaseMessageListener {
     // 2. try to load gray release and return
     if (hasGrayReleaseRule) {
       Tracer.logEvent("ConfigFile.Cache.GrayRelease", cacheKey);
+      // served once, so not worth compressing
       return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-          clientLabel, request, response);
+          clientLabel, request, response, NO_WATCHED_KEYS, false);
     }
 
     // 3. if not gray release, check weather cache exists, if exists, return
-    String result = localCache.getIfPresent(cacheKey);
+    ConfigFile result = localCache.getIfPresent(cacheKey);
 
     // 4. if not exists, load from ConfigController
-    if (Strings.isNullOrEmpty(result)) {
+    if (result == null) {
       Tracer.logEvent("ConfigFile.Cache.Miss", cacheKey);
+      Set<String> watchedKeys =
+          watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
       result = loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-          clientLabel, request, response);
+          clientLabel, request, response, watchedKeys.toArray(new String[0]), true);
 
       if (result == null) {
         return null;
@@ -232,21 +311,24 @@ public class ConfigFileController implements ReleaseMessageListener {
       if (grayReleaseRulesHolder.hasGrayReleaseRule(appId, clientIp, clientLabel, namespace)) {
         Tracer.logEvent("ConfigFile.Cache.GrayReleaseConflict", cacheKey);
         return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-            clientLabel, request, response);
+            clientLabel, request, response, NO_WATCHED_KEYS, false);
       }
 
-      localCache.put(cacheKey, result);
-      logger.debug("adding cache for key: {}", cacheKey);
-
-      Set<String> watchedKeys =
-          watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
-
-      for (String watchedKey : watchedKeys) {
-        watchedKeys2CacheKey.put(watchedKey, cacheKey);
+      ConfigFile cached = localCache.asMap().putIfAbsent(cacheKey, result);
+      if (cached != null) {
+        // indexed by the request caching it
+        return cached;
       }
-
-      cacheKey2WatchedKeys.putAll(cacheKey, watchedKeys);
       logger.debug("added cache for key: {}", cacheKey);
+
+      // index the config file after caching it. The index keeps the config file itself, so the
+      // removal of a previous one of the same cache key, e.g. an expired one which is only
+      // notified once this one is cached, does not unindex this one.
+      index(cacheKey, result);
+      if (localCache.asMap().get(cacheKey) != result) {
+        // removed before indexed, so the removal listener had nothing to unindex
+        unindex(cacheKey, result);
+      }
     } else {
       Tracer.logEvent("ConfigFile.Cache.Hit", cacheKey);
     }
@@ -254,11 +336,37 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
-  private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
-      String namespace, String dataCenter, String clientIp, String clientLabel,
-      HttpServletRequest request, HttpServletResponse response) throws IOException {
+  private void index(String cacheKey, ConfigFile configFile) {
+    for (String watchedKey : configFile.getWatchedKeys()) {
+      watchedKeys2CacheKey.compute(watchedKey, (key, cacheKeys) -> {
+        if (cacheKeys == null) {
+          cacheKeys = Maps.newConcurrentMap();
+        }
+        cacheKeys.put(cacheKey, configFile);
+        return cacheKeys;
+      });
+    }
+  }
+
+  /**
+   * Unindexes only the given config file, as the same cache key may be cached and indexed again
+   * before the removal of the previous config file is notified
+   */
+  private void unindex(String cacheKey, ConfigFile configFile) {
+    for (String watchedKey : configFile.getWatchedKeys()) {
+      watchedKeys2CacheKey.computeIfPresent(watchedKey, (key, cacheKeys) -> {
+        cacheKeys.remove(cacheKey, configFile);
+        return cacheKeys.isEmpty() ? null : cacheKeys;
+      });
+    }
+  }
+
+  private ConfigFile loadConfig(ConfigFileOutputFormat outputFormat, String appId,
+      String clusterName, String namespace, String dataCenter, String clientIp,
+      String clientLabel, HttpServletRequest request, HttpServletResponse response,
+      String[] watchedKeys, boolean compress) throws IOException {
     ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
-        dataCenter, "-1", clientIp, clientLabel, null, request, response);
+        dataCenter, "-1", clientIp, clientLabel, null, request, response, false);
 
     if (apolloConfig == null || apolloConfig.getConfigurations() == null) {
       return null;
@@ -280,7 +388,13 @@ public class ConfigFileController implements ReleaseMessageListener {
         break;
     }
 
-    return result;
+    if (result == null) {
+      return null;
+    }
+    byte[] body = result.getBytes(StandardCharsets.UTF_8);
+    byte[] gzippedBody = compress ? configResponseCompressor.compress(namespace, body) : null;
+    return new ConfigFile(namespace, body, gzippedBody, apolloConfig.getReleaseKey(),
+        watchedKeys);
   }
 
   private String getRawConfigContent(ApolloConfig apolloConfig) throws IOException {
@@ -293,6 +407,38 @@ public class ConfigFileController implements ReleaseMessageListener {
     return apolloConfig.getConfigurations().get("content");
   }
 
+  private ResponseEntity<byte[]> toResponseEntity(ConfigFile configFile,
+      ConfigFileOutputFormat outputFormat, MediaType contentType, HttpServletRequest request) {
+    if (configFile == null) {
+      return NOT_FOUND_RESPONSE;
+    }
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    byte[] body = configFile.getBody();
+    boolean gzipped = configFile.getGzippedBody() != null
+        && GzipUtil.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    if (gzipped) {
+      body = configFile.getGzippedBody();
+      headers.set(HttpHeaders.CONTENT_ENCODING, GzipUtil.GZIP_ENCODING);
+      configResponseCompressor.onGzippedBodyServed(configFile.getNamespace(),
+          configFile.getBody(), body);
+    }
+    headers.setETag(toETag(configFile.getReleaseKey(), outputFormat, gzipped));
+    headers.setContentType(contentType);
+    return new ResponseEntity<>(body, headers, HttpStatus.OK);
+  }
+
+  /**
+   * Strong etags must differ between the byte-different representations, so the etag includes the
+   * output format and whether the body is gzipped
+   */
+  private String toETag(String mergedReleaseKey, ConfigFileOutputFormat outputFormat,
+      boolean gzipped) {
+    return "\"" + mergedReleaseKey + "-" + outputFormat.getValue()
+        + (gzipped ? GZIP_ETAG_SUFFIX : "") + "\"";
+  }
+
   String assembleCacheKey(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
       String namespace, String dataCenter) {
     List<String> keyParts =
@@ -323,19 +469,65 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
+    Map<String, ConfigFile> cacheKeys = watchedKeys2CacheKey.get(content);
+    if (cacheKeys == null) {
       return;
     }
 
-    // create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
-
-    for (String cacheKey : cacheKeys) {
+    // the removal listener updates the index, the concurrent map tolerates it while iterating
+    for (String cacheKey : cacheKeys.keySet()) {
       logger.debug("invalidate cache key: {}", cacheKey);
       localCache.invalidate(cacheKey);
     }
   }
 
+  /**
+   * A rendered config file, encoded in UTF-8
+   */
+  static class ConfigFile {
+    private final String namespace;
+    private final byte[] body;
+    private final byte[] gzippedBody;
+    private final String releaseKey;
+    private final String[] watchedKeys;
+
+    ConfigFile(String namespace, byte[] body, byte[] gzippedBody, String releaseKey,
+        String[] watchedKeys) {
+      this.namespace = namespace;
+      this.body = body;
+      this.gzippedBody = gzippedBody;
+      this.releaseKey = releaseKey;
+      this.watchedKeys = watchedKeys;
+    }
+
+    String getNamespace() {
+      return namespace;
+    }
+
+    byte[] getBody() {
+      return body;
+    }
+
+    /**
+     * @return the gzipped body, or null if the body is not worth compressing
+     */
+    byte[] getGzippedBody() {
+      return gzippedBody;
+    }
+
+    String getReleaseKey() {
+      return releaseKey;
+    }
+
+    String[] getWatchedKeys() {
+      return watchedKeys;
+    }
+
+    int getRetainedBytes() {
+      return body.length + (gzippedBody == null ? 0 : gzippedBody.length);
+    }
+  }
+
   enum ConfigFileOutputFormat {
     PROPERTIES("properties"), JSON("json"), RAW("raw");
 
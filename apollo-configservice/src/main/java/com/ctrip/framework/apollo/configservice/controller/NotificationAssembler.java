@@ -0,0 +1,150 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * The notification handling shared by the long polling and the streaming notification endpoints
+ */
+final class NotificationAssembler {
+  private static final Type notificationsTypeReference =
+      new TypeToken<List<ApolloConfigNotification>>() {}.getType();
+
+  private NotificationAssembler() {
+  }
+
+  /**
+   * Parse the client side notifications
+   *
+   * @return the notifications keyed by the normalized namespace name
+   * @throws BadRequestException if there is no valid notification
+   */
+  static Map<String, ApolloConfigNotification> parseNotifications(Gson gson,
+      NamespaceUtil namespaceUtil, String appId, String notificationsAsString) {
+    List<ApolloConfigNotification> notifications = null;
+
+    try {
+      notifications = gson.fromJson(notificationsAsString, notificationsTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    if (CollectionUtils.isEmpty(notifications)) {
+      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
+    }
+
+    Map<String, ApolloConfigNotification> filteredNotifications =
+        filterNotifications(namespaceUtil, appId, notifications);
+
+    if (CollectionUtils.isEmpty(filteredNotifications)) {
+      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
+    }
+
+    return filteredNotifications;
+  }
+
+  private static Map<String, ApolloConfigNotification> filterNotifications(
+      NamespaceUtil namespaceUtil, String appId, List<ApolloConfigNotification> notifications) {
+    Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
+    for (ApolloConfigNotification notification : notifications) {
+      if (Strings.isNullOrEmpty(notification.getNamespaceName())) {
+        continue;
+      }
+      // strip out .properties suffix
+      String originalNamespace = namespaceUtil.filterNamespaceName(notification.getNamespaceName());
+      notification.setNamespaceName(originalNamespace);
+      // fix the character case issue, such as FX.apollo <-> fx.apollo
+      String normalizedNamespace = namespaceUtil.normalizeNamespace(appId, originalNamespace);
+
+      // in case client side namespace name has character case issue and has difference notification
+      // ids
+      // such as FX.apollo = 1 but fx.apollo = 2, we should let FX.apollo have the chance to update
+      // its notification id
+      // which means we should record FX.apollo = 1 here and ignore fx.apollo = 2
+      if (filteredNotifications.containsKey(normalizedNamespace) && filteredNotifications
+          .get(normalizedNamespace).getNotificationId() < notification.getNotificationId()) {
+        continue;
+      }
+
+      filteredNotifications.put(normalizedNamespace, notification);
+    }
+    return filteredNotifications;
+  }
+
+  static List<ApolloConfigNotification> getApolloConfigNotifications(Set<String> namespaces,
+      Map<String, Long> clientSideNotifications, Multimap<String, String> watchedKeysMap,
+      List<ReleaseMessage> latestReleaseMessages) {
+    List<ApolloConfigNotification> newNotifications = Lists.newArrayList();
+    if (!CollectionUtils.isEmpty(latestReleaseMessages)) {
+      Map<String, Long> latestNotifications = Maps.newHashMap();
+      for (ReleaseMessage releaseMessage : latestReleaseMessages) {
+        latestNotifications.put(releaseMessage.getMessage(), releaseMessage.getId());
+      }
+
+      for (String namespace : namespaces) {
+        long clientSideId = clientSideNotifications.get(namespace);
+        long latestId = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
+        Collection<String> namespaceWatchedKeys = watchedKeysMap.get(namespace);
+        for (String namespaceWatchedKey : namespaceWatchedKeys) {
+          long namespaceNotificationId = latestNotifications.getOrDefault(namespaceWatchedKey,
+              ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
+          if (namespaceNotificationId > latestId) {
+            latestId = namespaceNotificationId;
+          }
+        }
+        if (latestId > clientSideId) {
+          ApolloConfigNotification notification = new ApolloConfigNotification(namespace, latestId);
+          namespaceWatchedKeys.stream().filter(latestNotifications::containsKey)
+              .forEach(namespaceWatchedKey -> notification.addMessage(namespaceWatchedKey,
+                  latestNotifications.get(namespaceWatchedKey)));
+          newNotifications.add(notification);
+        }
+      }
+    }
+    return newNotifications;
+  }
+
+  static String retrieveNamespaceFromReleaseMessage(String releaseMessage) {
+    if (Strings.isNullOrEmpty(releaseMessage)) {
+      return null;
+    }
+    List<String> keys = ReleaseMessageKeyGenerator.messageToList(releaseMessage);
+    if (CollectionUtils.isEmpty(keys)) {
+      return null;
+    }
+    return keys.get(2);
+  }
+}
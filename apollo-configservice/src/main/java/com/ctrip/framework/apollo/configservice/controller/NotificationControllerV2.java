@@ -21,16 +21,16 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
-import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
-import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.LongPollingAdmissionService;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanOutScheduler;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
-import com.ctrip.framework.apollo.configservice.wrapper.CaseInsensitiveMultimapWrapper;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil.WatchKeys;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
-import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry.Subscription;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
@@ -38,9 +38,9 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
@@ -50,17 +50,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
 
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -69,13 +63,7 @@ import java.util.function.Function;
 @RequestMapping("/notifications/v2")
 public class NotificationControllerV2 implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final CaseInsensitiveMultimapWrapper<DeferredResultWrapper> deferredResults =
-      new CaseInsensitiveMultimapWrapper<>(Maps.newConcurrentMap(), Sets::newConcurrentHashSet);
-
-  private static final Type notificationsTypeReference =
-      new TypeToken<List<ApolloConfigNotification>>() {}.getType();
-
-  private final ExecutorService largeNotificationBatchExecutorService;
+  private final WatchKeyRegistry<DeferredResultWrapper> deferredResults = new WatchKeyRegistry<>();
 
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
@@ -83,19 +71,23 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
   private final NamespaceUtil namespaceUtil;
   private final Gson gson;
   private final BizConfig bizConfig;
+  private final NotificationFanOutScheduler notificationFanOutScheduler;
+  private final LongPollingAdmissionService longPollingAdmissionService;
+  private volatile boolean draining;
 
   public NotificationControllerV2(final WatchKeysUtil watchKeysUtil,
       final ReleaseMessageServiceWithCache releaseMessageService,
       final EntityManagerUtil entityManagerUtil, final NamespaceUtil namespaceUtil, final Gson gson,
-      final BizConfig bizConfig) {
-    largeNotificationBatchExecutorService = Executors
-        .newSingleThreadExecutor(ApolloThreadFactory.create("NotificationControllerV2", true));
+      final BizConfig bizConfig, final NotificationFanOutScheduler notificationFanOutScheduler,
+      final LongPollingAdmissionService longPollingAdmissionService) {
     this.watchKeysUtil = watchKeysUtil;
     this.releaseMessageService = releaseMessageService;
     this.entityManagerUtil = entityManagerUtil;
     this.namespaceUtil = namespaceUtil;
     this.gson = gson;
     this.bizConfig = bizConfig;
+    this.notificationFanOutScheduler = notificationFanOutScheduler;
+    this.longPollingAdmissionService = longPollingAdmissionService;
   }
 
   @GetMapping
@@ -104,27 +96,22 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp) {
-    List<ApolloConfigNotification> notifications = null;
+    Map<String, ApolloConfigNotification> filteredNotifications =
+        NotificationAssembler.parseNotifications(gson, namespaceUtil, appId, notificationsAsString);
 
-    try {
-      notifications = gson.fromJson(notificationsAsString, notificationsTypeReference);
-    } catch (Throwable ex) {
-      Tracer.logError(ex);
+    if (draining) {
+      Tracer.logEvent("Apollo.LongPoll.Draining", appId);
+      // not held longer than the waiting clients, so that the shutdown is not delayed
+      return assembleRetryLaterResult(bizConfig.longPollingDrainPeriodInMilli());
     }
 
-    if (CollectionUtils.isEmpty(notifications)) {
-      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
-    }
-
-    Map<String, ApolloConfigNotification> filteredNotifications =
-        filterNotifications(appId, notifications);
-
-    if (CollectionUtils.isEmpty(filteredNotifications)) {
-      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
+    if (!longPollingAdmissionService.tryAdmit()) {
+      Tracer.logEvent("Apollo.LongPoll.Rejected", appId);
+      return assembleRetryLaterResult(Long.MAX_VALUE);
     }
 
     DeferredResultWrapper deferredResultWrapper =
-        new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
+        new DeferredResultWrapper(longPollingAdmissionService.assembleTimeoutInMilli());
     Set<String> namespaces = Sets.newHashSetWithExpectedSize(filteredNotifications.size());
     Map<String, Long> clientSideNotifications =
         Maps.newHashMapWithExpectedSize(filteredNotifications.size());
@@ -141,30 +128,37 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       }
     }
 
-    Multimap<String, String> watchedKeysMap =
-        watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
+    WatchKeys allWatchKeys =
+        watchKeysUtil.findAllWatchKeys(appId, cluster, namespaces, dataCenter);
+    Multimap<String, String> watchedKeysMap = allWatchKeys.getWatchKeysMap();
 
-    Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+    Set<String> watchedKeys = allWatchKeys.getAllWatchKeys();
 
     /**
      * 1、set deferredResult before the check, for avoid more waiting
      * If the check before setting deferredResult,it may receive a notification the next time
      * when method handleMessage is executed between check and set deferredResult.
      */
-    deferredResultWrapper
-        .onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
+    // register all keys
+    Subscription subscription = this.deferredResults.register(watchedKeys, deferredResultWrapper);
+
+    deferredResultWrapper.onTimeout(() -> {
+      longPollingAdmissionService.recordTimeout();
+      logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys");
+    });
 
     deferredResultWrapper.onCompletion(() -> {
       // unregister all keys
-      for (String key : watchedKeys) {
-        deferredResults.remove(key, deferredResultWrapper);
-      }
+      subscription.unregister();
       logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
     });
 
-    // register all keys
-    for (String key : watchedKeys) {
-      this.deferredResults.put(key, deferredResultWrapper);
+    // the drainer might have taken the waiting clients before this one is registered, so it would
+    // never be completed by the drainer
+    if (draining) {
+      Tracer.logEvent("Apollo.LongPoll.Draining", appId);
+      deferredResultWrapper.setNotModifiedResult();
+      return deferredResultWrapper.getResult();
     }
 
     logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
@@ -185,8 +179,9 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
      */
     entityManagerUtil.closeEntityManager();
 
-    List<ApolloConfigNotification> newNotifications = getApolloConfigNotifications(namespaces,
-        clientSideNotifications, watchedKeysMap, latestReleaseMessages);
+    List<ApolloConfigNotification> newNotifications =
+        NotificationAssembler.getApolloConfigNotifications(namespaces, clientSideNotifications,
+            watchedKeysMap, latestReleaseMessages);
 
     if (!CollectionUtils.isEmpty(newNotifications)) {
       deferredResultWrapper.setResult(newNotifications);
@@ -195,65 +190,32 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     return deferredResultWrapper.getResult();
   }
 
-  private Map<String, ApolloConfigNotification> filterNotifications(String appId,
-      List<ApolloConfigNotification> notifications) {
-    Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
-    for (ApolloConfigNotification notification : notifications) {
-      if (Strings.isNullOrEmpty(notification.getNamespaceName())) {
-        continue;
-      }
-      // strip out .properties suffix
-      String originalNamespace = namespaceUtil.filterNamespaceName(notification.getNamespaceName());
-      notification.setNamespaceName(originalNamespace);
-      // fix the character case issue, such as FX.apollo <-> fx.apollo
-      String normalizedNamespace = namespaceUtil.normalizeNamespace(appId, originalNamespace);
-
-      // in case client side namespace name has character case issue and has difference notification
-      // ids
-      // such as FX.apollo = 1 but fx.apollo = 2, we should let FX.apollo have the chance to update
-      // its notification id
-      // which means we should record FX.apollo = 1 here and ignore fx.apollo = 2
-      if (filteredNotifications.containsKey(normalizedNamespace) && filteredNotifications
-          .get(normalizedNamespace).getNotificationId() < notification.getNotificationId()) {
-        continue;
-      }
-
-      filteredNotifications.put(normalizedNamespace, notification);
-    }
-    return filteredNotifications;
+  /**
+   * Stop accepting long polling requests, the new requests are told to retry later
+   *
+   * @return the long polling clients still waiting
+   */
+  public List<DeferredResultWrapper> stopLongPolling() {
+    draining = true;
+    return deferredResults.values();
   }
 
-  private List<ApolloConfigNotification> getApolloConfigNotifications(Set<String> namespaces,
-      Map<String, Long> clientSideNotifications, Multimap<String, String> watchedKeysMap,
-      List<ReleaseMessage> latestReleaseMessages) {
-    List<ApolloConfigNotification> newNotifications = Lists.newArrayList();
-    if (!CollectionUtils.isEmpty(latestReleaseMessages)) {
-      Map<String, Long> latestNotifications = Maps.newHashMap();
-      for (ReleaseMessage releaseMessage : latestReleaseMessages) {
-        latestNotifications.put(releaseMessage.getMessage(), releaseMessage.getId());
-      }
-
-      for (String namespace : namespaces) {
-        long clientSideId = clientSideNotifications.get(namespace);
-        long latestId = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
-        Collection<String> namespaceWatchedKeys = watchedKeysMap.get(namespace);
-        for (String namespaceWatchedKey : namespaceWatchedKeys) {
-          long namespaceNotificationId = latestNotifications.getOrDefault(namespaceWatchedKey,
-              ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
-          if (namespaceNotificationId > latestId) {
-            latestId = namespaceNotificationId;
-          }
-        }
-        if (latestId > clientSideId) {
-          ApolloConfigNotification notification = new ApolloConfigNotification(namespace, latestId);
-          namespaceWatchedKeys.stream().filter(latestNotifications::containsKey)
-              .forEach(namespaceWatchedKey -> notification.addMessage(namespaceWatchedKey,
-                  latestNotifications.get(namespaceWatchedKey)));
-          newNotifications.add(notification);
-        }
-      }
+  /**
+   * Hold the client for a random delay without registering it, then tell it nothing changed, so
+   * that a reconnect storm is spread over the retry window, as the clients reconnect right after
+   * a 304
+   *
+   * @param maxDelayInMilli the upper bound of the delay
+   */
+  private DeferredResult<ResponseEntity<?>> assembleRetryLaterResult(long maxDelayInMilli) {
+    ResponseEntity<?> notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+    long delay = longPollingAdmissionService.assembleRetryDelayInMilli(maxDelayInMilli);
+    if (delay <= 0) {
+      DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+      result.setResult(notModified);
+      return result;
     }
-    return newNotifications;
+    return new DeferredResult<>(delay, notModified);
   }
 
   @Override
@@ -266,20 +228,19 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    String changedNamespace = retrieveNamespaceFromReleaseMessage.apply(content);
+    String changedNamespace = NotificationAssembler.retrieveNamespaceFromReleaseMessage(content);
 
     if (Strings.isNullOrEmpty(changedNamespace)) {
       logger.error("message format invalid - {}", content);
       return;
     }
 
-    if (!deferredResults.containsKey(content)) {
+    // a snapshot of the subscribers, so it is safe to iterate while they unregister
+    List<DeferredResultWrapper> results = deferredResults.get(content);
+    if (results.isEmpty()) {
       return;
     }
 
-    // create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
-
     ApolloConfigNotification configNotification =
         new ApolloConfigNotification(changedNamespace, message.getId());
     configNotification.addMessage(content, message.getId());
@@ -289,23 +250,10 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 
     // do async notification if too many clients
     if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS
-                  .sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              // ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(changedNamespace, configNotification,
-              serializedNotificationResponse);
-        }
-      });
+      logger.debug("Schedule async notification of {} clients for key {}", results.size(),
+          content);
+      notificationFanOutScheduler.schedule(content, changedNamespace, configNotification,
+          serializedNotificationResponse, results);
       return;
     }
 
@@ -317,18 +265,6 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     logger.debug("Notification completed");
   }
 
-  private static final Function<String, String> retrieveNamespaceFromReleaseMessage =
-      releaseMessage -> {
-        if (Strings.isNullOrEmpty(releaseMessage)) {
-          return null;
-        }
-        List<String> keys = ReleaseMessageKeyGenerator.messageToList(releaseMessage);
-        if (CollectionUtils.isEmpty(keys)) {
-          return null;
-        }
-        return keys.get(2);
-      };
-
   private void logWatchedKeys(Set<String> watchedKeys, String eventName) {
     for (String watchedKey : watchedKeys) {
       Tracer.logEvent(eventName, watchedKey);
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.configservice.service.LongPollingAdmissionService;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil.WatchKeys;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry.Subscription;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Streams the notifications of all the namespaces of a client on one server-sent events
+ * connection.
+ * <p>
+ * The request is the same as {@link NotificationControllerV2}, but the client subscribes once and
+ * receives a {@code notification} event whenever any of its namespaces changes, and a
+ * {@code heartbeat} event every {@link BizConfig#notificationStreamHeartbeatIntervalInMilli()}, so
+ * the per connection setup is done once instead of once per change or timeout. The stream is
+ * closed after {@link BizConfig#notificationStreamTimeoutInMilli()}, and the client connects again
+ * with the latest notification ids it received.
+ * </p>
+ * <p>
+ * The events are written by a bounded pool of send threads, and a stream which has not written an
+ * event within a heartbeat interval is closed, so that slow clients do not hold up the others.
+ * </p>
+ */
+@RestController
+@RequestMapping("/notifications/v3")
+public class NotificationControllerV3 implements ReleaseMessageListener {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV3.class);
+  private static final int SEND_THREADS =
+      Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+  private final WatchKeyRegistry<NotificationStreamWrapper> streams = new WatchKeyRegistry<>();
+
+  private final WatchKeysUtil watchKeysUtil;
+  private final ReleaseMessageServiceWithCache releaseMessageService;
+  private final EntityManagerUtil entityManagerUtil;
+  private final NamespaceUtil namespaceUtil;
+  private final Gson gson;
+  private final BizConfig bizConfig;
+  private final LongPollingAdmissionService longPollingAdmissionService;
+  private final ScheduledExecutorService heartbeatExecutorService;
+  private final Executor sendExecutor;
+  private volatile boolean draining;
+
+  @Autowired
+  public NotificationControllerV3(final WatchKeysUtil watchKeysUtil,
+      final ReleaseMessageServiceWithCache releaseMessageService,
+      final EntityManagerUtil entityManagerUtil, final NamespaceUtil namespaceUtil, final Gson gson,
+      final BizConfig bizConfig, final LongPollingAdmissionService longPollingAdmissionService) {
+    // each stream queues at most one send task, so the queue is bounded by the open streams
+    this(watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig,
+        longPollingAdmissionService, new ThreadPoolExecutor(SEND_THREADS, SEND_THREADS, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            ApolloThreadFactory.create("NotificationControllerV3-send", true)));
+  }
+
+  NotificationControllerV3(final WatchKeysUtil watchKeysUtil,
+      final ReleaseMessageServiceWithCache releaseMessageService,
+      final EntityManagerUtil entityManagerUtil, final NamespaceUtil namespaceUtil, final Gson gson,
+      final BizConfig bizConfig, final LongPollingAdmissionService longPollingAdmissionService,
+      final Executor sendExecutor) {
+    this.watchKeysUtil = watchKeysUtil;
+    this.releaseMessageService = releaseMessageService;
+    this.entityManagerUtil = entityManagerUtil;
+    this.namespaceUtil = namespaceUtil;
+    this.gson = gson;
+    this.bizConfig = bizConfig;
+    this.longPollingAdmissionService = longPollingAdmissionService;
+    this.sendExecutor = sendExecutor;
+    this.heartbeatExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("NotificationControllerV3", true));
+    scheduleHeartbeat();
+  }
+
+  @GetMapping
+  public ResponseEntity<SseEmitter> streamNotifications(
+      @RequestParam(value = "appId") String appId, @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "notifications") String notificationsAsString,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp) {
+    Map<String, ApolloConfigNotification> filteredNotifications =
+        NotificationAssembler.parseNotifications(gson, namespaceUtil, appId, notificationsAsString);
+
+    if (draining) {
+      Tracer.logEvent("Apollo.NotificationStream.Draining", appId);
+      return assembleRetryLaterResponse();
+    }
+
+    // a stream costs a long polling slot, so they share the admission rate
+    if (!longPollingAdmissionService.tryAdmit()) {
+      Tracer.logEvent("Apollo.NotificationStream.Rejected", appId);
+      return assembleRetryLaterResponse();
+    }
+
+    Set<String> namespaces = Sets.newHashSetWithExpectedSize(filteredNotifications.size());
+    Map<String, Long> clientSideNotifications =
+        Maps.newHashMapWithExpectedSize(filteredNotifications.size());
+    for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications
+        .entrySet()) {
+      namespaces.add(notificationEntry.getKey());
+      clientSideNotifications.put(notificationEntry.getKey(),
+          notificationEntry.getValue().getNotificationId());
+    }
+
+    NotificationStreamWrapper stream = new NotificationStreamWrapper(
+        bizConfig.notificationStreamTimeoutInMilli(), clientSideNotifications, sendExecutor);
+    for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications
+        .entrySet()) {
+      String originalNamespace = notificationEntry.getValue().getNamespaceName();
+      if (!Objects.equals(originalNamespace, notificationEntry.getKey())) {
+        stream.recordNamespaceNameNormalizedResult(originalNamespace, notificationEntry.getKey());
+      }
+    }
+
+    WatchKeys allWatchKeys =
+        watchKeysUtil.findAllWatchKeys(appId, cluster, namespaces, dataCenter);
+    Multimap<String, String> watchedKeysMap = allWatchKeys.getWatchKeysMap();
+    Set<String> watchedKeys = allWatchKeys.getAllWatchKeys();
+
+    // register before the check, so that no release in between is missed
+    Subscription subscription = streams.register(watchedKeys, stream);
+    // the drainer might have taken the open streams before this one is registered
+    if (draining) {
+      subscription.unregister();
+      Tracer.logEvent("Apollo.NotificationStream.Draining", appId);
+      return assembleRetryLaterResponse();
+    }
+    stream.onTimeout(stream::complete);
+    stream.onCompletion(subscription::unregister);
+
+    Tracer.logEvent("Apollo.NotificationStream.Opened", appId);
+    logger.debug("Streaming {} from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
+        watchedKeys, appId, cluster, namespaces, dataCenter);
+
+    List<ReleaseMessage> latestReleaseMessages =
+        releaseMessageService.findLatestReleaseMessagesGroupByMessages(watchedKeys);
+
+    // the request is async, so close the entity manager now instead of holding the db connection
+    entityManagerUtil.closeEntityManager();
+
+    List<ApolloConfigNotification> newNotifications =
+        NotificationAssembler.getApolloConfigNotifications(namespaces, clientSideNotifications,
+            watchedKeysMap, latestReleaseMessages);
+
+    // the events sent before the response is committed are buffered by the emitter
+    if (!CollectionUtils.isEmpty(newNotifications)) {
+      stream.send(newNotifications);
+    }
+
+    return ResponseEntity.ok()
+        // tell the reverse proxies not to buffer the events
+        .header("X-Accel-Buffering", "no")
+        .body(stream.getEmitter());
+  }
+
+  /**
+   * Stop accepting notification streams, the new requests are told to retry later
+   *
+   * @return the notification streams still open
+   */
+  public List<NotificationStreamWrapper> stopStreaming() {
+    draining = true;
+    return streams.values();
+  }
+
+  private ResponseEntity<SseEmitter> assembleRetryLaterResponse() {
+    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .header(HttpHeaders.RETRY_AFTER,
+            String.valueOf(longPollingAdmissionService.assembleRetryAfterInSeconds()))
+        .build();
+  }
+
+  @Override
+  public void handleMessage(ReleaseMessage message, String channel) {
+    logger.info("message received - channel: {}, message: {}", channel, message);
+
+    String content = message.getMessage();
+    Tracer.logEvent("Apollo.NotificationStream.Messages", content);
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(content)) {
+      return;
+    }
+
+    String changedNamespace = NotificationAssembler.retrieveNamespaceFromReleaseMessage(content);
+
+    if (Strings.isNullOrEmpty(changedNamespace)) {
+      logger.error("message format invalid - {}", content);
+      return;
+    }
+
+    List<NotificationStreamWrapper> subscribers = streams.get(content);
+    if (subscribers.isEmpty()) {
+      return;
+    }
+
+    ApolloConfigNotification configNotification =
+        new ApolloConfigNotification(changedNamespace, message.getId());
+    configNotification.addMessage(content, message.getId());
+    List<ApolloConfigNotification> notifications = Lists.newArrayList(configNotification);
+
+    logger.debug("Notify {} streams for key {}", subscribers.size(), content);
+
+    // the streams are not completed, so there is no reconnect storm to spread out, and the events
+    // are only queued here, so that a slow client does not block the release message scanner
+    for (NotificationStreamWrapper stream : subscribers) {
+      stream.send(notifications);
+    }
+  }
+
+  private void scheduleHeartbeat() {
+    long heartbeatIntervalInMilli = bizConfig.notificationStreamHeartbeatIntervalInMilli();
+    heartbeatExecutorService.schedule(() -> {
+      try {
+        // a stream which could not write an event within a heartbeat interval falls behind
+        for (NotificationStreamWrapper stream : streams.values()) {
+          stream.sendHeartbeat(heartbeatIntervalInMilli);
+        }
+      } catch (Throwable ex) {
+        logger.error("Send notification stream heartbeat failed", ex);
+      } finally {
+        // the interval is read every time, so that it could be changed at runtime
+        scheduleHeartbeat();
+      }
+    }, heartbeatIntervalInMilli, TimeUnit.MILLISECONDS);
+  }
+}
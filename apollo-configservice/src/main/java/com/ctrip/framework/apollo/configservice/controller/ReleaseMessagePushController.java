@@ -0,0 +1,65 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives the release message ids pushed by the admin services, the messages are still loaded
+ * from the database, so the push only triggers an early scan.
+ * <p>
+ * Only the admin services are allowed to push, they present one of the admin service access tokens
+ * the config services read from the same database.
+ * </p>
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessagePushController {
+
+  private final BizConfig bizConfig;
+  private final ReleaseMessageScanner releaseMessageScanner;
+
+  public ReleaseMessagePushController(final BizConfig bizConfig,
+      final ReleaseMessageScanner releaseMessageScanner) {
+    this.bizConfig = bizConfig;
+    this.releaseMessageScanner = releaseMessageScanner;
+  }
+
+  @PostMapping("/push")
+  public ResponseEntity<Void> onMessagePushed(@RequestParam("id") long id,
+      @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String accessToken) {
+    if (!bizConfig.isReleaseMessagePushEnabled()) {
+      return ResponseEntity.ok().build();
+    }
+    if (accessToken == null || !bizConfig.adminServiceAccessTokenList().contains(accessToken)) {
+      Tracer.logEvent("Apollo.ReleaseMessage.PushRejected", String.valueOf(id));
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    releaseMessageScanner.onMessagePushed(id);
+    return ResponseEntity.ok().build();
+  }
+}
@@ -25,7 +25,7 @@ import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.net.HttpHeaders;
 import java.io.IOException;
 import java.util.List;
-import java.util.Objects;
+import javax.crypto.spec.SecretKeySpec;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
@@ -70,16 +70,16 @@ public class ClientAuthenticationFilter implements Filter {
       return;
     }
 
-    List<String> availableSecrets = accessKeyUtil.findAvailableSecret(appId);
-    if (!CollectionUtils.isEmpty(availableSecrets)) {
-      if (!doCheck(request, response, appId, availableSecrets, false)) {
+    List<SecretKeySpec> availableSecretKeys = accessKeyUtil.findAvailableSecretKeys(appId);
+    if (!CollectionUtils.isEmpty(availableSecretKeys)) {
+      if (!doCheck(request, response, appId, availableSecretKeys, false)) {
         return;
       }
     } else {
       // pre-check for observable secrets
-      List<String> observableSecrets = accessKeyUtil.findObservableSecrets(appId);
-      if (!CollectionUtils.isEmpty(observableSecrets)) {
-        doCheck(request, response, appId, observableSecrets, true);
+      List<SecretKeySpec> observableSecretKeys = accessKeyUtil.findObservableSecretKeys(appId);
+      if (!CollectionUtils.isEmpty(observableSecretKeys)) {
+        doCheck(request, response, appId, observableSecretKeys, true);
       }
     }
 
@@ -93,7 +93,7 @@ public class ClientAuthenticationFilter implements Filter {
    * @return true if authentication checks is successful, false otherwise
    */
   private boolean doCheck(HttpServletRequest req, HttpServletResponse resp, String appId,
-      List<String> secrets, boolean preCheck) throws IOException {
+      List<SecretKeySpec> secretKeys, boolean preCheck) throws IOException {
 
     String timestamp = req.getHeader(Signature.HTTP_HEADER_TIMESTAMP);
     String authorization = req.getHeader(HttpHeaders.AUTHORIZATION);
@@ -113,7 +113,7 @@ public class ClientAuthenticationFilter implements Filter {
     }
 
     // check signature
-    if (!checkAuthorization(authorization, secrets, timestamp, req.getRequestURI(),
+    if (!checkAuthorization(authorization, secretKeys, timestamp, req.getRequestURI(),
         req.getQueryString())) {
       if (preCheck) {
         preCheckInvalidLogging(String.format(
@@ -148,7 +148,7 @@ public class ClientAuthenticationFilter implements Filter {
     return Math.abs(x) < authTimeDiffToleranceInMillis;
   }
 
-  private boolean checkAuthorization(String authorization, List<String> availableSecrets,
+  private boolean checkAuthorization(String authorization, List<SecretKeySpec> secretKeys,
       String timestamp, String path, String query) {
 
     String signature = null;
@@ -159,13 +159,7 @@ public class ClientAuthenticationFilter implements Filter {
       }
     }
 
-    for (String secret : availableSecrets) {
-      String availableSignature = accessKeyUtil.buildSignature(path, query, timestamp, secret);
-      if (Objects.equals(signature, availableSignature)) {
-        return true;
-      }
-    }
-    return false;
+    return accessKeyUtil.verifySignature(signature, path, query, timestamp, secretKeys);
   }
 
   protected void preCheckInvalidLogging(String message) {
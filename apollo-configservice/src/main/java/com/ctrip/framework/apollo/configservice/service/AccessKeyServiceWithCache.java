@@ -20,26 +20,31 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.AccessKey;
 import com.ctrip.framework.apollo.biz.repository.AccessKeyRepository;
 import com.ctrip.framework.apollo.common.constants.AccessKeyMode;
+import com.ctrip.framework.apollo.configservice.util.AccessKeyUtil;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.MultimapBuilder.ListMultimapBuilder;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import javax.crypto.spec.SecretKeySpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
@@ -48,6 +53,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 /**
+ * Caches the access keys of all the apps.
+ * <p>
+ * The scan and rebuild thread keeps the access keys by id, and publishes a new read only snapshot
+ * of the enabled secrets of each app whenever they change, so the request threads read the secrets
+ * without any lock or copy.
+ * </p>
+ *
  * @author nisiyong
  */
 @Service
@@ -57,6 +69,7 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
 
   private final AccessKeyRepository accessKeyRepository;
   private final BizConfig bizConfig;
+  private final Timer snapshotBuildTimer;
 
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
@@ -65,15 +78,30 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
   private ScheduledExecutorService scheduledExecutorService;
   private Date lastTimeScanned;
 
-  private ListMultimap<String, AccessKey> accessKeyCache;
+  // only accessed by the scan and rebuild thread
   private ConcurrentMap<Long, AccessKey> accessKeyIdCache;
+  // app id (case insensitive) -> the enabled secrets of the app
+  private volatile ImmutableSortedMap<String, AppSecrets> appSecretsSnapshot;
+  private volatile int snapshotSecretCount;
 
   public AccessKeyServiceWithCache(final AccessKeyRepository accessKeyRepository,
-      final BizConfig bizConfig) {
+      final BizConfig bizConfig, final MeterRegistry meterRegistry) {
     this.accessKeyRepository = accessKeyRepository;
     this.bizConfig = bizConfig;
 
     initialize();
+
+    snapshotBuildTimer = Timer.builder("access_key_cache.snapshot.build")
+        .description("The time to build the access key secrets snapshot")
+        .register(meterRegistry);
+    Gauge.builder("access_key_cache.snapshot.apps", this,
+            service -> service.appSecretsSnapshot.size())
+        .description("The number of apps in the access key secrets snapshot")
+        .register(meterRegistry);
+    Gauge.builder("access_key_cache.snapshot.secrets", this,
+            service -> service.snapshotSecretCount)
+        .description("The number of enabled secrets in the access key secrets snapshot")
+        .register(meterRegistry);
   }
 
   private void initialize() {
@@ -81,28 +109,29 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
         ApolloThreadFactory.create("AccessKeyServiceWithCache", true));
     lastTimeScanned = new Date(0L);
 
-    ListMultimap<String, AccessKey> multimap =
-        ListMultimapBuilder.treeKeys(String.CASE_INSENSITIVE_ORDER).arrayListValues().build();
-    accessKeyCache = Multimaps.synchronizedListMultimap(multimap);
     accessKeyIdCache = Maps.newConcurrentMap();
+    appSecretsSnapshot = ImmutableSortedMap.orderedBy(String.CASE_INSENSITIVE_ORDER).build();
   }
 
   public List<String> getAvailableSecrets(String appId) {
-    return getSecrets(appId, key -> key.isEnabled() && key.getMode() == AccessKeyMode.FILTER);
+    return getAppSecrets(appId).getAvailableSecrets();
   }
 
   public List<String> getObservableSecrets(String appId) {
-    return getSecrets(appId, key -> key.isEnabled() && key.getMode() == AccessKeyMode.OBSERVER);
+    return getAppSecrets(appId).getObservableSecrets();
   }
 
-  public List<String> getSecrets(String appId, Predicate<AccessKey> filter) {
-    List<AccessKey> accessKeys = accessKeyCache.get(appId);
-    if (CollectionUtils.isEmpty(accessKeys)) {
-      return Collections.emptyList();
-    }
+  public List<SecretKeySpec> getAvailableSecretKeys(String appId) {
+    return getAppSecrets(appId).getAvailableSecretKeys();
+  }
+
+  public List<SecretKeySpec> getObservableSecretKeys(String appId) {
+    return getAppSecrets(appId).getObservableSecretKeys();
+  }
 
-    return accessKeys.stream().filter(filter).map(AccessKey::getSecret)
-        .collect(Collectors.toList());
+  private AppSecrets getAppSecrets(String appId) {
+    AppSecrets appSecrets = appSecretsSnapshot.get(appId);
+    return appSecrets == null ? AppSecrets.EMPTY : appSecrets;
   }
 
   @Override
@@ -154,6 +183,7 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
 
   private void loadNewAndUpdatedAccessKeys() {
     boolean hasMore = true;
+    boolean changed = false;
     Date currentTime = new Date();
 
     if (!lastTimeScanned.equals(new Date(0L))) {
@@ -168,7 +198,7 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
               lastTimeScanned, currentTime);
 
       int scanned = accessKeys.size();
-      mergeAccessKeys(accessKeys);
+      changed |= mergeAccessKeys(accessKeys);
       if (scanned > 0) {
         logger.info("Loaded {} new/updated Accesskey from startTime {}", scanned, lastTimeScanned);
       }
@@ -181,7 +211,7 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
         lastTimeScanned = accessKeys.get(scanned - 1).getDataChangeLastModifiedTime();
         List<AccessKey> lastModifiedTimeAccessKeys =
             accessKeyRepository.findByDataChangeLastModifiedTime(lastTimeScanned);
-        mergeAccessKeys(lastModifiedTimeAccessKeys);
+        changed |= mergeAccessKeys(lastModifiedTimeAccessKeys);
         logger.info("Loaded {} new/updated Accesskey at lastModifiedTime {}", scanned,
             lastTimeScanned);
         lastTimeScanned = new Date(lastTimeScanned.getTime() + 1000);
@@ -189,21 +219,31 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
         lastTimeScanned = currentTime;
       }
     }
+
+    if (changed) {
+      publishAppSecretsSnapshot();
+    }
   }
 
-  private void mergeAccessKeys(List<AccessKey> accessKeys) {
+  /**
+   * @return true if any access key is added or updated
+   */
+  private boolean mergeAccessKeys(List<AccessKey> accessKeys) {
+    boolean changed = false;
     for (AccessKey accessKey : accessKeys) {
       AccessKey thatInCache = accessKeyIdCache.get(accessKey.getId());
+      if (thatInCache != null && accessKey.getDataChangeLastModifiedTime()
+          .compareTo(thatInCache.getDataChangeLastModifiedTime()) < 0) {
+        continue;
+      }
 
       accessKeyIdCache.put(accessKey.getId(), accessKey);
-      accessKeyCache.put(accessKey.getAppId(), accessKey);
-
-      if (thatInCache != null && accessKey.getDataChangeLastModifiedTime()
-          .compareTo(thatInCache.getDataChangeLastModifiedTime()) >= 0) {
-        accessKeyCache.remove(accessKey.getAppId(), thatInCache);
+      changed = true;
+      if (thatInCache != null) {
         logger.info("Found Accesskey changes, old: {}, new: {}", thatInCache, accessKey);
       }
     }
+    return changed;
   }
 
   private void deleteAccessKeyCache() {
@@ -212,6 +252,7 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
       return;
     }
 
+    boolean changed = false;
     List<List<Long>> partitionIds = Lists.partition(ids, 500);
     for (List<Long> toRebuildIds : partitionIds) {
       Iterable<AccessKey> accessKeys = accessKeyRepository.findAllById(toRebuildIds);
@@ -223,23 +264,55 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
 
       // handle deleted
       SetView<Long> deletedIds = Sets.difference(Sets.newHashSet(toRebuildIds), foundIds);
-      handleDeletedAccessKeys(deletedIds);
+      changed |= handleDeletedAccessKeys(deletedIds);
     }
-  }
 
-  private void handleDeletedAccessKeys(Set<Long> deletedIds) {
-    if (CollectionUtils.isEmpty(deletedIds)) {
-      return;
+    if (changed) {
+      publishAppSecretsSnapshot();
     }
+  }
+
+  /**
+   * @return true if any access key is removed
+   */
+  private boolean handleDeletedAccessKeys(Set<Long> deletedIds) {
+    boolean changed = false;
     for (Long deletedId : deletedIds) {
       AccessKey deleted = accessKeyIdCache.remove(deletedId);
       if (deleted == null) {
         continue;
       }
 
-      accessKeyCache.remove(deleted.getAppId(), deleted);
+      changed = true;
       logger.info("Found AccessKey deleted, {}", deleted);
     }
+    return changed;
+  }
+
+  private void publishAppSecretsSnapshot() {
+    long start = System.nanoTime();
+
+    Map<String, List<AccessKey>> accessKeysByApp = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (AccessKey accessKey : accessKeyIdCache.values()) {
+      accessKeysByApp.computeIfAbsent(accessKey.getAppId(), appId -> Lists.newArrayList())
+          .add(accessKey);
+    }
+
+    ImmutableSortedMap.Builder<String, AppSecrets> snapshotBuilder =
+        ImmutableSortedMap.orderedBy(String.CASE_INSENSITIVE_ORDER);
+    int secretCount = 0;
+    for (Map.Entry<String, List<AccessKey>> entry : accessKeysByApp.entrySet()) {
+      AppSecrets appSecrets = new AppSecrets(entry.getValue());
+      if (appSecrets.isEmpty()) {
+        continue;
+      }
+      snapshotBuilder.put(entry.getKey(), appSecrets);
+      secretCount += appSecrets.size();
+    }
+
+    appSecretsSnapshot = snapshotBuilder.build();
+    snapshotSecretCount = secretCount;
+    snapshotBuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
   }
 
   private void populateDataBaseInterval() {
@@ -248,4 +321,64 @@ public class AccessKeyServiceWithCache implements InitializingBean, DisposableBe
     rebuildInterval = bizConfig.accessKeyCacheRebuildInterval();
     rebuildIntervalTimeUnit = bizConfig.accessKeyCacheRebuildIntervalTimeUnit();
   }
+
+  /**
+   * The read only enabled secrets of an app, with their secret keys built in advance
+   */
+  private static final class AppSecrets {
+    private static final AppSecrets EMPTY = new AppSecrets(Collections.emptyList());
+
+    private final List<String> availableSecrets;
+    private final List<SecretKeySpec> availableSecretKeys;
+    private final List<String> observableSecrets;
+    private final List<SecretKeySpec> observableSecretKeys;
+
+    private AppSecrets(Collection<AccessKey> accessKeys) {
+      ImmutableList.Builder<String> availableSecretsBuilder = ImmutableList.builder();
+      ImmutableList.Builder<String> observableSecretsBuilder = ImmutableList.builder();
+      for (AccessKey accessKey : accessKeys) {
+        if (!accessKey.isEnabled()) {
+          continue;
+        }
+        if (accessKey.getMode() == AccessKeyMode.FILTER) {
+          availableSecretsBuilder.add(accessKey.getSecret());
+        } else if (accessKey.getMode() == AccessKeyMode.OBSERVER) {
+          observableSecretsBuilder.add(accessKey.getSecret());
+        }
+      }
+      this.availableSecrets = availableSecretsBuilder.build();
+      this.availableSecretKeys = toSecretKeys(availableSecrets);
+      this.observableSecrets = observableSecretsBuilder.build();
+      this.observableSecretKeys = toSecretKeys(observableSecrets);
+    }
+
+    private static List<SecretKeySpec> toSecretKeys(List<String> secrets) {
+      return secrets.stream().map(AccessKeyUtil::toSecretKey)
+          .collect(ImmutableList.toImmutableList());
+    }
+
+    List<String> getAvailableSecrets() {
+      return availableSecrets;
+    }
+
+    List<SecretKeySpec> getAvailableSecretKeys() {
+      return availableSecretKeys;
+    }
+
+    List<String> getObservableSecrets() {
+      return observableSecrets;
+    }
+
+    List<SecretKeySpec> getObservableSecretKeys() {
+      return observableSecretKeys;
+    }
+
+    int size() {
+      return availableSecrets.size() + observableSecrets.size();
+    }
+
+    boolean isEmpty() {
+      return size() == 0;
+    }
+  }
 }
@@ -42,6 +42,7 @@ import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -52,6 +53,8 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
   private static final Logger logger = LoggerFactory.getLogger(AppNamespaceServiceWithCache.class);
   private static final Joiner STRING_JOINER =
       Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).skipNulls();
+  // look back a while for the changes committed late or stamped by a slower clock
+  private static final long CHANGE_SCAN_LOOKBACK_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
   private final AppNamespaceRepository appNamespaceRepository;
   private final BizConfig bizConfig;
 
@@ -59,8 +62,12 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
   private TimeUnit scanIntervalTimeUnit;
   private int rebuildInterval;
   private TimeUnit rebuildIntervalTimeUnit;
+  private boolean incrementalRefreshEnabled;
+  private int fullRebuildInterval;
+  private TimeUnit fullRebuildIntervalTimeUnit;
   private ScheduledExecutorService scheduledExecutorService;
   private long maxIdScanned;
+  private Date lastTimeScanned;
 
   // store namespaceName -> AppNamespace
   private CaseInsensitiveMapWrapper<AppNamespace> publicAppNamespaceCache;
@@ -71,6 +78,9 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
   // store id -> AppNamespace
   private Map<Long, AppNamespace> appNamespaceIdCache;
 
+  // increased after every change of the cached app namespaces
+  private final AtomicLong version = new AtomicLong();
+
   public AppNamespaceServiceWithCache(final AppNamespaceRepository appNamespaceRepository,
       final BizConfig bizConfig) {
     this.appNamespaceRepository = appNamespaceRepository;
@@ -80,9 +90,11 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
 
   private void initialize() {
     maxIdScanned = 0;
+    lastTimeScanned = new Date();
     publicAppNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
     appNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
     appNamespaceIdCache = Maps.newConcurrentMap();
+    version.incrementAndGet();
     scheduledExecutorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("AppNamespaceServiceWithCache", true));
   }
@@ -129,23 +141,28 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
     return result;
   }
 
+  /**
+   * @return the version of the cached app namespaces, which changes whenever they change, so that
+   * the results derived from them could tell whether they are outdated
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
     scanNewAppNamespaces(); // block the startup process until load finished
-    scheduledExecutorService.scheduleAtFixedRate(() -> {
-      Transaction transaction =
-          Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache", "rebuildCache");
-      try {
-        this.updateAndDeleteCache();
-        transaction.setStatus(Transaction.SUCCESS);
-      } catch (Throwable ex) {
-        transaction.setStatus(ex);
-        logger.error("Rebuild cache failed", ex);
-      } finally {
-        transaction.complete();
-      }
-    }, rebuildInterval, rebuildInterval, rebuildIntervalTimeUnit);
+    if (incrementalRefreshEnabled) {
+      // only refresh the changed ones, and sweep all of them once in a while just in case
+      scheduledExecutorService.scheduleAtFixedRate(this::refreshCache, rebuildInterval,
+          rebuildInterval, rebuildIntervalTimeUnit);
+      scheduledExecutorService.scheduleAtFixedRate(this::rebuildCache, fullRebuildInterval,
+          fullRebuildInterval, fullRebuildIntervalTimeUnit);
+    } else {
+      scheduledExecutorService.scheduleAtFixedRate(this::rebuildCache, rebuildInterval,
+          rebuildInterval, rebuildIntervalTimeUnit);
+    }
     scheduledExecutorService.scheduleWithFixedDelay(this::scanNewAppNamespaces, scanInterval,
         scanInterval, scanIntervalTimeUnit);
   }
@@ -171,6 +188,34 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
     }
   }
 
+  private void rebuildCache() {
+    Transaction transaction =
+        Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache", "rebuildCache");
+    try {
+      this.updateAndDeleteCache();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Rebuild cache failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private void refreshCache() {
+    Transaction transaction =
+        Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache", "refreshCache");
+    try {
+      this.loadChangedAppNamespaces();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Refresh cache failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
   // for those new app namespaces
   private void loadNewAppNamespaces() {
     boolean hasMore = true;
@@ -197,9 +242,48 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
         publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
       }
     }
+    version.incrementAndGet();
   }
 
-  // for those updated or deleted app namespaces
+  // for those updated or deleted app namespaces since the last scan
+  private void loadChangedAppNamespaces() {
+    Date endTime = new Date();
+    Date startTime = new Date(lastTimeScanned.getTime() - CHANGE_SCAN_LOOKBACK_IN_MILLI);
+    long startId = 0;
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      // current batch is 500
+      List<AppNamespace> appNamespaces =
+          appNamespaceRepository.findFirst500ChangedIncludingDeleted(startTime, startId, endTime);
+      if (CollectionUtils.isEmpty(appNamespaces)) {
+        break;
+      }
+      mergeChangedAppNamespaces(appNamespaces);
+      int scanned = appNamespaces.size();
+      AppNamespace lastScanned = appNamespaces.get(scanned - 1);
+      startTime = lastScanned.getDataChangeLastModifiedTime();
+      startId = lastScanned.getId();
+      hasMore = scanned == 500;
+    }
+    lastTimeScanned = endTime;
+  }
+
+  private void mergeChangedAppNamespaces(List<AppNamespace> appNamespaces) {
+    List<AppNamespace> updated = Lists.newArrayList();
+    Set<Long> deletedIds = Sets.newHashSet();
+    for (AppNamespace appNamespace : appNamespaces) {
+      if (appNamespace.isDeleted()) {
+        deletedIds.add(appNamespace.getId());
+      } else if (appNamespaceIdCache.containsKey(appNamespace.getId())) {
+        updated.add(appNamespace);
+      }
+      // the new ones are left to loadNewAppNamespaces
+    }
+    handleUpdatedAppNamespaces(updated);
+    handleDeletedAppNamespaces(deletedIds);
+  }
+
+  // for all the cached app namespaces, which are updated or deleted
   private void updateAndDeleteCache() {
     List<Long> ids = appNamespaceIdCache.keySet().stream().sorted().collect(Collectors.toList());
     if (CollectionUtils.isEmpty(ids)) {
@@ -250,6 +334,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
           // just in case isPublic changes
           publicAppNamespaceCache.remove(thatInCache.getName());
         }
+        version.incrementAndGet();
         logger.info("Found AppNamespace changes, old: {}, new: {}", thatInCache, appNamespace);
       }
     }
@@ -281,6 +366,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
           publicAppNamespaceCache.remove(deleted.getName());
         }
       }
+      version.incrementAndGet();
       logger.info("Found AppNamespace deleted, {}", deleted);
     }
   }
@@ -294,6 +380,11 @@ public class AppNamespaceServiceWithCache implements InitializingBean, Disposabl
     scanIntervalTimeUnit = bizConfig.appNamespaceCacheScanIntervalTimeUnit();
     rebuildInterval = bizConfig.appNamespaceCacheRebuildInterval();
     rebuildIntervalTimeUnit = bizConfig.appNamespaceCacheRebuildIntervalTimeUnit();
+    incrementalRefreshEnabled = bizConfig.isAppNamespaceCacheIncrementalRefreshEnabled();
+    if (incrementalRefreshEnabled) {
+      fullRebuildInterval = bizConfig.appNamespaceCacheFullRebuildInterval();
+      fullRebuildIntervalTimeUnit = bizConfig.appNamespaceCacheFullRebuildIntervalTimeUnit();
+    }
   }
 
   // only for test use
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cache of the serialized /configs full sync responses.
+ * <p>
+ * The merged release key is part of the cache key, so a cached response is never stale, the
+ * release messages are only used to reclaim the memory of the responses which will not be
+ * requested again.
+ * </p>
+ */
+@Service
+public class ConfigResponseCache implements ReleaseMessageListener {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigResponseCache.class);
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;// 1 hour
+
+  private final BizConfig bizConfig;
+  private final MeterRegistry meterRegistry;
+  private final ConfigResponseCompressor configResponseCompressor;
+  private final boolean enabled;
+
+  private Cache<String, ConfigResponse> responseCache;
+
+  // store release message key -> response cache keys
+  private final ConcurrentMap<String, Set<String>> watchedKey2CacheKeys =
+      Maps.newConcurrentMap();
+
+  public ConfigResponseCache(final BizConfig bizConfig, final MeterRegistry meterRegistry,
+      final ConfigResponseCompressor configResponseCompressor) {
+    this.bizConfig = bizConfig;
+    this.meterRegistry = meterRegistry;
+    this.configResponseCompressor = configResponseCompressor;
+    this.enabled = bizConfig.isConfigServiceResponseCacheEnabled();
+    if (enabled) {
+      buildResponseCache();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Find the cached response
+   *
+   * @param appId the client's app id
+   * @param clusterName the resolved cluster name
+   * @param namespace the namespace name returned to the client
+   * @param mergedReleaseKey the merged release key
+   * @return the cached response, or null if not cached
+   */
+  public ConfigResponse get(String appId, String clusterName, String namespace,
+      String mergedReleaseKey) {
+    if (!enabled) {
+      return null;
+    }
+    return responseCache.getIfPresent(assembleKey(appId, clusterName, namespace,
+        mergedReleaseKey));
+  }
+
+  /**
+   * Cache the serialized response
+   *
+   * @param releases the releases merged into the response
+   * @param body the serialized response in UTF-8
+   * @return the cached response
+   */
+  public ConfigResponse put(String appId, String clusterName, String namespace,
+      String mergedReleaseKey, List<Release> releases, byte[] body) {
+    String[] watchedKeys = new String[releases.size()];
+    for (int i = 0; i < releases.size(); i++) {
+      Release release = releases.get(i);
+      watchedKeys[i] = ReleaseMessageKeyGenerator.generate(release.getAppId(),
+          release.getClusterName(), release.getNamespaceName());
+    }
+    ConfigResponse configResponse =
+        new ConfigResponse(body, configResponseCompressor.compress(namespace, body), watchedKeys);
+    if (!enabled) {
+      return configResponse;
+    }
+
+    String cacheKey = assembleKey(appId, clusterName, namespace, mergedReleaseKey);
+    for (String watchedKey : watchedKeys) {
+      watchedKey2CacheKeys.computeIfAbsent(watchedKey, key -> Sets.newConcurrentHashSet())
+          .add(cacheKey);
+    }
+    responseCache.put(cacheKey, configResponse);
+
+    return configResponse;
+  }
+
+  @Override
+  public void handleMessage(ReleaseMessage message, String channel) {
+    String content = message.getMessage();
+    if (!enabled || !Topics.APOLLO_RELEASE_TOPIC.equals(channel)
+        || Strings.isNullOrEmpty(content)) {
+      return;
+    }
+
+    Set<String> cacheKeys = watchedKey2CacheKeys.remove(content);
+    if (cacheKeys == null) {
+      return;
+    }
+
+    for (String cacheKey : cacheKeys) {
+      logger.debug("invalidate response cache key: {}", cacheKey);
+      responseCache.invalidate(cacheKey);
+    }
+  }
+
+  private void buildResponseCache() {
+    CacheBuilder<Object, Object> responseCacheBuilder = CacheBuilder.newBuilder()
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES);
+    if (bizConfig.isConfigServiceCacheStatsEnabled()) {
+      responseCacheBuilder.recordStats();
+    }
+    responseCache = responseCacheBuilder
+        .maximumWeight(bizConfig.configServiceResponseCacheMaxSizeInBytes())
+        .weigher((Weigher<String, ConfigResponse>) (key, value) -> value.getRetainedBytes())
+        .removalListener(notification -> {
+          String cacheKey = (String) notification.getKey();
+          ConfigResponse configResponse = (ConfigResponse) notification.getValue();
+          for (String watchedKey : configResponse.getWatchedKeys()) {
+            watchedKey2CacheKeys.computeIfPresent(watchedKey, (key, cacheKeys) -> {
+              cacheKeys.remove(cacheKey);
+              return cacheKeys.isEmpty() ? null : cacheKeys;
+            });
+          }
+        }).build();
+
+    if (bizConfig.isConfigServiceCacheStatsEnabled()) {
+      GuavaCacheMetrics.monitor(meterRegistry, responseCache, "config_response_cache");
+    }
+  }
+
+  private String assembleKey(String appId, String clusterName, String namespace,
+      String mergedReleaseKey) {
+    return STRING_JOINER.join(appId, clusterName, namespace, mergedReleaseKey);
+  }
+
+  public static class ConfigResponse {
+    private final byte[] body;
+    private final byte[] gzippedBody;
+    private final String[] watchedKeys;
+
+    public ConfigResponse(byte[] body, byte[] gzippedBody, String[] watchedKeys) {
+      this.body = body;
+      this.gzippedBody = gzippedBody;
+      this.watchedKeys = watchedKeys;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    /**
+     * @return the gzipped body, or null if the body is not worth compressing
+     */
+    public byte[] getGzippedBody() {
+      return gzippedBody;
+    }
+
+    String[] getWatchedKeys() {
+      return watchedKeys;
+    }
+
+    int getRetainedBytes() {
+      return body.length + (gzippedBody == null ? 0 : gzippedBody.length);
+    }
+  }
+}
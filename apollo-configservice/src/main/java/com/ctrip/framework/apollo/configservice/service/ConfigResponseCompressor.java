@@ -0,0 +1,104 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.stereotype.Service;
+
+/**
+ * Compresses the config responses which are kept in memory, so that each distinct body is
+ * compressed once and the gzipped bytes are served to all the clients accepting gzip.
+ * <p>
+ * When {@link BizConfig#isConfigServiceCacheStatsEnabled()} is true, the compressed sizes and the
+ * bytes saved are recorded per namespace name, which is normalized to lower case without the
+ * {@code .properties} suffix, as the clients might request the same namespace in different ways.
+ * </p>
+ */
+@Service
+public class ConfigResponseCompressor {
+  private static final String NAMESPACE_TAG = "namespace";
+  private static final String PROPERTIES_SUFFIX = ".properties";
+
+  private final MeterRegistry meterRegistry;
+  private final boolean statsEnabled;
+  // normalized namespace name -> meters, so the meters are not looked up on every response
+  private final ConcurrentMap<String, NamespaceMeters> namespaceMeters = Maps.newConcurrentMap();
+
+  public ConfigResponseCompressor(final BizConfig bizConfig, final MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    this.statsEnabled = bizConfig.isConfigServiceCacheStatsEnabled();
+  }
+
+  /**
+   * @param namespace the namespace name of the response
+   * @param body the response body to keep
+   * @return the gzipped body, or null if the body is not worth compressing
+   */
+  public byte[] compress(String namespace, byte[] body) {
+    byte[] gzippedBody = GzipUtil.gzipIfWorthwhile(body);
+    if (statsEnabled && gzippedBody != null) {
+      metersOf(namespace).gzipSize.record(gzippedBody.length);
+    }
+    return gzippedBody;
+  }
+
+  /**
+   * Record a gzipped body served instead of the original one
+   */
+  public void onGzippedBodyServed(String namespace, byte[] body, byte[] gzippedBody) {
+    if (!statsEnabled) {
+      return;
+    }
+    metersOf(namespace).gzipSaved.increment(body.length - gzippedBody.length);
+  }
+
+  private NamespaceMeters metersOf(String namespace) {
+    return namespaceMeters.computeIfAbsent(normalizeNamespace(namespace),
+        key -> new NamespaceMeters(meterRegistry, key));
+  }
+
+  private static String normalizeNamespace(String namespace) {
+    String normalizedNamespace = namespace.toLowerCase();
+    if (normalizedNamespace.endsWith(PROPERTIES_SUFFIX)) {
+      return normalizedNamespace.substring(0,
+          normalizedNamespace.length() - PROPERTIES_SUFFIX.length());
+    }
+    return normalizedNamespace;
+  }
+
+  private static class NamespaceMeters {
+    private final DistributionSummary gzipSize;
+    private final Counter gzipSaved;
+
+    NamespaceMeters(MeterRegistry meterRegistry, String namespace) {
+      gzipSize = DistributionSummary.builder("config_response.gzip.size")
+          .description("The size of the gzipped config responses")
+          .baseUnit("bytes").tag(NAMESPACE_TAG, namespace)
+          .register(meterRegistry);
+      gzipSaved = Counter.builder("config_response.gzip.saved")
+          .description("The bytes saved by serving the gzipped config responses")
+          .baseUnit("bytes").tag(NAMESPACE_TAG, namespace)
+          .register(meterRegistry);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Service;
+
+/**
+ * Spreads the long polling connections over time, so that the clients won't reconnect and time out
+ * in lockstep after a config service restart or a network blip.
+ * <ul>
+ *   <li>The timeout of each connection is randomly shortened by at most
+ *   {@link BizConfig#longPollingTimeoutJitterInMilli()}.</li>
+ *   <li>At most {@link BizConfig#longPollingAdmissionRate()} new connections are accepted per
+ *   second, the others are held for a random delay within
+ *   {@link BizConfig#longPollingAdmissionRetryWindowInSeconds()} before told nothing changed.</li>
+ * </ul>
+ */
+@Service
+public class LongPollingAdmissionService {
+  private final BizConfig bizConfig;
+  private final RateLimiter rateLimiter;
+  private final Counter acceptedCounter;
+  private final Counter rejectedCounter;
+  private final Counter timeoutCounter;
+
+  public LongPollingAdmissionService(final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.bizConfig = bizConfig;
+    this.rateLimiter = RateLimiter.create(Math.max(1, bizConfig.longPollingAdmissionRate()));
+    this.acceptedCounter = Counter.builder("long_polling.admission.accepted")
+        .description("The number of long polling connections accepted").register(meterRegistry);
+    this.rejectedCounter = Counter.builder("long_polling.admission.rejected")
+        .description("The number of long polling connections told to retry later")
+        .register(meterRegistry);
+    this.timeoutCounter = Counter.builder("long_polling.timeout")
+        .description("The number of long polling connections timed out without notification")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Try to accept a new long polling connection
+   *
+   * @return true if accepted, false if the client should retry later
+   */
+  public boolean tryAdmit() {
+    int rate = bizConfig.longPollingAdmissionRate();
+    if (rate <= 0) {
+      acceptedCounter.increment();
+      return true;
+    }
+    if (rateLimiter.getRate() != rate) {
+      rateLimiter.setRate(rate);
+    }
+    if (rateLimiter.tryAcquire()) {
+      acceptedCounter.increment();
+      return true;
+    }
+    rejectedCounter.increment();
+    return false;
+  }
+
+  /**
+   * @return the delay in seconds before the rejected client retries
+   */
+  public long assembleRetryAfterInSeconds() {
+    return 1 + ThreadLocalRandom.current()
+        .nextInt(bizConfig.longPollingAdmissionRetryWindowInSeconds());
+  }
+
+  /**
+   * @param maxDelayInMilli the upper bound of the delay
+   * @return the delay in milliseconds to hold the rejected client for, 0 to answer it at once
+   */
+  public long assembleRetryDelayInMilli(long maxDelayInMilli) {
+    long window = Math.min(
+        TimeUnit.SECONDS.toMillis(bizConfig.longPollingAdmissionRetryWindowInSeconds()),
+        maxDelayInMilli);
+    if (window <= 0) {
+      return 0;
+    }
+    return 1 + ThreadLocalRandom.current().nextLong(window);
+  }
+
+  /**
+   * @return the timeout of an accepted long polling connection
+   */
+  public long assembleTimeoutInMilli() {
+    long timeout = bizConfig.longPollingTimeoutInMilli();
+    // keep at least one second, so the jitter never turns long polling into busy polling
+    long jitter = Math.min(bizConfig.longPollingTimeoutJitterInMilli(), timeout - 1000);
+    if (jitter <= 0) {
+      return timeout;
+    }
+    return timeout - ThreadLocalRandom.current().nextLong(jitter + 1);
+  }
+
+  public void recordTimeout() {
+    timeoutCounter.increment();
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+/**
+ * Notifies the long polling clients of large fan-outs in the background.
+ * <p>
+ * Each release message key has at most one pending task, a newer message of the same key replaces
+ * the clients and notification of the pending task. The tasks are served in batches of
+ * {@link BizConfig#releaseMessageNotificationBatch()} clients by several workers, the task with the
+ * fewest remaining clients goes first, so a large fan-out of a popular public namespace won't delay
+ * the other releases. All workers share one token bucket which allows one batch per
+ * {@link BizConfig#releaseMessageNotificationBatchIntervalInMilli()}.
+ * </p>
+ */
+@Service
+public class NotificationFanOutScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutScheduler.class);
+
+  private final BizConfig bizConfig;
+  private final ConcurrentMap<String, FanOutTask> pendingTasks = Maps.newConcurrentMap();
+  private final PriorityBlockingQueue<FanOutTask> taskQueue = new PriorityBlockingQueue<>(11,
+      Comparator.<FanOutTask>comparingInt(task -> task.queuedRemaining)
+          .thenComparingLong(task -> task.sequence));
+  private final AtomicLong taskSequence = new AtomicLong();
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final RateLimiter rateLimiter;
+  private final Timer notifyLagTimer;
+  private final ExecutorService executorService;
+
+  public NotificationFanOutScheduler(final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.bizConfig = bizConfig;
+    this.rateLimiter = RateLimiter.create(calculatePermitsPerSecond());
+
+    Gauge.builder("release_message_notification.queue.depth", queueDepth, AtomicInteger::get)
+        .description("The number of long polling clients waiting to be notified")
+        .register(meterRegistry);
+    notifyLagTimer = Timer.builder("release_message_notification.lag")
+        .description("The time from receiving a release message to notifying the clients")
+        .register(meterRegistry);
+
+    int workers = bizConfig.releaseMessageNotificationWorkers();
+    executorService = Executors.newFixedThreadPool(workers,
+        ApolloThreadFactory.create("NotificationFanOutScheduler", true));
+    for (int i = 0; i < workers; i++) {
+      executorService.execute(this::dispatchTasks);
+    }
+  }
+
+  /**
+   * Schedule the notification of the clients watching the key
+   *
+   * @param key the release message
+   * @param namespaceName the changed namespace name
+   * @param notification the notification
+   * @param serializedNotificationResponse the serialized notification response
+   * @param results the clients to notify
+   */
+  public void schedule(String key, String namespaceName, ApolloConfigNotification notification,
+      ResponseEntity<String> serializedNotificationResponse, List<DeferredResultWrapper> results) {
+    pendingTasks.compute(key, (k, task) -> {
+      if (task == null) {
+        task = new FanOutTask(key, taskSequence.incrementAndGet());
+        task.reset(namespaceName, notification, serializedNotificationResponse, results);
+        queueDepth.addAndGet(results.size());
+        offer(task);
+        return task;
+      }
+      synchronized (task) {
+        // the clients still waiting are all in the new results, so just replace them
+        boolean queued = taskQueue.remove(task);
+        queueDepth.addAndGet(results.size() - task.remaining());
+        task.reset(namespaceName, notification, serializedNotificationResponse, results);
+        // the task being dispatched will be queued again by the worker
+        if (queued) {
+          offer(task);
+        }
+      }
+      return task;
+    });
+  }
+
+  @PreDestroy
+  void destroy() {
+    // the clients not notified yet will time out and poll again
+    executorService.shutdownNow();
+  }
+
+  private void dispatchTasks() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        dispatch(taskQueue.take());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable ex) {
+        logger.error("Notify long polling clients failed", ex);
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  private void dispatch(FanOutTask task) {
+    try {
+      FanOutBatch batch = task.poll(bizConfig.releaseMessageNotificationBatch());
+      queueDepth.addAndGet(-batch.results.size());
+      acquire(batch.results.size());
+
+      logger.debug("Async notify {} clients for key {}", batch.results.size(), task.key);
+      for (DeferredResultWrapper result : batch.results) {
+        result.setResult(batch.namespaceName, batch.notification,
+            batch.serializedNotificationResponse);
+      }
+      notifyLagTimer.record(System.nanoTime() - batch.receivedTimeInNanos, TimeUnit.NANOSECONDS);
+    } finally {
+      pendingTasks.computeIfPresent(task.key, (key, pendingTask) -> {
+        if (pendingTask != task) {
+          return pendingTask;
+        }
+        synchronized (task) {
+          if (task.remaining() > 0) {
+            offer(task);
+            return task;
+          }
+          return null;
+        }
+      });
+    }
+  }
+
+  /**
+   * Should be called with the task lock held, the priority is fixed while the task is queued, so
+   * that the queue never needs to lock the tasks
+   */
+  private void offer(FanOutTask task) {
+    task.queuedRemaining = task.remaining();
+    taskQueue.offer(task);
+  }
+
+  private void acquire(int permits) {
+    double permitsPerSecond = calculatePermitsPerSecond();
+    if (rateLimiter.getRate() != permitsPerSecond) {
+      rateLimiter.setRate(permitsPerSecond);
+    }
+    if (permits > 0) {
+      rateLimiter.acquire(permits);
+    }
+  }
+
+  private double calculatePermitsPerSecond() {
+    return bizConfig.releaseMessageNotificationBatch() * 1000d
+        / bizConfig.releaseMessageNotificationBatchIntervalInMilli();
+  }
+
+  int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  boolean isTerminated() {
+    return executorService.isTerminated();
+  }
+
+  private static class FanOutTask {
+    private final String key;
+    private final long sequence;
+    // the time when the clients of this task started waiting to be notified
+    private long receivedTimeInNanos;
+    private String namespaceName;
+    private ApolloConfigNotification notification;
+    private ResponseEntity<String> serializedNotificationResponse;
+    private List<DeferredResultWrapper> results;
+    private int cursor;
+    private volatile int queuedRemaining;
+
+    private FanOutTask(String key, long sequence) {
+      this.key = key;
+      this.sequence = sequence;
+      this.receivedTimeInNanos = System.nanoTime();
+    }
+
+    private synchronized void reset(String namespaceName, ApolloConfigNotification notification,
+        ResponseEntity<String> serializedNotificationResponse, List<DeferredResultWrapper> results) {
+      if (this.results != null && remaining() == 0) {
+        // all the previous clients are notified, the new ones start waiting now
+        this.receivedTimeInNanos = System.nanoTime();
+      }
+      this.namespaceName = namespaceName;
+      this.notification = notification;
+      this.serializedNotificationResponse = serializedNotificationResponse;
+      this.results = results;
+      this.cursor = 0;
+    }
+
+    private synchronized int remaining() {
+      return results.size() - cursor;
+    }
+
+    private synchronized FanOutBatch poll(int batchSize) {
+      int end = Math.min(results.size(), cursor + batchSize);
+      FanOutBatch batch = new FanOutBatch(namespaceName, notification,
+          serializedNotificationResponse, results.subList(cursor, end), receivedTimeInNanos);
+      cursor = end;
+      return batch;
+    }
+  }
+
+  private static class FanOutBatch {
+    private final String namespaceName;
+    private final ApolloConfigNotification notification;
+    private final ResponseEntity<String> serializedNotificationResponse;
+    private final List<DeferredResultWrapper> results;
+    private final long receivedTimeInNanos;
+
+    private FanOutBatch(String namespaceName, ApolloConfigNotification notification,
+        ResponseEntity<String> serializedNotificationResponse, List<DeferredResultWrapper> results,
+        long receivedTimeInNanos) {
+      this.namespaceName = namespaceName;
+      this.notification = notification;
+      this.serializedNotificationResponse = serializedNotificationResponse;
+      this.results = results;
+      this.receivedTimeInNanos = receivedTimeInNanos;
+    }
+  }
+}
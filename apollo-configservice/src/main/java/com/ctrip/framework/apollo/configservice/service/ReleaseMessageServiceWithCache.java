@@ -21,12 +21,14 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
@@ -34,12 +36,17 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -61,9 +68,18 @@ public class ReleaseMessageServiceWithCache
 
   private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
 
+  // app id -> namespace name -> the clusters having release messages, all in lower case
+  private ConcurrentMap<String, ConcurrentMap<String, Set<String>>> releaseMessageClusters;
+
+  private volatile boolean releaseMessagesLoaded;
+
   private AtomicBoolean doScan;
   private ExecutorService executorService;
 
+  private Path snapshotPath;
+  private long maxIdInSnapshot;
+  private ScheduledExecutorService snapshotExecutorService;
+
   public ReleaseMessageServiceWithCache(final ReleaseMessageRepository releaseMessageRepository,
       final BizConfig bizConfig) {
     this.releaseMessageRepository = releaseMessageRepository;
@@ -73,6 +89,8 @@ public class ReleaseMessageServiceWithCache
 
   private void initialize() {
     releaseMessageCache = Maps.newConcurrentMap();
+    releaseMessageClusters = Maps.newConcurrentMap();
+    releaseMessagesLoaded = false;
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(
         ApolloThreadFactory.create("ReleaseMessageServiceWithCache", true));
@@ -112,6 +130,26 @@ public class ReleaseMessageServiceWithCache
     return releaseMessages;
   }
 
+  /**
+   * Every release, including the gray ones, sends a release message of its cluster, so the cluster
+   * without any release message has no release of the namespace.
+   *
+   * @return false if the cluster has no release of the namespace, true if it might have
+   */
+  public boolean mightHaveRelease(String appId, String clusterName, String namespaceName) {
+    if (!releaseMessagesLoaded) {
+      return true;
+    }
+    // the lookup is case insensitive just like the database
+    Map<String, Set<String>> namespaceClusters =
+        releaseMessageClusters.get(appId.toLowerCase(Locale.ROOT));
+    if (namespaceClusters == null) {
+      return false;
+    }
+    Set<String> clusters = namespaceClusters.get(namespaceName.toLowerCase(Locale.ROOT));
+    return clusters != null && clusters.contains(clusterName.toLowerCase(Locale.ROOT));
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     // Could stop once the ReleaseMessageScanner starts to work
@@ -136,9 +174,12 @@ public class ReleaseMessageServiceWithCache
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
+    populateSnapshotPath();
     // block the startup process until load finished
     // this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
+    loadReleaseMessages(loadSnapshot());
+    releaseMessagesLoaded = true;
+    scheduleSnapshot();
 
     executorService.submit(() -> {
       while (doScan.get() && !Thread.currentThread().isInterrupted()) {
@@ -168,16 +209,109 @@ public class ReleaseMessageServiceWithCache
     if (executorService != null) {
       executorService.shutdownNow();
     }
+    if (snapshotExecutorService != null) {
+      snapshotExecutorService.shutdownNow();
+      saveSnapshot();
+    }
+  }
+
+  /**
+   * Warm up the cache with the local snapshot if any, so that only the release messages after it
+   * need to be loaded from database.
+   *
+   * @return the max id of the release messages loaded from the snapshot, 0 if none
+   */
+  private long loadSnapshot() {
+    if (snapshotPath == null) {
+      return 0;
+    }
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache",
+        "loadSnapshot");
+    try {
+      ReleaseMessageSnapshot snapshot = ReleaseMessageSnapshot.load(snapshotPath);
+      transaction.setStatus(Transaction.SUCCESS);
+      if (snapshot == null) {
+        return 0;
+      }
+      // the snapshot is from another database or the database is restored, so it can't be trusted
+      ReleaseMessage latestReleaseMessage = releaseMessageRepository.findTopByOrderByIdDesc();
+      if (latestReleaseMessage == null
+          || latestReleaseMessage.getId() < snapshot.getMaxIdScanned()) {
+        logger.warn("Ignore release message snapshot {} as it's newer than the database",
+            snapshotPath);
+        return 0;
+      }
+      snapshot.getReleaseMessages().forEach(this::mergeReleaseMessage);
+      maxIdScanned = snapshot.getMaxIdScanned();
+      maxIdInSnapshot = maxIdScanned;
+      logger.info("Loaded {} release messages from snapshot {} with max id {}",
+          snapshot.getReleaseMessages().size(), snapshotPath, maxIdScanned);
+      return maxIdScanned;
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Load release message snapshot {} failed", snapshotPath, ex);
+      releaseMessageCache.clear();
+      releaseMessageClusters.clear();
+      maxIdScanned = 0;
+      return 0;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private void scheduleSnapshot() {
+    if (snapshotPath == null) {
+      return;
+    }
+    long interval = bizConfig.releaseMessageCacheSnapshotIntervalInMilli();
+    snapshotExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("ReleaseMessageServiceWithCache-Snapshot", true));
+    snapshotExecutorService.scheduleWithFixedDelay(this::saveSnapshot, interval, interval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private void saveSnapshot() {
+    // read max id before the cache, so that all the messages up to it are in the copy
+    long maxId = maxIdScanned;
+    if (maxId == maxIdInSnapshot) {
+      return;
+    }
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache",
+        "saveSnapshot");
+    try {
+      ReleaseMessageSnapshot.save(snapshotPath, maxId, releaseMessageCache.values());
+      maxIdInSnapshot = maxId;
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Save release message snapshot {} failed", snapshotPath, ex);
+    } finally {
+      transaction.complete();
+    }
   }
 
   private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
     ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
     if (old == null || releaseMessage.getId() > old.getId()) {
+      if (old == null) {
+        indexReleaseMessageCluster(releaseMessage.getMessage());
+      }
       releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
       maxIdScanned = releaseMessage.getId();
     }
   }
 
+  private void indexReleaseMessageCluster(String message) {
+    List<String> keys = ReleaseMessageKeyGenerator.messageToList(message);
+    if (keys.isEmpty()) {
+      return;
+    }
+    releaseMessageClusters
+        .computeIfAbsent(keys.get(0).toLowerCase(Locale.ROOT), k -> Maps.newConcurrentMap())
+        .computeIfAbsent(keys.get(2).toLowerCase(Locale.ROOT), k -> Sets.newConcurrentHashSet())
+        .add(keys.get(1).toLowerCase(Locale.ROOT));
+  }
+
   private void loadReleaseMessages(long startId) {
     boolean hasMore = true;
     while (hasMore && !Thread.currentThread().isInterrupted()) {
@@ -200,9 +334,17 @@ public class ReleaseMessageServiceWithCache
     scanIntervalTimeUnit = bizConfig.releaseMessageCacheScanIntervalTimeUnit();
   }
 
+  private void populateSnapshotPath() {
+    String path = bizConfig.releaseMessageCacheSnapshotPath();
+    snapshotPath = Strings.isNullOrEmpty(path) ? null : Paths.get(path);
+  }
+
   // only for test use
   private void reset() throws Exception {
     executorService.shutdownNow();
+    if (snapshotExecutorService != null) {
+      snapshotExecutorService.shutdownNow();
+    }
     initialize();
     afterPropertiesSet();
   }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A local copy of the release message cache, so that a restarted config service only needs to
+ * catch up the release messages after {@link #getMaxIdScanned()} instead of loading all of them.
+ *
+ * <p>The file is: magic, version, max id scanned, message count, then id, length and utf-8 bytes
+ * of each message, ended with the crc32 of all the preceding bytes.
+ */
+class ReleaseMessageSnapshot {
+  private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageSnapshot.class);
+  private static final int MAGIC = 0x41504D53;
+  private static final int VERSION = 1;
+  // magic, version, max id scanned, message count and checksum
+  private static final int FIXED_SIZE = 4 + 4 + 8 + 4 + 8;
+
+  private final long maxIdScanned;
+  private final List<ReleaseMessage> releaseMessages;
+
+  ReleaseMessageSnapshot(long maxIdScanned, List<ReleaseMessage> releaseMessages) {
+    this.maxIdScanned = maxIdScanned;
+    this.releaseMessages = releaseMessages;
+  }
+
+  long getMaxIdScanned() {
+    return maxIdScanned;
+  }
+
+  /**
+   * @return the release messages ordered by id
+   */
+  List<ReleaseMessage> getReleaseMessages() {
+    return releaseMessages;
+  }
+
+  /**
+   * Write to a temp file and then move it to the path, so that the file on the path is always
+   * complete.
+   */
+  static void save(Path path, long maxIdScanned, Collection<ReleaseMessage> releaseMessages)
+      throws IOException {
+    List<ReleaseMessage> ordered = Lists.newArrayList(releaseMessages);
+    ordered.sort(Comparator.comparingLong(ReleaseMessage::getId));
+
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    try {
+      CRC32 checksum = new CRC32();
+      try (OutputStream out = Files.newOutputStream(tmp);
+          CheckedOutputStream checked =
+              new CheckedOutputStream(new BufferedOutputStream(out), checksum);
+          DataOutputStream data = new DataOutputStream(checked)) {
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(maxIdScanned);
+        data.writeInt(ordered.size());
+        for (ReleaseMessage releaseMessage : ordered) {
+          byte[] message = releaseMessage.getMessage().getBytes(StandardCharsets.UTF_8);
+          data.writeLong(releaseMessage.getId());
+          data.writeInt(message.length);
+          data.write(message);
+        }
+        data.flush();
+        // the checksum itself is not checked
+        data.writeLong(checksum.getValue());
+      }
+      try {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * @return null if the snapshot does not exist or is not valid
+   */
+  static ReleaseMessageSnapshot load(Path path) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < FIXED_SIZE || size > Integer.MAX_VALUE) {
+        logger.warn("Ignore release message snapshot {} with invalid size {}", path, size);
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      ByteBuffer content = buffer.duplicate();
+      content.limit((int) size - 8);
+      CRC32 checksum = new CRC32();
+      checksum.update(content);
+      if (checksum.getValue() != buffer.getLong((int) size - 8)) {
+        logger.warn("Ignore release message snapshot {} with mismatched checksum", path);
+        return null;
+      }
+
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        logger.warn("Ignore release message snapshot {} with unknown format", path);
+        return null;
+      }
+      long maxIdScanned = buffer.getLong();
+      int count = buffer.getInt();
+      if (count < 0) {
+        return null;
+      }
+      List<ReleaseMessage> releaseMessages = Lists.newArrayListWithCapacity(count);
+      for (int i = 0; i < count; i++) {
+        long id = buffer.getLong();
+        byte[] message = new byte[buffer.getInt()];
+        buffer.get(message);
+        ReleaseMessage releaseMessage =
+            new ReleaseMessage(new String(message, StandardCharsets.UTF_8));
+        releaseMessage.setId(id);
+        releaseMessages.add(releaseMessage);
+      }
+      if (buffer.position() != size - 8) {
+        logger.warn("Ignore release message snapshot {} with unexpected length", path);
+        return null;
+      }
+      return new ReleaseMessageSnapshot(maxIdScanned, releaseMessages);
+    } catch (BufferUnderflowException | IllegalArgumentException
+             | NegativeArraySizeException ex) {
+      logger.warn("Ignore release message snapshot {} which is broken", path, ex);
+      return null;
+    }
+  }
+}
@@ -22,13 +22,21 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 
 import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public abstract class AbstractConfigService implements ConfigService {
+  private static final Gson GSON = new Gson();
+  private static final Type configurationTypeReference =
+      new TypeToken<Map<String, String>>() {}.getType();
 
   private final GrayReleaseRulesHolder grayReleaseRulesHolder;
 
@@ -79,6 +87,10 @@ public abstract class AbstractConfigService implements ConfigService {
   private Release findRelease(String clientAppId, String clientIp, String clientLabel,
       String configAppId, String configClusterName, String configNamespace,
       ApolloNotificationMessages clientMessages) {
+    if (!mightHaveRelease(configAppId, configClusterName, configNamespace)) {
+      return null;
+    }
+
     Long grayReleaseId = grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(clientAppId,
         clientIp, clientLabel, configAppId, configClusterName, configNamespace);
 
@@ -96,6 +108,32 @@ public abstract class AbstractConfigService implements ConfigService {
     return release;
   }
 
+  /**
+   * Whether the cluster might have releases of the namespace, so that the lookups of the cluster
+   * without releases could be skipped
+   *
+   * @return false only if the cluster has no release of the namespace for sure
+   */
+  protected boolean mightHaveRelease(String configAppId, String configClusterName,
+      String configNamespace) {
+    return true;
+  }
+
+  /**
+   * Parse the configurations of the release
+   *
+   * @param release the release
+   * @return the read only configurations
+   */
+  protected Map<String, String> parseReleaseConfigurations(Release release) {
+    Map<String, String> configurations =
+        GSON.fromJson(release.getConfigurations(), configurationTypeReference);
+    if (configurations == null) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(configurations);
+  }
+
   /**
    * Find active release by id
    */
@@ -50,4 +50,12 @@ public interface ConfigService extends ReleaseMessageListener {
    * @return the ReleaseMap
    */
   Map<String, Release> findReleasesByReleaseKeys(Set<String> releaseKeys);
+
+  /**
+   * Find the parsed configurations of the release
+   *
+   * @param release the release
+   * @return the read only configurations of the release
+   */
+  Map<String, String> findReleaseConfigurations(Release release);
 }
@@ -19,38 +19,55 @@ package com.ctrip.framework.apollo.configservice.service.config;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
 import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.util.CollectionUtils;
 
 /**
@@ -61,16 +78,23 @@ import org.springframework.util.CollectionUtils;
 public class ConfigServiceWithCache extends AbstractConfigService {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceWithCache.class);
   private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;// 1 hour
-  private static final String TRACER_EVENT_CACHE_INVALIDATE = "ConfigCache.Invalidate";
+  private static final String TRACER_EVENT_CACHE_REFRESH = "ConfigCache.Refresh";
+  private static final String TRACER_EVENT_CACHE_REFRESH_COALESCED = "ConfigCache.RefreshCoalesced";
+  private static final String TRACER_EVENT_CACHE_SERVE_STALE = "ConfigCache.ServeStale";
   private static final String TRACER_EVENT_CACHE_LOAD = "ConfigCache.LoadFromDB";
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
   private static final String TRACER_EVENT_CACHE_LOAD_RELEASE_KEY =
       "ConfigCache.LoadFromDBByReleaseKey";
+  private static final String TRACER_EVENT_CACHE_PARSE_RELEASE_CONFIGURATIONS =
+      "ConfigCache.ParseReleaseConfigurations";
+  // rough estimation of the memory held by one map entry and its key/value string headers
+  private static final int RELEASE_CONFIGURATIONS_ENTRY_OVERHEAD_IN_BYTES = 112;
 
   private final ReleaseService releaseService;
   private final ReleaseMessageService releaseMessageService;
+  private final ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
   private final BizConfig bizConfig;
   private final MeterRegistry meterRegistry;
 
@@ -80,15 +104,44 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
   private LoadingCache<String, Optional<Long>> releaseKeyCache;
 
+  private Cache<Long, ReleaseConfigurationsCacheEntry> releaseConfigurationsCache;
+
+  private final AtomicLong releaseConfigurationsRetainedBytes = new AtomicLong();
+
+  private final LongAdder releaseConfigurationsParseTimeSavedInNanos = new LongAdder();
+
+  // the refreshes of the config cache in progress, so that concurrent refreshes share one load
+  private final ConcurrentMap<String, SettableFuture<ConfigCacheEntry>> configCacheRefreshes =
+      Maps.newConcurrentMap();
+
+  private final LongAdder configCacheRefreshesAvoidedAsUpToDate = new LongAdder();
+
+  private final LongAdder configCacheRefreshesAvoidedAsCoalesced = new LongAdder();
+
+  // the entries last loaded from the database, kept to serve when the database is unavailable
+  private final ConcurrentMap<String, ConfigCacheEntry> lastKnownConfigCacheEntries =
+      Maps.newConcurrentMap();
+
+  // 0 if the database is available
+  private final AtomicLong databaseUnavailableSince = new AtomicLong();
+
+  private final LongAdder staleConfigCacheEntriesServed = new LongAdder();
+
+  private boolean staleServingEnabled;
+
+  private LastKnownReleaseStore lastKnownReleaseStore;
+
   private ConfigCacheEntry nullConfigCacheEntry;
 
   public ConfigServiceWithCache(final ReleaseService releaseService,
       final ReleaseMessageService releaseMessageService,
+      final ReleaseMessageServiceWithCache releaseMessageServiceWithCache,
       final GrayReleaseRulesHolder grayReleaseRulesHolder, final BizConfig bizConfig,
       final MeterRegistry meterRegistry) {
     super(grayReleaseRulesHolder);
     this.releaseService = releaseService;
     this.releaseMessageService = releaseMessageService;
+    this.releaseMessageServiceWithCache = releaseMessageServiceWithCache;
     this.bizConfig = bizConfig;
     this.meterRegistry = meterRegistry;
     nullConfigCacheEntry = new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, null);
@@ -96,9 +149,25 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
   @PostConstruct
   void initialize() {
+    initializeStaleServing();
     buildConfigCache();
     buildConfigIdCache();
     buildReleaseKeyCache();
+    buildReleaseConfigurationsCache();
+  }
+
+  @PreDestroy
+  void destroy() {
+    if (lastKnownReleaseStore != null) {
+      lastKnownReleaseStore.shutdown();
+    }
+  }
+
+  @Override
+  protected boolean mightHaveRelease(String configAppId, String configClusterName,
+      String configNamespace) {
+    return releaseMessageServiceWithCache.mightHaveRelease(configAppId, configClusterName,
+        configNamespace);
   }
 
   @Override
@@ -119,22 +188,221 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
     Tracer.logEvent(TRACER_EVENT_CACHE_GET, cacheKey);
 
-    ConfigCacheEntry cacheEntry = configCache.getUnchecked(cacheKey);
+    ConfigCacheEntry cacheEntry;
+    try {
+      cacheEntry = configCache.getUnchecked(cacheKey);
+    } catch (RuntimeException ex) {
+      cacheEntry = serveStale(cacheKey, null, ex);
+    }
 
     // cache is out-dated
     if (clientMessages != null && clientMessages.has(messageKey)
         && clientMessages.get(messageKey) > cacheEntry.getNotificationId()) {
-      // invalidate the cache and try to load from db again
-      invalidate(cacheKey);
-      cacheEntry = configCache.getUnchecked(cacheKey);
+      // try to load from db again
+      try {
+        cacheEntry = refresh(cacheKey, clientMessages.get(messageKey));
+      } catch (RuntimeException ex) {
+        cacheEntry = serveStale(cacheKey, cacheEntry, ex);
+      }
     }
 
     return cacheEntry.getRelease();
   }
 
-  private void invalidate(String key) {
-    configCache.invalidate(key);
-    Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+  /**
+   * Serve the current or the last known entry when it could not be loaded from the database
+   *
+   * @param key the cache key
+   * @param currentCacheEntry the entry in the cache, null if none
+   * @param ex the failure of loading from the database
+   * @return the stale entry
+   * @throws RuntimeException the failure if the stale serving is disabled or there is no entry
+   */
+  private ConfigCacheEntry serveStale(String key, ConfigCacheEntry currentCacheEntry,
+      RuntimeException ex) {
+    if (!staleServingEnabled) {
+      throw ex;
+    }
+    ConfigCacheEntry cacheEntry = currentCacheEntry;
+    if (cacheEntry == null) {
+      cacheEntry = findLastKnownConfigCacheEntry(key);
+      if (cacheEntry == null) {
+        throw ex;
+      }
+      // so that the requests of the key do not wait for the database again before it recovers
+      configCache.asMap().putIfAbsent(key, cacheEntry);
+    }
+    staleConfigCacheEntriesServed.increment();
+    Tracer.logEvent(TRACER_EVENT_CACHE_SERVE_STALE, key);
+    return cacheEntry;
+  }
+
+  private ConfigCacheEntry findLastKnownConfigCacheEntry(String key) {
+    ConfigCacheEntry cacheEntry = lastKnownConfigCacheEntries.get(key);
+    if (cacheEntry != null || lastKnownReleaseStore == null) {
+      return cacheEntry;
+    }
+    try {
+      LastKnownReleaseStore.StoredRelease storedRelease = lastKnownReleaseStore.load(key);
+      if (storedRelease == null) {
+        return null;
+      }
+      cacheEntry = new ConfigCacheEntry(storedRelease.getNotificationId(),
+          storedRelease.getRelease());
+      lastKnownConfigCacheEntries.putIfAbsent(key, cacheEntry);
+      return cacheEntry;
+    } catch (IOException ex) {
+      Tracer.logError(ex);
+      logger.warn("Failed to load the last known release of {}", key, ex);
+      return null;
+    }
+  }
+
+  private void rememberLastKnownConfigCacheEntry(String key, ConfigCacheEntry cacheEntry) {
+    ConfigCacheEntry previousCacheEntry = lastKnownConfigCacheEntries.get(key);
+    if (previousCacheEntry != null
+        && previousCacheEntry.getNotificationId() > cacheEntry.getNotificationId()) {
+      return;
+    }
+    lastKnownConfigCacheEntries.put(key, cacheEntry);
+    if (lastKnownReleaseStore == null) {
+      return;
+    }
+    if (cacheEntry.getRelease() == null) {
+      // the release is deleted
+      lastKnownReleaseStore.deleteAsync(key);
+    } else {
+      lastKnownReleaseStore.saveAsync(key, cacheEntry.getNotificationId(),
+          cacheEntry.getRelease());
+    }
+  }
+
+  private void forgetLastKnownConfigCacheEntry(String key, ConfigCacheEntry cacheEntry) {
+    if (lastKnownConfigCacheEntries.remove(key, cacheEntry) && lastKnownReleaseStore != null) {
+      lastKnownReleaseStore.deleteAsync(key);
+    }
+  }
+
+  /**
+   * Mark the database as available, e.g. when the health check succeeds
+   */
+  public void markDatabaseAvailable() {
+    long unavailableSince = databaseUnavailableSince.getAndSet(0);
+    if (unavailableSince == 0) {
+      return;
+    }
+    logger.info("Database is available again after {} ms",
+        System.currentTimeMillis() - unavailableSince);
+    // drop the entries which have expired during the unavailability
+    for (Map.Entry<String, ConfigCacheEntry> entry : lastKnownConfigCacheEntries.entrySet()) {
+      if (!configCache.asMap().containsKey(entry.getKey())) {
+        forgetLastKnownConfigCacheEntry(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Mark the database as unavailable, e.g. when the health check fails. The cached entries do not
+   * expire until the database is available again.
+   */
+  public void markDatabaseUnavailable() {
+    if (databaseUnavailableSince.compareAndSet(0, System.currentTimeMillis())
+        && staleServingEnabled) {
+      logger.warn("Database is unavailable, serving the last known configs");
+    }
+  }
+
+  public boolean isStaleServingEnabled() {
+    return staleServingEnabled;
+  }
+
+  /**
+   * @return whether the configs might be stale as the database is unavailable
+   */
+  public boolean isServingStale() {
+    return staleServingEnabled && databaseUnavailableSince.get() != 0;
+  }
+
+  /**
+   * Refresh the cache entry if it is older than the notification id. The entry is replaced rather
+   * than invalidated, so other readers keep using the current entry while it is being loaded, and
+   * concurrent refreshes of the same key wait for the load in progress instead of loading again,
+   * unless it loads an entry still older than their notification id.
+   *
+   * @param key the cache key
+   * @param notificationId the notification id the entry should be at least as new as
+   * @return the cache entry after the refresh
+   */
+  private ConfigCacheEntry refresh(String key, long notificationId) {
+    ConfigCacheEntry cacheEntry = configCache.getIfPresent(key);
+    if (cacheEntry != null && cacheEntry.getNotificationId() >= notificationId) {
+      configCacheRefreshesAvoidedAsUpToDate.increment();
+      return cacheEntry;
+    }
+
+    SettableFuture<ConfigCacheEntry> refresh = SettableFuture.create();
+    SettableFuture<ConfigCacheEntry> refreshInProgress =
+        configCacheRefreshes.putIfAbsent(key, refresh);
+    if (refreshInProgress != null) {
+      configCacheRefreshesAvoidedAsCoalesced.increment();
+      Tracer.logEvent(TRACER_EVENT_CACHE_REFRESH_COALESCED, key);
+      cacheEntry = Futures.getUnchecked(refreshInProgress);
+      if (cacheEntry.getNotificationId() >= notificationId) {
+        return cacheEntry;
+      }
+      // the refresh in progress might have loaded before the notification, so refresh again, and
+      // any refresh in progress now has started after the notification
+      refreshInProgress = configCacheRefreshes.putIfAbsent(key, refresh);
+      if (refreshInProgress != null) {
+        return Futures.getUnchecked(refreshInProgress);
+      }
+    }
+
+    try {
+      // the previous refresh might have completed before this one is registered
+      cacheEntry = configCache.getIfPresent(key);
+      if (cacheEntry != null && cacheEntry.getNotificationId() >= notificationId) {
+        configCacheRefreshesAvoidedAsUpToDate.increment();
+      } else {
+        Tracer.logEvent(TRACER_EVENT_CACHE_REFRESH, key);
+        cacheEntry = replace(key, loadConfigCacheEntry(key));
+      }
+      refresh.set(cacheEntry);
+      return cacheEntry;
+    } catch (Throwable ex) {
+      refresh.setException(ex);
+      throw ex;
+    } finally {
+      configCacheRefreshes.remove(key, refresh);
+    }
+  }
+
+  /**
+   * Replace the cache entry with the loaded one unless the cached one is newer, so that the
+   * notification id of an entry only moves forward
+   */
+  private ConfigCacheEntry replace(String key, ConfigCacheEntry loadedCacheEntry) {
+    ConfigCacheEntry[] previousCacheEntry = new ConfigCacheEntry[1];
+    ConfigCacheEntry currentCacheEntry = configCache.asMap().compute(key, (k, cacheEntry) -> {
+      previousCacheEntry[0] = cacheEntry;
+      if (cacheEntry != null
+          && cacheEntry.getNotificationId() > loadedCacheEntry.getNotificationId()) {
+        return cacheEntry;
+      }
+      return loadedCacheEntry;
+    });
+    invalidateReleaseConfigurations(previousCacheEntry[0], currentCacheEntry);
+    return currentCacheEntry;
+  }
+
+  /**
+   * Only the latest message of each key is handled, as a refresh loads the latest release anyway
+   */
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    for (ReleaseMessage message : ReleaseMessageListener.latestOfEachMessage(messages)) {
+      handleMessage(message, channel);
+    }
   }
 
   @Override
@@ -150,10 +418,12 @@ public class ConfigServiceWithCache extends AbstractConfigService {
       if (bizConfig.isConfigServiceCacheKeyIgnoreCase()) {
         messageKey = messageKey.toLowerCase();
       }
-      invalidate(messageKey);
-
-      // warm up the cache
-      configCache.getUnchecked(messageKey);
+      if (configCache.getIfPresent(messageKey) == null) {
+        // warm up the cache
+        configCache.getUnchecked(messageKey);
+      } else {
+        refresh(messageKey, message.getId());
+      }
     } catch (Throwable ex) {
       // ignore
     }
@@ -195,52 +465,169 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     return null;
   }
 
+  @Override
+  public Map<String, String> findReleaseConfigurations(Release release) {
+    ReleaseConfigurationsCacheEntry cacheEntry =
+        releaseConfigurationsCache.getIfPresent(release.getId());
+    if (cacheEntry != null) {
+      releaseConfigurationsParseTimeSavedInNanos.add(cacheEntry.getParseTimeInNanos());
+      return cacheEntry.getConfigurations();
+    }
+    return cacheReleaseConfigurations(release).getConfigurations();
+  }
+
+  private ReleaseConfigurationsCacheEntry cacheReleaseConfigurations(Release release) {
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_PARSE_RELEASE_CONFIGURATIONS,
+        String.valueOf(release.getId()));
+    try {
+      long start = System.nanoTime();
+      Map<String, String> configurations = parseReleaseConfigurations(release);
+      ReleaseConfigurationsCacheEntry cacheEntry =
+          new ReleaseConfigurationsCacheEntry(configurations, System.nanoTime() - start,
+              estimateRetainedBytes(configurations));
+      releaseConfigurationsRetainedBytes.addAndGet(cacheEntry.getRetainedBytes());
+      releaseConfigurationsCache.put(release.getId(), cacheEntry);
+      transaction.setStatus(Transaction.SUCCESS);
+      return cacheEntry;
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private void warmUpReleaseConfigurations(Release release) {
+    try {
+      cacheReleaseConfigurations(release);
+    } catch (Throwable ex) {
+      // the configurations would be parsed again when they are requested
+      Tracer.logError(ex);
+      logger.warn("Failed to parse configurations of release {}", release.getId(), ex);
+    }
+  }
+
+  /**
+   * Drop the parsed configurations of the release which is replaced by a newer one
+   */
+  private void invalidateReleaseConfigurations(ConfigCacheEntry previousCacheEntry,
+      ConfigCacheEntry currentCacheEntry) {
+    if (previousCacheEntry == null || previousCacheEntry.getRelease() == null) {
+      return;
+    }
+    long previousReleaseId = previousCacheEntry.getRelease().getId();
+    if (currentCacheEntry != null && currentCacheEntry.getRelease() != null
+        && currentCacheEntry.getRelease().getId() == previousReleaseId) {
+      return;
+    }
+    releaseConfigurationsCache.invalidate(previousReleaseId);
+  }
+
+  private static long estimateRetainedBytes(Map<String, String> configurations) {
+    long bytes = 0;
+    for (Map.Entry<String, String> entry : configurations.entrySet()) {
+      bytes += RELEASE_CONFIGURATIONS_ENTRY_OVERHEAD_IN_BYTES;
+      bytes += entry.getKey() == null ? 0 : entry.getKey().length();
+      bytes += entry.getValue() == null ? 0 : entry.getValue().length();
+    }
+    return bytes;
+  }
+
+  private ConfigCacheEntry loadConfigCacheEntry(String key) {
+    List<String> namespaceInfo = ReleaseMessageKeyGenerator.messageToList(key);
+    if (CollectionUtils.isEmpty(namespaceInfo)) {
+      Tracer.logError(
+          new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
+      return nullConfigCacheEntry;
+    }
+
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+    try {
+      ReleaseMessage latestReleaseMessage =
+          releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(key));
+      Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0),
+          namespaceInfo.get(1), namespaceInfo.get(2));
+
+      transaction.setStatus(Transaction.SUCCESS);
+
+      long notificationId =
+          latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER
+              : latestReleaseMessage.getId();
+
+      if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+        markDatabaseAvailable();
+        return nullConfigCacheEntry;
+      }
+
+      if (latestRelease != null) {
+        warmUpReleaseConfigurations(latestRelease);
+      }
+
+      ConfigCacheEntry cacheEntry = new ConfigCacheEntry(notificationId, latestRelease);
+      markDatabaseAvailable();
+      if (staleServingEnabled) {
+        rememberLastKnownConfigCacheEntry(key, cacheEntry);
+      }
+      return cacheEntry;
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      markDatabaseUnavailable();
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private void initializeStaleServing() {
+    staleServingEnabled = bizConfig.isConfigServiceCacheStaleServingEnabled();
+    String storePath = bizConfig.configServiceCacheStaleServingStorePath();
+    lastKnownReleaseStore = staleServingEnabled && !Strings.isNullOrEmpty(storePath)
+        ? new LastKnownReleaseStore(Paths.get(storePath)) : null;
+
+    if (staleServingEnabled && bizConfig.isConfigServiceCacheStatsEnabled()) {
+      Gauge.builder("config_cache.stale_serving", this, service -> service.isServingStale() ? 1 : 0)
+          .description("Whether the configs might be stale as the database is unavailable")
+          .register(meterRegistry);
+      FunctionCounter.builder("config_cache.stale.served", staleConfigCacheEntriesServed,
+          LongAdder::sum)
+          .description("The config cache entries served when they could not be loaded")
+          .register(meterRegistry);
+    }
+  }
+
   private void buildConfigCache() {
     CacheBuilder configCacheBuilder = CacheBuilder.newBuilder()
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES);
     if (bizConfig.isConfigServiceCacheStatsEnabled()) {
       configCacheBuilder.recordStats();
     }
+    if (staleServingEnabled) {
+      configCacheBuilder.removalListener(
+          (RemovalListener<String, ConfigCacheEntry>) notification -> {
+            // keep the expired entries to serve while the database is unavailable
+            if (notification.wasEvicted() && databaseUnavailableSince.get() == 0) {
+              forgetLastKnownConfigCacheEntry(notification.getKey(), notification.getValue());
+            }
+          });
+    }
 
     configCache = configCacheBuilder.build(new CacheLoader<String, ConfigCacheEntry>() {
       @Override
       public ConfigCacheEntry load(String key) throws Exception {
-        List<String> namespaceInfo = ReleaseMessageKeyGenerator.messageToList(key);
-        if (CollectionUtils.isEmpty(namespaceInfo)) {
-          Tracer.logError(
-              new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
-          return nullConfigCacheEntry;
-        }
-
-        Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-        try {
-          ReleaseMessage latestReleaseMessage =
-              releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(key));
-          Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0),
-              namespaceInfo.get(1), namespaceInfo.get(2));
-
-          transaction.setStatus(Transaction.SUCCESS);
-
-          long notificationId =
-              latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER
-                  : latestReleaseMessage.getId();
-
-          if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-            return nullConfigCacheEntry;
-          }
-
-          return new ConfigCacheEntry(notificationId, latestRelease);
-        } catch (Throwable ex) {
-          transaction.setStatus(ex);
-          throw ex;
-        } finally {
-          transaction.complete();
-        }
+        return loadConfigCacheEntry(key);
       }
     });
 
     if (bizConfig.isConfigServiceCacheStatsEnabled()) {
       GuavaCacheMetrics.monitor(meterRegistry, configCache, "config_cache");
+      FunctionCounter.builder("config_cache.refresh.avoided",
+          configCacheRefreshesAvoidedAsUpToDate, LongAdder::sum).tag("reason", "up_to_date")
+          .description("The config cache refreshes skipped as the entry is already up to date")
+          .register(meterRegistry);
+      FunctionCounter.builder("config_cache.refresh.avoided",
+          configCacheRefreshesAvoidedAsCoalesced, LongAdder::sum).tag("reason", "coalesced")
+          .description("The config cache refreshes sharing the load of a refresh in progress")
+          .register(meterRegistry);
     }
 
   }
@@ -294,6 +681,10 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
           transaction.setStatus(Transaction.SUCCESS);
 
+          if (release != null) {
+            warmUpReleaseConfigurations(release);
+          }
+
           return Optional.ofNullable(release);
         } catch (Throwable ex) {
           transaction.setStatus(ex);
@@ -309,6 +700,59 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     }
   }
 
+  private void buildReleaseConfigurationsCache() {
+    CacheBuilder releaseConfigurationsCacheBuilder = CacheBuilder.newBuilder()
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .maximumWeight(bizConfig.configServiceReleaseConfigurationsCacheMaxSizeInBytes())
+        .weigher((Weigher<Long, ReleaseConfigurationsCacheEntry>) (key, value) -> (int) Math
+            .min(Integer.MAX_VALUE, value.getRetainedBytes()))
+        .removalListener(notification -> releaseConfigurationsRetainedBytes.addAndGet(
+            -((ReleaseConfigurationsCacheEntry) notification.getValue()).getRetainedBytes()));
+    if (bizConfig.isConfigServiceCacheStatsEnabled()) {
+      releaseConfigurationsCacheBuilder.recordStats();
+    }
+    releaseConfigurationsCache = releaseConfigurationsCacheBuilder.build();
+
+    if (bizConfig.isConfigServiceCacheStatsEnabled()) {
+      GuavaCacheMetrics.monitor(meterRegistry, releaseConfigurationsCache,
+          "release_configurations_cache");
+      Gauge.builder("release_configurations_cache.retained", releaseConfigurationsRetainedBytes,
+          AtomicLong::get).baseUnit(BaseUnits.BYTES)
+          .description("The estimated memory retained by the parsed release configurations")
+          .register(meterRegistry);
+      FunctionCounter.builder("release_configurations_cache.parse.time.saved",
+          releaseConfigurationsParseTimeSavedInNanos,
+          adder -> adder.sum() / (double) TimeUnit.SECONDS.toNanos(1)).baseUnit("seconds")
+          .description("The release configurations parse time saved by cache hits")
+          .register(meterRegistry);
+    }
+  }
+
+  private static class ReleaseConfigurationsCacheEntry {
+    private final Map<String, String> configurations;
+    private final long parseTimeInNanos;
+    private final long retainedBytes;
+
+    public ReleaseConfigurationsCacheEntry(Map<String, String> configurations,
+        long parseTimeInNanos, long retainedBytes) {
+      this.configurations = configurations;
+      this.parseTimeInNanos = parseTimeInNanos;
+      this.retainedBytes = retainedBytes;
+    }
+
+    public Map<String, String> getConfigurations() {
+      return configurations;
+    }
+
+    public long getParseTimeInNanos() {
+      return parseTimeInNanos;
+    }
+
+    public long getRetainedBytes() {
+      return retainedBytes;
+    }
+  }
+
   private static class ConfigCacheEntry {
     private final long notificationId;
     private final Release release;
@@ -69,4 +69,9 @@ public class DefaultConfigService extends AbstractConfigService {
     }
     return Collections.emptyMap();
   }
+
+  @Override
+  public Map<String, String> findReleaseConfigurations(Release release) {
+    return parseReleaseConfigurations(release);
+  }
 }
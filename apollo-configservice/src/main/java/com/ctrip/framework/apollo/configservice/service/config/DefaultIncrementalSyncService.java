@@ -16,44 +16,159 @@
  */
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.CollectionUtils;
 
+/**
+ * Configuration changes keyed by the ids of the client side and the latest releases, the releases
+ * never change once published, so the changes stay valid until they are evicted by
+ * {@link BizConfig#configServiceIncrementalChangeCacheMaxSizeInBytes()}.
+ * <p>
+ * The changes from the previous release to the latest release are computed when the release
+ * message arrives, so that the clients notified of the release don't have to wait for both
+ * releases to be parsed.
+ * </p>
+ */
 public class DefaultIncrementalSyncService implements IncrementalSyncService {
+  private static final Logger logger =
+      LoggerFactory.getLogger(DefaultIncrementalSyncService.class);
+  private static final String TRACER_EVENT_PRECOMPUTE = "IncrementalSync.Precompute";
+  // rough estimation of the memory held by one configuration change and its string headers
+  private static final int CONFIGURATION_CHANGE_OVERHEAD_IN_BYTES = 96;
+  private static final Pageable LATEST_TWO_RELEASES = PageRequest.of(0, 2);
 
-  private final Cache<ReleaseKeyPair, List<ConfigurationChange>> configurationChangeCache;
+  private final ConfigService configService;
+  private final ReleaseService releaseService;
+  private final BizConfig bizConfig;
+  private final Cache<ReleaseIdPair, List<ConfigurationChange>> configurationChangeCache;
+  private final Counter hitCounter;
+  private final Counter missCounter;
 
-  public DefaultIncrementalSyncService() {
-    configurationChangeCache =
-        CacheBuilder.newBuilder().maximumSize(1000).expireAfterWrite(10, TimeUnit.MINUTES).build();
+  public DefaultIncrementalSyncService(final ConfigService configService,
+      final ReleaseService releaseService, final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
+    this.configService = configService;
+    this.releaseService = releaseService;
+    this.bizConfig = bizConfig;
+    this.configurationChangeCache = CacheBuilder.newBuilder()
+        .maximumWeight(bizConfig.configServiceIncrementalChangeCacheMaxSizeInBytes())
+        .weigher((Weigher<ReleaseIdPair, List<ConfigurationChange>>) (key, value) -> (int) Math
+            .min(Integer.MAX_VALUE, estimateRetainedBytes(value)))
+        .build();
+    this.hitCounter = Counter.builder("incremental_sync.change_cache.hit")
+        .description("The number of incremental syncs served by the cached changes")
+        .register(meterRegistry);
+    this.missCounter = Counter.builder("incremental_sync.change_cache.miss")
+        .description("The number of incremental syncs which had to compute the changes")
+        .register(meterRegistry);
   }
 
   @Override
-  public List<ConfigurationChange> getConfigurationChanges(String latestMergedReleaseKey,
-      Map<String, String> latestReleaseConfigurations, String clientSideReleaseKey,
-      Map<String, String> clientSideConfigurations) {
-
-    ReleaseKeyPair key = new ReleaseKeyPair(clientSideReleaseKey, latestMergedReleaseKey);
+  public List<ConfigurationChange> getConfigurationChanges(List<Release> latestReleases,
+      List<Release> clientSideReleases) {
+    ReleaseIdPair key =
+        new ReleaseIdPair(releaseIds(clientSideReleases), releaseIds(latestReleases));
 
     List<ConfigurationChange> cachedChanges = configurationChangeCache.getIfPresent(key);
     if (cachedChanges != null) {
+      hitCounter.increment();
       return cachedChanges;
     }
 
-    List<ConfigurationChange> computed =
-        calcConfigurationChanges(latestReleaseConfigurations, clientSideConfigurations);
+    missCounter.increment();
+    return computeConfigurationChanges(key, latestReleases, clientSideReleases);
+  }
+
+  /**
+   * Only the latest message of each key is handled, as only the latest two releases are compared
+   */
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    for (ReleaseMessage message : ReleaseMessageListener.latestOfEachMessage(messages)) {
+      handleMessage(message, channel);
+    }
+  }
+
+  @Override
+  public void handleMessage(ReleaseMessage message, String channel) {
+    if (!bizConfig.isConfigServiceIncrementalChangeEnabled()
+        || !Topics.APOLLO_RELEASE_TOPIC.equals(channel)
+        || Strings.isNullOrEmpty(message.getMessage())) {
+      return;
+    }
+    List<String> keys = ReleaseMessageKeyGenerator.messageToList(message.getMessage());
+    if (CollectionUtils.isEmpty(keys)) {
+      return;
+    }
+
+    try {
+      // ordered by id desc, i.e. [latest, previous]
+      List<Release> releases = releaseService.findActiveReleases(keys.get(0), keys.get(1),
+          keys.get(2), LATEST_TWO_RELEASES);
+      if (releases.size() < 2) {
+        return;
+      }
+      List<Release> latestReleases = Collections.singletonList(releases.get(0));
+      List<Release> previousReleases = Collections.singletonList(releases.get(1));
+      ReleaseIdPair key =
+          new ReleaseIdPair(releaseIds(previousReleases), releaseIds(latestReleases));
+      if (configurationChangeCache.getIfPresent(key) == null) {
+        computeConfigurationChanges(key, latestReleases, previousReleases);
+        Tracer.logEvent(TRACER_EVENT_PRECOMPUTE, message.getMessage());
+      }
+    } catch (Throwable ex) {
+      logger.warn("Failed to precompute the configuration changes of {}", message.getMessage(),
+          ex);
+    }
+  }
+
+  private List<ConfigurationChange> computeConfigurationChanges(ReleaseIdPair key,
+      List<Release> latestReleases, List<Release> clientSideReleases) {
+    Map<String, String> clientSideConfigurations = mergeReleaseConfigurations(clientSideReleases);
+    if (clientSideConfigurations.isEmpty()) {
+      return null;
+    }
+
+    List<ConfigurationChange> changes = calcConfigurationChanges(
+        mergeReleaseConfigurations(latestReleases), clientSideConfigurations);
+    configurationChangeCache.put(key, changes);
+    return changes;
+  }
 
-    configurationChangeCache.put(key, computed);
-    return computed;
+  private Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
+    Map<String, String> result = Maps.newLinkedHashMap();
+    for (Release release : Lists.reverse(releases)) {
+      result.putAll(configService.findReleaseConfigurations(release));
+    }
+    return result;
   }
 
   private List<ConfigurationChange> calcConfigurationChanges(
@@ -98,14 +213,29 @@ public class DefaultIncrementalSyncService implements IncrementalSyncService {
     return changes;
   }
 
-  public static class ReleaseKeyPair {
+  private static List<Long> releaseIds(List<Release> releases) {
+    return releases.stream().map(Release::getId).collect(Collectors.toList());
+  }
+
+  private static long estimateRetainedBytes(List<ConfigurationChange> changes) {
+    // count the cache entry itself, so that entries without changes are still evictable
+    long bytes = CONFIGURATION_CHANGE_OVERHEAD_IN_BYTES;
+    for (ConfigurationChange change : changes) {
+      bytes += CONFIGURATION_CHANGE_OVERHEAD_IN_BYTES;
+      bytes += change.getKey() == null ? 0 : change.getKey().length();
+      bytes += change.getNewValue() == null ? 0 : change.getNewValue().length();
+    }
+    return bytes;
+  }
+
+  public static class ReleaseIdPair {
 
-    private final String clientSideReleaseKey;
-    private final String latestMergedReleaseKey;
+    private final List<Long> clientSideReleaseIds;
+    private final List<Long> latestReleaseIds;
 
-    public ReleaseKeyPair(String clientSideReleaseKey, String latestMergedReleaseKey) {
-      this.clientSideReleaseKey = clientSideReleaseKey;
-      this.latestMergedReleaseKey = latestMergedReleaseKey;
+    public ReleaseIdPair(List<Long> clientSideReleaseIds, List<Long> latestReleaseIds) {
+      this.clientSideReleaseIds = clientSideReleaseIds;
+      this.latestReleaseIds = latestReleaseIds;
     }
 
     @Override
@@ -113,17 +243,17 @@ public class DefaultIncrementalSyncService implements IncrementalSyncService {
       if (this == obj) {
         return true;
       }
-      if (!(obj instanceof ReleaseKeyPair)) {
+      if (!(obj instanceof ReleaseIdPair)) {
         return false;
       }
-      ReleaseKeyPair that = (ReleaseKeyPair) obj;
-      return Objects.equals(clientSideReleaseKey, that.clientSideReleaseKey)
-          && Objects.equals(latestMergedReleaseKey, that.latestMergedReleaseKey);
+      ReleaseIdPair that = (ReleaseIdPair) obj;
+      return Objects.equals(clientSideReleaseIds, that.clientSideReleaseIds)
+          && Objects.equals(latestReleaseIds, that.latestReleaseIds);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(clientSideReleaseKey, latestMergedReleaseKey);
+      return Objects.hash(clientSideReleaseIds, latestReleaseIds);
     }
   }
 
@@ -16,14 +16,23 @@
  */
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
 import java.util.List;
-import java.util.Map;
 
-public interface IncrementalSyncService {
+public interface IncrementalSyncService extends ReleaseMessageListener {
 
-  List<ConfigurationChange> getConfigurationChanges(String latestMergedReleaseKey,
-      Map<String, String> latestReleaseConfigurations, String clientSideReleaseKey,
-      Map<String, String> clientSideConfigurations);
+  /**
+   * Find the changes from the client side releases to the latest releases
+   *
+   * @param latestReleases the latest releases, ordered by priority, e.g. [app release, public
+   *        release]
+   * @param clientSideReleases the releases the client has, in the same order
+   * @return the configuration changes, or null if the client side releases have no configuration
+   *         so that a full sync is preferred
+   */
+  List<ConfigurationChange> getConfigurationChanges(List<Release> latestReleases,
+      List<Release> clientSideReleases);
 
 }
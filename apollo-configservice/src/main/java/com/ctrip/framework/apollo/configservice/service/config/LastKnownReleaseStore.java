@@ -0,0 +1,246 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local copy of the latest release of each cached namespace, one json file per cache key, so
+ * that a restarted config service can still serve the configs when the database is unavailable.
+ * <p>
+ * The files are written in the background by a single thread, so the cache loads do not wait for
+ * the disk, and the writes of a key not started yet are coalesced into the latest one.
+ * </p>
+ */
+class LastKnownReleaseStore {
+  private static final Logger logger = LoggerFactory.getLogger(LastKnownReleaseStore.class);
+  private static final Gson GSON = new Gson();
+  private static final String FILE_SUFFIX = ".json";
+  private static final long SHUTDOWN_TIMEOUT_IN_SECONDS = 5;
+
+  private final Path directory;
+  private final Executor writeExecutor;
+  // the latest write of each key not started yet, an empty one deletes the stored release
+  private final ConcurrentMap<String, Optional<StoredRelease>> pendingWrites =
+      Maps.newConcurrentMap();
+
+  LastKnownReleaseStore(Path directory) {
+    this(directory, Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("LastKnownReleaseStore", true)));
+  }
+
+  LastKnownReleaseStore(Path directory, Executor writeExecutor) {
+    this.directory = directory;
+    this.writeExecutor = writeExecutor;
+  }
+
+  /**
+   * Save the release of the key in the background
+   */
+  void saveAsync(String key, long notificationId, Release release) {
+    scheduleWrite(key, Optional.of(new StoredRelease(key, notificationId, release)));
+  }
+
+  /**
+   * Delete the stored release of the key in the background, e.g. when the key is no longer cached
+   * or its release is deleted
+   */
+  void deleteAsync(String key) {
+    scheduleWrite(key, Optional.empty());
+  }
+
+  /**
+   * Write the pending releases and stop, waiting at most {@value #SHUTDOWN_TIMEOUT_IN_SECONDS}
+   * seconds
+   */
+  void shutdown() {
+    if (!(writeExecutor instanceof ExecutorService)) {
+      return;
+    }
+    ExecutorService executorService = (ExecutorService) writeExecutor;
+    executorService.shutdown();
+    try {
+      if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+        logger.warn("Timed out writing the last known releases, {} are not written",
+            pendingWrites.size());
+        executorService.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      executorService.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void scheduleWrite(String key, Optional<StoredRelease> write) {
+    if (pendingWrites.put(key, write) != null) {
+      // the scheduled write of the key has not started yet, and it would write this one instead
+      return;
+    }
+    try {
+      writeExecutor.execute(() -> write(key));
+    } catch (RejectedExecutionException ex) {
+      pendingWrites.remove(key, write);
+      logger.warn("Failed to schedule writing the last known release of {}", key, ex);
+    }
+  }
+
+  private void write(String key) {
+    Optional<StoredRelease> write = pendingWrites.remove(key);
+    if (write == null) {
+      return;
+    }
+    try {
+      if (write.isPresent()) {
+        save(write.get());
+      } else {
+        Files.deleteIfExists(pathOf(key));
+      }
+    } catch (IOException ex) {
+      Tracer.logError(ex);
+      logger.warn("Failed to write the last known release of {}", key, ex);
+    }
+  }
+
+  /**
+   * Write to a temp file and then move it to the path, so that the file on the path is always
+   * complete.
+   */
+  private void save(StoredRelease storedRelease) throws IOException {
+    Path path = pathOf(storedRelease.key);
+    Files.createDirectories(directory);
+    Path tmp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        GSON.toJson(storedRelease, writer);
+      }
+      try {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * @return null if the release of the key is not stored or the file is not valid
+   */
+  StoredRelease load(String key) throws IOException {
+    Path path = pathOf(key);
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      StoredRelease storedRelease = GSON.fromJson(reader, StoredRelease.class);
+      if (storedRelease == null || !Objects.equals(key, storedRelease.key)) {
+        logger.warn("Ignore last known release {} which is not of key {}", path, key);
+        return null;
+      }
+      return storedRelease;
+    } catch (JsonParseException ex) {
+      logger.warn("Ignore last known release {} which is broken", path, ex);
+      return null;
+    }
+  }
+
+  private Path pathOf(String key) {
+    // the key might contain characters not allowed in file names
+    return directory.resolve(
+        Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString() + FILE_SUFFIX);
+  }
+
+  static class StoredRelease {
+    private String key;
+    private long notificationId;
+    private long releaseId;
+    private String releaseKey;
+    private String name;
+    private String appId;
+    private String clusterName;
+    private String namespaceName;
+    private String configurations;
+    private String comment;
+
+    StoredRelease() {
+    }
+
+    StoredRelease(String key, long notificationId, Release release) {
+      this.key = key;
+      this.notificationId = notificationId;
+      if (release != null) {
+        this.releaseId = release.getId();
+        this.releaseKey = release.getReleaseKey();
+        this.name = release.getName();
+        this.appId = release.getAppId();
+        this.clusterName = release.getClusterName();
+        this.namespaceName = release.getNamespaceName();
+        this.configurations = release.getConfigurations();
+        this.comment = release.getComment();
+      }
+    }
+
+    long getNotificationId() {
+      return notificationId;
+    }
+
+    /**
+     * @return null if there was no release
+     */
+    Release getRelease() {
+      if (releaseKey == null) {
+        return null;
+      }
+      Release release = new Release();
+      release.setId(releaseId);
+      release.setReleaseKey(releaseKey);
+      release.setName(name);
+      release.setAppId(appId);
+      release.setClusterName(clusterName);
+      release.setNamespaceName(namespaceName);
+      release.setConfigurations(configurations);
+      release.setComment(comment);
+      return release;
+    }
+  }
+}
@@ -19,7 +19,13 @@ package com.ctrip.framework.apollo.configservice.util;
 import com.ctrip.framework.apollo.configservice.service.AccessKeyServiceWithCache;
 import com.ctrip.framework.apollo.core.signature.Signature;
 import com.google.common.base.Strings;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import jakarta.servlet.http.HttpServletRequest;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Component;
@@ -35,6 +41,16 @@ public class AccessKeyUtil {
   private static final String URL_CONFIGFILES_JSON_PREFIX = "/configfiles/json/";
   private static final String URL_CONFIGFILES_PREFIX = "/configfiles/";
   private static final String URL_NOTIFICATIONS_PREFIX = "/notifications/v2";
+  private static final String URL_NOTIFICATIONS_STREAM_PREFIX = "/notifications/v3";
+
+  /**
+   * the same as {@link Signature}
+   */
+  private static final String SIGNATURE_ALGORITHM = "HmacSHA1";
+  private static final String SIGNATURE_DELIMITER = "\n";
+
+  // creating a mac looks up the security providers, so each thread reuses its own
+  private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(AccessKeyUtil::newMac);
 
   private final AccessKeyServiceWithCache accessKeyServiceWithCache;
 
@@ -50,6 +66,14 @@ public class AccessKeyUtil {
     return accessKeyServiceWithCache.getObservableSecrets(appId);
   }
 
+  public List<SecretKeySpec> findAvailableSecretKeys(String appId) {
+    return accessKeyServiceWithCache.getAvailableSecretKeys(appId);
+  }
+
+  public List<SecretKeySpec> findObservableSecretKeys(String appId) {
+    return accessKeyServiceWithCache.getObservableSecretKeys(appId);
+  }
+
   public String extractAppIdFromRequest(HttpServletRequest request) {
     String appId = null;
     String servletPath = request.getServletPath();
@@ -60,7 +84,8 @@ public class AccessKeyUtil {
       appId = StringUtils.substringBetween(servletPath, URL_CONFIGFILES_JSON_PREFIX, URL_SEPARATOR);
     } else if (StringUtils.startsWith(servletPath, URL_CONFIGFILES_PREFIX)) {
       appId = StringUtils.substringBetween(servletPath, URL_CONFIGFILES_PREFIX, URL_SEPARATOR);
-    } else if (StringUtils.startsWith(servletPath, URL_NOTIFICATIONS_PREFIX)) {
+    } else if (StringUtils.startsWith(servletPath, URL_NOTIFICATIONS_PREFIX)
+        || StringUtils.startsWith(servletPath, URL_NOTIFICATIONS_STREAM_PREFIX)) {
       appId = request.getParameter("appId");
     }
 
@@ -68,11 +93,66 @@ public class AccessKeyUtil {
   }
 
   public String buildSignature(String path, String query, String timestampString, String secret) {
+    return Signature.signature(timestampString, pathWithQuery(path, query), secret);
+  }
+
+  /**
+   * Checks the signature against the ones signed with the prebuilt secret keys, the same as
+   * comparing it with {@link #buildSignature} of each secret.
+   * <p>
+   * {@link Signature} creates a new mac for each signature, so the request is signed here with a
+   * mac reused by the thread, the same way as {@link Signature#signature}.
+   * </p>
+   *
+   * @return true if any of the secret keys signs the request to the signature
+   */
+  public boolean verifySignature(String signature, String path, String query,
+      String timestampString, List<SecretKeySpec> secretKeys) {
+    if (signature == null || secretKeys.isEmpty()) {
+      return false;
+    }
+
+    byte[] stringToSign = stringToSign(path, query, timestampString);
+    for (SecretKeySpec secretKey : secretKeys) {
+      if (signature.equals(sign(stringToSign, secretKey))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static SecretKeySpec toSecretKey(String secret) {
+    return new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM);
+  }
+
+  private String pathWithQuery(String path, String query) {
     String pathWithQuery = path;
     if (!Strings.isNullOrEmpty(query)) {
       pathWithQuery += "?" + query;
     }
+    return pathWithQuery;
+  }
 
-    return Signature.signature(timestampString, pathWithQuery, secret);
+  private byte[] stringToSign(String path, String query, String timestampString) {
+    return (timestampString + SIGNATURE_DELIMITER + pathWithQuery(path, query))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String sign(byte[] stringToSign, SecretKeySpec secretKey) {
+    Mac mac = MAC.get();
+    try {
+      mac.init(secretKey);
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalArgumentException("Invalid secret key", ex);
+    }
+    return Base64.getEncoder().encodeToString(mac.doFinal(stringToSign));
+  }
+
+  private static Mac newMac() {
+    try {
+      return Mac.getInstance(SIGNATURE_ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
   }
 }
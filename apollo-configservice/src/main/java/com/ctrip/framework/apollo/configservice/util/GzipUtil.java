@@ -0,0 +1,61 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.tracer.Tracer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the response bodies which are kept in memory and served many times.
+ */
+public final class GzipUtil {
+  public static final String GZIP_ENCODING = "gzip";
+  private static final int MIN_GZIP_BODY_SIZE_IN_BYTES = 1024;
+
+  private GzipUtil() {
+  }
+
+  /**
+   * @return the gzipped body, or null if the body is too small or does not compress
+   */
+  public static byte[] gzipIfWorthwhile(byte[] body) {
+    if (body.length < MIN_GZIP_BODY_SIZE_IN_BYTES) {
+      return null;
+    }
+    try {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream(body.length / 4);
+      try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+        gzipOutputStream.write(body);
+      }
+      byte[] gzippedBody = outputStream.toByteArray();
+      // no need to keep the gzipped body if it saves nothing
+      return gzippedBody.length < body.length ? gzippedBody : null;
+    } catch (IOException ex) {
+      Tracer.logError(ex);
+      return null;
+    }
+  }
+
+  /**
+   * @return whether the client accepts gzipped responses
+   */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    return acceptEncoding != null && acceptEncoding.toLowerCase().contains(GZIP_ENCODING);
+  }
+}
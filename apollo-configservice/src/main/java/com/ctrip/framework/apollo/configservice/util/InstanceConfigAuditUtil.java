@@ -22,6 +22,7 @@ import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 
 import com.ctrip.framework.apollo.biz.entity.Instance;
@@ -31,22 +32,37 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
+ * Writes the instance config audits behind the config requests.
+ * <p>
+ * The audits are partitioned by instance over {@link BizConfig#getInstanceConfigAuditWorkers()}
+ * workers. Each worker takes at most {@link BizConfig#getInstanceConfigAuditBatch()} audits within
+ * {@link BizConfig#getInstanceConfigAuditBatchIntervalInMilli()}, keeps the latest audit of each
+ * instance config, then looks up the instances and instance configs of the batch in bulk and saves
+ * the changed instance configs in one transaction.
+ * </p>
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
@@ -55,9 +71,11 @@ public class InstanceConfigAuditUtil implements InitializingBean {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits;
+  private final List<BlockingQueue<InstanceConfigAuditModel>> audits;
   private Cache<String, Long> instanceCache;
   private Cache<String, String> instanceConfigReleaseKeyCache;
+  private final Counter droppedCounter;
+  private final DistributionSummary batchSizeSummary;
 
   private final InstanceService instanceService;
   private final BizConfig bizConfig;
@@ -69,23 +87,144 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     this.bizConfig = bizConfig;
     this.meterRegistry = meterRegistry;
 
-    audits = Queues.newLinkedBlockingQueue(this.bizConfig.getInstanceConfigAuditMaxSize());
-    auditExecutorService = Executors
-        .newSingleThreadExecutor(ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
+    int workers = this.bizConfig.getInstanceConfigAuditWorkers();
+    int queueSize = Math.max(1, this.bizConfig.getInstanceConfigAuditMaxSize() / workers);
+    audits = Lists.newArrayListWithCapacity(workers);
+    for (int i = 0; i < workers; i++) {
+      audits.add(Queues.newLinkedBlockingQueue(queueSize));
+    }
+    auditExecutorService = Executors.newFixedThreadPool(workers,
+        ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
     buildInstanceCache();
     buildInstanceConfigReleaseKeyCache();
+
+    Gauge.builder("instance_config_audit.queue.depth", audits,
+            queues -> queues.stream().mapToInt(BlockingQueue::size).sum())
+        .description("The number of instance config audits waiting to be written")
+        .register(meterRegistry);
+    droppedCounter = Counter.builder("instance_config_audit.dropped")
+        .description("The number of instance config audits dropped as the queue is full")
+        .register(meterRegistry);
+    batchSizeSummary = DistributionSummary.builder("instance_config_audit.batch.size")
+        .description("The number of instance config audits written in one batch")
+        .register(meterRegistry);
   }
 
   public boolean audit(String appId, String clusterName, String dataCenter, String ip,
       String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    return offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip, configAppId,
+        configClusterName, configNamespace, releaseKey));
+  }
+
+  /**
+   * Audit the configs loaded by an instance in one request
+   *
+   * @return whether all the audits are accepted
+   */
+  public boolean audit(List<InstanceConfigAuditModel> auditModels) {
+    boolean accepted = true;
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      accepted &= offer(auditModel);
+    }
+    return accepted;
+  }
+
+  private boolean offer(InstanceConfigAuditModel auditModel) {
+    // the audits of the same instance always go to the same worker
+    int partition = Math.floorMod(assembleInstanceKey(auditModel).hashCode(), audits.size());
+    if (audits.get(partition).offer(auditModel)) {
+      return true;
+    }
+    droppedCounter.increment();
+    return false;
+  }
+
+  void doAudit(List<InstanceConfigAuditModel> auditModels) {
+    batchSizeSummary.record(auditModels.size());
+
+    // only the latest audit of each instance config matters
+    Map<String, InstanceConfigAuditModel> latestAuditModels = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      latestAuditModels.put(STRING_JOINER.join(assembleInstanceKey(auditModel),
+          auditModel.getConfigAppId(), auditModel.getConfigNamespace()), auditModel);
+    }
+
+    Map<String, Long> instanceIds = prepareInstanceIds(latestAuditModels.values());
+
+    // group by the config namespace, as the instances of a batch usually load the same namespaces
+    Map<String, Map<Long, InstanceConfigAuditModel>> namespaceAuditModels = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : latestAuditModels.values()) {
+      long instanceId = instanceIds.get(assembleInstanceKey(auditModel));
+      String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(assembleInstanceConfigKey(
+          instanceId, auditModel.getConfigAppId(), auditModel.getConfigNamespace()));
+      // if release key is the same, then skip audit
+      if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
+        continue;
+      }
+      namespaceAuditModels.computeIfAbsent(
+          STRING_JOINER.join(auditModel.getConfigAppId(), auditModel.getConfigNamespace()),
+          key -> Maps.newLinkedHashMap()).put(instanceId, auditModel);
+    }
+
+    for (Map<Long, InstanceConfigAuditModel> auditModelsOfNamespace : namespaceAuditModels
+        .values()) {
+      auditNamespace(auditModelsOfNamespace);
+    }
+  }
+
+  /**
+   * Audit the instance configs of one namespace, keyed by instance id
+   */
+  private void auditNamespace(Map<Long, InstanceConfigAuditModel> auditModels) {
+    InstanceConfigAuditModel someAuditModel = auditModels.values().iterator().next();
+    Map<Long, InstanceConfig> instanceConfigs = instanceService
+        .findInstanceConfigs(someAuditModel.getConfigAppId(), someAuditModel.getConfigNamespace(),
+            auditModels.keySet())
+        .stream().collect(Collectors.toMap(InstanceConfig::getInstanceId,
+            instanceConfig -> instanceConfig, (first, second) -> first));
+
+    List<InstanceConfig> instanceConfigsToCreate = Lists.newArrayList();
+    List<InstanceConfig> instanceConfigsToUpdate = Lists.newArrayList();
+    for (Map.Entry<Long, InstanceConfigAuditModel> entry : auditModels.entrySet()) {
+      InstanceConfig existedInstanceConfig = instanceConfigs.get(entry.getKey());
+      InstanceConfig instanceConfig =
+          prepareInstanceConfig(entry.getKey(), entry.getValue(), existedInstanceConfig);
+      if (instanceConfig == null) {
+        continue;
+      }
+      if (existedInstanceConfig == null) {
+        instanceConfigsToCreate.add(instanceConfig);
+      } else {
+        instanceConfigsToUpdate.add(instanceConfig);
+      }
+    }
+
+    if (!instanceConfigsToCreate.isEmpty() || !instanceConfigsToUpdate.isEmpty()) {
+      try {
+        instanceService.batchSaveInstanceConfigs(instanceConfigsToCreate, instanceConfigsToUpdate);
+      } catch (DataIntegrityViolationException ex) {
+        // concurrent insertion by another config service, audit them one by one
+        for (InstanceConfigAuditModel auditModel : auditModels.values()) {
+          try {
+            doAudit(auditModel);
+          } catch (Throwable auditException) {
+            Tracer.logError(auditException);
+          }
+        }
+        return;
+      }
+    }
+
+    for (Map.Entry<Long, InstanceConfigAuditModel> entry : auditModels.entrySet()) {
+      instanceConfigReleaseKeyCache.put(assembleInstanceConfigKey(entry.getKey(),
+          entry.getValue().getConfigAppId(), entry.getValue().getConfigNamespace()),
+          entry.getValue().getReleaseKey());
+    }
   }
 
   void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(),
-        auditModel.getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
+    String instanceCacheKey = assembleInstanceKey(auditModel);
     Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
     if (instanceId == null) {
       instanceId = prepareInstanceId(auditModel);
@@ -105,9 +244,32 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
 
     // if release key is not the same or cannot find in cache, then do audit
-    InstanceConfig instanceConfig = instanceService.findInstanceConfig(instanceId,
+    InstanceConfig existedInstanceConfig = instanceService.findInstanceConfig(instanceId,
         auditModel.getConfigAppId(), auditModel.getConfigNamespace());
+    InstanceConfig instanceConfig =
+        prepareInstanceConfig(instanceId, auditModel, existedInstanceConfig);
 
+    if (instanceConfig == null) {
+      return;
+    }
+
+    if (existedInstanceConfig != null) {
+      instanceService.updateInstanceConfig(instanceConfig);
+      return;
+    }
+
+    try {
+      instanceService.createInstanceConfig(instanceConfig);
+    } catch (DataIntegrityViolationException ex) {
+      // concurrent insertion, safe to ignore
+    }
+  }
+
+  /**
+   * @return the instance config to create or update, or null if no need to write
+   */
+  private InstanceConfig prepareInstanceConfig(long instanceId, InstanceConfigAuditModel auditModel,
+      InstanceConfig instanceConfig) {
     if (instanceConfig != null) {
       if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
         instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
@@ -117,13 +279,12 @@ public class InstanceConfigAuditUtil implements InitializingBean {
           instanceConfig.getDataChangeLastModifiedTime())) {
         // when releaseKey is the same, optimize to reduce writes if the record was updated not long
         // ago
-        return;
+        return null;
       }
       // we need to update no matter the release key is the same or not, to ensure the
       // last modified time is updated each day
       instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-      instanceService.updateInstanceConfig(instanceConfig);
-      return;
+      return instanceConfig;
     }
 
     instanceConfig = new InstanceConfig();
@@ -134,12 +295,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     instanceConfig.setReleaseKey(auditModel.getReleaseKey());
     instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
     instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
-
-    try {
-      instanceService.createInstanceConfig(instanceConfig);
-    } catch (DataIntegrityViolationException ex) {
-      // concurrent insertion, safe to ignore
-    }
+    return instanceConfig;
   }
 
   private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
@@ -153,7 +309,52 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     if (instance != null) {
       return instance.getId();
     }
-    instance = new Instance();
+    return createInstance(auditModel);
+  }
+
+  /**
+   * @return the instance key to instance id map of the audits
+   */
+  private Map<String, Long> prepareInstanceIds(Collection<InstanceConfigAuditModel> auditModels) {
+    Map<String, Long> instanceIds = Maps.newHashMap();
+    // the instances not in cache, grouped by app, cluster and data center, then keyed by ip
+    Map<String, Map<String, InstanceConfigAuditModel>> missingInstances = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceCacheKey = assembleInstanceKey(auditModel);
+      Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
+      if (instanceId != null) {
+        instanceIds.put(instanceCacheKey, instanceId);
+        continue;
+      }
+      missingInstances.computeIfAbsent(STRING_JOINER.join(auditModel.getAppId(),
+          auditModel.getClusterName(), auditModel.getDataCenter()),
+          key -> Maps.newLinkedHashMap()).put(auditModel.getIp(), auditModel);
+    }
+
+    for (Map<String, InstanceConfigAuditModel> auditModelsByIp : missingInstances.values()) {
+      InstanceConfigAuditModel someAuditModel = auditModelsByIp.values().iterator().next();
+      Map<String, Long> existedInstanceIds = instanceService
+          .findInstances(someAuditModel.getAppId(), someAuditModel.getClusterName(),
+              someAuditModel.getDataCenter(), auditModelsByIp.keySet())
+          .stream().collect(Collectors.toMap(Instance::getIp, Instance::getId,
+              (first, second) -> first));
+
+      for (InstanceConfigAuditModel auditModel : auditModelsByIp.values()) {
+        Long instanceId = existedInstanceIds.get(auditModel.getIp());
+        if (instanceId == null) {
+          instanceId = createInstance(auditModel);
+        }
+        String instanceCacheKey = assembleInstanceKey(auditModel);
+        instanceCache.put(instanceCacheKey, instanceId);
+        instanceIds.put(instanceCacheKey, instanceId);
+      }
+    }
+
+    return instanceIds;
+  }
+
+  private long createInstance(InstanceConfigAuditModel auditModel) {
+    Instance instance = new Instance();
     instance.setAppId(auditModel.getAppId());
     instance.setClusterName(auditModel.getClusterName());
     instance.setDataCenter(auditModel.getDataCenter());
@@ -171,16 +372,28 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.take();
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
-        }
+    for (BlockingQueue<InstanceConfigAuditModel> queue : audits) {
+      auditExecutorService.submit(() -> auditInBatches(queue));
+    }
+  }
+
+  private void auditInBatches(BlockingQueue<InstanceConfigAuditModel> queue) {
+    List<InstanceConfigAuditModel> batch = Lists.newArrayList();
+    while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+      try {
+        batch.add(queue.take());
+        // wait a little while for more audits, so that the repeated ones could be coalesced
+        Queues.drain(queue, batch, bizConfig.getInstanceConfigAuditBatch() - 1,
+            bizConfig.getInstanceConfigAuditBatchIntervalInMilli(), TimeUnit.MILLISECONDS);
+        doAudit(batch);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+      } finally {
+        batch.clear();
       }
-    });
+    }
   }
 
   private void buildInstanceCache() {
@@ -209,6 +422,11 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     }
   }
 
+  private String assembleInstanceKey(InstanceConfigAuditModel auditModel) {
+    return assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(),
+        auditModel.getIp(), auditModel.getDataCenter());
+  }
+
   private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
     List<String> keyParts = Lists.newArrayList(appId, cluster, ip);
     if (!Strings.isNullOrEmpty(datacenter)) {
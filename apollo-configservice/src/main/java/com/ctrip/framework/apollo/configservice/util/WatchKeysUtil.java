@@ -22,7 +22,11 @@ import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.springframework.stereotype.Component;
@@ -31,6 +35,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -38,29 +43,64 @@ import java.util.stream.Collectors;
  */
 @Component
 public class WatchKeysUtil {
+  private static final long WATCH_KEYS_CACHE_MAX_SIZE = 10000;
+  private static final long WATCH_KEYS_CACHE_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;
   private final AppNamespaceServiceWithCache appNamespaceService;
 
+  // the instances of the same app watch the same keys, so the assembled ones are shared
+  private final Cache<WatchKeysCacheKey, WatchKeys> watchKeysCache;
+
   public WatchKeysUtil(final AppNamespaceServiceWithCache appNamespaceService) {
     this.appNamespaceService = appNamespaceService;
+    this.watchKeysCache = CacheBuilder.newBuilder().maximumSize(WATCH_KEYS_CACHE_MAX_SIZE)
+        .expireAfterAccess(WATCH_KEYS_CACHE_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .build();
   }
 
   /**
    * Assemble watch keys for the given appId, cluster, namespace, dataCenter combination
+   *
+   * @return the read only watch keys
    */
   public Set<String> assembleAllWatchKeys(String appId, String clusterName, String namespace,
       String dataCenter) {
-    Multimap<String, String> watchedKeysMap =
-        assembleAllWatchKeys(appId, clusterName, Sets.newHashSet(namespace), dataCenter);
-    return Sets.newHashSet(watchedKeysMap.get(namespace));
+    return findAllWatchKeys(appId, clusterName, ImmutableSet.of(namespace), dataCenter)
+        .getWatchKeysMap().get(namespace);
   }
 
   /**
    * Assemble watch keys for the given appId, cluster, namespaces, dataCenter combination
    *
-   * @return a multimap with namespace as the key and watch keys as the value
+   * @return a read only multimap with namespace as the key and watch keys as the value
    */
   public Multimap<String, String> assembleAllWatchKeys(String appId, String clusterName,
       Set<String> namespaces, String dataCenter) {
+    return findAllWatchKeys(appId, clusterName, namespaces, dataCenter).getWatchKeysMap();
+  }
+
+  /**
+   * Find the watch keys for the given appId, cluster, namespaces, dataCenter combination. The
+   * result is cached until the app namespaces change.
+   */
+  public WatchKeys findAllWatchKeys(String appId, String clusterName, Set<String> namespaces,
+      String dataCenter) {
+    // read the version before assembling, so that a change in between invalidates the result
+    long appNamespaceVersion = appNamespaceService.getVersion();
+    WatchKeysCacheKey cacheKey =
+        new WatchKeysCacheKey(appId, clusterName, ImmutableSet.copyOf(namespaces), dataCenter);
+    WatchKeys watchKeys = watchKeysCache.getIfPresent(cacheKey);
+    if (watchKeys != null && watchKeys.appNamespaceVersion == appNamespaceVersion) {
+      return watchKeys;
+    }
+
+    watchKeys = new WatchKeys(appNamespaceVersion, ImmutableSetMultimap.copyOf(
+        doAssembleAllWatchKeys(appId, clusterName, cacheKey.namespaces, dataCenter)));
+    watchKeysCache.put(cacheKey, watchKeys);
+    return watchKeys;
+  }
+
+  private Multimap<String, String> doAssembleAllWatchKeys(String appId, String clusterName,
+      Set<String> namespaces, String dataCenter) {
     Multimap<String, String> watchedKeysMap =
         assembleWatchKeys(appId, clusterName, namespaces, dataCenter);
 
@@ -147,4 +187,73 @@ public class WatchKeysUtil {
 
     return appNamespaces.stream().map(AppNamespace::getName).collect(Collectors.toSet());
   }
+
+  /**
+   * The read only watch keys of some namespaces
+   */
+  public static final class WatchKeys {
+    private final long appNamespaceVersion;
+    private final ImmutableSetMultimap<String, String> watchKeysMap;
+    private final ImmutableSet<String> allWatchKeys;
+
+    public WatchKeys(Multimap<String, String> watchKeysMap) {
+      this(0, ImmutableSetMultimap.copyOf(watchKeysMap));
+    }
+
+    private WatchKeys(long appNamespaceVersion,
+        ImmutableSetMultimap<String, String> watchKeysMap) {
+      this.appNamespaceVersion = appNamespaceVersion;
+      this.watchKeysMap = watchKeysMap;
+      this.allWatchKeys = ImmutableSet.copyOf(watchKeysMap.values());
+    }
+
+    /**
+     * @return namespace as the key and its watch keys as the value
+     */
+    public ImmutableSetMultimap<String, String> getWatchKeysMap() {
+      return watchKeysMap;
+    }
+
+    /**
+     * @return the watch keys of all the namespaces
+     */
+    public ImmutableSet<String> getAllWatchKeys() {
+      return allWatchKeys;
+    }
+  }
+
+  private static final class WatchKeysCacheKey {
+    private final String appId;
+    private final String clusterName;
+    private final ImmutableSet<String> namespaces;
+    private final String dataCenter;
+    private final int hashCode;
+
+    WatchKeysCacheKey(String appId, String clusterName, ImmutableSet<String> namespaces,
+        String dataCenter) {
+      this.appId = appId;
+      this.clusterName = clusterName;
+      this.namespaces = namespaces;
+      this.dataCenter = dataCenter;
+      this.hashCode = Objects.hash(appId, clusterName, namespaces, dataCenter);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof WatchKeysCacheKey)) {
+        return false;
+      }
+      WatchKeysCacheKey that = (WatchKeysCacheKey) o;
+      return Objects.equals(appId, that.appId) && Objects.equals(clusterName, that.clusterName)
+          && Objects.equals(dataCenter, that.dataCenter) && namespaces.equals(that.namespaces);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
@@ -106,6 +106,13 @@ public class DeferredResultWrapper implements Comparable<DeferredResultWrapper>
     result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
   }
 
+  /**
+   * Complete the long polling as if it timed out, so that the client polls again
+   */
+  public void setNotModifiedResult() {
+    result.setResult(NOT_MODIFIED_RESPONSE_LIST);
+  }
+
   public DeferredResult<ResponseEntity<?>> getResult() {
     return result;
   }
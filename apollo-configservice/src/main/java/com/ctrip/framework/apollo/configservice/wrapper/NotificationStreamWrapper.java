@@ -0,0 +1,242 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * The server-sent events stream of a notification client.
+ * <p>
+ * Unlike {@link DeferredResultWrapper}, the stream stays open after a notification is sent, so it
+ * tracks the latest notification id of each namespace and only sends the newer ones.
+ * </p>
+ * <p>
+ * The events are written by the send executor, one at a time per stream, so a slow client never
+ * blocks the release message or heartbeat thread. The notifications waiting to be written are
+ * merged by namespace, and a stream still writing an event after the send timeout is closed.
+ * </p>
+ */
+public class NotificationStreamWrapper {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationStreamWrapper.class);
+  public static final String NOTIFICATION_EVENT = "notification";
+  public static final String HEARTBEAT_EVENT = "heartbeat";
+
+  private final SseEmitter emitter;
+  private final Executor sendExecutor;
+  private final Map<String, Long> notificationIds;
+  private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+  // the notifications to write, keyed by the namespace name the client used
+  private final Map<String, ApolloConfigNotification> pendingNotifications =
+      Maps.newLinkedHashMap();
+  private boolean heartbeatPending;
+  // whether a send task is queued or running
+  private boolean sending;
+  private volatile long sendStartedAt;
+  private volatile boolean closed;
+  private boolean dropped;
+
+  /**
+   * @param notificationIds the client side notification ids keyed by the normalized namespace name
+   * @param sendExecutor the executor to write the events
+   */
+  public NotificationStreamWrapper(long timeoutInMilli, Map<String, Long> notificationIds,
+      Executor sendExecutor) {
+    this.emitter = new SseEmitter(timeoutInMilli);
+    this.sendExecutor = sendExecutor;
+    this.notificationIds = Maps.newHashMap(notificationIds);
+  }
+
+  public void recordNamespaceNameNormalizedResult(String originalNamespaceName,
+      String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
+    }
+    normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName,
+        originalNamespaceName);
+  }
+
+  public void onTimeout(Runnable timeoutCallback) {
+    emitter.onTimeout(timeoutCallback);
+  }
+
+  public void onCompletion(Runnable completionCallback) {
+    emitter.onCompletion(() -> {
+      closed = true;
+      completionCallback.run();
+    });
+  }
+
+  /**
+   * Send the notifications newer than the ones the client already has, the namespace name is
+   * restored to the one the client used as it is a key in client side.
+   */
+  public synchronized void send(List<ApolloConfigNotification> notifications) {
+    if (closed) {
+      return;
+    }
+    boolean added = false;
+    for (ApolloConfigNotification notification : notifications) {
+      Long notificationId = notificationIds.get(notification.getNamespaceName());
+      if (notificationId != null && notificationId >= notification.getNotificationId()) {
+        continue;
+      }
+      notificationIds.put(notification.getNamespaceName(), notification.getNotificationId());
+      ApolloConfigNotification notificationToSend = restoreOriginalNamespaceName(notification);
+      pendingNotifications.put(notificationToSend.getNamespaceName(), notificationToSend);
+      added = true;
+    }
+    if (added) {
+      scheduleSend();
+    }
+  }
+
+  /**
+   * Send a heartbeat if the stream is idle, or close the stream if it has been writing an event
+   * for longer than the send timeout
+   */
+  public synchronized void sendHeartbeat(long sendTimeoutInMilli) {
+    if (closed) {
+      return;
+    }
+    if (sending) {
+      long startedAt = sendStartedAt;
+      if (startedAt != 0 && System.currentTimeMillis() - startedAt > sendTimeoutInMilli) {
+        logger.debug("Notification stream has been sending for more than {} ms, closing it",
+            sendTimeoutInMilli);
+        drop();
+      }
+      return;
+    }
+    heartbeatPending = true;
+    scheduleSend();
+  }
+
+  /**
+   * Close the stream, so that the client connects again
+   */
+  public void complete() {
+    emitter.complete();
+  }
+
+  public SseEmitter getEmitter() {
+    return emitter;
+  }
+
+  private void scheduleSend() {
+    if (sending) {
+      return;
+    }
+    sending = true;
+    try {
+      sendExecutor.execute(this::sendPendingEvents);
+    } catch (RejectedExecutionException ex) {
+      sending = false;
+      logger.debug("Schedule notification stream send failed", ex);
+      drop();
+    }
+  }
+
+  /**
+   * Close the stream as it falls behind, the client connects again with the notification ids it
+   * received
+   */
+  private void drop() {
+    closed = true;
+    dropped = true;
+    pendingNotifications.clear();
+    heartbeatPending = false;
+    // a send task in progress completes the emitter, so that this thread is not blocked by it
+    if (!sending) {
+      emitter.complete();
+    }
+  }
+
+  private void sendPendingEvents() {
+    while (true) {
+      SseEmitter.SseEventBuilder event;
+      synchronized (this) {
+        event = nextPendingEvent();
+        if (event == null) {
+          sending = false;
+          if (dropped) {
+            emitter.complete();
+          }
+          return;
+        }
+        sendStartedAt = System.currentTimeMillis();
+      }
+      // written outside the lock, so that the senders and the heartbeat are never blocked by it
+      doSend(event);
+      sendStartedAt = 0;
+    }
+  }
+
+  private SseEmitter.SseEventBuilder nextPendingEvent() {
+    if (closed) {
+      return null;
+    }
+    if (!pendingNotifications.isEmpty()) {
+      List<ApolloConfigNotification> notificationsToSend =
+          Lists.newArrayList(pendingNotifications.values());
+      pendingNotifications.clear();
+      heartbeatPending = false;
+      return SseEmitter.event().name(NOTIFICATION_EVENT)
+          .data(notificationsToSend, MediaType.APPLICATION_JSON);
+    }
+    if (heartbeatPending) {
+      heartbeatPending = false;
+      return SseEmitter.event().name(HEARTBEAT_EVENT).data(System.currentTimeMillis());
+    }
+    return null;
+  }
+
+  private void doSend(SseEmitter.SseEventBuilder event) {
+    try {
+      emitter.send(event);
+    } catch (IOException | IllegalStateException ex) {
+      // the client has gone or the stream is completed, the container completes the emitter
+      closed = true;
+      logger.debug("Send to notification stream failed", ex);
+    }
+  }
+
+  private ApolloConfigNotification restoreOriginalNamespaceName(
+      ApolloConfigNotification notification) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null
+        || !normalizedNamespaceNameToOriginalNamespaceName
+            .containsKey(notification.getNamespaceName())) {
+      return notification;
+    }
+    // the notification is shared with other clients, so it must not be mutated
+    ApolloConfigNotification copiedNotification = new ApolloConfigNotification(
+        normalizedNamespaceNameToOriginalNamespaceName.get(notification.getNamespaceName()),
+        notification.getNotificationId());
+    notification.getMessages().getDetails().forEach(copiedNotification::addMessage);
+    return copiedNotification;
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Registry of the long polling subscribers grouped by watch keys, the keys are case-insensitive.
+ * <p>
+ * Watch keys are interned into per key buckets which are spread over a fixed number of striped
+ * locks, and each bucket keeps its subscribers in a compact array. A subscriber is registered for
+ * all its watch keys at once and gets a {@link Subscription} which remembers its slot in every
+ * bucket, so that unregistering is O(1) per key no matter how many clients watch the same key.
+ * </p>
+ *
+ * <p>
+ * Compared with a {@code ConcurrentMap<String, Set<V>>}, a poll watching n keys allocates 3 objects
+ * (the subscription and two arrays of length n) instead of one set entry per key, i.e. roughly
+ * {@code 64 + 16 * n} bytes per connection with compressed oops, including the bucket slots.
+ * </p>
+ */
+public class WatchKeyRegistry<V> {
+  private static final int DEFAULT_STRIPES = 64;
+  private static final int INITIAL_BUCKET_CAPACITY = 4;
+
+  private final Stripe[] stripes;
+  private final int stripeMask;
+
+  public WatchKeyRegistry() {
+    this(DEFAULT_STRIPES);
+  }
+
+  public WatchKeyRegistry(int concurrencyLevel) {
+    Preconditions.checkArgument(concurrencyLevel > 0, "concurrencyLevel must be positive");
+    int stripeCount = Integer.highestOneBit(concurrencyLevel);
+    if (stripeCount < concurrencyLevel) {
+      stripeCount <<= 1;
+    }
+    stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new Stripe();
+    }
+    stripeMask = stripeCount - 1;
+  }
+
+  /**
+   * Register the subscriber for all the watch keys
+   *
+   * @param keys the watch keys, duplicated keys are registered only once
+   * @param value the subscriber
+   * @return the subscription which should be unregistered when the subscriber completes
+   */
+  public Subscription register(Collection<String> keys, V value) {
+    Objects.requireNonNull(value, "value");
+    Subscription subscription = new Subscription(value, keys.size());
+    for (String key : keys) {
+      String normalizedKey = normalizeKey(key);
+      Stripe stripe = stripeFor(normalizedKey);
+      synchronized (stripe) {
+        Bucket bucket = stripe.buckets.get(normalizedKey);
+        if (bucket == null) {
+          bucket = new Bucket(stripe, normalizedKey);
+          stripe.buckets.put(normalizedKey, bucket);
+        } else if (subscription.isRegisteredTo(bucket)) {
+          continue;
+        }
+        bucket.add(subscription);
+      }
+    }
+    return subscription;
+  }
+
+  /**
+   * @return a snapshot of the subscribers of the watch key
+   */
+  @SuppressWarnings("unchecked")
+  public List<V> get(String key) {
+    String normalizedKey = normalizeKey(key);
+    Stripe stripe = stripeFor(normalizedKey);
+    synchronized (stripe) {
+      Bucket bucket = stripe.buckets.get(normalizedKey);
+      if (bucket == null) {
+        return Collections.emptyList();
+      }
+      List<V> values = new ArrayList<>(bucket.size);
+      for (int i = 0; i < bucket.size; i++) {
+        values.add((V) bucket.subscriptions[i].value);
+      }
+      return values;
+    }
+  }
+
+  /**
+   * @return a snapshot of all the subscribers, each subscriber appears once no matter how many keys
+   * it watches
+   */
+  @SuppressWarnings("unchecked")
+  public List<V> values() {
+    List<V> values = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        for (Bucket bucket : stripe.buckets.values()) {
+          for (int i = 0; i < bucket.size; i++) {
+            // every subscriber is collected from the first bucket it registered to
+            if (bucket.bucketIndexes[i] == 0) {
+              values.add((V) bucket.subscriptions[i].value);
+            }
+          }
+        }
+      }
+    }
+    return values;
+  }
+
+  public boolean containsKey(String key) {
+    String normalizedKey = normalizeKey(key);
+    Stripe stripe = stripeFor(normalizedKey);
+    synchronized (stripe) {
+      return stripe.buckets.containsKey(normalizedKey);
+    }
+  }
+
+  /**
+   * Returns the total number of registrations across all keys.
+   * <p>
+   * Note: In concurrent scenarios, the returned value is a best-effort approximation.
+   * </p>
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        for (Bucket bucket : stripe.buckets.values()) {
+          size += bucket.size;
+        }
+      }
+    }
+    return size;
+  }
+
+  private Stripe stripeFor(String normalizedKey) {
+    int hash = normalizedKey.hashCode();
+    return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+  }
+
+  private static String normalizeKey(String key) {
+    // returns the same instance if the key is already in lower case
+    return Objects.requireNonNull(key, "key").toLowerCase(Locale.ROOT);
+  }
+
+  private static class Stripe {
+    private final Map<String, Bucket> buckets = new HashMap<>();
+  }
+
+  /**
+   * Subscribers of one watch key, guarded by the stripe lock.
+   */
+  private static class Bucket {
+    private final Stripe stripe;
+    private final String key;
+    private Subscription[] subscriptions = new Subscription[INITIAL_BUCKET_CAPACITY];
+    // the index of this bucket in the subscription's buckets array
+    private int[] bucketIndexes = new int[INITIAL_BUCKET_CAPACITY];
+    private int size;
+
+    private Bucket(Stripe stripe, String key) {
+      this.stripe = stripe;
+      this.key = key;
+    }
+
+    private void add(Subscription subscription) {
+      if (size == subscriptions.length) {
+        int newCapacity = size + (size >> 1);
+        subscriptions = Arrays.copyOf(subscriptions, newCapacity);
+        bucketIndexes = Arrays.copyOf(bucketIndexes, newCapacity);
+      }
+      int bucketIndex = subscription.bucketCount++;
+      subscription.buckets[bucketIndex] = this;
+      subscription.slots[bucketIndex] = size;
+      subscriptions[size] = subscription;
+      bucketIndexes[size] = bucketIndex;
+      size++;
+    }
+
+    private void remove(Subscription subscription, int bucketIndex) {
+      int slot = subscription.slots[bucketIndex];
+      int last = --size;
+      if (slot != last) {
+        // move the last subscriber into the freed slot
+        Subscription moved = subscriptions[last];
+        int movedBucketIndex = bucketIndexes[last];
+        subscriptions[slot] = moved;
+        bucketIndexes[slot] = movedBucketIndex;
+        moved.slots[movedBucketIndex] = slot;
+      }
+      subscriptions[last] = null;
+      if (size == 0) {
+        stripe.buckets.remove(key);
+      } else if (subscriptions.length > INITIAL_BUCKET_CAPACITY
+          && size < subscriptions.length >> 2) {
+        // shrink the bucket after a large fan-out has been drained
+        int newCapacity = Math.max(INITIAL_BUCKET_CAPACITY, subscriptions.length >> 1);
+        subscriptions = Arrays.copyOf(subscriptions, newCapacity);
+        bucketIndexes = Arrays.copyOf(bucketIndexes, newCapacity);
+      }
+    }
+  }
+
+  /**
+   * The registration of one subscriber for all its watch keys.
+   */
+  public static class Subscription {
+    private static final AtomicIntegerFieldUpdater<Subscription> UNREGISTERED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(Subscription.class, "unregistered");
+
+    private final Object value;
+    private final Bucket[] buckets;
+    // the index of the subscriber in each bucket, guarded by the bucket's stripe lock
+    private final int[] slots;
+    // only written while registering, which happens before the subscriber could complete
+    private int bucketCount;
+    private volatile int unregistered;
+
+    private Subscription(Object value, int maxBucketCount) {
+      this.value = value;
+      this.buckets = new Bucket[maxBucketCount];
+      this.slots = new int[maxBucketCount];
+    }
+
+    private boolean isRegisteredTo(Bucket bucket) {
+      for (int i = 0; i < bucketCount; i++) {
+        if (buckets[i] == bucket) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Unregister the subscriber from all its watch keys, it is safe to call this method more than
+     * once.
+     */
+    public void unregister() {
+      if (!UNREGISTERED_UPDATER.compareAndSet(this, 0, 1)) {
+        return;
+      }
+      for (int i = 0; i < bucketCount; i++) {
+        Bucket bucket = buckets[i];
+        synchronized (bucket.stripe) {
+          bucket.remove(this, i);
+        }
+        buckets[i] = null;
+      }
+    }
+  }
+}
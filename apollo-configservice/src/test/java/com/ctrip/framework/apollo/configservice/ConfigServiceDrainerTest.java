@@ -0,0 +1,121 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.registry.configuration.support.ApolloServiceRegistryHeartbeatApplicationRunner;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV3;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigServiceDrainerTest {
+  private ConfigServiceDrainer configServiceDrainer;
+
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private NotificationControllerV2 notificationControllerV2;
+  @Mock
+  private NotificationControllerV3 notificationControllerV3;
+  @Mock
+  private ObjectProvider<ServiceRegistry> serviceRegistryProvider;
+  @Mock
+  private ObjectProvider<Registration> registrationProvider;
+  @Mock
+  private ObjectProvider<ApolloServiceRegistryHeartbeatApplicationRunner>
+      databaseServiceRegistryProvider;
+  @Mock
+  private ServiceRegistry<Registration> serviceRegistry;
+  @Mock
+  private Registration registration;
+  @Mock
+  private ApolloServiceRegistryHeartbeatApplicationRunner databaseServiceRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    configServiceDrainer = new ConfigServiceDrainer(bizConfig, notificationControllerV2,
+        notificationControllerV3, serviceRegistryProvider, registrationProvider,
+        databaseServiceRegistryProvider);
+  }
+
+  @Test
+  public void testDrainInSlices() throws Exception {
+    List<DeferredResultWrapper> results = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      results.add(new DeferredResultWrapper(TimeUnit.MINUTES.toMillis(1)));
+    }
+    when(notificationControllerV2.stopLongPolling()).thenReturn(results);
+    // 4 slices of 1 client, one slice every 500 ms
+    when(bizConfig.longPollingDrainPeriodInMilli()).thenReturn(TimeUnit.SECONDS.toMillis(10));
+    when(serviceRegistryProvider.getIfUnique()).thenReturn(serviceRegistry);
+    when(registrationProvider.getIfUnique()).thenReturn(registration);
+    when(databaseServiceRegistryProvider.getIfUnique()).thenReturn(databaseServiceRegistry);
+
+    CompletableFuture<Void> future = configServiceDrainer.drain();
+
+    assertTrue(configServiceDrainer.isDraining());
+    assertSame(future, configServiceDrainer.drain());
+    verify(serviceRegistry, times(1)).deregister(registration);
+    verify(databaseServiceRegistry, times(1)).deregister();
+
+    await().atMost(1, TimeUnit.SECONDS)
+        .untilAsserted(() -> assertTrue(results.get(0).getResult().hasResult()));
+    assertFalse(results.get(results.size() - 1).getResult().hasResult());
+    assertFalse(future.isDone());
+
+    future.get(5, TimeUnit.SECONDS);
+
+    for (DeferredResultWrapper result : results) {
+      ResponseEntity<?> response = (ResponseEntity<?>) result.getResult().getResult();
+      assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    }
+  }
+
+  @Test
+  public void testDrainWithoutClients() throws Exception {
+    when(notificationControllerV2.stopLongPolling()).thenReturn(Lists.newArrayList());
+    when(bizConfig.longPollingDrainPeriodInMilli()).thenReturn(TimeUnit.SECONDS.toMillis(10));
+
+    configServiceDrainer.drain().get(1, TimeUnit.SECONDS);
+
+    assertTrue(configServiceDrainer.isDraining());
+  }
+}
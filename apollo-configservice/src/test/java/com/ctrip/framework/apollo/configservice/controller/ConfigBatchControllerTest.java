@@ -0,0 +1,178 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.controller.ConfigBatchController.ConfigQuery;
+import com.ctrip.framework.apollo.configservice.controller.ConfigBatchController.ConfigQueryResponse;
+import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCompressor;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.IncrementalSyncService;
+import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
+import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil.InstanceConfigAuditModel;
+import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigBatchControllerTest {
+  private ConfigBatchController configBatchController;
+  @Mock
+  private ConfigService configService;
+  @Mock
+  private IncrementalSyncService incrementalSyncService;
+  @Mock
+  private AppNamespaceServiceWithCache appNamespaceService;
+  @Mock
+  private NamespaceUtil namespaceUtil;
+  @Mock
+  private InstanceConfigAuditUtil instanceConfigAuditUtil;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ConfigResponseCache configResponseCache;
+  @Mock
+  private ConfigResponseCompressor configResponseCompressor;
+  @Mock
+  private HttpServletRequest someRequest;
+  @Mock
+  private Release someRelease;
+  private String someAppId;
+  private String someClusterName;
+  private String someDataCenter;
+  private String someClientIp;
+  private String defaultNamespaceName;
+  private String someMissingNamespaceName;
+  private String someReleaseKey;
+
+  @Before
+  public void setUp() throws Exception {
+    ConfigController configController = new ConfigController(configService,
+        incrementalSyncService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil,
+        new Gson(), bizConfig, configResponseCache, configResponseCompressor);
+    configBatchController =
+        new ConfigBatchController(configController, instanceConfigAuditUtil, bizConfig);
+
+    someAppId = "someAppId";
+    someClusterName = "someClusterName";
+    someDataCenter = "someDC";
+    someClientIp = "someClientIp";
+    defaultNamespaceName = ConfigConsts.NAMESPACE_APPLICATION;
+    someMissingNamespaceName = "someMissingNamespace";
+    someReleaseKey = "someReleaseKey";
+  }
+
+  @Test
+  public void testQueryConfigs() throws Exception {
+    when(bizConfig.configBatchMaxNamespaces()).thenReturn(2);
+    mockDefaultNamespaceRelease();
+    when(namespaceUtil.filterNamespaceName(someMissingNamespaceName))
+        .thenReturn(someMissingNamespaceName);
+    when(namespaceUtil.normalizeNamespace(someAppId, someMissingNamespaceName))
+        .thenReturn(someMissingNamespaceName);
+    when(configService.findReleaseConfigurations(someRelease))
+        .thenReturn(ImmutableMap.of("someKey", "someValue"));
+
+    List<ConfigQueryResponse> responses = configBatchController.queryConfigs(someAppId,
+        someClusterName, someDataCenter, someClientIp, null, null,
+        Lists.newArrayList(new ConfigQuery(defaultNamespaceName, null),
+            new ConfigQuery(someMissingNamespaceName, "-1")),
+        someRequest);
+
+    assertEquals(2, responses.size());
+    ConfigQueryResponse defaultNamespaceResponse = responses.get(0);
+    assertEquals(defaultNamespaceName, defaultNamespaceResponse.getNamespaceName());
+    assertEquals(HttpServletResponse.SC_OK, defaultNamespaceResponse.getStatus());
+    assertEquals(someReleaseKey, defaultNamespaceResponse.getConfig().getReleaseKey());
+    assertEquals("someValue",
+        defaultNamespaceResponse.getConfig().getConfigurations().get("someKey"));
+
+    ConfigQueryResponse missingNamespaceResponse = responses.get(1);
+    assertEquals(someMissingNamespaceName, missingNamespaceResponse.getNamespaceName());
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, missingNamespaceResponse.getStatus());
+    assertNull(missingNamespaceResponse.getConfig());
+
+    verify(instanceConfigAuditUtil, times(1)).audit(Lists.newArrayList(
+        new InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, someClientIp,
+            someAppId, someClusterName, defaultNamespaceName, someReleaseKey)));
+  }
+
+  @Test
+  public void testQueryConfigsNotModified() throws Exception {
+    when(bizConfig.configBatchMaxNamespaces()).thenReturn(1);
+    mockDefaultNamespaceRelease();
+
+    List<ConfigQueryResponse> responses = configBatchController.queryConfigs(someAppId,
+        someClusterName, someDataCenter, someClientIp, null, null,
+        Lists.newArrayList(new ConfigQuery(defaultNamespaceName, someReleaseKey)), someRequest);
+
+    assertEquals(1, responses.size());
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, responses.get(0).getStatus());
+    assertNull(responses.get(0).getConfig());
+    verify(instanceConfigAuditUtil, times(1)).audit(anyList());
+    verify(configService, never()).findReleaseConfigurations(someRelease);
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithoutNamespaces() throws Exception {
+    configBatchController.queryConfigs(someAppId, someClusterName, someDataCenter, someClientIp,
+        null, null, Lists.newArrayList(), someRequest);
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithTooManyNamespaces() throws Exception {
+    when(bizConfig.configBatchMaxNamespaces()).thenReturn(1);
+
+    configBatchController.queryConfigs(someAppId, someClusterName, someDataCenter, someClientIp,
+        null, null, Lists.newArrayList(new ConfigQuery(defaultNamespaceName, null),
+            new ConfigQuery(someMissingNamespaceName, null)), someRequest);
+  }
+
+  private void mockDefaultNamespaceRelease() {
+    when(namespaceUtil.filterNamespaceName(defaultNamespaceName)).thenReturn(defaultNamespaceName);
+    when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespaceName))
+        .thenReturn(defaultNamespaceName);
+    when(configService.loadConfig(someAppId, someClientIp, null, someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, null)).thenReturn(someRelease);
+    when(someRelease.getAppId()).thenReturn(someAppId);
+    when(someRelease.getClusterName()).thenReturn(someClusterName);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(someRelease.getReleaseKey()).thenReturn(someReleaseKey);
+  }
+}
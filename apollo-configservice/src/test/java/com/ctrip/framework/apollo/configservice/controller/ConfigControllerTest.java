@@ -20,6 +20,9 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCompressor;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache.ConfigResponse;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.service.config.IncrementalSyncService;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
@@ -42,9 +45,11 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +72,10 @@ public class ConfigControllerTest {
   private AppNamespaceServiceWithCache appNamespaceService;
   @Mock
   private BizConfig bizConfig;
+  @Mock
+  private ConfigResponseCache configResponseCache;
+  @Mock
+  private ConfigResponseCompressor configResponseCompressor;
   private String someAppId;
   private String someClusterName;
   private String defaultClusterName;
@@ -99,7 +108,8 @@ public class ConfigControllerTest {
   @Before
   public void setUp() throws Exception {
     configController = spy(new ConfigController(configService, incrementalSyncService,
-        appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson, bizConfig));
+        appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson, bizConfig,
+        configResponseCache, configResponseCompressor));
 
     someAppId = "1";
     someClusterName = "someClusterName";
@@ -116,6 +126,9 @@ public class ConfigControllerTest {
     when(someRelease.getClusterName()).thenReturn(someClusterName);
     when(someRelease.getConfigurations()).thenReturn(someValidConfiguration);
     when(somePublicRelease.getConfigurations()).thenReturn(somePublicConfiguration);
+    when(configService.findReleaseConfigurations(any(Release.class)))
+        .thenAnswer(invocation -> gson.fromJson(
+            invocation.<Release>getArgument(0).getConfigurations(), configurationTypeReference));
     when(namespaceUtil.filterNamespaceName(defaultNamespaceName)).thenReturn(defaultNamespaceName);
     when(namespaceUtil.filterNamespaceName(somePublicNamespaceName))
         .thenReturn(somePublicNamespaceName);
@@ -156,6 +169,36 @@ public class ConfigControllerTest {
         someServerSideNewReleaseKey);
   }
 
+  @Test
+  public void testQueryConfigWithCachedResponse() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    byte[] someBody = "{}".getBytes(StandardCharsets.UTF_8);
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    ServletOutputStream someOutputStream = mock(ServletOutputStream.class);
+
+    when(configResponseCache.isEnabled()).thenReturn(true);
+    when(configResponseCache.get(someAppId, someClusterName, defaultNamespaceName,
+        someServerSideNewReleaseKey)).thenReturn(new ConfigResponse(someBody, null, new String[0]));
+    when(someResponse.getOutputStream()).thenReturn(someOutputStream);
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId,
+        someClusterName, defaultNamespaceName, someDataCenter, someNotificationMessages))
+        .thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey, someClientIp,
+        someClientLabel, someMessagesAsString, someRequest, someResponse);
+
+    assertNull(result);
+    verify(someResponse, times(1)).setContentLength(someBody.length);
+    verify(someOutputStream, times(1)).write(someBody);
+    verify(configService, never()).findReleaseConfigurations(someRelease);
+    verify(configResponseCache, never()).put(anyString(), anyString(), anyString(), anyString(),
+        anyList(), any(byte[].class));
+  }
+
   @Test
   public void testQueryConfigFile() throws Exception {
     String someClientSideReleaseKey = "1";
@@ -526,32 +569,25 @@ public class ConfigControllerTest {
     when(bizConfig.isConfigServiceIncrementalChangeEnabled())
         .thenReturn(true);
     String clientSideReleaseKey = "1";
-    String someConfigurations = "{\"apollo.public.foo\": \"foo\"}";
     HttpServletResponse someResponse = mock(HttpServletResponse.class);
     ImmutableMap<String, Release> someReleaseMap = mock(ImmutableMap.class);
 
     String someServerSideNewReleaseKey = "2";
-    String anotherConfigurations = "{\"apollo.public.foo\": \"foo\", \"apollo.public.bar\": \"bar\"}";
 
     when(configService.findReleasesByReleaseKeys(Sets.newHashSet(clientSideReleaseKey))).thenReturn(
         someReleaseMap);
     when(someReleaseMap.get(clientSideReleaseKey)).thenReturn(someRelease);
-    when(someRelease.getConfigurations()).thenReturn(someConfigurations);
     when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId,
         someClusterName, defaultNamespaceName,
         someDataCenter, someNotificationMessages)).thenReturn(anotherRelease);
     when(anotherRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
-    when(anotherRelease.getConfigurations()).thenReturn(anotherConfigurations);
     when(anotherRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
 
 
     List<ConfigurationChange> configurationChanges = new ArrayList<>();
     configurationChanges.add(new ConfigurationChange("apollo.public.bar", "bar", "ADDED"));
-    when(incrementalSyncService.getConfigurationChanges(someServerSideNewReleaseKey,
-        gson.fromJson(anotherConfigurations, configurationTypeReference),
-        clientSideReleaseKey,
-        gson.fromJson(someConfigurations, configurationTypeReference)))
-        .thenReturn(configurationChanges);
+    when(incrementalSyncService.getConfigurationChanges(Lists.newArrayList(anotherRelease),
+        Lists.newArrayList(someRelease))).thenReturn(configurationChanges);
 
     ApolloConfig anotherResult = configController.queryConfig(someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, clientSideReleaseKey,
@@ -594,8 +630,6 @@ public class ConfigControllerTest {
         .thenReturn(true);
     String someAppClientSideReleaseKey = "1";
     String somePublicAppClientSideReleaseKey = "2";
-    String someConfigurations = "{\"apollo.public.foo.client\": \"foo.override\"}";
-    String somePublicConfigurations = "{\"apollo.public.foo.client\": \"foo\"}";
     ImmutableMap<String, Release> someReleaseMap = mock(ImmutableMap.class);
     Release somePublicRelease = mock(Release.class);
 
@@ -603,8 +637,6 @@ public class ConfigControllerTest {
         somePublicAppClientSideReleaseKey))).thenReturn(someReleaseMap);
     when(someReleaseMap.get(someAppClientSideReleaseKey)).thenReturn(someRelease);
     when(someReleaseMap.get(somePublicAppClientSideReleaseKey)).thenReturn(somePublicRelease);
-    when(someRelease.getConfigurations()).thenReturn(someConfigurations);
-    when(somePublicRelease.getConfigurations()).thenReturn(somePublicConfigurations);
 
     String someAppServerSideReleaseKey = "3";
     String somePublicAppServerSideReleaseKey = "4";
@@ -614,11 +646,6 @@ public class ConfigControllerTest {
     AppNamespace somePublicAppNamespace =
         assemblePublicAppNamespace(somePublicAppId, somePublicNamespaceName);
 
-    when(anotherRelease.getConfigurations()).thenReturn(
-        "{\"apollo.public.foo\": \"foo-override\"}");
-    when(anotherPublicRelease.getConfigurations())
-        .thenReturn("{\"apollo.public.foo\": \"foo\", \"apollo.public.bar\": \"bar\"}");
-
     when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId,
         someClusterName, somePublicNamespaceName,
         someDataCenter, someNotificationMessages)).thenReturn(anotherRelease);
@@ -634,21 +661,17 @@ public class ConfigControllerTest {
     when(anotherPublicRelease.getClusterName()).thenReturn(someDataCenter);
     when(anotherPublicRelease.getNamespaceName()).thenReturn(somePublicNamespaceName);
 
-    String mergeServerSideConfigurations = "{\"apollo.public.bar\": \"bar\",\"apollo.public.foo\": \"foo-override\"}";
     String mergeServerSideReleaseKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppServerSideReleaseKey, somePublicAppServerSideReleaseKey);
-    String mergeClientSideConfigurations = "{\"apollo.public.foo.client\": \"foo.override\"}";
     String mergeClientSideReleaseKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppClientSideReleaseKey, somePublicAppClientSideReleaseKey);
     List<ConfigurationChange> configurationChanges = new ArrayList<>();
     configurationChanges.add(new ConfigurationChange("apollo.public.bar", "bar", "ADDED"));
     configurationChanges.add(new ConfigurationChange("apollo.public.foo", "foo-override", "ADDED"));
     configurationChanges.add(new ConfigurationChange("apollo.public.foo.client", null, "DELETED"));
-    when(incrementalSyncService.getConfigurationChanges(mergeServerSideReleaseKey,
-        gson.fromJson(mergeServerSideConfigurations, configurationTypeReference),
-        mergeClientSideReleaseKey,
-        gson.fromJson(mergeClientSideConfigurations, configurationTypeReference)))
-        .thenReturn(configurationChanges);
+    when(incrementalSyncService.getConfigurationChanges(
+        Lists.newArrayList(anotherRelease, anotherPublicRelease),
+        Lists.newArrayList(someRelease, somePublicRelease))).thenReturn(configurationChanges);
 
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
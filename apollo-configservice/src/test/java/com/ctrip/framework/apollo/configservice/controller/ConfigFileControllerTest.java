@@ -16,22 +16,32 @@
  */
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.controller.ConfigController.ConfigQueryResult;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCompressor;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
-import com.google.common.cache.Cache;
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.Before;
@@ -39,15 +49,19 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -65,6 +79,10 @@ public class ConfigFileControllerTest {
   private NamespaceUtil namespaceUtil;
   @Mock
   private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private MeterRegistry meterRegistry;
   private ConfigFileController configFileController;
   private String someAppId;
   private String someClusterName;
@@ -76,15 +94,22 @@ public class ConfigFileControllerTest {
   private HttpServletResponse someResponse;
   @Mock
   private HttpServletRequest someRequest;
-  Multimap<String, String> watchedKeys2CacheKey;
-  Multimap<String, String> cacheKey2WatchedKeys;
+  Map<String, Map<String, ?>> watchedKeys2CacheKey;
+  private final AtomicLong someNanos = new AtomicLong();
 
   private static final Gson GSON = new Gson();
 
   @Before
   public void setUp() throws Exception {
+    when(bizConfig.configServiceConfigFileCacheMaxSizeInBytes()).thenReturn(50 * 1024 * 1024L);
     configFileController = new ConfigFileController(configController, namespaceUtil, watchKeysUtil,
-        grayReleaseRulesHolder);
+        grayReleaseRulesHolder, bizConfig, new ConfigResponseCompressor(bizConfig, meterRegistry),
+        new Ticker() {
+          @Override
+          public long read() {
+            return someNanos.get();
+          }
+        });
 
     someAppId = "someAppId";
     someClusterName = "someClusterName";
@@ -98,10 +123,8 @@ public class ConfigFileControllerTest {
     when(grayReleaseRulesHolder.hasGrayReleaseRule(anyString(), anyString(), anyString(),
         anyString())).thenReturn(false);
 
-    watchedKeys2CacheKey = (Multimap<String, String>) ReflectionTestUtils
+    watchedKeys2CacheKey = (Map<String, Map<String, ?>>) ReflectionTestUtils
         .getField(configFileController, "watchedKeys2CacheKey");
-    cacheKey2WatchedKeys = (Multimap<String, String>) ReflectionTestUtils
-        .getField(configFileController, "cacheKey2WatchedKeys");
   }
 
   @Test
@@ -124,34 +147,32 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController.queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
-        "-1", someClientIp, someClientLabel, null, someRequest, someResponse))
+        "-1", someClientIp, someClientLabel, null, someRequest, someResponse, false))
         .thenReturn(someApolloConfig);
     when(watchKeysUtil.assembleAllWatchKeys(someAppId, someClusterName, someNamespace,
         someDataCenter)).thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController.queryConfigAsProperties(someAppId, someClusterName, someNamespace,
             someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(2, watchedKeys2CacheKey.size());
-    assertEquals(2, cacheKey2WatchedKeys.size());
-    assertTrue(watchedKeys2CacheKey.containsEntry(someWatchKey, cacheKey));
-    assertTrue(watchedKeys2CacheKey.containsEntry(anotherWatchKey, cacheKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, someWatchKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, anotherWatchKey));
+    assertEquals(Sets.newHashSet(cacheKey), watchedKeys2CacheKey.get(someWatchKey).keySet());
+    assertEquals(Sets.newHashSet(cacheKey), watchedKeys2CacheKey.get(anotherWatchKey).keySet());
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertTrue(response.getBody().contains(String.format("%s=%s", someKey, someValue)));
-    assertTrue(response.getBody().contains(String.format("%s=%s", anotherKey, anotherValue)));
+    assertTrue(bodyOf(response).contains(String.format("%s=%s", someKey, someValue)));
+    assertTrue(bodyOf(response).contains(String.format("%s=%s", anotherKey, anotherValue)));
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController.queryConfigAsProperties(someAppId, someClusterName, someNamespace,
             someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(response, anotherResponse);
 
     verify(configController, times(1)).queryConfig(someAppId, someClusterName, someNamespace,
-        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse);
+        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse,
+        false);
   }
 
   @Test
@@ -167,18 +188,18 @@ public class ConfigFileControllerTest {
     Map<String, String> configurations = ImmutableMap.of(someKey, someValue);
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(configController.queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
-        "-1", someClientIp, someClientLabel, null, someRequest, someResponse))
+        "-1", someClientIp, someClientLabel, null, someRequest, someResponse, false))
         .thenReturn(someApolloConfig);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(watchKeysUtil.assembleAllWatchKeys(someAppId, someClusterName, someNamespace,
         someDataCenter)).thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
             someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
+    assertEquals(configurations, GSON.fromJson(bodyOf(response), responseType));
   }
 
   @Test
@@ -191,7 +212,7 @@ public class ConfigFileControllerTest {
 
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(configController.queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
-        "-1", someClientIp, someClientLabel, null, someRequest, someResponse))
+        "-1", someClientIp, someClientLabel, null, someRequest, someResponse, false))
         .thenReturn(someApolloConfig);
     when(someApolloConfig.getNamespaceName()).thenReturn(someNamespace + ".json");
     String jsonContent = GSON.toJson(ImmutableMap.of(someKey, someValue));
@@ -199,14 +220,14 @@ public class ConfigFileControllerTest {
     when(watchKeysUtil.assembleAllWatchKeys(someAppId, someClusterName, someNamespace,
         someDataCenter)).thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController.queryConfigAsRaw(someAppId, someClusterName, someNamespace + ".json",
             someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertEquals("application/json;charset=UTF-8",
         response.getHeaders().getContentType().toString());
-    assertEquals(jsonContent, response.getBody());
+    assertEquals(jsonContent, bodyOf(response));
   }
 
   @Test
@@ -223,51 +244,209 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController.queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
-        "-1", someClientIp, someClientLabel, null, someRequest, someResponse))
+        "-1", someClientIp, someClientLabel, null, someRequest, someResponse, false))
         .thenReturn(someApolloConfig);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
             someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
             someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
     verify(configController, times(2)).queryConfig(someAppId, someClusterName, someNamespace,
-        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse);
+        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse,
+        false);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
+    assertEquals(configurations, GSON.fromJson(bodyOf(response), responseType));
     assertTrue(watchedKeys2CacheKey.isEmpty());
-    assertTrue(cacheKey2WatchedKeys.isEmpty());
+  }
+
+  @Test
+  public void testQueryConfigWithMatchingETag() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH))
+        .thenReturn(String.format("\"%s-json\", W/\"%s-json\"", anotherReleaseKey, someReleaseKey));
+    when(configController.resolveReleases(someAppId, someClusterName, someNamespace,
+        someDataCenter, anotherReleaseKey, someClientIp, someClientLabel, null))
+        .thenReturn(new ConfigQueryResult(HttpServletResponse.SC_OK,
+            new ApolloConfig(someAppId, someClusterName, someNamespace, someReleaseKey),
+            Lists.newArrayList(), false));
+
+    ResponseEntity<byte[]> response =
+        configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+            someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    assertEquals("\"" + someReleaseKey + "-json\"", response.getHeaders().getETag());
+    assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaders().getFirst(HttpHeaders.VARY));
+    assertNull(response.getBody());
+    verify(configController, never()).queryConfig(someAppId, someClusterName, someNamespace,
+        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse,
+        false);
+  }
+
+  @Test
+  public void testQueryConfigWithModifiedETag() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH))
+        .thenReturn("\"" + anotherReleaseKey + "-json\"");
+    when(configController.resolveReleases(someAppId, someClusterName, someNamespace,
+        someDataCenter, anotherReleaseKey, someClientIp, someClientLabel, null))
+        .thenReturn(new ConfigQueryResult(HttpServletResponse.SC_OK,
+            new ApolloConfig(someAppId, someClusterName, someNamespace, someReleaseKey),
+            Lists.newArrayList(), false));
+    ApolloConfig someApolloConfig = mockJsonConfig(ImmutableMap.of("someKey", "someValue"));
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
+
+    ResponseEntity<byte[]> response =
+        configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+            someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("\"" + someReleaseKey + "-json\"", response.getHeaders().getETag());
+  }
+
+  @Test
+  public void testQueryConfigWithETagOfAnotherRepresentation() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(
+        String.format("\"%s-properties\", \"%s-json-gzip\"", someReleaseKey, someReleaseKey));
+    ApolloConfig someApolloConfig = mockJsonConfig(ImmutableMap.of("someKey", "someValue"));
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
+
+    ResponseEntity<byte[]> response =
+        configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+            someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    // neither the properties nor the gzipped body is acceptable for the request
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("\"" + someReleaseKey + "-json\"", response.getHeaders().getETag());
+    verify(configController, never()).resolveReleases(someAppId, someClusterName, someNamespace,
+        someDataCenter, someReleaseKey, someClientIp, someClientLabel, null);
+  }
+
+  @Test
+  public void testQueryConfigWithMatchingGzipETag() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH))
+        .thenReturn("\"" + someReleaseKey + "-json-gzip\"");
+    when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip");
+    when(configController.resolveReleases(someAppId, someClusterName, someNamespace,
+        someDataCenter, someReleaseKey, someClientIp, someClientLabel, null))
+        .thenReturn(new ConfigQueryResult(HttpServletResponse.SC_NOT_MODIFIED, null,
+            Lists.newArrayList(), false));
+
+    ResponseEntity<byte[]> response =
+        configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+            someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    assertEquals("\"" + someReleaseKey + "-json-gzip\"", response.getHeaders().getETag());
+  }
+
+  @Test
+  public void testQueryConfigWithGzip() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String someLargeValue = Strings.repeat("someValue", 1000);
+    ApolloConfig someApolloConfig = mockJsonConfig(ImmutableMap.of("someKey", someLargeValue));
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(null);
+    when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip, deflate");
+
+    ResponseEntity<byte[]> response =
+        configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+            someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertEquals("\"" + someReleaseKey + "-json-gzip\"", response.getHeaders().getETag());
+    assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaders().getFirst(HttpHeaders.VARY));
+    assertArrayEquals(GSON.toJson(ImmutableMap.of("someKey", someLargeValue))
+        .getBytes(StandardCharsets.UTF_8), gunzip(response.getBody()));
   }
 
   @Test
   public void testHandleMessage() throws Exception {
     String someWatchKey = "someWatchKey";
     String anotherWatchKey = "anotherWatchKey";
-    String someCacheKey = "someCacheKey";
-    String anotherCacheKey = "anotherCacheKey";
-    String someValue = "someValue";
+    mockJsonConfig(ImmutableMap.of("someKey", "someValue"), someWatchKey, anotherWatchKey);
+
+    configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+        someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertEquals(2, watchedKeys2CacheKey.size());
 
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
-    Cache<String, String> cache =
-        (Cache<String, String>) ReflectionTestUtils.getField(configFileController, "localCache");
-    cache.put(someCacheKey, someValue);
-    cache.put(anotherCacheKey, someValue);
+    configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertTrue(watchedKeys2CacheKey.isEmpty());
+
+    configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+        someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    verify(configController, times(2)).queryConfig(someAppId, someClusterName, someNamespace,
+        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse,
+        false);
+  }
+
+  @Test
+  public void testHandleMessageAfterReloadingExpiredConfig() throws Exception {
+    String someWatchKey = "someWatchKey";
+    String anotherWatchKey = "anotherWatchKey";
+    mockJsonConfig(ImmutableMap.of("someKey", "someValue"), someWatchKey, anotherWatchKey);
+
+    configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+        someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
-    watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-    watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
+    // the expired config file is removed, and notified, only when the reloaded one is cached
+    someNanos.addAndGet(TimeUnit.MINUTES.toNanos(31));
+    configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+        someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
 
-    cacheKey2WatchedKeys.putAll(someCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
-    cacheKey2WatchedKeys.putAll(anotherCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    assertEquals(2, watchedKeys2CacheKey.size());
+
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
     configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
     assertTrue(watchedKeys2CacheKey.isEmpty());
-    assertTrue(cacheKey2WatchedKeys.isEmpty());
+
+    configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace,
+        someDataCenter, someClientIp, someClientLabel, someRequest, someResponse);
+
+    verify(configController, times(3)).queryConfig(someAppId, someClusterName, someNamespace,
+        someDataCenter, "-1", someClientIp, someClientLabel, null, someRequest, someResponse,
+        false);
+  }
+
+  private ApolloConfig mockJsonConfig(Map<String, String> configurations, String... watchKeys)
+      throws Exception {
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(configController.queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
+        "-1", someClientIp, someClientLabel, null, someRequest, someResponse, false))
+        .thenReturn(someApolloConfig);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someClusterName, someNamespace,
+        someDataCenter)).thenReturn(Sets.newHashSet(watchKeys));
+    return someApolloConfig;
+  }
+
+  private String bodyOf(ResponseEntity<byte[]> response) {
+    return new String(response.getBody(), StandardCharsets.UTF_8);
+  }
+
+  private byte[] gunzip(byte[] gzippedBody) throws Exception {
+    try (GZIPInputStream inputStream =
+        new GZIPInputStream(new ByteArrayInputStream(gzippedBody))) {
+      return ByteStreams.toByteArray(inputStream);
+    }
   }
 }
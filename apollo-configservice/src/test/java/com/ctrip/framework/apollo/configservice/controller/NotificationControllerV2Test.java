@@ -20,11 +20,14 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.configservice.service.LongPollingAdmissionService;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanOutScheduler;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
-import com.ctrip.framework.apollo.configservice.wrapper.CaseInsensitiveMultimapWrapper;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil.WatchKeys;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
@@ -35,6 +38,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -52,6 +56,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.*;
@@ -84,16 +89,19 @@ public class NotificationControllerV2Test {
 
   private Gson gson;
 
-  private CaseInsensitiveMultimapWrapper<DeferredResultWrapper> deferredResults;
+  private WatchKeyRegistry<DeferredResultWrapper> deferredResults;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
-    controller = new NotificationControllerV2(watchKeysUtil, releaseMessageService,
-        entityManagerUtil, namespaceUtil, gson, bizConfig);
-
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
     when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(1);
+
+    controller = new NotificationControllerV2(watchKeysUtil, releaseMessageService,
+        entityManagerUtil, namespaceUtil, gson, bizConfig,
+        new NotificationFanOutScheduler(bizConfig, new SimpleMeterRegistry()),
+        new LongPollingAdmissionService(bizConfig, new SimpleMeterRegistry()));
 
     someAppId = "someAppId";
     someCluster = "someCluster";
@@ -111,7 +119,7 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace))
         .thenReturn(somePublicNamespace);
 
-    deferredResults = (CaseInsensitiveMultimapWrapper<DeferredResultWrapper>) ReflectionTestUtils
+    deferredResults = (WatchKeyRegistry<DeferredResultWrapper>) ReflectionTestUtils
         .getField(controller, "deferredResults");
   }
 
@@ -126,8 +134,8 @@ public class NotificationControllerV2Test {
     String notificationAsString =
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
-        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<?>> deferredResult = controller.pollNotification(someAppId,
         someCluster, notificationAsString, someDataCenter, someClientIp);
@@ -137,6 +145,97 @@ public class NotificationControllerV2Test {
     assertWatchKeys(watchKeysMap, deferredResult);
   }
 
+  @Test
+  public void testPollNotificationRejectedWhenAdmissionRateExceeded() throws Exception {
+    int someRetryWindow = 5;
+    when(bizConfig.longPollingAdmissionRate()).thenReturn(1);
+    when(bizConfig.longPollingAdmissionRetryWindowInSeconds()).thenReturn(someRetryWindow);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList("someKey"));
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
+
+    DeferredResult<ResponseEntity<?>> acceptedResult = controller.pollNotification(someAppId,
+        someCluster, notificationAsString, someDataCenter, someClientIp);
+    DeferredResult<ResponseEntity<?>> rejectedResult = controller.pollNotification(someAppId,
+        someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    assertFalse(acceptedResult.hasResult());
+    assertEquals(watchKeysMap.size(), deferredResults.size());
+
+    assertRetryLaterResult(rejectedResult, TimeUnit.SECONDS.toMillis(someRetryWindow));
+    verify(watchKeysUtil, times(1)).findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter);
+  }
+
+  @Test
+  public void testPollNotificationWhenDraining() throws Exception {
+    int someRetryWindow = 5;
+    long someDrainPeriod = TimeUnit.SECONDS.toMillis(2);
+    when(bizConfig.longPollingAdmissionRetryWindowInSeconds()).thenReturn(someRetryWindow);
+    when(bizConfig.longPollingDrainPeriodInMilli()).thenReturn(someDrainPeriod);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList("someKey"));
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
+
+    DeferredResult<ResponseEntity<?>> waitingResult = controller.pollNotification(someAppId,
+        someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    List<DeferredResultWrapper> waitingClients = controller.stopLongPolling();
+
+    assertEquals(1, waitingClients.size());
+    assertSame(waitingResult, waitingClients.get(0).getResult());
+
+    DeferredResult<ResponseEntity<?>> rejectedResult = controller.pollNotification(someAppId,
+        someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    // held no longer than the drain period, so that the shutdown is not delayed
+    assertRetryLaterResult(rejectedResult, someDrainPeriod);
+    assertEquals(1, deferredResults.size());
+  }
+
+  @Test
+  public void testPollNotificationRegisteredAfterDrainingStarted() throws Exception {
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList("someKey"));
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+    List<DeferredResultWrapper> waitingClients = Lists.newArrayList();
+    // the drainer takes the waiting clients before this one is registered
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenAnswer(invocation -> {
+          waitingClients.addAll(controller.stopLongPolling());
+          return new WatchKeys(watchKeysMap);
+        });
+
+    DeferredResult<ResponseEntity<?>> result = controller.pollNotification(someAppId,
+        someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    assertTrue(waitingClients.isEmpty());
+    ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    verify(releaseMessageService, never()).findLatestReleaseMessagesGroupByMessages(anySet());
+  }
+
+  private void assertRetryLaterResult(DeferredResult<ResponseEntity<?>> result,
+      long maxDelayInMilli) {
+    // held until it times out, rather than answered right away
+    assertFalse(result.hasResult());
+    long timeout = (Long) ReflectionTestUtils.getField(result, "timeoutValue");
+    assertTrue(timeout >= 1 && timeout <= maxDelayInMilli);
+
+    Supplier<?> timeoutResult = (Supplier<?>) ReflectionTestUtils.getField(result, "timeoutResult");
+    ResponseEntity<?> response = (ResponseEntity<?>) timeoutResult.get();
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+  }
+
   @Test
   public void testPollNotificationWithDefaultNamespaceAsFile() throws Exception {
     String namespace = String.format("%s.%s", defaultNamespace, "properties");
@@ -151,8 +250,8 @@ public class NotificationControllerV2Test {
     String notificationAsString =
         transformApolloConfigNotificationsToString(namespace, someNotificationId);
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
-        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<?>> deferredResult = controller.pollNotification(someAppId,
         someCluster, notificationAsString, someDataCenter, someClientIp);
@@ -190,9 +289,9 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(defaultNamespaceAsFile, someNotificationId,
             somePublicNamespace, someNotificationId, somePublicNamespaceAsFile, someNotificationId);
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
         Sets.newHashSet(defaultNamespace, somePublicNamespace, somePublicNamespaceAsFile),
-        someDataCenter)).thenReturn(watchKeysMap);
+        someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<?>> deferredResult = controller.pollNotification(someAppId,
         someCluster, notificationAsString, someDataCenter, someClientIp);
@@ -201,7 +300,7 @@ public class NotificationControllerV2Test {
 
     assertWatchKeys(watchKeysMap, deferredResult);
 
-    verify(watchKeysUtil, times(1)).assembleAllWatchKeys(someAppId, someCluster,
+    verify(watchKeysUtil, times(1)).findAllWatchKeys(someAppId, someCluster,
         Sets.newHashSet(defaultNamespace, somePublicNamespace, somePublicNamespaceAsFile),
         someDataCenter);
   }
@@ -222,9 +321,9 @@ public class NotificationControllerV2Test {
     watchKeysMap.putAll(assembleMultiMap(somePublicNamespace,
         Lists.newArrayList(anotherWatchKey, yetAnotherWatchKey)));
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
         Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter))
-        .thenReturn(watchKeysMap);
+        .thenReturn(new WatchKeys(watchKeysMap));
 
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getId()).thenReturn(notificationId);
@@ -268,9 +367,9 @@ public class NotificationControllerV2Test {
         assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
     watchKeysMap.putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey)));
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
         Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter))
-        .thenReturn(watchKeysMap);
+        .thenReturn(new WatchKeys(watchKeysMap));
 
     String notificationAsString = transformApolloConfigNotificationsToString(defaultNamespace,
         someNotificationId, somePublicNamespace, someNotificationId);
@@ -314,8 +413,8 @@ public class NotificationControllerV2Test {
     String notificationAsString =
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
-        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
     when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
@@ -350,8 +449,8 @@ public class NotificationControllerV2Test {
     String notificationAsString =
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
-        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<?>> deferredResult = controller.pollNotification(someAppId,
         someCluster, notificationAsString, someDataCenter, someClientIp);
@@ -395,8 +494,8 @@ public class NotificationControllerV2Test {
         .thenReturn(namespaceWithIncorrectCase);
     when(namespaceUtil.normalizeNamespace(appIdWithIncorrectCase, namespaceWithIncorrectCase))
         .thenReturn(defaultNamespace);
-    when(watchKeysUtil.assembleAllWatchKeys(appIdWithIncorrectCase, someCluster,
-        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil.findAllWatchKeys(appIdWithIncorrectCase, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<?>> deferredResult = controller.pollNotification(
         appIdWithIncorrectCase, someCluster, notificationAsString, someDataCenter, someClientIp);
@@ -446,8 +545,8 @@ public class NotificationControllerV2Test {
         .thenReturn(defaultNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, anotherNamespaceWithIncorrectCase))
         .thenReturn(defaultNamespace);
-    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
-        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
 
     DeferredResult<ResponseEntity<?>> deferredResult = controller.pollNotification(someAppId,
         someCluster,
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.configservice.service.LongPollingAdmissionService;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil.WatchKeys;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.base.Joiner;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.GsonHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationControllerV3Test {
+  private NotificationControllerV3 controller;
+  private MockMvc mockMvc;
+  private String someAppId;
+  private String someCluster;
+  private String defaultNamespace;
+  private String someDataCenter;
+  private long someNotificationId;
+  private String someWatchKey;
+  @Mock
+  private ReleaseMessageServiceWithCache releaseMessageService;
+  @Mock
+  private EntityManagerUtil entityManagerUtil;
+  @Mock
+  private NamespaceUtil namespaceUtil;
+  @Mock
+  private WatchKeysUtil watchKeysUtil;
+  @Mock
+  private BizConfig bizConfig;
+
+  private Gson gson;
+  private List<Runnable> sendTasks;
+
+  @Before
+  public void setUp() throws Exception {
+    gson = new Gson();
+    when(bizConfig.notificationStreamHeartbeatIntervalInMilli())
+        .thenReturn(TimeUnit.MINUTES.toMillis(1));
+
+    sendTasks = Lists.newArrayList();
+    controller = new NotificationControllerV3(watchKeysUtil, releaseMessageService,
+        entityManagerUtil, namespaceUtil, gson, bizConfig,
+        new LongPollingAdmissionService(bizConfig, new SimpleMeterRegistry()), sendTasks::add);
+    mockMvc = MockMvcBuilders.standaloneSetup(controller)
+        .setMessageConverters(new StringHttpMessageConverter(), new GsonHttpMessageConverter(gson))
+        .build();
+
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    defaultNamespace = ConfigConsts.NAMESPACE_APPLICATION;
+    someDataCenter = "someDC";
+    someNotificationId = 1;
+    someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+  }
+
+  @Test
+  public void testStreamNotificationWithNewRelease() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someNewNotificationId, someWatchKey);
+    mockWatchKeys();
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(
+        Sets.newHashSet(someWatchKey))).thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    MvcResult result = streamNotifications();
+    runSendTasks();
+
+    String content = result.getResponse().getContentAsString();
+    assertTrue(content.contains("event:notification"));
+    assertTrue(content.contains(gson.toJson(Lists.newArrayList(
+        assembleExpectedNotification(someNewNotificationId)))));
+  }
+
+  @Test
+  public void testStreamNotificationOnReleaseMessage() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someNewNotificationId, someWatchKey);
+    mockWatchKeys();
+
+    MvcResult result = streamNotifications();
+
+    assertFalse(result.getResponse().getContentAsString().contains("event:notification"));
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    // the event is written by the send executor rather than the release message thread
+    assertEquals(1, sendTasks.size());
+    assertFalse(result.getResponse().getContentAsString().contains("event:notification"));
+    runSendTasks();
+
+    // the stream stays open, and the same notification is not sent again
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+    runSendTasks();
+
+    String content = result.getResponse().getContentAsString();
+    String expectedData = gson.toJson(Lists.newArrayList(
+        assembleExpectedNotification(someNewNotificationId)));
+    assertEquals(content.indexOf(expectedData), content.lastIndexOf(expectedData));
+    assertTrue(content.indexOf(expectedData) > 0);
+  }
+
+  @Test
+  public void testStreamNotificationWhenDraining() throws Exception {
+    int someRetryWindow = 5;
+    when(bizConfig.longPollingAdmissionRetryWindowInSeconds()).thenReturn(someRetryWindow);
+    mockWatchKeys();
+
+    streamNotifications();
+
+    assertEquals(1, controller.stopStreaming().size());
+
+    mockMvc.perform(get("/notifications/v3").param("appId", someAppId)
+            .param("cluster", someCluster).param("dataCenter", someDataCenter)
+            .param("notifications", transformApolloConfigNotificationsToString()))
+        .andExpect(status().isNotModified())
+        .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+  }
+
+  @Test
+  public void testStreamNotificationRegisteredAfterDrainingStarted() throws Exception {
+    int someRetryWindow = 5;
+    when(bizConfig.longPollingAdmissionRetryWindowInSeconds()).thenReturn(someRetryWindow);
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(TimeUnit.MINUTES.toMillis(1));
+    when(namespaceUtil.filterNamespaceName(defaultNamespace)).thenReturn(defaultNamespace);
+    when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespace))
+        .thenReturn(defaultNamespace);
+    Multimap<String, String> watchKeysMap = HashMultimap.create();
+    watchKeysMap.put(defaultNamespace, someWatchKey);
+    List<NotificationStreamWrapper> openStreams = Lists.newArrayList();
+    // the drainer takes the open streams before this one is registered
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenAnswer(invocation -> {
+          openStreams.addAll(controller.stopStreaming());
+          return new WatchKeys(watchKeysMap);
+        });
+
+    mockMvc.perform(get("/notifications/v3").param("appId", someAppId)
+            .param("cluster", someCluster).param("dataCenter", someDataCenter)
+            .param("notifications", transformApolloConfigNotificationsToString()))
+        .andExpect(status().isNotModified())
+        .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+    assertTrue(openStreams.isEmpty());
+    assertTrue(controller.stopStreaming().isEmpty());
+    verify(releaseMessageService, never()).findLatestReleaseMessagesGroupByMessages(anySet());
+  }
+
+  @Test
+  public void testStreamNotificationMergesPendingNotifications() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    long anotherNewNotificationId = someNotificationId + 2;
+    mockWatchKeys();
+
+    MvcResult result = streamNotifications();
+
+    controller.handleMessage(assembleReleaseMessage(someNewNotificationId, someWatchKey),
+        Topics.APOLLO_RELEASE_TOPIC);
+    controller.handleMessage(assembleReleaseMessage(anotherNewNotificationId, someWatchKey),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    // one send task per stream, which writes only the latest notification
+    assertEquals(1, sendTasks.size());
+    runSendTasks();
+
+    String content = result.getResponse().getContentAsString();
+    assertTrue(content.contains(gson.toJson(Lists.newArrayList(
+        assembleExpectedNotification(anotherNewNotificationId)))));
+    assertFalse(content.contains(gson.toJson(Lists.newArrayList(
+        assembleExpectedNotification(someNewNotificationId)))));
+  }
+
+  private void runSendTasks() {
+    while (!sendTasks.isEmpty()) {
+      sendTasks.remove(0).run();
+    }
+  }
+
+  private MvcResult streamNotifications() throws Exception {
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(TimeUnit.MINUTES.toMillis(1));
+
+    return mockMvc.perform(get("/notifications/v3").param("appId", someAppId)
+            .param("cluster", someCluster).param("dataCenter", someDataCenter)
+            .param("notifications", transformApolloConfigNotificationsToString()))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+  }
+
+  private void mockWatchKeys() {
+    when(namespaceUtil.filterNamespaceName(defaultNamespace)).thenReturn(defaultNamespace);
+    when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespace))
+        .thenReturn(defaultNamespace);
+
+    Multimap<String, String> watchKeysMap = HashMultimap.create();
+    watchKeysMap.put(defaultNamespace, someWatchKey);
+    when(watchKeysUtil.findAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace), someDataCenter)).thenReturn(new WatchKeys(watchKeysMap));
+  }
+
+  private String transformApolloConfigNotificationsToString() {
+    return gson.toJson(
+        Lists.newArrayList(new ApolloConfigNotification(defaultNamespace, someNotificationId)));
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+
+  private ApolloConfigNotification assembleExpectedNotification(long notificationId) {
+    ApolloConfigNotification notification =
+        new ApolloConfigNotification(defaultNamespace, notificationId);
+    notification.addMessage(someWatchKey, notificationId);
+    return notification;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessagePushControllerTest {
+  private ReleaseMessagePushController releaseMessagePushController;
+  @Mock
+  private ReleaseMessageScanner releaseMessageScanner;
+  @Mock
+  private BizConfig bizConfig;
+  private long someId;
+  private String someAccessToken;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessagePushController =
+        new ReleaseMessagePushController(bizConfig, releaseMessageScanner);
+    someId = 1;
+    someAccessToken = "someAccessToken";
+  }
+
+  @Test
+  public void testOnMessagePushed() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.adminServiceAccessTokenList())
+        .thenReturn(Lists.newArrayList("anotherAccessToken", someAccessToken));
+
+    ResponseEntity<Void> response =
+        releaseMessagePushController.onMessagePushed(someId, someAccessToken);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    verify(releaseMessageScanner).onMessagePushed(someId);
+  }
+
+  @Test
+  public void testOnMessagePushedWithInvalidAccessToken() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.adminServiceAccessTokenList())
+        .thenReturn(Lists.newArrayList("anotherAccessToken"));
+
+    ResponseEntity<Void> response =
+        releaseMessagePushController.onMessagePushed(someId, someAccessToken);
+
+    assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+    verify(releaseMessageScanner, never()).onMessagePushed(anyLong());
+  }
+
+  @Test
+  public void testOnMessagePushedWithoutAccessTokensConfigured() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.adminServiceAccessTokenList()).thenReturn(Collections.emptyList());
+
+    ResponseEntity<Void> response =
+        releaseMessagePushController.onMessagePushed(someId, someAccessToken);
+
+    assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+    verify(releaseMessageScanner, never()).onMessagePushed(anyLong());
+  }
+
+  @Test
+  public void testOnMessagePushedWithoutAccessToken() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+
+    ResponseEntity<Void> response = releaseMessagePushController.onMessagePushed(someId, null);
+
+    assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+    verify(releaseMessageScanner, never()).onMessagePushed(anyLong());
+  }
+
+  @Test
+  public void testOnMessagePushedWhenPushDisabled() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(false);
+
+    releaseMessagePushController.onMessagePushed(someId, someAccessToken);
+
+    verify(releaseMessageScanner, never()).onMessagePushed(anyLong());
+  }
+}
@@ -18,6 +18,7 @@ package com.ctrip.framework.apollo.configservice.filter;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -30,6 +31,7 @@ import com.ctrip.framework.apollo.core.signature.Signature;
 import com.google.common.collect.Lists;
 import java.util.Collections;
 import java.util.List;
+import javax.crypto.spec.SecretKeySpec;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -77,11 +79,12 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testRequestTimeTooSkewed() throws Exception {
     String appId = "someAppId";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<SecretKeySpec> secretKeys =
+        Lists.newArrayList(AccessKeyUtil.toSecretKey("someSecret"));
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis() - 61 * 1000);
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(secretKeys);
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
 
     clientAuthenticationFilter.doFilter(request, response, filterChain);
@@ -93,11 +96,12 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testRequestTimeOneMinFasterThenCurrentTime() throws Exception {
     String appId = "someAppId";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<SecretKeySpec> secretKeys =
+        Lists.newArrayList(AccessKeyUtil.toSecretKey("someSecret"));
     String oneMinAfterTimestamp = Long.toString(System.currentTimeMillis() + 61 * 1000);
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(secretKeys);
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAfterTimestamp);
 
     clientAuthenticationFilter.doFilter(request, response, filterChain);
@@ -109,14 +113,15 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testUnauthorized() throws Exception {
     String appId = "someAppId";
-    String availableSignature = "someSignature";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<SecretKeySpec> secretKeys =
+        Lists.newArrayList(AccessKeyUtil.toSecretKey("someSecret"));
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis());
     String errorAuthorization = "Apollo someAppId:wrongSignature";
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
-    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(secretKeys);
+    when(accessKeyUtil.verifySignature(eq("wrongSignature"), any(), any(), eq(oneMinAgoTimestamp),
+        eq(secretKeys))).thenReturn(false);
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
     when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(errorAuthorization);
     when(bizConfig.accessKeyAuthTimeDiffTolerance()).thenReturn(60);
@@ -130,14 +135,15 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testAuthorizedSuccessfully() throws Exception {
     String appId = "someAppId";
-    String availableSignature = "someSignature";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<SecretKeySpec> secretKeys =
+        Lists.newArrayList(AccessKeyUtil.toSecretKey("someSecret"));
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis());
     String correctAuthorization = "Apollo someAppId:someSignature";
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
-    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(secretKeys);
+    when(accessKeyUtil.verifySignature(eq("someSignature"), any(), any(), eq(oneMinAgoTimestamp),
+        eq(secretKeys))).thenReturn(true);
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
     when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(correctAuthorization);
     when(bizConfig.accessKeyAuthTimeDiffTolerance()).thenReturn(60);
@@ -150,15 +156,16 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testPreCheckInvalid() throws Exception {
     String appId = "someAppId";
-    String availableSignature = "someSignature";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<SecretKeySpec> secretKeys =
+        Lists.newArrayList(AccessKeyUtil.toSecretKey("someSecret"));
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis() - 61 * 1000);
     String errorAuthorization = "Apollo someAppId:wrongSignature";
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(Collections.emptyList());
-    when(accessKeyUtil.findObservableSecrets(appId)).thenReturn(secrets);
-    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(Collections.emptyList());
+    when(accessKeyUtil.findObservableSecretKeys(appId)).thenReturn(secretKeys);
+    when(accessKeyUtil.verifySignature(eq("wrongSignature"), any(), any(), eq(oneMinAgoTimestamp),
+        eq(secretKeys))).thenReturn(false);
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
     when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(errorAuthorization);
     when(bizConfig.accessKeyAuthTimeDiffTolerance()).thenReturn(60);
@@ -172,15 +179,16 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testPreCheckSuccessfully() throws Exception {
     String appId = "someAppId";
-    String availableSignature = "someSignature";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<SecretKeySpec> secretKeys =
+        Lists.newArrayList(AccessKeyUtil.toSecretKey("someSecret"));
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis());
     String correctAuthorization = "Apollo someAppId:someSignature";
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(Collections.emptyList());
-    when(accessKeyUtil.findObservableSecrets(appId)).thenReturn(secrets);
-    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(Collections.emptyList());
+    when(accessKeyUtil.findObservableSecretKeys(appId)).thenReturn(secretKeys);
+    when(accessKeyUtil.verifySignature(eq("someSignature"), any(), any(), eq(oneMinAgoTimestamp),
+        eq(secretKeys))).thenReturn(true);
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
     when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(correctAuthorization);
     when(bizConfig.accessKeyAuthTimeDiffTolerance()).thenReturn(60);
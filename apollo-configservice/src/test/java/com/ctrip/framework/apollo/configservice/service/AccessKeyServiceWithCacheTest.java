@@ -17,6 +17,7 @@
 package com.ctrip.framework.apollo.configservice.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.when;
 import static org.awaitility.Awaitility.*;
@@ -24,7 +25,9 @@ import static org.awaitility.Awaitility.*;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.AccessKey;
 import com.ctrip.framework.apollo.biz.repository.AccessKeyRepository;
+import com.ctrip.framework.apollo.common.constants.AccessKeyMode;
 import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 import org.awaitility.Awaitility;
@@ -45,12 +48,15 @@ public class AccessKeyServiceWithCacheTest {
   private AccessKeyRepository accessKeyRepository;
   @Mock
   private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
 
   @Before
   public void setUp() {
-    accessKeyServiceWithCache = new AccessKeyServiceWithCache(accessKeyRepository, bizConfig);
+    meterRegistry = new SimpleMeterRegistry();
+    accessKeyServiceWithCache =
+        new AccessKeyServiceWithCache(accessKeyRepository, bizConfig, meterRegistry);
 
     scanInterval = 50;
     scanIntervalTimeUnit = TimeUnit.MILLISECONDS;
@@ -91,6 +97,52 @@ public class AccessKeyServiceWithCacheTest {
         () -> assertThat(accessKeyServiceWithCache.getAvailableSecrets(appId)).isEmpty());
   }
 
+  @Test
+  public void testSecretsSnapshot() throws Exception {
+    String appId = "someAppId";
+    AccessKey filterAccessKey =
+        assembleAccessKey(1L, appId, "secret-1", true, false, 1577808000000L);
+    AccessKey observerAccessKey =
+        assembleAccessKey(2L, appId, "secret-2", true, false, 1577808001000L);
+    observerAccessKey.setMode(AccessKeyMode.OBSERVER);
+
+    when(accessKeyRepository
+        .findFirst500ByDataChangeLastModifiedTimeGreaterThanEqualAndDataChangeLastModifiedTimeLessThanOrderByDataChangeLastModifiedTimeAsc(
+            any(), any()))
+        .thenReturn(Lists.newArrayList(filterAccessKey, observerAccessKey));
+    when(accessKeyRepository.findAllById(anyList()))
+        .thenReturn(Lists.newArrayList(filterAccessKey, observerAccessKey));
+
+    accessKeyServiceWithCache.afterPropertiesSet();
+
+    assertThat(accessKeyServiceWithCache.getAvailableSecrets(appId)).containsExactly("secret-1");
+    assertThat(accessKeyServiceWithCache.getObservableSecrets(appId)).containsExactly("secret-2");
+    assertThat(accessKeyServiceWithCache.getAvailableSecrets("SOMEAPPID"))
+        .containsExactly("secret-1");
+    assertThat(accessKeyServiceWithCache.getAvailableSecretKeys(appId)).hasSize(1);
+    assertThat(accessKeyServiceWithCache.getObservableSecretKeys(appId)).hasSize(1);
+    assertThat(meterRegistry.get("access_key_cache.snapshot.apps").gauge().value())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("access_key_cache.snapshot.secrets").gauge().value())
+        .isEqualTo(2);
+    assertThat(meterRegistry.get("access_key_cache.snapshot.build").timer().count())
+        .isPositive();
+
+    // the observer access key is deleted
+    when(accessKeyRepository
+        .findFirst500ByDataChangeLastModifiedTimeGreaterThanEqualAndDataChangeLastModifiedTimeLessThanOrderByDataChangeLastModifiedTimeAsc(
+            any(), any()))
+        .thenReturn(Lists.newArrayList());
+    when(accessKeyRepository.findAllById(anyList()))
+        .thenReturn(Lists.newArrayList(filterAccessKey));
+
+    await().untilAsserted(
+        () -> assertThat(accessKeyServiceWithCache.getObservableSecrets(appId)).isEmpty());
+    assertThat(accessKeyServiceWithCache.getAvailableSecrets(appId)).containsExactly("secret-1");
+    assertThat(meterRegistry.get("access_key_cache.snapshot.secrets").gauge().value())
+        .isEqualTo(1);
+  }
+
   public AccessKey assembleAccessKey(Long id, String appId, String secret, boolean enabled,
       boolean deleted, long dataChangeLastModifiedTime) {
     AccessKey accessKey = new AccessKey();
@@ -38,7 +38,11 @@ import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -355,6 +359,57 @@ public class AppNamespaceServiceWithCacheTest {
     assertEquals(2, cached.getId());
   }
 
+  @Test
+  public void testLoadChangedAppNamespaces() throws Exception {
+    String someAppId = "someAppId";
+    String somePrivateNamespace = "somePrivateNamespace";
+    String somePublicNamespace = "somePublicNamespace";
+    String somePrivateNamespaceNew = "somePrivateNamespaceNew";
+
+    AppNamespace somePrivateAppNamespace =
+        assembleAppNamespace(1, someAppId, somePrivateNamespace, false);
+    AppNamespace somePublicAppNamespace =
+        assembleAppNamespace(2, someAppId, somePublicNamespace, true);
+
+    when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0))
+        .thenReturn(Lists.newArrayList(somePrivateAppNamespace, somePublicAppNamespace));
+
+    invokePrivateMethod("scanNewAppNamespaces");
+
+    assertEquals(somePublicAppNamespace,
+        appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+
+    // the private one is renamed and the public one is deleted
+    AppNamespace somePrivateAppNamespaceNew =
+        assembleAppNamespace(1, someAppId, somePrivateNamespaceNew, false);
+    somePrivateAppNamespaceNew.setDataChangeLastModifiedTime(
+        newDateWithDelta(somePrivateAppNamespace.getDataChangeLastModifiedTime(), 1));
+    AppNamespace somePublicAppNamespaceDeleted =
+        assembleAppNamespace(2, someAppId, somePublicNamespace, true);
+    somePublicAppNamespaceDeleted.setDeleted(true);
+    // a new one is left to the id scan
+    AppNamespace anotherAppNamespace =
+        assembleAppNamespace(3, someAppId, "anotherNamespace", false);
+
+    when(appNamespaceRepository.findFirst500ChangedIncludingDeleted(any(Date.class), eq(0L),
+        any(Date.class))).thenReturn(Lists.newArrayList(somePrivateAppNamespaceNew,
+            somePublicAppNamespaceDeleted, anotherAppNamespace));
+
+    invokePrivateMethod("loadChangedAppNamespaces");
+
+    assertNull(
+        appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePrivateNamespace));
+    assertEquals(somePrivateAppNamespaceNew,
+        appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePrivateNamespaceNew));
+    assertNull(
+        appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePublicNamespace));
+    assertNull(appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+    assertNull(appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId,
+        anotherAppNamespace.getName()));
+    // no full rebuild is needed
+    verify(appNamespaceRepository, never()).findAllById(anyList());
+  }
+
   private void invokePrivateMethod(String methodName) throws Exception {
     java.lang.reflect.Method method =
         AppNamespaceServiceWithCache.class.getDeclaredMethod(methodName);
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.ConfigResponseCache.ConfigResponse;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigResponseCacheTest {
+  private ConfigResponseCache configResponseCache;
+
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private MeterRegistry meterRegistry;
+
+  private String someAppId;
+  private String someClusterName;
+  private String someNamespace;
+  private String someMergedReleaseKey;
+  private List<Release> someReleases;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.isConfigServiceResponseCacheEnabled()).thenReturn(true);
+    when(bizConfig.configServiceResponseCacheMaxSizeInBytes()).thenReturn(1024L * 1024L);
+    configResponseCache = new ConfigResponseCache(bizConfig, meterRegistry,
+        new ConfigResponseCompressor(bizConfig, meterRegistry));
+
+    someAppId = "someAppId";
+    someClusterName = "someClusterName";
+    someNamespace = "someNamespace";
+    someMergedReleaseKey = "someMergedReleaseKey";
+
+    Release someRelease = new Release();
+    someRelease.setAppId(someAppId);
+    someRelease.setClusterName(someClusterName);
+    someRelease.setNamespaceName(someNamespace);
+    someReleases = Lists.newArrayList(someRelease);
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    byte[] someBody = "{}".getBytes(StandardCharsets.UTF_8);
+
+    configResponseCache.put(someAppId, someClusterName, someNamespace, someMergedReleaseKey,
+        someReleases, someBody);
+
+    ConfigResponse configResponse =
+        configResponseCache.get(someAppId, someClusterName, someNamespace, someMergedReleaseKey);
+
+    assertSame(someBody, configResponse.getBody());
+    // small body is not worth compressing
+    assertNull(configResponse.getGzippedBody());
+    assertNull(configResponseCache.get(someAppId, someClusterName, someNamespace,
+        "anotherMergedReleaseKey"));
+  }
+
+  @Test
+  public void testPutWithLargeBody() throws Exception {
+    byte[] someBody = String.format("{\"configurations\":{\"key\":\"%s\"}}",
+        Strings.repeat("value", 1000)).getBytes(StandardCharsets.UTF_8);
+
+    ConfigResponse configResponse = configResponseCache.put(someAppId, someClusterName,
+        someNamespace, someMergedReleaseKey, someReleases, someBody);
+
+    assertNotNull(configResponse.getGzippedBody());
+    assertArrayEquals(someBody, gunzip(configResponse.getGzippedBody()));
+  }
+
+  @Test
+  public void testHandleMessage() throws Exception {
+    byte[] someBody = "{}".getBytes(StandardCharsets.UTF_8);
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(
+        ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, someNamespace));
+
+    configResponseCache.put(someAppId, someClusterName, someNamespace, someMergedReleaseKey,
+        someReleases, someBody);
+
+    configResponseCache.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(configResponseCache.get(someAppId, someClusterName, someNamespace,
+        someMergedReleaseKey));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    when(bizConfig.isConfigServiceResponseCacheEnabled()).thenReturn(false);
+    configResponseCache = new ConfigResponseCache(bizConfig, meterRegistry,
+        new ConfigResponseCompressor(bizConfig, meterRegistry));
+    byte[] someBody = "{}".getBytes(StandardCharsets.UTF_8);
+
+    configResponseCache.put(someAppId, someClusterName, someNamespace, someMergedReleaseKey,
+        someReleases, someBody);
+
+    assertFalse(configResponseCache.isEnabled());
+    assertNull(configResponseCache.get(someAppId, someClusterName, someNamespace,
+        someMergedReleaseKey));
+  }
+
+  private byte[] gunzip(byte[] gzippedBody) throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (GZIPInputStream inputStream =
+        new GZIPInputStream(new ByteArrayInputStream(gzippedBody))) {
+      byte[] buffer = new byte[1024];
+      int length;
+      while ((length = inputStream.read(buffer)) > 0) {
+        outputStream.write(buffer, 0, length);
+      }
+    }
+    return outputStream.toByteArray();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.base.Strings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigResponseCompressorTest {
+  private ConfigResponseCompressor configResponseCompressor;
+  private SimpleMeterRegistry meterRegistry;
+
+  @Mock
+  private BizConfig bizConfig;
+
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.isConfigServiceCacheStatsEnabled()).thenReturn(true);
+    meterRegistry = new SimpleMeterRegistry();
+    configResponseCompressor = new ConfigResponseCompressor(bizConfig, meterRegistry);
+
+    someNamespace = "someNamespace";
+  }
+
+  @Test
+  public void testCompress() throws Exception {
+    byte[] someBody = Strings.repeat("{\"someKey\":\"someValue\"}", 100)
+        .getBytes(StandardCharsets.UTF_8);
+
+    byte[] gzippedBody = configResponseCompressor.compress(someNamespace, someBody);
+
+    assertNotNull(gzippedBody);
+    assertEquals(gzippedBody.length, meterRegistry.get("config_response.gzip.size")
+        .tag("namespace", "somenamespace").summary().totalAmount(), 0);
+
+    configResponseCompressor.onGzippedBodyServed(someNamespace, someBody, gzippedBody);
+    configResponseCompressor.onGzippedBodyServed(someNamespace, someBody, gzippedBody);
+
+    assertEquals(2 * (someBody.length - gzippedBody.length), meterRegistry
+        .get("config_response.gzip.saved").tag("namespace", "somenamespace").counter().count(), 0);
+  }
+
+  @Test
+  public void testMetersTaggedWithNormalizedNamespace() throws Exception {
+    byte[] someBody = Strings.repeat("{\"someKey\":\"someValue\"}", 100)
+        .getBytes(StandardCharsets.UTF_8);
+
+    byte[] gzippedBody = configResponseCompressor.compress("SomeNamespace", someBody);
+    configResponseCompressor.compress("someNamespace.properties", someBody);
+    configResponseCompressor.onGzippedBodyServed("SOMENAMESPACE", someBody, gzippedBody);
+
+    assertEquals(1, meterRegistry.find("config_response.gzip.size").summaries().size());
+    assertEquals(2, meterRegistry.get("config_response.gzip.size")
+        .tag("namespace", "somenamespace").summary().count());
+    assertEquals(someBody.length - gzippedBody.length, meterRegistry
+        .get("config_response.gzip.saved").tag("namespace", "somenamespace").counter().count(), 0);
+  }
+
+  @Test
+  public void testCompressSmallBody() throws Exception {
+    byte[] someBody = "{}".getBytes(StandardCharsets.UTF_8);
+
+    assertNull(configResponseCompressor.compress(someNamespace, someBody));
+    assertNull(meterRegistry.find("config_response.gzip.size").summary());
+  }
+}
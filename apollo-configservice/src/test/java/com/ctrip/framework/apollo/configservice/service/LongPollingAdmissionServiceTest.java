@@ -0,0 +1,129 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LongPollingAdmissionServiceTest {
+  private LongPollingAdmissionService longPollingAdmissionService;
+
+  @Mock
+  private BizConfig bizConfig;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    longPollingAdmissionService = new LongPollingAdmissionService(bizConfig, meterRegistry);
+  }
+
+  @Test
+  public void testAdmitAllWhenRateDisabled() throws Exception {
+    int someCount = 100;
+    for (int i = 0; i < someCount; i++) {
+      assertTrue(longPollingAdmissionService.tryAdmit());
+    }
+
+    assertEquals(someCount, meterRegistry.get("long_polling.admission.accepted").counter().count(),
+        0);
+    assertEquals(0, meterRegistry.get("long_polling.admission.rejected").counter().count(), 0);
+  }
+
+  @Test
+  public void testRejectWhenRateExceeded() throws Exception {
+    when(bizConfig.longPollingAdmissionRate()).thenReturn(1);
+
+    assertTrue(longPollingAdmissionService.tryAdmit());
+    assertFalse(longPollingAdmissionService.tryAdmit());
+
+    assertEquals(1, meterRegistry.get("long_polling.admission.accepted").counter().count(), 0);
+    assertEquals(1, meterRegistry.get("long_polling.admission.rejected").counter().count(), 0);
+  }
+
+  @Test
+  public void testAssembleRetryAfterWithinWindow() throws Exception {
+    int someRetryWindow = 3;
+    when(bizConfig.longPollingAdmissionRetryWindowInSeconds()).thenReturn(someRetryWindow);
+
+    for (int i = 0; i < 100; i++) {
+      long retryAfter = longPollingAdmissionService.assembleRetryAfterInSeconds();
+      assertTrue(retryAfter >= 1 && retryAfter <= someRetryWindow);
+    }
+  }
+
+  @Test
+  public void testAssembleRetryDelayWithinWindow() throws Exception {
+    int someRetryWindow = 3;
+    long someMaxDelay = TimeUnit.SECONDS.toMillis(2);
+    when(bizConfig.longPollingAdmissionRetryWindowInSeconds()).thenReturn(someRetryWindow);
+
+    for (int i = 0; i < 100; i++) {
+      long delay = longPollingAdmissionService.assembleRetryDelayInMilli(Long.MAX_VALUE);
+      assertTrue(delay >= 1 && delay <= TimeUnit.SECONDS.toMillis(someRetryWindow));
+
+      long cappedDelay = longPollingAdmissionService.assembleRetryDelayInMilli(someMaxDelay);
+      assertTrue(cappedDelay >= 1 && cappedDelay <= someMaxDelay);
+    }
+    assertEquals(0, longPollingAdmissionService.assembleRetryDelayInMilli(0));
+  }
+
+  @Test
+  public void testAssembleTimeoutWithJitter() throws Exception {
+    long someTimeout = TimeUnit.SECONDS.toMillis(60);
+    long someJitter = TimeUnit.SECONDS.toMillis(10);
+    when(bizConfig.longPollingTimeoutInMilli()).thenReturn(someTimeout);
+    when(bizConfig.longPollingTimeoutJitterInMilli()).thenReturn(someJitter);
+
+    long minTimeout = Long.MAX_VALUE;
+    long maxTimeout = Long.MIN_VALUE;
+    for (int i = 0; i < 1000; i++) {
+      long timeout = longPollingAdmissionService.assembleTimeoutInMilli();
+      minTimeout = Math.min(minTimeout, timeout);
+      maxTimeout = Math.max(maxTimeout, timeout);
+    }
+
+    assertTrue(minTimeout >= someTimeout - someJitter);
+    assertTrue(maxTimeout <= someTimeout);
+    // the timeouts are spread instead of being the same
+    assertTrue(maxTimeout - minTimeout > someJitter / 2);
+  }
+
+  @Test
+  public void testAssembleTimeoutWithJitterLargerThanTimeout() throws Exception {
+    long someTimeout = TimeUnit.SECONDS.toMillis(5);
+    when(bizConfig.longPollingTimeoutInMilli()).thenReturn(someTimeout);
+    when(bizConfig.longPollingTimeoutJitterInMilli()).thenReturn(TimeUnit.SECONDS.toMillis(30));
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(longPollingAdmissionService.assembleTimeoutInMilli() >= 1000);
+    }
+  }
+}
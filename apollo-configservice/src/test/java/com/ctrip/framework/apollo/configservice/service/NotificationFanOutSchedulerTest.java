@@ -0,0 +1,134 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanOutSchedulerTest {
+  private NotificationFanOutScheduler notificationFanOutScheduler;
+
+  @Mock
+  private BizConfig bizConfig;
+
+  private SimpleMeterRegistry meterRegistry;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(50);
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(1);
+
+    meterRegistry = new SimpleMeterRegistry();
+    notificationFanOutScheduler = new NotificationFanOutScheduler(bizConfig, meterRegistry);
+    someNamespace = "someNamespace";
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    notificationFanOutScheduler.destroy();
+  }
+
+  @Test
+  public void testScheduleSmallFanOutFirst() throws Exception {
+    List<DeferredResultWrapper> largeFanOut = assembleDeferredResults(10);
+    List<DeferredResultWrapper> smallFanOut = assembleDeferredResults(1);
+
+    schedule("someKey", 1, largeFanOut);
+    schedule("anotherKey", 2, smallFanOut);
+
+    await().atMost(5, TimeUnit.SECONDS)
+        .untilAsserted(() -> assertTrue(smallFanOut.get(0).getResult().hasResult()));
+    assertFalse(largeFanOut.get(largeFanOut.size() - 1).getResult().hasResult());
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+      for (DeferredResultWrapper result : largeFanOut) {
+        assertTrue(result.getResult().hasResult());
+      }
+      assertEquals(0, notificationFanOutScheduler.getQueueDepth());
+      // one batch per client
+      assertEquals(largeFanOut.size() + smallFanOut.size(),
+          meterRegistry.get("release_message_notification.lag").timer().count());
+    });
+  }
+
+  @Test
+  public void testScheduleSameKeyWithNewerMessage() throws Exception {
+    String someKey = "someKey";
+    List<DeferredResultWrapper> someResults = assembleDeferredResults(5);
+    long someNotificationId = 1;
+    long newerNotificationId = 2;
+
+    schedule(someKey, someNotificationId, someResults);
+    schedule(someKey, newerNotificationId, someResults);
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+      for (DeferredResultWrapper result : someResults) {
+        assertTrue(result.getResult().hasResult());
+      }
+    });
+    // the clients not notified yet get the newer notification
+    ResponseEntity<?> lastResponse =
+        (ResponseEntity<?>) someResults.get(someResults.size() - 1).getResult().getResult();
+    assertTrue(((String) lastResponse.getBody()).contains(String.valueOf(newerNotificationId)));
+    assertEquals(0, notificationFanOutScheduler.getQueueDepth());
+  }
+
+  @Test
+  public void testDestroy() throws Exception {
+    notificationFanOutScheduler.destroy();
+
+    await().atMost(5, TimeUnit.SECONDS)
+        .untilAsserted(() -> assertTrue(notificationFanOutScheduler.isTerminated()));
+  }
+
+  private void schedule(String key, long notificationId, List<DeferredResultWrapper> results) {
+    ApolloConfigNotification notification =
+        new ApolloConfigNotification(someNamespace, notificationId);
+    ResponseEntity<String> response =
+        ResponseEntity.ok(String.format("[{\"notificationId\":%d}]", notificationId));
+    notificationFanOutScheduler.schedule(key, someNamespace, notification, response, results);
+  }
+
+  private List<DeferredResultWrapper> assembleDeferredResults(int size) {
+    List<DeferredResultWrapper> results = Lists.newArrayList();
+    for (int i = 0; i < size; i++) {
+      results.add(new DeferredResultWrapper(TimeUnit.MINUTES.toMillis(1)));
+    }
+    return results;
+  }
+}
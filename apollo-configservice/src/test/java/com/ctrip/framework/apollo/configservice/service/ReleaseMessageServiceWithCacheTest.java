@@ -20,14 +20,19 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -57,6 +62,9 @@ public class ReleaseMessageServiceWithCacheTest {
 
   private TimeUnit scanIntervalTimeUnit;
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Before
 
   public void setUp() throws Exception {
@@ -232,6 +240,135 @@ public class ReleaseMessageServiceWithCacheTest {
     assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
   }
 
+  @Test
+  public void testMightHaveRelease() throws Exception {
+    String someAppId = "someAppId";
+    String someCluster = "someCluster";
+    String anotherCluster = "anotherCluster";
+    String someNamespace = "someNamespace";
+    ReleaseMessage someMessage =
+        assembleReleaseMsg(1, Joiner.on("+").join(someAppId, someCluster, someNamespace));
+    ReleaseMessage anotherMessage =
+        assembleReleaseMsg(2, Joiner.on("+").join(someAppId, anotherCluster, someNamespace));
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someMessage));
+
+    // not sure before the release messages are loaded
+    assertTrue(releaseMessageServiceWithCache.mightHaveRelease(someAppId, anotherCluster,
+        someNamespace));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    assertTrue(releaseMessageServiceWithCache.mightHaveRelease(someAppId, someCluster,
+        someNamespace));
+    assertTrue(releaseMessageServiceWithCache.mightHaveRelease(someAppId.toUpperCase(),
+        someCluster.toLowerCase(), someNamespace.toUpperCase()));
+    assertFalse(releaseMessageServiceWithCache.mightHaveRelease(someAppId, anotherCluster,
+        someNamespace));
+    assertFalse(releaseMessageServiceWithCache.mightHaveRelease(someAppId, someCluster,
+        "anotherNamespace"));
+    assertFalse(releaseMessageServiceWithCache.mightHaveRelease("anotherAppId", someCluster,
+        someNamespace));
+
+    releaseMessageServiceWithCache.handleMessage(anotherMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertTrue(releaseMessageServiceWithCache.mightHaveRelease(someAppId, anotherCluster,
+        someNamespace));
+  }
+
+  @Test
+  public void testWarmStartFromSnapshot() throws Exception {
+    Path snapshotPath = mockSnapshotPath();
+    String someMsgContent = "msg1";
+    String anotherMsgContent = "msg2";
+    ReleaseMessage someMsg = assembleReleaseMsg(1, someMsgContent);
+    ReleaseMessage anotherMsg = assembleReleaseMsg(2, anotherMsgContent);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Arrays.asList(someMsg, anotherMsg));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+    // the snapshot is saved on shutdown
+    releaseMessageServiceWithCache.destroy();
+
+    assertTrue(Files.exists(snapshotPath));
+
+    ReleaseMessage newMsg = assembleReleaseMsg(3, someMsgContent);
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(newMsg);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(2L))
+        .thenReturn(Collections.singletonList(newMsg));
+    clearInvocations(releaseMessageRepository);
+
+    ReleaseMessageServiceWithCache restartedService =
+        new ReleaseMessageServiceWithCache(releaseMessageRepository, bizConfig);
+    restartedService.afterPropertiesSet();
+
+    // only catch up from the snapshot
+    verify(releaseMessageRepository, never()).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+
+    List<ReleaseMessage> latestReleaseMsgGroupByMsgContent = restartedService
+        .findLatestReleaseMessagesGroupByMessages(
+            Sets.newLinkedHashSet(Arrays.asList(someMsgContent, anotherMsgContent)));
+
+    assertEquals(2, latestReleaseMsgGroupByMsgContent.size());
+    assertEquals(3, latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(2, latestReleaseMsgGroupByMsgContent.get(1).getId());
+    assertEquals(anotherMsgContent, latestReleaseMsgGroupByMsgContent.get(1).getMessage());
+
+    restartedService.destroy();
+  }
+
+  @Test
+  public void testIgnoreSnapshotNewerThanDatabase() throws Exception {
+    Path snapshotPath = mockSnapshotPath();
+    String someMsgContent = "msg1";
+    ReleaseMessage someMsg = assembleReleaseMsg(1, someMsgContent);
+
+    ReleaseMessageSnapshot.save(snapshotPath, 10,
+        Collections.singletonList(assembleReleaseMsg(10, someMsgContent)));
+
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(someMsg);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Collections.singletonList(someMsg));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    ReleaseMessage latestReleaseMsg = releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMsgContent));
+
+    assertEquals(1, latestReleaseMsg.getId());
+  }
+
+  @Test
+  public void testIgnoreBrokenSnapshot() throws Exception {
+    Path snapshotPath = mockSnapshotPath();
+    String someMsgContent = "msg1";
+    ReleaseMessage someMsg = assembleReleaseMsg(1, someMsgContent);
+
+    ReleaseMessageSnapshot.save(snapshotPath, 1, Collections.singletonList(someMsg));
+    byte[] content = Files.readAllBytes(snapshotPath);
+    content[content.length / 2] ^= 1;
+    Files.write(snapshotPath, content);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Collections.singletonList(someMsg));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    verify(releaseMessageRepository, never()).findTopByOrderByIdDesc();
+    assertEquals(1, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMsgContent)).getId());
+  }
+
+  private Path mockSnapshotPath() throws Exception {
+    Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("release-message.snapshot");
+    when(bizConfig.releaseMessageCacheSnapshotPath()).thenReturn(snapshotPath.toString());
+    when(bizConfig.releaseMessageCacheSnapshotIntervalInMilli())
+        .thenReturn(TimeUnit.MINUTES.toMillis(1));
+    return snapshotPath;
+  }
+
   private ReleaseMessage assembleReleaseMsg(long id, String msgContent) {
 
     ReleaseMessage msg = new ReleaseMessage(msgContent);
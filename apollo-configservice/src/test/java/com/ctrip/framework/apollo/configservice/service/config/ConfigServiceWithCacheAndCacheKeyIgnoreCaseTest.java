@@ -32,6 +32,7 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.collect.Lists;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -56,6 +57,8 @@ public class ConfigServiceWithCacheAndCacheKeyIgnoreCaseTest {
   @Mock
   private ReleaseMessageService releaseMessageService;
   @Mock
+  private ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
+  @Mock
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
@@ -77,7 +80,7 @@ public class ConfigServiceWithCacheAndCacheKeyIgnoreCaseTest {
   @Before
   public void setUp() throws Exception {
     configServiceWithCache = new ConfigServiceWithCache(releaseService, releaseMessageService,
-        grayReleaseRulesHolder, bizConfig, meterRegistry);
+        releaseMessageServiceWithCache, grayReleaseRulesHolder, bizConfig, meterRegistry);
 
     when(bizConfig.isConfigServiceCacheKeyIgnoreCase()).thenReturn(true);
 
@@ -27,20 +27,36 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.core.ConfigConsts;
 
 import com.google.common.collect.Sets;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -50,6 +66,9 @@ import static org.mockito.Mockito.when;
  */
 @RunWith(MockitoJUnitRunner.class)
 public class ConfigServiceWithCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private ConfigServiceWithCache configServiceWithCache;
 
   @Mock
@@ -57,6 +76,8 @@ public class ConfigServiceWithCacheTest {
   @Mock
   private ReleaseMessageService releaseMessageService;
   @Mock
+  private ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
+  @Mock
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
@@ -77,7 +98,7 @@ public class ConfigServiceWithCacheTest {
   @Before
   public void setUp() throws Exception {
     configServiceWithCache = new ConfigServiceWithCache(releaseService, releaseMessageService,
-        grayReleaseRulesHolder, bizConfig, meterRegistry);
+        releaseMessageServiceWithCache, grayReleaseRulesHolder, bizConfig, meterRegistry);
 
     configServiceWithCache.initialize();
 
@@ -344,6 +365,320 @@ public class ConfigServiceWithCacheTest {
         someNamespaceName);
   }
 
+  @Test
+  public void testFindLatestActiveReleaseWithConcurrentDirtyRelease() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+    CountDownLatch loadLatch = new CountDownLatch(1);
+    int someConcurrency = 10;
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenAnswer(invocation -> {
+          loadLatch.await();
+          return anotherRelease;
+        });
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    someNotificationMessages.put(someKey, someNewNotificationId);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(someConcurrency);
+    try {
+      List<Future<Release>> releases = Lists.newArrayList();
+      for (int i = 0; i < someConcurrency; i++) {
+        releases.add(executorService.submit(() -> configServiceWithCache.findLatestActiveRelease(
+            someAppId, someClusterName, someNamespaceName, someNotificationMessages)));
+      }
+      loadLatch.countDown();
+
+      for (Future<Release> release : releases) {
+        assertEquals(anotherRelease, release.get());
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    // the outdated entry is loaded again only once no matter how many clients find it outdated
+    verify(releaseMessageService, times(2))
+        .findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName);
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseJoiningOutdatedRefresh() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    long anotherNewNotificationId = someNotificationId + 2;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    ReleaseMessage yetAnotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+    Release yetAnotherRelease = mock(Release.class);
+    CountDownLatch loadStartedLatch = new CountDownLatch(1);
+    CountDownLatch loadLatch = new CountDownLatch(1);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(anotherReleaseMessage, yetAnotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenAnswer(invocation -> {
+          loadStartedLatch.countDown();
+          loadLatch.await();
+          return anotherRelease;
+        }).thenReturn(yetAnotherRelease);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+    when(yetAnotherReleaseMessage.getId()).thenReturn(anotherNewNotificationId);
+
+    ApolloNotificationMessages anotherNotificationMessages = new ApolloNotificationMessages();
+    someNotificationMessages.put(someKey, someNewNotificationId);
+    anotherNotificationMessages.put(someKey, anotherNewNotificationId);
+
+    FutureTask<Release> someClientRelease = new FutureTask<>(
+        () -> configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+            someNamespaceName, someNotificationMessages));
+    FutureTask<Release> anotherClientRelease = new FutureTask<>(
+        () -> configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+            someNamespaceName, anotherNotificationMessages));
+
+    // the other client joins the refresh which has loaded the release message before its own
+    new Thread(someClientRelease).start();
+    loadStartedLatch.await();
+    Thread anotherClient = new Thread(anotherClientRelease);
+    anotherClient.start();
+    while (anotherClient.getState() != Thread.State.WAITING) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    loadLatch.countDown();
+
+    assertEquals(anotherRelease, someClientRelease.get(5, TimeUnit.SECONDS));
+    assertEquals(yetAnotherRelease, anotherClientRelease.get(5, TimeUnit.SECONDS));
+
+    verify(releaseMessageService, times(3))
+        .findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(3)).findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName);
+  }
+
+  @Test
+  public void testHandleReleaseMessageWithUpToDateCache() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(anotherRelease);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    // some client brings the new notification id before the release message arrives
+    someNotificationMessages.put(someKey, someNewNotificationId);
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    configServiceWithCache.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    Release anotherClientRelease = configServiceWithCache.findLatestActiveRelease(someAppId,
+        someClusterName, someNamespaceName, new ApolloNotificationMessages());
+
+    assertEquals(anotherRelease, release);
+    assertEquals(anotherRelease, anotherClientRelease);
+
+    verify(releaseMessageService, times(2))
+        .findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName);
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseWhenDatabaseUnavailable() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+
+    when(bizConfig.isConfigServiceCacheStaleServingEnabled()).thenReturn(true);
+    configServiceWithCache.initialize();
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertFalse(configServiceWithCache.isServingStale());
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenThrow(new IllegalStateException("database is down"));
+    someNotificationMessages.put(someKey, someNewNotificationId);
+
+    Release staleRelease = configServiceWithCache.findLatestActiveRelease(someAppId,
+        someClusterName, someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    assertEquals(someRelease, staleRelease);
+    assertTrue(configServiceWithCache.isServingStale());
+
+    configServiceWithCache.markDatabaseAvailable();
+
+    assertFalse(configServiceWithCache.isServingStale());
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseFromStoreWhenDatabaseUnavailable() throws Exception {
+    Release someStoredRelease = new Release();
+    someStoredRelease.setId(1);
+    someStoredRelease.setReleaseKey("someReleaseKey");
+    someStoredRelease.setAppId(someAppId);
+    someStoredRelease.setClusterName(someClusterName);
+    someStoredRelease.setNamespaceName(someNamespaceName);
+    someStoredRelease.setConfigurations("{\"someKey\":\"someValue\"}");
+
+    when(bizConfig.isConfigServiceCacheStaleServingEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheStaleServingStorePath())
+        .thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+    configServiceWithCache.initialize();
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someStoredRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    // the release is written in the background, and the pending writes complete on shutdown
+    configServiceWithCache.destroy();
+
+    // a restarted config service while the database is down
+    ConfigServiceWithCache anotherConfigServiceWithCache = new ConfigServiceWithCache(
+        releaseService, releaseMessageService, releaseMessageServiceWithCache,
+        grayReleaseRulesHolder, bizConfig, meterRegistry);
+    anotherConfigServiceWithCache.initialize();
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenThrow(new IllegalStateException("database is down"));
+
+    Release release = anotherConfigServiceWithCache.findLatestActiveRelease(someAppId,
+        someClusterName, someNamespaceName, someNotificationMessages);
+    Release anotherRelease = anotherConfigServiceWithCache.findLatestActiveRelease(someAppId,
+        someClusterName, someNamespaceName, someNotificationMessages);
+
+    assertEquals("someReleaseKey", release.getReleaseKey());
+    assertEquals(someStoredRelease.getConfigurations(), release.getConfigurations());
+    assertSame(release, anotherRelease);
+    assertTrue(anotherConfigServiceWithCache.isServingStale());
+    // the database is not queried again before it recovers
+    verify(releaseMessageService, times(2))
+        .findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+  }
+
+  @Test
+  public void testStoredReleaseDeletedWithTheRelease() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release someStoredRelease = new Release();
+    someStoredRelease.setId(1);
+    someStoredRelease.setReleaseKey("someReleaseKey");
+    someStoredRelease.setConfigurations("{\"someKey\":\"someValue\"}");
+
+    when(bizConfig.isConfigServiceCacheStaleServingEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheStaleServingStorePath())
+        .thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+    configServiceWithCache.initialize();
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage, anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someStoredRelease, null);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    await().untilAsserted(() -> assertEquals(1, temporaryFolder.getRoot().list().length));
+
+    someNotificationMessages.put(someKey, someNewNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+    configServiceWithCache.destroy();
+
+    assertNull(release);
+    assertEquals(0, temporaryFolder.getRoot().list().length);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testFindLatestActiveReleaseWhenDatabaseUnavailableWithStaleServingDisabled() {
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenThrow(new IllegalStateException("database is down"));
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+  }
+
+  @Test
+  public void testLoadConfigWithClustersWithoutRelease() throws Exception {
+    String someClientAppId = "someClientAppId";
+    String someClientIp = "1.1.1.1";
+    String someDataCenter = "someDC";
+    String defaultKey = ReleaseMessageKeyGenerator.generate(someAppId,
+        ConfigConsts.CLUSTER_NAME_DEFAULT, someNamespaceName);
+
+    when(releaseMessageServiceWithCache.mightHaveRelease(someAppId, someClusterName,
+        someNamespaceName)).thenReturn(false);
+    when(releaseMessageServiceWithCache.mightHaveRelease(someAppId, someDataCenter,
+        someNamespaceName)).thenReturn(false);
+    when(releaseMessageServiceWithCache.mightHaveRelease(someAppId,
+        ConfigConsts.CLUSTER_NAME_DEFAULT, someNamespaceName)).thenReturn(true);
+    when(releaseMessageService.findLatestReleaseMessageForMessages(
+        Lists.newArrayList(defaultKey))).thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT,
+        someNamespaceName)).thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.loadConfig(someClientAppId, someClientIp, null,
+        someAppId, someClusterName, someNamespaceName, someDataCenter, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    // the clusters without release are skipped without looking up the gray rules or the cache
+    verify(grayReleaseRulesHolder, never()).findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, null, someAppId, someClusterName, someNamespaceName);
+    verify(grayReleaseRulesHolder, never()).findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, null, someAppId, someDataCenter, someNamespaceName);
+    verify(releaseMessageService, never())
+        .findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithIrrelevantMessages() throws Exception {
     long someNewNotificationId = someNotificationId + 1;
@@ -375,4 +710,76 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName,
         someNamespaceName);
   }
+
+  @Test
+  public void testFindReleaseConfigurationsParsedOnceWhenReleaseLoaded() throws Exception {
+    long someId = 1;
+    long someMaxSizeInBytes = 1024 * 1024;
+
+    when(bizConfig.configServiceReleaseConfigurationsCacheMaxSizeInBytes())
+        .thenReturn(someMaxSizeInBytes);
+    configServiceWithCache.initialize();
+
+    when(releaseService.findActiveOne(someId)).thenReturn(someRelease);
+    when(someRelease.getId()).thenReturn(someId);
+    when(someRelease.getConfigurations()).thenReturn("{\"someKey\":\"someValue\"}");
+
+    Release release = configServiceWithCache.findActiveOne(someId, someNotificationMessages);
+
+    Map<String, String> configurations = configServiceWithCache.findReleaseConfigurations(release);
+    Map<String, String> anotherConfigurations =
+        configServiceWithCache.findReleaseConfigurations(release);
+
+    assertEquals("someValue", configurations.get("someKey"));
+    assertSame(configurations, anotherConfigurations);
+    verify(someRelease, times(1)).getConfigurations();
+  }
+
+  @Test
+  public void testFindReleaseConfigurationsAfterReleaseMessageNotification() throws Exception {
+    long someId = 1;
+    long anotherId = 2;
+    long someMaxSizeInBytes = 1024 * 1024;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+
+    when(bizConfig.configServiceReleaseConfigurationsCacheMaxSizeInBytes())
+        .thenReturn(someMaxSizeInBytes);
+    configServiceWithCache.initialize();
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(someRelease.getId()).thenReturn(someId);
+    when(someRelease.getConfigurations()).thenReturn("{\"someKey\":\"someValue\"}");
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+    configServiceWithCache.findReleaseConfigurations(release);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(anotherRelease);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(anotherReleaseMessage.getId()).thenReturn(someNotificationId + 1);
+    when(anotherRelease.getId()).thenReturn(anotherId);
+    when(anotherRelease.getConfigurations()).thenReturn("{\"someKey\":\"anotherValue\"}");
+
+    configServiceWithCache.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    Release newRelease = configServiceWithCache.findLatestActiveRelease(someAppId,
+        someClusterName, someNamespaceName, someNotificationMessages);
+
+    assertEquals("anotherValue",
+        configServiceWithCache.findReleaseConfigurations(newRelease).get("someKey"));
+    verify(anotherRelease, times(1)).getConfigurations();
+
+    // the configurations of the replaced release are dropped and parsed again on demand
+    assertEquals("someValue",
+        configServiceWithCache.findReleaseConfigurations(release).get("someKey"));
+    verify(someRelease, times(2)).getConfigurations();
+  }
 }
@@ -16,18 +16,26 @@
  */
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
-import com.ctrip.framework.apollo.configservice.service.config.DefaultIncrementalSyncService.ReleaseKeyPair;
+import com.ctrip.framework.apollo.configservice.service.config.DefaultIncrementalSyncService.ReleaseIdPair;
 import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.lang.reflect.Field;
-import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
 
 import java.util.List;
 import java.util.Map;
@@ -36,6 +44,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author jason
@@ -44,33 +59,35 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 public class DefaultIncrementalSyncServiceTest {
 
   private DefaultIncrementalSyncService defaultIncrementalSyncService;
-  private String someKey;
-  private String someReleaseKey;
+  @Mock
+  private ConfigService configService;
+  @Mock
+  private ReleaseService releaseService;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
   private String someAppId;
   private String someClusterName;
   private String someNamespaceName;
-  private String newReleaseKey;
-  private String someClientSideReleaseKey;
-  private String someLatestMergedReleaseKey;
+  private Release someClientSideRelease;
+  private Release someLatestRelease;
   private Map<String, String> someClientSideConfigurations;
   private Map<String, String> someLatestReleaseConfigurations;
-  private Cache<ReleaseKeyPair, List<ConfigurationChange>> configurationChangeCache;
+  private Cache<ReleaseIdPair, List<ConfigurationChange>> configurationChangeCache;
 
   @Before
   public void setUp() throws Exception {
-    defaultIncrementalSyncService = new DefaultIncrementalSyncService();
+    when(bizConfig.configServiceIncrementalChangeCacheMaxSizeInBytes()).thenReturn(1024L * 1024);
+    meterRegistry = new SimpleMeterRegistry();
+    defaultIncrementalSyncService =
+        new DefaultIncrementalSyncService(configService, releaseService, bizConfig, meterRegistry);
     configurationChangeCache = getConfigurationChangeCache(defaultIncrementalSyncService);
-    someReleaseKey = "someReleaseKey";
     someAppId = "someAppId";
     someClusterName = "someClusterName";
     someNamespaceName = "someNamespaceName";
 
-    newReleaseKey = "someReleaseKey";
-
-    someKey = ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, someNamespaceName);
-
-    someClientSideReleaseKey = "client-release-key-v1";
-    someLatestMergedReleaseKey = "latest-release-key-v1";
+    someClientSideRelease = assembleRelease(1);
+    someLatestRelease = assembleRelease(2);
 
     someClientSideConfigurations = Maps.newHashMap();
     someClientSideConfigurations.put("k1", "v1");
@@ -83,12 +100,12 @@ public class DefaultIncrementalSyncServiceTest {
 
 
   @SuppressWarnings("unchecked")
-  private Cache<ReleaseKeyPair, List<ConfigurationChange>> getConfigurationChangeCache(
+  private Cache<ReleaseIdPair, List<ConfigurationChange>> getConfigurationChangeCache(
       DefaultIncrementalSyncService service) {
     try {
       Field cacheField = service.getClass().getDeclaredField("configurationChangeCache");
       cacheField.setAccessible(true);
-      return (Cache<ReleaseKeyPair, List<ConfigurationChange>>) cacheField.get(service);
+      return (Cache<ReleaseIdPair, List<ConfigurationChange>>) cacheField.get(service);
     } catch (Exception e) {
       throw new RuntimeException("Failed to get cache field", e);
     }
@@ -96,99 +113,149 @@ public class DefaultIncrementalSyncServiceTest {
 
   @Test
   public void testConfigurationChangeCacheHit() {
+    mockReleaseConfigurations();
 
     List<ConfigurationChange> firstResult = defaultIncrementalSyncService.getConfigurationChanges(
-        someLatestMergedReleaseKey, someLatestReleaseConfigurations, someClientSideReleaseKey,
-        someClientSideConfigurations);
+        Lists.newArrayList(someLatestRelease), Lists.newArrayList(someClientSideRelease));
 
-    ReleaseKeyPair key = new ReleaseKeyPair(someClientSideReleaseKey, someLatestMergedReleaseKey);
+    ReleaseIdPair key = new ReleaseIdPair(Lists.newArrayList(someClientSideRelease.getId()),
+        Lists.newArrayList(someLatestRelease.getId()));
     List<ConfigurationChange> cachedResult = configurationChangeCache.getIfPresent(key);
     assertNotNull(cachedResult);
     assertSame(firstResult, cachedResult);
 
     List<ConfigurationChange> secondResult = defaultIncrementalSyncService.getConfigurationChanges(
-        someLatestMergedReleaseKey, someLatestReleaseConfigurations, someClientSideReleaseKey,
-        someClientSideConfigurations);
+        Lists.newArrayList(someLatestRelease), Lists.newArrayList(someClientSideRelease));
 
     assertSame(firstResult, secondResult);
+    verify(configService, times(1)).findReleaseConfigurations(someLatestRelease);
+    verify(configService, times(1)).findReleaseConfigurations(someClientSideRelease);
+    assertEquals(1, meterRegistry.get("incremental_sync.change_cache.hit").counter().count(), 0);
+    assertEquals(1, meterRegistry.get("incremental_sync.change_cache.miss").counter().count(), 0);
   }
 
   @Test
   public void testConfigurationChangeCacheMiss() {
-    defaultIncrementalSyncService.getConfigurationChanges(someLatestMergedReleaseKey,
-        someLatestReleaseConfigurations, someClientSideReleaseKey, someClientSideConfigurations);
+    mockReleaseConfigurations();
+
+    defaultIncrementalSyncService.getConfigurationChanges(Lists.newArrayList(someLatestRelease),
+        Lists.newArrayList(someClientSideRelease));
 
-    String differentLatestMergedReleaseKey = "different-latest-key";
-    ReleaseKeyPair differentKey =
-        new ReleaseKeyPair(someClientSideReleaseKey, differentLatestMergedReleaseKey);
+    long differentLatestReleaseId = 3;
+    ReleaseIdPair differentKey = new ReleaseIdPair(
+        Lists.newArrayList(someClientSideRelease.getId()),
+        Lists.newArrayList(differentLatestReleaseId));
 
     assertNull(configurationChangeCache.getIfPresent(differentKey));
   }
 
   @Test
-  public void testConfigurationChangeCacheWithNullValues() {
+  public void testConfigurationChangesWithoutClientSideConfigurations() {
+    when(configService.findReleaseConfigurations(someClientSideRelease))
+        .thenReturn(ImmutableMap.of());
 
-    List<ConfigurationChange> result = defaultIncrementalSyncService
-        .getConfigurationChanges(someLatestMergedReleaseKey, null, someClientSideReleaseKey, null);
-
-    ReleaseKeyPair key = new ReleaseKeyPair(someClientSideReleaseKey, someLatestMergedReleaseKey);
+    List<ConfigurationChange> result = defaultIncrementalSyncService.getConfigurationChanges(
+        Lists.newArrayList(someLatestRelease), Lists.newArrayList(someClientSideRelease));
 
-    List<ConfigurationChange> cachedResult = configurationChangeCache.getIfPresent(key);
-    assertNotNull(cachedResult);
-    assertSame(result, cachedResult);
-    Assert.assertTrue(result.isEmpty());
+    assertNull(result);
+    assertEquals(0, configurationChangeCache.size());
+    verify(configService, never()).findReleaseConfigurations(someLatestRelease);
   }
 
   @Test
-  public void testChangeConfigurationsWithAdd() {
-    String key1 = "key1";
-    String value1 = "value1";
-
-    String key2 = "key2";
-    String value2 = "value2";
+  public void testPrecomputeConfigurationChangesOnReleaseMessage() {
+    mockReleaseConfigurations();
+    when(bizConfig.isConfigServiceIncrementalChangeEnabled()).thenReturn(true);
+    when(releaseService.findActiveReleases(eq(someAppId), eq(someClusterName),
+        eq(someNamespaceName), any(Pageable.class)))
+        .thenReturn(Lists.newArrayList(someLatestRelease, someClientSideRelease));
 
-    Map<String, String> latestConfig = ImmutableMap.of(key1, value1, key2, value2);
-    Map<String, String> clientSideConfigurations = ImmutableMap.of(key1, value1);
+    defaultIncrementalSyncService.handleMessage(new ReleaseMessage(
+        ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, someNamespaceName)),
+        Topics.APOLLO_RELEASE_TOPIC);
 
     List<ConfigurationChange> result = defaultIncrementalSyncService.getConfigurationChanges(
-        newReleaseKey, latestConfig, someReleaseKey, clientSideConfigurations);
+        Lists.newArrayList(someLatestRelease), Lists.newArrayList(someClientSideRelease));
 
-    assertEquals(1, result.size());
-    assertEquals(key2, result.get(0).getKey());
-    assertEquals(value2, result.get(0).getNewValue());
-    assertEquals("ADDED", result.get(0).getConfigurationChangeType());
+    assertEquals(3, result.size());
+    assertEquals(1, meterRegistry.get("incremental_sync.change_cache.hit").counter().count(), 0);
+    assertEquals(0, meterRegistry.get("incremental_sync.change_cache.miss").counter().count(), 0);
   }
 
   @Test
-  public void testChangeConfigurationsWithLatestConfigIsNULL() {
-    String key1 = "key1";
-    String value1 = "value1";
+  public void testPrecomputeConfigurationChangesOnceForTheSameKey() {
+    mockReleaseConfigurations();
+    when(bizConfig.isConfigServiceIncrementalChangeEnabled()).thenReturn(true);
+    when(releaseService.findActiveReleases(eq(someAppId), eq(someClusterName),
+        eq(someNamespaceName), any(Pageable.class)))
+        .thenReturn(Lists.newArrayList(someLatestRelease, someClientSideRelease));
+    String someMessage =
+        ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, someNamespaceName);
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someMessage);
+    someReleaseMessage.setId(1);
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(someMessage);
+    anotherReleaseMessage.setId(2);
+
+    defaultIncrementalSyncService.handleMessages(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(releaseService, times(1)).findActiveReleases(eq(someAppId), eq(someClusterName),
+        eq(someNamespaceName), any(Pageable.class));
+  }
 
-    Map<String, String> clientSideConfigurations = ImmutableMap.of(key1, value1);
+  @Test
+  public void testSkipPrecomputeWhenIncrementalChangeDisabled() {
+    defaultIncrementalSyncService.handleMessage(new ReleaseMessage(
+        ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, someNamespaceName)),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(releaseService, never()).findActiveReleases(anyString(), anyString(), anyString(),
+        any(Pageable.class));
+    assertEquals(0, configurationChangeCache.size());
+  }
+
+  @Test
+  public void testChangeConfigurationsWithMergedReleases() {
+    Release somePublicClientSideRelease = assembleRelease(3);
+    Release somePublicLatestRelease = assembleRelease(4);
+    when(configService.findReleaseConfigurations(someClientSideRelease))
+        .thenReturn(ImmutableMap.of("key1", "value1-override"));
+    when(configService.findReleaseConfigurations(somePublicClientSideRelease))
+        .thenReturn(ImmutableMap.of("key1", "value1"));
+    when(configService.findReleaseConfigurations(someLatestRelease))
+        .thenReturn(ImmutableMap.of("key1", "value1-override"));
+    when(configService.findReleaseConfigurations(somePublicLatestRelease))
+        .thenReturn(ImmutableMap.of("key1", "value1-new", "key2", "value2"));
 
-    List<ConfigurationChange> result = defaultIncrementalSyncService
-        .getConfigurationChanges(newReleaseKey, null, someReleaseKey, clientSideConfigurations);
+    List<ConfigurationChange> result = defaultIncrementalSyncService.getConfigurationChanges(
+        Lists.newArrayList(someLatestRelease, somePublicLatestRelease),
+        Lists.newArrayList(someClientSideRelease, somePublicClientSideRelease));
 
+    // the app's own release overrides the public one
     assertEquals(1, result.size());
-    assertEquals(key1, result.get(0).getKey());
-    assertEquals(null, result.get(0).getNewValue());
-    assertEquals("DELETED", result.get(0).getConfigurationChangeType());
+    assertEquals("key2", result.get(0).getKey());
+    assertEquals("value2", result.get(0).getNewValue());
+    assertEquals("ADDED", result.get(0).getConfigurationChangeType());
   }
 
   @Test
-  public void testChangeConfigurationsWithHistoryConfigIsNULL() {
+  public void testChangeConfigurationsWithAdd() {
     String key1 = "key1";
     String value1 = "value1";
 
-    Map<String, String> latestConfig = ImmutableMap.of(key1, value1);
+    String key2 = "key2";
+    String value2 = "value2";
 
-    List<ConfigurationChange> result = defaultIncrementalSyncService
-        .getConfigurationChanges(newReleaseKey, latestConfig, someReleaseKey, null);
+    Map<String, String> latestConfig = ImmutableMap.of(key1, value1, key2, value2);
+    Map<String, String> clientSideConfigurations = ImmutableMap.of(key1, value1);
 
+    List<ConfigurationChange> result = getConfigurationChanges(latestConfig,
+        clientSideConfigurations);
 
     assertEquals(1, result.size());
-    assertEquals(key1, result.get(0).getKey());
-    assertEquals(value1, result.get(0).getNewValue());
+    assertEquals(key2, result.get(0).getKey());
+    assertEquals(value2, result.get(0).getNewValue());
     assertEquals("ADDED", result.get(0).getConfigurationChangeType());
   }
 
@@ -202,8 +269,8 @@ public class DefaultIncrementalSyncServiceTest {
     Map<String, String> latestConfig = ImmutableMap.of(key1, anotherValue1);
     Map<String, String> clientSideConfigurations = ImmutableMap.of(key1, value1);
 
-    List<ConfigurationChange> result = defaultIncrementalSyncService.getConfigurationChanges(
-        newReleaseKey, latestConfig, someReleaseKey, clientSideConfigurations);
+    List<ConfigurationChange> result = getConfigurationChanges(latestConfig,
+        clientSideConfigurations);
 
     assertEquals(1, result.size());
     assertEquals(key1, result.get(0).getKey());
@@ -219,8 +286,8 @@ public class DefaultIncrementalSyncServiceTest {
     Map<String, String> latestConfig = ImmutableMap.of();
     Map<String, String> clientSideConfigurations = ImmutableMap.of(key1, value1);
 
-    List<ConfigurationChange> result = defaultIncrementalSyncService.getConfigurationChanges(
-        newReleaseKey, latestConfig, someReleaseKey, clientSideConfigurations);
+    List<ConfigurationChange> result = getConfigurationChanges(latestConfig,
+        clientSideConfigurations);
 
     assertEquals(1, result.size());
     assertEquals(key1, result.get(0).getKey());
@@ -228,5 +295,26 @@ public class DefaultIncrementalSyncServiceTest {
     assertEquals("DELETED", result.get(0).getConfigurationChangeType());
   }
 
+  private List<ConfigurationChange> getConfigurationChanges(Map<String, String> latestConfig,
+      Map<String, String> clientSideConfigurations) {
+    when(configService.findReleaseConfigurations(someLatestRelease)).thenReturn(latestConfig);
+    when(configService.findReleaseConfigurations(someClientSideRelease))
+        .thenReturn(clientSideConfigurations);
 
+    return defaultIncrementalSyncService.getConfigurationChanges(
+        Lists.newArrayList(someLatestRelease), Lists.newArrayList(someClientSideRelease));
+  }
+
+  private void mockReleaseConfigurations() {
+    when(configService.findReleaseConfigurations(someLatestRelease))
+        .thenReturn(someLatestReleaseConfigurations);
+    when(configService.findReleaseConfigurations(someClientSideRelease))
+        .thenReturn(someClientSideConfigurations);
+  }
+
+  private Release assembleRelease(long id) {
+    Release release = new Release();
+    release.setId(id);
+    return release;
+  }
 }
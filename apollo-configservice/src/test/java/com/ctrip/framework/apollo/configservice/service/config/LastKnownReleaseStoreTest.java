@@ -0,0 +1,110 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.google.common.collect.Lists;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LastKnownReleaseStoreTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private LastKnownReleaseStore lastKnownReleaseStore;
+  private List<Runnable> writeTasks;
+  private String someKey;
+
+  @Before
+  public void setUp() throws Exception {
+    writeTasks = Lists.newArrayList();
+    Path directory = temporaryFolder.getRoot().toPath();
+    lastKnownReleaseStore = new LastKnownReleaseStore(directory, writeTasks::add);
+    someKey = "someAppId+someClusterName+someNamespaceName";
+  }
+
+  @Test
+  public void testSaveAsyncCoalescesTheWritesOfTheSameKey() throws Exception {
+    Release someRelease = assembleRelease("someReleaseKey");
+    Release anotherRelease = assembleRelease("anotherReleaseKey");
+
+    lastKnownReleaseStore.saveAsync(someKey, 1, someRelease);
+    lastKnownReleaseStore.saveAsync(someKey, 2, anotherRelease);
+
+    assertNull(lastKnownReleaseStore.load(someKey));
+    assertEquals(1, writeTasks.size());
+
+    runWriteTasks();
+
+    LastKnownReleaseStore.StoredRelease storedRelease = lastKnownReleaseStore.load(someKey);
+    assertEquals(2, storedRelease.getNotificationId());
+    assertEquals("anotherReleaseKey", storedRelease.getRelease().getReleaseKey());
+  }
+
+  @Test
+  public void testSaveAsyncAfterTheWriteStarted() throws Exception {
+    lastKnownReleaseStore.saveAsync(someKey, 1, assembleRelease("someReleaseKey"));
+    runWriteTasks();
+    lastKnownReleaseStore.saveAsync(someKey, 2, assembleRelease("anotherReleaseKey"));
+    runWriteTasks();
+
+    assertEquals("anotherReleaseKey",
+        lastKnownReleaseStore.load(someKey).getRelease().getReleaseKey());
+  }
+
+  @Test
+  public void testDeleteAsync() throws Exception {
+    lastKnownReleaseStore.saveAsync(someKey, 1, assembleRelease("someReleaseKey"));
+    runWriteTasks();
+    lastKnownReleaseStore.deleteAsync(someKey);
+    runWriteTasks();
+
+    assertNull(lastKnownReleaseStore.load(someKey));
+    assertEquals(0, temporaryFolder.getRoot().list().length);
+  }
+
+  @Test
+  public void testDeleteAsyncBeforeTheSaveStarted() throws Exception {
+    lastKnownReleaseStore.saveAsync(someKey, 1, assembleRelease("someReleaseKey"));
+    lastKnownReleaseStore.deleteAsync(someKey);
+    runWriteTasks();
+
+    assertNull(lastKnownReleaseStore.load(someKey));
+    assertEquals(0, temporaryFolder.getRoot().list().length);
+  }
+
+  private void runWriteTasks() {
+    List<Runnable> tasks = Lists.newArrayList(writeTasks);
+    writeTasks.clear();
+    tasks.forEach(Runnable::run);
+  }
+
+  private Release assembleRelease(String releaseKey) {
+    Release release = new Release();
+    release.setId(1);
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations("{\"someKey\":\"someValue\"}");
+    return release;
+  }
+}
@@ -21,8 +21,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.configservice.service.AccessKeyServiceWithCache;
+import com.ctrip.framework.apollo.core.signature.Signature;
 import com.google.common.collect.Lists;
 import java.util.List;
+import javax.crypto.spec.SecretKeySpec;
 import jakarta.servlet.http.HttpServletRequest;
 import org.junit.Before;
 import org.junit.Test;
@@ -98,6 +100,16 @@ public class AccessKeyUtilTest {
     assertThat(appId).isEqualTo("someAppId");
   }
 
+  @Test
+  public void testExtractAppIdFromRequest5() {
+    when(request.getServletPath()).thenReturn("/notifications/v3");
+    when(request.getParameter("appId")).thenReturn("someAppId");
+
+    String appId = accessKeyUtil.extractAppIdFromRequest(request);
+
+    assertThat(appId).isEqualTo("someAppId");
+  }
+
   @Test
   public void buildSignature() {
     String path = "/configs/someAppId/default/application";
@@ -110,4 +122,43 @@ public class AccessKeyUtilTest {
     String expectedSignature = "WYjjyJFei6DYiaMlwZjew2O/Yqk=";
     assertThat(actualSignature).isEqualTo(expectedSignature);
   }
+
+  @Test
+  public void testVerifySignature() {
+    String path = "/configs/someAppId/default/application";
+    String query = "ip=10.0.0.1";
+    String timestamp = "1575018989200";
+    String signature = "WYjjyJFei6DYiaMlwZjew2O/Yqk=";
+    List<SecretKeySpec> secretKeys = Lists.newArrayList(AccessKeyUtil.toSecretKey("anotherSecret"),
+        AccessKeyUtil.toSecretKey("someSecret"));
+
+    assertThat(accessKeyUtil.verifySignature(signature, path, query, timestamp, secretKeys))
+        .isTrue();
+    assertThat(accessKeyUtil.verifySignature(signature, path, query, timestamp,
+        secretKeys.subList(0, 1))).isFalse();
+    assertThat(accessKeyUtil.verifySignature(signature, path, "ip=10.0.0.2", timestamp,
+        secretKeys)).isFalse();
+    assertThat(accessKeyUtil.verifySignature(null, path, query, timestamp, secretKeys)).isFalse();
+  }
+
+  @Test
+  public void testVerifySignatureTheSameAsSignature() {
+    String timestamp = "1575018989200";
+    List<String> secrets = Lists.newArrayList("someSecret", "中文密钥");
+    List<String> queries = Lists.newArrayList(null, "", "ip=10.0.0.1&label=someLabel");
+
+    for (String secret : secrets) {
+      List<SecretKeySpec> secretKeys = Lists.newArrayList(AccessKeyUtil.toSecretKey(secret));
+      for (String query : queries) {
+        String path = "/configs/someAppId/default/application";
+        String pathWithQuery = query == null || query.isEmpty() ? path : path + "?" + query;
+        String signature = Signature.signature(timestamp, pathWithQuery, secret);
+
+        assertThat(accessKeyUtil.buildSignature(path, query, timestamp, secret))
+            .isEqualTo(signature);
+        assertThat(accessKeyUtil.verifySignature(signature, path, query, timestamp, secretKeys))
+            .isTrue();
+      }
+    }
+  }
 }
@@ -20,17 +20,24 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
-import io.micrometer.core.instrument.MeterRegistry;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -45,8 +52,7 @@ public class InstanceConfigAuditUtilTest {
   private InstanceService instanceService;
   @Mock
   private BizConfig bizConfig;
-  @Mock
-  private MeterRegistry meterRegistry;
+  private SimpleMeterRegistry meterRegistry;
   private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
 
   private String someAppId;
@@ -65,11 +71,13 @@ public class InstanceConfigAuditUtilTest {
     when(bizConfig.getInstanceConfigAuditMaxSize()).thenReturn(100);
     when(bizConfig.getInstanceCacheMaxSize()).thenReturn(100);
     when(bizConfig.getInstanceConfigCacheMaxSize()).thenReturn(100);
+    when(bizConfig.getInstanceConfigAuditWorkers()).thenReturn(1);
+    meterRegistry = new SimpleMeterRegistry();
 
     instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService, bizConfig, meterRegistry);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
-        ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
+    audits = ((List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
+        ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits")).get(0);
 
     someAppId = "someAppId";
     someClusterName = "someClusterName";
@@ -114,5 +122,77 @@ public class InstanceConfigAuditUtilTest {
     verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
   }
 
+  @Test
+  public void testAuditWhenQueueIsFull() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      audits.offer(someAuditModel);
+    }
+
+    boolean result = instanceConfigAuditUtil.audit(Lists.newArrayList(someAuditModel));
+
+    assertFalse(result);
+    assertEquals(1, meterRegistry.get("instance_config_audit.dropped").counter().count(), 0);
+    assertEquals(100, meterRegistry.get("instance_config_audit.queue.depth").gauge().value(), 0);
+  }
+
+  @Test
+  public void testDoAuditInBatch() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String anotherIp = "anotherIp";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Instance someInstance = assembleInstance(someInstanceId, someIp);
+    Instance anotherInstance = assembleInstance(anotherInstanceId, anotherIp);
+
+    InstanceConfigAuditUtil.InstanceConfigAuditModel someNewerAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, someIp, someConfigAppId, someConfigClusterName, someConfigNamespace,
+            anotherReleaseKey);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, anotherIp, someConfigAppId, someConfigClusterName,
+            someConfigNamespace, someReleaseKey);
+
+    when(instanceService.findInstances(someAppId, someClusterName, someDataCenter,
+        Sets.newHashSet(someIp, anotherIp))).thenReturn(Lists.newArrayList(someInstance));
+    when(instanceService.createInstance(any(Instance.class))).thenReturn(anotherInstance);
+    when(instanceService.findInstanceConfigs(someConfigAppId, someConfigNamespace,
+        Sets.newHashSet(someInstanceId, anotherInstanceId))).thenReturn(Collections.emptyList());
+
+    instanceConfigAuditUtil.doAudit(
+        Lists.newArrayList(someAuditModel, anotherAuditModel, someNewerAuditModel));
+
+    ArgumentCaptor<List<InstanceConfig>> instanceConfigsToCreate =
+        ArgumentCaptor.forClass(List.class);
+    verify(instanceService, times(1)).batchSaveInstanceConfigs(instanceConfigsToCreate.capture(),
+        eq(Collections.emptyList()));
+    verify(instanceService, times(1)).createInstance(any(Instance.class));
+    verify(instanceService, never()).findInstanceConfig(anyLong(), anyString(), anyString());
+
+    List<InstanceConfig> instanceConfigs = instanceConfigsToCreate.getValue();
+    assertEquals(2, instanceConfigs.size());
+    assertEquals(someInstanceId, instanceConfigs.get(0).getInstanceId());
+    assertEquals(anotherReleaseKey, instanceConfigs.get(0).getReleaseKey());
+    assertEquals(anotherInstanceId, instanceConfigs.get(1).getInstanceId());
+    assertEquals(someReleaseKey, instanceConfigs.get(1).getReleaseKey());
+    assertEquals(3, meterRegistry.get("instance_config_audit.batch.size").summary().totalAmount(),
+        0);
+
+    // the same audits are skipped as the release keys are cached
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someNewerAuditModel, anotherAuditModel));
+
+    verify(instanceService, times(1)).batchSaveInstanceConfigs(anyList(), anyList());
+  }
+
+  private Instance assembleInstance(long id, String ip) {
+    Instance instance = new Instance();
+    instance.setId(id);
+    instance.setAppId(someAppId);
+    instance.setClusterName(someClusterName);
+    instance.setDataCenter(someDataCenter);
+    instance.setIp(ip);
+    return instance;
+  }
+
 
 }
@@ -33,7 +33,10 @@ import java.util.Collection;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -177,6 +180,27 @@ public class WatchKeysUtilTest {
         watchKeysMap.get(somePublicNamespace));
   }
 
+  @Test
+  public void testAssembleAllWatchKeysCachedUntilAppNamespacesChange() throws Exception {
+    Set<String> namespaces = Sets.newHashSet(someNamespace, somePublicNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, namespaces, someDC);
+    Multimap<String, String> anotherWatchKeysMap = watchKeysUtil.assembleAllWatchKeys(someAppId,
+        someCluster, Sets.newHashSet(somePublicNamespace, someNamespace), someDC);
+
+    assertSame(watchKeysMap, anotherWatchKeysMap);
+    verify(appNamespaceService, times(1)).findByAppIdAndNamespaces(someAppId, namespaces);
+
+    when(appNamespaceService.getVersion()).thenReturn(1L);
+
+    Multimap<String, String> watchKeysMapAfterChange =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, namespaces, someDC);
+
+    assertEquals(watchKeysMap, watchKeysMapAfterChange);
+    verify(appNamespaceService, times(2)).findByAppIdAndNamespaces(someAppId, namespaces);
+  }
+
   private void assertWatchKeys(String appId, Set<String> clusters, String namespaceName,
       Collection<String> watchedKeys) {
     for (String cluster : clusters) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2025 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry.Subscription;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchKeyRegistryTest {
+
+  private WatchKeyRegistry<String> registry;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new WatchKeyRegistry<>();
+  }
+
+  @Test
+  public void testRegisterAndGet() {
+    String key = "SomeKey";
+    String anotherKey = "anotherKey";
+    String value1 = "value1";
+    String value2 = "value2";
+
+    registry.register(Lists.newArrayList(key, anotherKey), value1);
+    registry.register(Lists.newArrayList(key.toLowerCase()), value2);
+
+    List<String> values = registry.get(key);
+    assertEquals(2, values.size());
+    assertTrue(values.contains(value1));
+    assertTrue(values.contains(value2));
+    assertEquals(values.size(), registry.get(key.toUpperCase()).size());
+    assertEquals(Lists.newArrayList(value1), registry.get(anotherKey));
+    assertEquals(3, registry.size());
+  }
+
+  @Test
+  public void testRegisterWithDuplicatedKeys() {
+    String key = "SomeKey";
+    String value = "someValue";
+
+    registry.register(Lists.newArrayList(key, key.toLowerCase(), key.toUpperCase()), value);
+
+    assertEquals(Lists.newArrayList(value), registry.get(key));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void testUnregister() {
+    String key = "SomeKey";
+    String anotherKey = "anotherKey";
+    String value = "someValue";
+    String anotherValue = "anotherValue";
+
+    Subscription subscription = registry.register(Lists.newArrayList(key, anotherKey), value);
+    registry.register(Lists.newArrayList(key), anotherValue);
+    assertTrue(registry.containsKey(anotherKey.toUpperCase()));
+
+    subscription.unregister();
+    // unregister is idempotent
+    subscription.unregister();
+
+    assertEquals(Lists.newArrayList(anotherValue), registry.get(key));
+    assertFalse(registry.containsKey(anotherKey));
+    assertTrue(registry.get(anotherKey).isEmpty());
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void testValues() {
+    String value1 = "value1";
+    String value2 = "value2";
+
+    Subscription subscription =
+        registry.register(Lists.newArrayList("someKey", "anotherKey", "yetAnotherKey"), value1);
+    registry.register(Lists.newArrayList("anotherKey"), value2);
+
+    List<String> values = registry.values();
+    assertEquals(2, values.size());
+    assertTrue(values.contains(value1));
+    assertTrue(values.contains(value2));
+
+    subscription.unregister();
+
+    assertEquals(Lists.newArrayList(value2), registry.values());
+  }
+
+  @Test
+  public void testGetReturnsSnapshot() {
+    String key = "SomeKey";
+    Subscription subscription = registry.register(Lists.newArrayList(key), "someValue");
+
+    List<String> values = registry.get(key);
+    subscription.unregister();
+
+    assertEquals(1, values.size());
+    assertTrue(registry.get(key).isEmpty());
+  }
+
+  @Test
+  public void testUnregisterManySubscribersOfSameKeys() {
+    int subscriberCount = 200000;
+    List<String> keys = Lists.newArrayList("someAppId+default+application",
+        "someAppId+someCluster+application", "publicAppId+default+somePublicNamespace");
+    List<Subscription> subscriptions = Lists.newArrayListWithCapacity(subscriberCount);
+
+    for (int i = 0; i < subscriberCount; i++) {
+      subscriptions.add(registry.register(keys, String.valueOf(i)));
+    }
+    assertEquals(subscriberCount * keys.size(), registry.size());
+
+    // unregister in registration order, which moves subscribers around in the buckets
+    for (int i = 0; i < subscriberCount; i++) {
+      subscriptions.get(i).unregister();
+      if (i == subscriberCount / 2) {
+        List<String> values = registry.get(keys.get(0));
+        assertEquals(subscriberCount - i - 1, values.size());
+        assertTrue(values.contains(String.valueOf(subscriberCount - 1)));
+      }
+    }
+
+    assertEquals(0, registry.size());
+    for (String key : keys) {
+      assertFalse(registry.containsKey(key));
+    }
+  }
+
+  @Test
+  public void testConcurrencyRaceCondition() throws InterruptedException {
+    final int loopCount = 100000;
+    final List<String> keys = Lists.newArrayList("RaceKey");
+    final String valA = "A";
+    final String valB = "B";
+    final CountDownLatch latch = new CountDownLatch(2);
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicInteger failures = new AtomicInteger(0);
+    final AtomicReference<Throwable> threadException = new AtomicReference<>();
+
+    // Thread A: toggles valA
+    new Thread(() -> {
+      try {
+        while (running.get()) {
+          registry.register(keys, valA).unregister();
+        }
+      } catch (Throwable e) {
+        threadException.set(e);
+      } finally {
+        latch.countDown();
+      }
+    }).start();
+
+    // Thread B: repeatedly registers and unregisters valB to test register atomicity
+    new Thread(() -> {
+      try {
+        for (int i = 0; i < loopCount; i++) {
+          Subscription subscription = registry.register(keys, valB);
+          if (!registry.get("racekey").contains(valB)) {
+            failures.incrementAndGet();
+          }
+          subscription.unregister();
+        }
+      } catch (Throwable e) {
+        threadException.set(e);
+      } finally {
+        running.set(false);
+        latch.countDown();
+      }
+    }).start();
+
+    latch.await();
+
+    if (threadException.get() != null) {
+      throw new RuntimeException("Exception in worker thread", threadException.get());
+    }
+
+    assertEquals("Value B should not be lost due to race condition", 0, failures.get());
+    assertEquals(0, registry.size());
+  }
+}